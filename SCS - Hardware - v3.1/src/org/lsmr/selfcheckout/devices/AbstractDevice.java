@@ -1,6 +1,11 @@
 package org.lsmr.selfcheckout.devices;
 
-import java.util.ArrayList;
+import java.lang.reflect.Array;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
 import org.lsmr.selfcheckout.IllegalConfigurationPhaseSimulationException;
 import org.lsmr.selfcheckout.IllegalErrorPhaseSimulationException;
@@ -20,6 +25,13 @@ import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
  * observer.
  * <p>
  * <p>
+ * Observers are kept in a copy-on-write array: attaching or detaching one
+ * replaces the array rather than changing it. A notification loops over the
+ * array it read when it started, so observers may attach and detach from any
+ * thread, or from within a notification, without disturbing it. An observer
+ * detached during a notification may still receive that notification.
+ * </p>
+ * <p>
  * Any individual device can be disabled, which means it will not permit
  * physical movements to be caused by the software. Any method that could cause
  * a physical movement will declare that it throws DisabledException.
@@ -71,9 +83,35 @@ public abstract class AbstractDevice<T extends AbstractDeviceObserver> {
 	}
 
 	/**
-	 * A list of the registered observers on this device.
+	 * The registered observers on this device. The array is never changed once
+	 * published, so it can be looped over directly; read it once per
+	 * notification.
+	 */
+	protected volatile T[] observers = emptyObservers(getClass());
+
+	/**
+	 * Guards replacing the observer array.
 	 */
-	protected ArrayList<T> observers = new ArrayList<>();
+	private final Object observersLock = new Object();
+
+	/**
+	 * Creates an empty array of the observer type the device class was declared
+	 * with, since subclasses loop over it as an array of that type.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T[] emptyObservers(Class<?> deviceClass) {
+		while(deviceClass.getSuperclass() != AbstractDevice.class)
+			deviceClass = deviceClass.getSuperclass();
+
+		Type type = ((ParameterizedType)deviceClass.getGenericSuperclass()).getActualTypeArguments()[0];
+		if(type instanceof TypeVariable)
+			type = ((TypeVariable<?>)type).getBounds()[0];
+		if(type instanceof ParameterizedType)
+			type = ((ParameterizedType)type).getRawType();
+
+		Class<?> observerClass = type instanceof Class ? (Class<?>)type : AbstractDeviceObserver.class;
+		return (T[])Array.newInstance(observerClass, 0);
+	}
 
 	/**
 	 * Locates the indicated observer and removes it such that it will no longer be
@@ -91,7 +129,18 @@ public abstract class AbstractDevice<T extends AbstractDeviceObserver> {
 		if(phase == Phase.ERROR)
 			throw new IllegalErrorPhaseSimulationException();
 
-		return observers.remove(observer);
+		synchronized(observersLock) {
+			T[] current = observers;
+			for(int i = 0; i < current.length; i++)
+				if(current[i].equals(observer)) {
+					T[] replacement = Arrays.copyOf(current, current.length - 1);
+					System.arraycopy(current, i + 1, replacement, i, current.length - i - 1);
+					observers = replacement;
+					return true;
+				}
+
+			return false;
+		}
 	}
 
 	/**
@@ -105,7 +154,9 @@ public abstract class AbstractDevice<T extends AbstractDeviceObserver> {
 		if(phase == Phase.ERROR)
 			throw new IllegalErrorPhaseSimulationException();
 
-		observers.clear();
+		synchronized(observersLock) {
+			observers = Arrays.copyOf(observers, 0);
+		}
 	}
 
 	/**
@@ -126,7 +177,62 @@ public abstract class AbstractDevice<T extends AbstractDeviceObserver> {
 		if(observer == null)
 			throw new NullPointerSimulationException("observer");
 
-		observers.add(observer);
+		synchronized(observersLock) {
+			T[] replacement = Arrays.copyOf(observers, observers.length + 1);
+			replacement[replacement.length - 1] = observer;
+			observers = replacement;
+		}
+	}
+
+	/**
+	 * Counts the times the indicated observer is registered with this device.
+	 * Attaching an observer that is already registered registers it again, so
+	 * it is informed of each event once for each time it is registered.
+	 * 
+	 * @param observer
+	 *            The observer to count.
+	 * @return The number of times it is registered, 0 if it is not.
+	 */
+	public final int countAttached(AbstractDeviceObserver observer) {
+		int count = 0;
+		for(T registered : observers)
+			if(registered.equals(observer))
+				count++;
+
+		return count;
+	}
+
+	/**
+	 * @return The number of observers registered with this device, counting an
+	 *         observer registered more than once each time.
+	 */
+	public final int getObserverCount() {
+		return observers.length;
+	}
+
+	/**
+	 * Announces an event to every observer registered with this device, as the
+	 * device does when the event happens. Lets events recorded from another
+	 * device be replayed into this one.
+	 * 
+	 * @param event
+	 *            Announces the event to one observer.
+	 * @throws IllegalPhaseSimulationException
+	 *             If the device is not in the normal phase.
+	 * @throws NullPointerSimulationException
+	 *             If the argument is null.
+	 */
+	public final void announce(Consumer<T> event) {
+		if(phase == Phase.ERROR)
+			throw new IllegalErrorPhaseSimulationException();
+		if(phase == Phase.CONFIGURATION)
+			throw new IllegalConfigurationPhaseSimulationException();
+
+		if(event == null)
+			throw new NullPointerSimulationException("event");
+
+		for(T observer : observers)
+			event.accept(observer);
 	}
 
 	private boolean disabled = false;
@@ -1,7 +1,9 @@
 package org.lsmr.selfcheckout.devices;
 
-import java.util.ArrayList;
-import java.util.Random;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.lsmr.selfcheckout.IllegalConfigurationPhaseSimulationException;
 import org.lsmr.selfcheckout.IllegalErrorPhaseSimulationException;
@@ -18,10 +20,13 @@ import org.lsmr.selfcheckout.devices.observers.ElectronicScaleObserver;
  * sensitivity, so that small changes might not be noticed.
  */
 public class ElectronicScale extends AbstractDevice<ElectronicScaleObserver> {
-	private ArrayList<Item> items = new ArrayList<>();
+	// Items are only ever the same if they are the same object
+	private Set<Item> items = Collections.newSetFromMap(new IdentityHashMap<>());
 
 	private double weightLimitInGrams;
 	private double currentWeightInGrams = 0;
+	// Low-order bits lost from the running sum (Kahan summation)
+	private double compensation = 0;
 	private double weightAtLastEvent = 0;
 	private double sensitivity;
 
@@ -78,7 +83,7 @@ public class ElectronicScale extends AbstractDevice<ElectronicScaleObserver> {
 			throw new IllegalConfigurationPhaseSimulationException();
 
 		if(currentWeightInGrams <= weightLimitInGrams)
-			return currentWeightInGrams + new Random().nextDouble() / 10.0;
+			return currentWeightInGrams + ThreadLocalRandom.current().nextDouble() / 10.0;
 
 		throw new OverloadException();
 	}
@@ -114,12 +119,10 @@ public class ElectronicScale extends AbstractDevice<ElectronicScaleObserver> {
 		if(item == null)
 			throw new NullPointerSimulationException("item");
 
-		if(items.contains(item))
+		if(!items.add(item))
 			throw new InvalidArgumentSimulationException("The same item cannot be added more than once to the scale.");
 
-		currentWeightInGrams += item.getWeight();
-
-		items.add(item);
+		accumulate(item.getWeight());
 
 		if(currentWeightInGrams > weightLimitInGrams)
 			notifyOverload();
@@ -149,21 +152,35 @@ public class ElectronicScale extends AbstractDevice<ElectronicScaleObserver> {
 		if(!items.remove(item))
 			throw new InvalidArgumentSimulationException("The item was not found amongst those on the scale.");
 
-		// To avoid drift in the sum due to round-off error, recalculate the weight.
-		double newWeightInGrams = 0.0;
-		for(Item itemOnScale : items)
-			newWeightInGrams += itemOnScale.getWeight();
-
 		double original = currentWeightInGrams;
-		currentWeightInGrams = newWeightInGrams;
 
-		if(original > weightLimitInGrams && newWeightInGrams <= weightLimitInGrams)
+		// The running sum is compensated, so it does not drift; an empty scale
+		// weighs exactly nothing
+		if(items.isEmpty()) {
+			currentWeightInGrams = 0;
+			compensation = 0;
+		}
+		else
+			accumulate(-item.getWeight());
+
+		if(original > weightLimitInGrams && currentWeightInGrams <= weightLimitInGrams)
 			notifyOutOfOverload();
 
 		if(currentWeightInGrams <= weightLimitInGrams && Math.abs(original - currentWeightInGrams) > sensitivity)
 			notifyWeightChanged();
 	}
 
+	/**
+	 * Adds to the current weight, carrying the round-off error of each addition
+	 * into the next so that adding and removing many items does not drift.
+	 */
+	private void accumulate(double weightInGrams) {
+		double corrected = weightInGrams - compensation;
+		double sum = currentWeightInGrams + corrected;
+		compensation = (sum - currentWeightInGrams) - corrected;
+		currentWeightInGrams = sum;
+	}
+
 	private void notifyOverload() {
 		for(ElectronicScaleObserver l : observers)
 			l.overload(this);
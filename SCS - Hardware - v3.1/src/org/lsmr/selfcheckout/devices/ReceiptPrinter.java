@@ -1,9 +1,12 @@
 package org.lsmr.selfcheckout.devices;
 
+import java.nio.CharBuffer;
+
 import org.lsmr.selfcheckout.IllegalConfigurationPhaseSimulationException;
 import org.lsmr.selfcheckout.IllegalErrorPhaseSimulationException;
 import org.lsmr.selfcheckout.IllegalPhaseSimulationException;
 import org.lsmr.selfcheckout.InvalidArgumentSimulationException;
+import org.lsmr.selfcheckout.NullPointerSimulationException;
 import org.lsmr.selfcheckout.SimulationException;
 import org.lsmr.selfcheckout.devices.observers.ReceiptPrinterObserver;
 
@@ -15,6 +18,19 @@ import org.lsmr.selfcheckout.devices.observers.ReceiptPrinterObserver;
  * Since this is a simulation, each character is assumed to require the same
  * amount of ink (except blanks and newlines) and the font size is fixed.
  * </p>
+ * <p>
+ * The printer may be used from more than one thread, e.g. by a print queue
+ * while a technician adds paper, so its operations are synchronized.
+ * </p>
+ * <p>
+ * Printed output is held in a ring buffer of fixed capacity rather than a
+ * growing string, so a printer whose receipts are never taken does not use
+ * more and more memory. Each receipt is kept in one contiguous stretch of the
+ * buffer, from the end of the previous receipt to the {@link #cutPaper()} that
+ * finishes it, so it can be read without copying (see
+ * {@link #getReceipt(int)}). When the buffer is full, the oldest receipts are
+ * overwritten.
+ * </p>
  */
 public class ReceiptPrinter extends AbstractDevice<ReceiptPrinterObserver> {
 	/**
@@ -27,7 +43,25 @@ public class ReceiptPrinter extends AbstractDevice<ReceiptPrinterObserver> {
 	public static final int MAXIMUM_PAPER = 1 << 10;
 	private int charactersOfInkRemaining = 0;
 	private int linesOfPaperRemaining = 0;
-	private StringBuilder sb = new StringBuilder();
+	/**
+	 * The default capacity of the output buffer: a full roll of paper.
+	 */
+	public static final int DEFAULT_OUTPUT_CAPACITY = MAXIMUM_PAPER * (ReceiptPrinter.CHARACTERS_PER_LINE + 1);
+	/**
+	 * The most cut receipts that are kept until they are removed.
+	 */
+	public static final int MAXIMUM_RECEIPTS = 64;
+
+	private final char[] output;
+	// The receipt being printed runs from currentStart to end
+	private int currentStart = 0;
+	private int end = 0;
+	// Cut receipts not yet removed, oldest first, as a ring of [start, end) pairs
+	private final int[] receiptStarts = new int[MAXIMUM_RECEIPTS];
+	private final int[] receiptEnds = new int[MAXIMUM_RECEIPTS];
+	private int oldestReceipt = 0;
+	private int receiptCount = 0;
+	private boolean cut = false;
 	private int charactersOnCurrentLine = 0;
 
 	/**
@@ -40,7 +74,43 @@ public class ReceiptPrinter extends AbstractDevice<ReceiptPrinterObserver> {
 	/**
 	 * Creates a receipt printer.
 	 */
-	public ReceiptPrinter() {}
+	public ReceiptPrinter() {
+		this(DEFAULT_OUTPUT_CAPACITY);
+	}
+
+	/**
+	 * Creates a receipt printer that keeps at most the given number of characters
+	 * of printed output.
+	 * 
+	 * @param outputCapacity
+	 *            The capacity of the output buffer, in characters.
+	 * @throws SimulationException
+	 *             If the capacity is not positive.
+	 */
+	public ReceiptPrinter(int outputCapacity) {
+		if(outputCapacity <= 0)
+			throw new InvalidArgumentSimulationException("The output capacity must be positive.");
+
+		output = new char[outputCapacity];
+	}
+
+	/**
+	 * Gets the ink left in the printer.
+	 * 
+	 * @return The number of characters that can still be printed.
+	 */
+	public synchronized int getInkRemaining() {
+		return charactersOfInkRemaining;
+	}
+
+	/**
+	 * Gets the paper left in the printer.
+	 * 
+	 * @return The number of lines that can still be printed.
+	 */
+	public synchronized int getPaperRemaining() {
+		return linesOfPaperRemaining;
+	}
 
 	/**
 	 * Prints a single character to the receipt. Whitespace characters are ignored,
@@ -56,7 +126,7 @@ public class ReceiptPrinter extends AbstractDevice<ReceiptPrinterObserver> {
 	 * @throws IllegalPhaseSimulationException
 	 *             If the device is not in the normal phase.
 	 */
-	public void print(char c) throws EmptyException, OverloadException {
+	public synchronized void print(char c) throws EmptyException, OverloadException {
 		if(phase == Phase.ERROR)
 			throw new IllegalErrorPhaseSimulationException();
 		if(phase == Phase.CONFIGURATION)
@@ -82,7 +152,8 @@ public class ReceiptPrinter extends AbstractDevice<ReceiptPrinterObserver> {
 			charactersOfInkRemaining--;
 		}
 
-		sb.append(c);
+		reserve(1);
+		output[end++] = c;
 
 		if(charactersOfInkRemaining == 0)
 			notifyOutOfInk();
@@ -91,6 +162,132 @@ public class ReceiptPrinter extends AbstractDevice<ReceiptPrinterObserver> {
 			notifyOutOfPaper();
 	}
 
+	/**
+	 * Prints a sequence of characters to the receipt. Characters are treated as
+	 * by {@link #print(char)}, but the whole sequence is checked in a single pass
+	 * before anything is printed, and the ink and paper it needs are taken in a
+	 * single step. Either every character is printed or, if an exception is
+	 * thrown, none are. "outOfInk" and "outOfPaper" are announced at most once
+	 * per call, if the sequence uses up the last of the ink or paper.
+	 * 
+	 * @param text
+	 *            The characters to print.
+	 * @throws EmptyException
+	 *             If there is not enough ink or paper in the printer for the
+	 *             whole sequence.
+	 * @throws OverloadException
+	 *             If a line in the sequence would spill off the end of the line.
+	 * @throws IllegalPhaseSimulationException
+	 *             If the device is not in the normal phase.
+	 */
+	public synchronized void print(CharSequence text) throws EmptyException, OverloadException {
+		if(phase == Phase.ERROR)
+			throw new IllegalErrorPhaseSimulationException();
+		if(phase == Phase.CONFIGURATION)
+			throw new IllegalConfigurationPhaseSimulationException();
+		if(text == null)
+			throw new NullPointerSimulationException("text");
+
+		int length = text.length();
+		int ink = 0;
+		int lines = 0;
+		int column = charactersOnCurrentLine;
+		boolean skipped = false;
+
+		for(int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+
+			if(c == '\n') {
+				if(lines == linesOfPaperRemaining)
+					throw new EmptyException("There is not enough paper in the printer.");
+
+				lines++;
+				column = 0;
+			}
+			else if(c != ' ' && Character.isWhitespace(c))
+				skipped = true;
+			else if(column == CHARACTERS_PER_LINE)
+				throw new OverloadException("The line is too long. Add a newline");
+			else if(lines == linesOfPaperRemaining)
+				throw new EmptyException("There is not enough paper in the printer.");
+			else {
+				column++;
+
+				if(c != ' ')
+					ink++;
+			}
+		}
+
+		if(ink > charactersOfInkRemaining)
+			throw new EmptyException("There is not enough ink in the printer.");
+
+		if(skipped) {
+			int kept = 0;
+			for(int i = 0; i < length; i++) {
+				char c = text.charAt(i);
+
+				if(c == '\n' || c == ' ' || !Character.isWhitespace(c))
+					kept++;
+			}
+
+			int from = reserve(kept);
+			for(int i = 0; i < length && kept > 0; i++) {
+				char c = text.charAt(i);
+
+				if(c == '\n' || c == ' ' || !Character.isWhitespace(c)) {
+					if(from > 0)
+						from--;
+					else {
+						output[end++] = c;
+						kept--;
+					}
+				}
+			}
+		}
+		else {
+			int from = reserve(length);
+			for(int i = from; i < length; i++)
+				output[end++] = text.charAt(i);
+		}
+
+		charactersOfInkRemaining -= ink;
+		linesOfPaperRemaining -= lines;
+		charactersOnCurrentLine = column;
+
+		if(ink > 0 && charactersOfInkRemaining == 0)
+			notifyOutOfInk();
+
+		if(lines > 0 && linesOfPaperRemaining == 0)
+			notifyOutOfPaper();
+	}
+
+	/**
+	 * Prints each line followed by a newline. Each line is printed as by
+	 * {@link #print(CharSequence)}, so a line is printed completely or not at
+	 * all; printing stops at the first line that cannot be printed.
+	 * 
+	 * @param lines
+	 *            The lines to print, without newlines.
+	 * @throws EmptyException
+	 *             If there is not enough ink or paper in the printer for a line.
+	 * @throws OverloadException
+	 *             If a line is too long.
+	 * @throws IllegalPhaseSimulationException
+	 *             If the device is not in the normal phase.
+	 */
+	public synchronized void printLines(CharSequence... lines) throws EmptyException, OverloadException {
+		if(lines == null)
+			throw new NullPointerSimulationException("lines");
+
+		StringBuilder line = new StringBuilder(CHARACTERS_PER_LINE + 1);
+
+		for(CharSequence text : lines) {
+			line.setLength(0);
+			line.append(text).append('\n');
+			print(line);
+		}
+	}
+
 	/**
 	 * The receipt is finished printing, so cut it so that the customer can easily
 	 * remove it. Failure to cut the paper means that the receipt will not be
@@ -99,16 +296,103 @@ public class ReceiptPrinter extends AbstractDevice<ReceiptPrinterObserver> {
 	 * @throws IllegalPhaseSimulationException
 	 *             If the device is not in the normal phase.
 	 */
-	public void cutPaper() {
+	public synchronized void cutPaper() {
 		if(phase == Phase.ERROR)
 			throw new IllegalErrorPhaseSimulationException();
 		if(phase == Phase.CONFIGURATION)
 			throw new IllegalConfigurationPhaseSimulationException();
 
-		lastReceipt = sb.toString();
+		if(end > currentStart) {
+			if(receiptCount == MAXIMUM_RECEIPTS)
+				dropOldestReceipt();
+
+			int slot = (oldestReceipt + receiptCount) % MAXIMUM_RECEIPTS;
+			receiptStarts[slot] = currentStart;
+			receiptEnds[slot] = end;
+			receiptCount++;
+			currentStart = end;
+		}
+
+		cut = true;
+	}
+
+	/**
+	 * Gets the number of receipts that have been cut but not removed.
+	 * 
+	 * @return The number of receipts waiting to be taken.
+	 */
+	public synchronized int getReceiptCount() {
+		return receiptCount;
+	}
+
+	/**
+	 * Gets a receipt that has been cut but not removed, without copying it. The
+	 * view is read-only and stays valid until the printer prints again or the
+	 * receipts are removed.
+	 * 
+	 * @param index
+	 *            Which receipt, where 0 is the oldest.
+	 * @return A view of the receipt.
+	 * @throws SimulationException
+	 *             If there is no such receipt.
+	 */
+	public synchronized CharBuffer getReceipt(int index) {
+		if(index < 0 || index >= receiptCount)
+			throw new InvalidArgumentSimulationException("There is no receipt " + index + ".");
+
+		int slot = (oldestReceipt + index) % MAXIMUM_RECEIPTS;
+		return CharBuffer.wrap(output, receiptStarts[slot], receiptEnds[slot] - receiptStarts[slot]).slice()
+			.asReadOnlyBuffer();
 	}
 
-	private String lastReceipt = null;
+	/**
+	 * Makes room for the given number of characters after the receipt being
+	 * printed, keeping the receipt in one piece. If the rest of the buffer is too
+	 * short, the receipt is moved to the start of the buffer. Receipts in the way
+	 * are dropped, oldest first.
+	 * 
+	 * @return The number of leading characters to skip, when there are more than
+	 *         the buffer can hold.
+	 */
+	private int reserve(int count) {
+		int skip = Math.max(0, count - output.length);
+		count -= skip;
+
+		if(end + count <= output.length) {
+			dropReceiptsIn(end, end + count, false);
+			return skip;
+		}
+
+		// Keep as much of the receipt being printed as fits with the new characters
+		int keep = Math.min(end - currentStart, output.length - count);
+		dropReceiptsIn(0, keep + count, true);
+
+		System.arraycopy(output, end - keep, output, 0, keep);
+		currentStart = 0;
+		end = keep;
+		return skip;
+	}
+
+	/**
+	 * Drops the oldest receipts while they overlap [from, to), or lie after the
+	 * receipt being printed when the buffer wraps around.
+	 */
+	private void dropReceiptsIn(int from, int to, boolean wrapping) {
+		while(receiptCount > 0) {
+			int start = receiptStarts[oldestReceipt];
+			int stop = receiptEnds[oldestReceipt];
+
+			if(start < to && stop > from || wrapping && stop > end)
+				dropOldestReceipt();
+			else
+				break;
+		}
+	}
+
+	private void dropOldestReceipt() {
+		oldestReceipt = (oldestReceipt + 1) % MAXIMUM_RECEIPTS;
+		receiptCount--;
+	}
 
 	/**
 	 * Simulates the customer removing the receipt. Failure to cut the receipt
@@ -119,22 +403,34 @@ public class ReceiptPrinter extends AbstractDevice<ReceiptPrinterObserver> {
 	 * @throws IllegalPhaseSimulationException
 	 *             If the device is not in the normal phase.
 	 */
-	public String removeReceipt() {
+	public synchronized String removeReceipt() {
 		if(phase == Phase.ERROR)
 			throw new IllegalErrorPhaseSimulationException();
 		if(phase == Phase.CONFIGURATION)
 			throw new IllegalConfigurationPhaseSimulationException();
 
-		String receipt = lastReceipt;
+		if(!cut)
+			throw new InvalidArgumentSimulationException("A non-existent receipt cannot be removed.");
 
-		if(lastReceipt != null) {
-			lastReceipt = null;
-			sb = new StringBuilder();
+		int length = 0;
+		for(int i = 0; i < receiptCount; i++) {
+			int slot = (oldestReceipt + i) % MAXIMUM_RECEIPTS;
+			length += receiptEnds[slot] - receiptStarts[slot];
 		}
-		else
-			throw new InvalidArgumentSimulationException("A non-existent receipt cannot be removed.");
 
-		return receipt;
+		StringBuilder receipt = new StringBuilder(length);
+		for(int i = 0; i < receiptCount; i++) {
+			int slot = (oldestReceipt + i) % MAXIMUM_RECEIPTS;
+			receipt.append(output, receiptStarts[slot], receiptEnds[slot] - receiptStarts[slot]);
+		}
+
+		// Anything printed after the last cut is not part of a receipt, and is dropped
+		oldestReceipt = 0;
+		receiptCount = 0;
+		currentStart = end;
+		cut = false;
+
+		return receipt.toString();
 	}
 
 	/**
@@ -151,7 +447,7 @@ public class ReceiptPrinter extends AbstractDevice<ReceiptPrinterObserver> {
 	 * @throws IllegalErrorPhaseSimulationException
 	 *             If the device is in the error phase.
 	 */
-	public void addInk(int quantity) throws OverloadException {
+	public synchronized void addInk(int quantity) throws OverloadException {
 		if(phase == Phase.ERROR)
 			throw new IllegalErrorPhaseSimulationException();
 
@@ -181,7 +477,7 @@ public class ReceiptPrinter extends AbstractDevice<ReceiptPrinterObserver> {
 	 * @throws IllegalErrorPhaseSimulationException
 	 *             If the device is in the error phase.
 	 */
-	public void addPaper(int units) throws OverloadException {
+	public synchronized void addPaper(int units) throws OverloadException {
 		if(phase == Phase.ERROR)
 			throw new IllegalErrorPhaseSimulationException();
 
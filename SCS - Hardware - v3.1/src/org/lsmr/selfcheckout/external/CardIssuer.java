@@ -36,6 +36,15 @@ public class CardIssuer {
 		this.name = name;
 	}
 
+	/**
+	 * Gets the company's name.
+	 *
+	 * @return The name of this card issuer.
+	 */
+	public String getName() {
+		return name;
+	}
+
 	/**
 	 * Blocks the card corresponding to the indicated number, thereby preventing new
 	 * transactions.
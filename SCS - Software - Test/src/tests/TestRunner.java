@@ -9,16 +9,23 @@ import org.junit.runners.Suite;
         // All tests under tests.application
         tests.application.AppControlTest.class, tests.application.MainTest.class,
         // All tests under tests.bank
-        tests.bank.BankTest.class,
+        tests.bank.BankTest.class, tests.bank.CircuitBreakerTest.class, tests.bank.ForwardQueueTest.class, tests.bank.JournalTest.class,
+        tests.bank.PaymentLogTest.class, tests.bank.SettlementTest.class, tests.bank.StandInTest.class,
         // All tests under tests.checkout
-        tests.checkout.CheckoutTest.class, tests.checkout.ReceiptTest.class, tests.checkout.ScreenTest.class,
+        tests.checkout.CheckoutTest.class, tests.checkout.ReceiptTest.class, tests.checkout.ReceiptTemplateTest.class,
+        tests.checkout.ReceiptSpoolTest.class, tests.checkout.PrintSpoolerTest.class, tests.checkout.ConsumablesForecastTest.class,
+        tests.checkout.ScreenTest.class,
         // All tests under tests.interrupt
         tests.interrupt.BanknoteHandlerTest.class, tests.interrupt.CardHandlerTest.class, tests.interrupt.CoinHandlerTest.class, tests.interrupt.ProcessItemHandlerTest.class,
+        tests.interrupt.WeightPipelineTest.class,
         // All tests under tests.software
         tests.software.SelfCheckoutSoftwareTest.class, tests.software.SoftwareTest.class, tests.software.SupervisionSoftwareTest.class, 
         tests.software.SelfCheckoutControllerTest.class, tests.software.SelfCheckoutHandlerTest.class,
+        tests.software.EventBusTest.class, tests.software.EventCoalescerTest.class, tests.software.HardwareRecorderTest.class,
+        tests.software.PhaseTimesTest.class, tests.software.LogTest.class,
         // All tests under tests.store
-        tests.store.GiftCardTest.class, tests.store.InventoryTest.class, tests.store.MembershipTest.class, tests.store.StoreTest.class,
+        tests.store.BloomFilterTest.class, tests.store.GiftCardTest.class, tests.store.InventoryTest.class, tests.store.MemberNumberSetTest.class,
+        tests.store.MembershipTest.class, tests.store.StoreTest.class, tests.store.WeightProfileTest.class,
         // All tests under tests.store.credentials
         tests.store.credentials.CredentialsSystemTest.class,
         // All tests under tests.user
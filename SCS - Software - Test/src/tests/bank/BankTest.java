@@ -125,4 +125,15 @@ public class BankTest
         assertNull(Bank.getCardIssuer(card1Number));
         assertNull(Bank.getCardIssuer(card2Number));
     }
+
+    @Test
+    public void getIssuerByNameTest()
+    {
+        Bank.addIssuer(cardIssuer1);
+        Bank.addIssuer(cardIssuer2);
+
+        assertEquals(cardIssuer1, Bank.getIssuer("Visa"));
+        assertEquals(cardIssuer2, Bank.getIssuer("Mastercard"));
+        assertNull(Bank.getIssuer("Amex"));
+    }
 }
@@ -0,0 +1,90 @@
+package tests.bank;
+
+import bank.CircuitBreaker;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest
+{
+    long now;
+    CircuitBreaker breaker;
+
+    // Setup that is run before each test case
+    @Before
+    public void setup()
+    {
+        now = 0;
+        breaker = new CircuitBreaker(3, 1000, 4000, () -> now);
+    }
+
+    private void fail(int times)
+    {
+        for (int i = 0; i < times; i++)
+        {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+    }
+
+    @Test
+    public void opensAfterThresholdTest()
+    {
+        fail(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsFailuresTest()
+    {
+        fail(2);
+        breaker.recordSuccess();
+        fail(2);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenAllowsOneTrialTest()
+    {
+        fail(3);
+        now = 1000;
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedTrialBacksOffTest()
+    {
+        fail(3);
+
+        // Each failed trial doubles the open period, up to the maximum
+        long[] periods = { 1000, 2000, 4000, 4000 };
+        for (long period : periods)
+        {
+            now += period - 1;
+            assertFalse(breaker.allowRequest());
+
+            now += 1;
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidThresholdTest()
+    {
+        new CircuitBreaker(0, 1000, 1000);
+    }
+}
@@ -0,0 +1,254 @@
+package tests.bank;
+
+import bank.Bank;
+import bank.CircuitBreaker;
+import bank.ForwardQueue;
+import bank.Journal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ForwardQueueTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Static variables that will be used during testing
+    final String cardNumber = "1234";
+    final BigDecimal cardLimit = new BigDecimal("100.00");
+    final BigDecimal limit = new BigDecimal("1000.00");
+    final BigDecimal amount = new BigDecimal("30.00");
+
+    StandInTest.UnreliableIssuer cardIssuer;
+    Path path;
+    Journal journal;
+    ForwardQueue queue;
+
+    // Setup that is run before each test case
+    @Before
+    public void setup() throws IOException
+    {
+        Bank.clearIssuers();
+        Bank.clearCardIssuers();
+        Bank.clearCircuitBreakers();
+
+        Calendar expiry = Calendar.getInstance();
+        expiry.add(Calendar.YEAR, 1);
+
+        cardIssuer = new StandInTest.UnreliableIssuer("Visa");
+        cardIssuer.addCardData(cardNumber, "John Smith", expiry, "123", cardLimit);
+        Bank.addIssuer(cardIssuer);
+
+        path = folder.getRoot().toPath().resolve("forward.journal");
+        journal = new Journal(path);
+        queue = new ForwardQueue(journal);
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        queue.stop();
+        Bank.clearCircuitBreakers();
+        journal.close();
+    }
+
+    @Test
+    public void forwardTest() throws IOException
+    {
+        ForwardQueue.Entry entry = queue.enqueue("lane1", "Visa", cardNumber, amount, limit, limit);
+
+        List<ForwardQueue.Entry> completed = queue.forward(200);
+
+        assertEquals(1, completed.size());
+        assertEquals(ForwardQueue.State.FORWARDED, entry.getState());
+        assertTrue(queue.getPending().isEmpty());
+        assertEquals(0, BigDecimal.ZERO.compareTo(queue.getOutstandingForCard(cardNumber)));
+
+        // 30.00 was charged to the card
+        assertEquals(-1, cardIssuer.authorizeHold(cardNumber, new BigDecimal("70.01")));
+    }
+
+    @Test
+    public void forwardDeclinedTest() throws IOException
+    {
+        ForwardQueue.Entry entry = queue.enqueue("lane1", "Visa", cardNumber, new BigDecimal("100.01"), limit, limit);
+
+        queue.forward(200);
+
+        assertEquals(ForwardQueue.State.DECLINED, entry.getState());
+        assertTrue(queue.getPending().isEmpty());
+    }
+
+    @Test
+    public void forwardWaitsForIssuerTest() throws IOException
+    {
+        Bank.setCircuitBreaker("Visa", new CircuitBreaker(1, 60000, 60000));
+        cardIssuer.down = true;
+
+        queue.enqueue("lane1", "Visa", cardNumber, amount, limit, limit);
+        queue.enqueue("lane1", "Visa", cardNumber, amount, limit, limit);
+
+        // The first failure opens the breaker, so the second payment is not tried
+        assertTrue(queue.forward(200).isEmpty());
+        assertEquals(1, cardIssuer.calls.get());
+
+        assertTrue(queue.forward(200).isEmpty());
+        assertEquals(1, cardIssuer.calls.get());
+
+        // Once the issuer is back and the breaker lets calls through, both go
+        cardIssuer.down = false;
+        Bank.setCircuitBreaker("Visa", new CircuitBreaker(1, 60000, 60000));
+        assertEquals(2, queue.forward(200).size());
+    }
+
+    @Test
+    public void replayTest() throws IOException
+    {
+        queue.enqueue("lane1", "Visa", cardNumber, amount, limit, limit);
+        queue.enqueue("lane1", "Visa", cardNumber, amount, limit, limit);
+        queue.forward(200);
+        queue.enqueue("lane2", "Visa", cardNumber, amount, limit, limit);
+        journal.close();
+
+        journal = new Journal(path);
+        ForwardQueue reopened = new ForwardQueue(journal);
+
+        assertEquals(1, reopened.getPending().size());
+        assertEquals(3, reopened.getPending().get(0).getID());
+        assertEquals(0, BigDecimal.ZERO.compareTo(reopened.getOutstandingForLane("lane1")));
+        assertEquals(0, amount.compareTo(reopened.getOutstandingForLane("lane2")));
+
+        // New payments continue the IDs
+        assertEquals(4, reopened.enqueue("lane1", "Visa", cardNumber, amount, limit, limit).getID());
+    }
+
+    @Test
+    public void compactTest() throws Exception
+    {
+        queue.enqueue("lane1", "Visa", cardNumber, amount, limit, limit);
+        queue.forward(200);
+        queue.enqueue("lane1", "Visa", cardNumber, amount, limit, limit);
+
+        queue.compact(folder.getRoot().toPath().resolve("forward.archive"));
+
+        assertNull(queue.get(1));
+        assertEquals(1, queue.getPending().size());
+
+        journal.close();
+        journal = new Journal(path);
+        assertEquals(1, new ForwardQueue(journal).getPending().size());
+    }
+
+    /**
+     * A journal whose next payment waits to be let through, then fails
+     */
+    static class StalledJournal extends Journal
+    {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        StalledJournal(Path path) throws IOException
+        {
+            super(path);
+        }
+
+        @Override
+        public long append(String record) throws IOException
+        {
+            if (!record.startsWith(ForwardQueue.State.QUEUED.name()))
+            {
+                return super.append(record);
+            }
+
+            writing.countDown();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Disk full");
+        }
+    }
+
+    @Test
+    public void queueingNotForwardedTest() throws Exception
+    {
+        StalledJournal stalled = new StalledJournal(folder.getRoot().toPath().resolve("stalled.journal"));
+        ForwardQueue stalledQueue = new ForwardQueue(stalled);
+        AtomicBoolean failed = new AtomicBoolean();
+
+        Thread lane = new Thread(() -> {
+            try
+            {
+                stalledQueue.enqueue("lane1", "Visa", cardNumber, amount, limit, limit);
+            }
+            catch (IOException e)
+            {
+                failed.set(true);
+            }
+        });
+        lane.start();
+        stalled.writing.await();
+
+        // Not in the journal yet, so neither charged nor compacted
+        assertTrue(stalledQueue.getPending().isEmpty());
+        assertTrue(stalledQueue.forward(200).isEmpty());
+        assertEquals(0, amount.compareTo(stalledQueue.getOutstandingForCard(cardNumber)));
+
+        Thread compaction = new Thread(() -> {
+            try
+            {
+                stalledQueue.compact(folder.getRoot().toPath().resolve("stalled.archive"));
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+        });
+        compaction.start();
+        compaction.join(200);
+        assertTrue(compaction.isAlive());
+
+        stalled.release.countDown();
+        lane.join();
+        compaction.join(5000);
+
+        assertTrue(failed.get());
+        assertFalse(compaction.isAlive());
+        assertEquals(0, BigDecimal.ZERO.compareTo(stalledQueue.getOutstandingForCard(cardNumber)));
+
+        // The card was never charged
+        assertTrue(cardIssuer.authorizeHold(cardNumber, cardLimit) >= 0);
+        stalled.close();
+    }
+
+    @Test
+    public void backgroundForwardTest() throws IOException, InterruptedException
+    {
+        ForwardQueue.Entry entry = queue.enqueue("lane1", "Visa", cardNumber, amount, limit, limit);
+
+        queue.start(10, 200);
+
+        for (int i = 0; i < 200 && entry.getState() == ForwardQueue.State.QUEUED; i++)
+        {
+            Thread.sleep(10);
+        }
+
+        assertEquals(ForwardQueue.State.FORWARDED, entry.getState());
+    }
+}
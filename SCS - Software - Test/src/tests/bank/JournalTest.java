@@ -0,0 +1,169 @@
+package tests.bank;
+
+import bank.Journal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JournalTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path path;
+    Journal journal;
+
+    // Setup that is run before each test case
+    @Before
+    public void setup() throws IOException
+    {
+        path = folder.getRoot().toPath().resolve("test.journal");
+        journal = new Journal(path);
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        journal.close();
+    }
+
+    @Test
+    public void appendAndReplayTest() throws IOException
+    {
+        assertEquals(1, journal.append("first"));
+        assertEquals(2, journal.append("second"));
+
+        List<String> records = new ArrayList<String>();
+        journal.replay(records::add);
+
+        assertEquals(List.of("first", "second"), records);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void appendLineBreakTest() throws IOException
+    {
+        journal.append("first\nsecond");
+    }
+
+    @Test
+    public void reopenKeepsRecordsTest() throws IOException
+    {
+        journal.append("first");
+        journal.close();
+
+        journal = new Journal(path);
+        journal.append("second");
+
+        List<String> records = new ArrayList<String>();
+        journal.replay(records::add);
+
+        assertEquals(List.of("first", "second"), records);
+    }
+
+    @Test
+    public void concurrentAppendTest() throws Exception
+    {
+        int threads = 8;
+        int perThread = 200;
+        List<Thread> workers = new ArrayList<Thread>();
+
+        for (int t = 0; t < threads; t++)
+        {
+            final int id = t;
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++)
+                {
+                    try
+                    {
+                        journal.append(id + ":" + i);
+                    } catch (IOException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+
+        List<String> records = Collections.synchronizedList(new ArrayList<String>());
+        journal.replay(records::add);
+
+        assertEquals(threads * perThread, records.size());
+    }
+
+    @Test
+    public void rollTest() throws IOException
+    {
+        Path rolled = folder.getRoot().toPath().resolve("rolled.journal");
+
+        journal.append("before");
+        journal.roll(rolled);
+        journal.append("after");
+
+        List<String> old = new ArrayList<String>();
+        Journal.replay(rolled, old::add);
+        List<String> current = new ArrayList<String>();
+        journal.replay(current::add);
+
+        assertEquals(List.of("before"), old);
+        assertEquals(List.of("after"), current);
+        assertTrue(Files.exists(path));
+    }
+
+    @Test
+    public void rewriteTest() throws IOException
+    {
+        Path archive = folder.getRoot().toPath().resolve("archive.journal");
+
+        journal.append("first");
+        journal.append("second");
+        journal.rewrite(archive, List.of("second"));
+        journal.append("third");
+
+        List<String> old = new ArrayList<String>();
+        Journal.replay(archive, old::add);
+        List<String> current = new ArrayList<String>();
+        journal.replay(current::add);
+
+        assertEquals(List.of("first", "second"), old);
+        assertEquals(List.of("second", "third"), current);
+    }
+
+    @Test
+    public void rewriteFailureKeepsRecordsTest() throws IOException
+    {
+        journal.append("first");
+
+        // The archive cannot be written, so the journal is never replaced
+        try
+        {
+            journal.rewrite(folder.getRoot().toPath().resolve("missing").resolve("archive.journal"), List.of());
+            fail("The archive cannot be written");
+        }
+        catch (IOException e)
+        {
+        }
+        journal.append("second");
+
+        List<String> current = new ArrayList<String>();
+        journal.replay(current::add);
+        assertEquals(List.of("first", "second"), current);
+    }
+}
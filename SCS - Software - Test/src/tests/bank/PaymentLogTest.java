@@ -0,0 +1,242 @@
+package tests.bank;
+
+import bank.Bank;
+import bank.ForwardQueue;
+import bank.Journal;
+import bank.PaymentLog;
+import bank.StandIn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lsmr.selfcheckout.external.CardIssuer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PaymentLogTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Static variables that will be used during testing
+    final String cardNumber = "1234";
+    final BigDecimal cardLimit = new BigDecimal("100.00");
+    final BigDecimal amount = new BigDecimal("60.00");
+
+    CardIssuer cardIssuer;
+    Path path;
+    Journal journal;
+    PaymentLog paymentLog;
+
+    // Setup that is run before each test case
+    @Before
+    public void setup() throws IOException
+    {
+        Bank.clearIssuers();
+        Bank.clearCardIssuers();
+
+        Calendar expiry = Calendar.getInstance();
+        expiry.add(Calendar.YEAR, 1);
+
+        cardIssuer = new CardIssuer("Visa");
+        cardIssuer.addCardData(cardNumber, "John Smith", expiry, "123", cardLimit);
+        Bank.addIssuer(cardIssuer);
+
+        path = folder.getRoot().toPath().resolve("payments.journal");
+        journal = new Journal(path);
+        paymentLog = new PaymentLog(journal);
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        journal.close();
+    }
+
+    @Test
+    public void payTest() throws IOException
+    {
+        PaymentLog.Entry entry = paymentLog.pay("tx1", cardIssuer, cardNumber, amount);
+
+        assertEquals(PaymentLog.State.POSTED, entry.getState());
+        assertEquals(entry, paymentLog.get("tx1"));
+    }
+
+    @Test
+    public void payRetryDoesNotChargeTwiceTest() throws IOException
+    {
+        paymentLog.pay("tx1", cardIssuer, cardNumber, amount);
+        PaymentLog.Entry retry = paymentLog.pay("tx1", cardIssuer, cardNumber, amount);
+
+        assertEquals(PaymentLog.State.POSTED, retry.getState());
+
+        // Only one charge of 60.00 was taken from the 100.00 limit
+        assertNotEquals(-1, cardIssuer.authorizeHold(cardNumber, new BigDecimal("40.00")));
+    }
+
+    @Test
+    public void payHoldFailedTest() throws IOException
+    {
+        PaymentLog.Entry entry = paymentLog.pay("tx1", cardIssuer, cardNumber, new BigDecimal("200.00"));
+
+        assertEquals(PaymentLog.State.FAILED, entry.getState());
+        assertEquals(-1, entry.getHoldNumber());
+    }
+
+    @Test
+    public void replayRestoresStateTest() throws IOException
+    {
+        paymentLog.pay("tx1", cardIssuer, cardNumber, amount);
+        journal.close();
+
+        journal = new Journal(path);
+        PaymentLog reopened = new PaymentLog(journal);
+
+        assertEquals(PaymentLog.State.POSTED, reopened.get("tx1").getState());
+        assertEquals(PaymentLog.State.POSTED, reopened.pay("tx1", cardIssuer, cardNumber, amount).getState());
+        assertNotEquals(-1, cardIssuer.authorizeHold(cardNumber, new BigDecimal("40.00")));
+    }
+
+    @Test
+    public void payFinishesHeldTransactionTest() throws IOException
+    {
+        // The lane stopped right after the hold was logged
+        int holdNumber = cardIssuer.authorizeHold(cardNumber, amount);
+        journal.append("tx1\tHELD\tVisa\t" + cardNumber + "\t" + holdNumber + "\t60.00");
+        journal.close();
+
+        journal = new Journal(path);
+        PaymentLog reopened = new PaymentLog(journal);
+        PaymentLog.Entry entry = reopened.pay("tx1", cardIssuer, cardNumber, amount);
+
+        assertEquals(PaymentLog.State.POSTED, entry.getState());
+        assertEquals(holdNumber, entry.getHoldNumber());
+        assertNotEquals(-1, cardIssuer.authorizeHold(cardNumber, new BigDecimal("40.00")));
+    }
+
+    @Test
+    public void payDoesNotHoldInterruptedTransactionAgainTest() throws IOException
+    {
+        // The lane stopped after the issuer placed the hold, before it was logged
+        journal.append("tx1\tREQUESTED\tVisa\t" + cardNumber + "\t-1\t30.00");
+        assertNotEquals(-1, cardIssuer.authorizeHold(cardNumber, new BigDecimal("30.00")));
+        journal.close();
+
+        journal = new Journal(path);
+        PaymentLog reopened = new PaymentLog(journal);
+        PaymentLog.Entry entry = reopened.pay("tx1", cardIssuer, cardNumber, new BigDecimal("30.00"));
+
+        assertEquals(PaymentLog.State.FAILED, entry.getState());
+        assertEquals(-1, entry.getHoldNumber());
+
+        // Only the hold from before the crash is on the card
+        assertNotEquals(-1, cardIssuer.authorizeHold(cardNumber, new BigDecimal("70.00")));
+    }
+
+    @Test
+    public void payThroughStandInLogsHoldTest() throws IOException
+    {
+        Journal forwardJournal = new Journal(folder.getRoot().toPath().resolve("forward.journal"));
+        StandIn standIn = new StandIn("lane1", new ForwardQueue(forwardJournal), amount, amount, 1000);
+
+        try
+        {
+            PaymentLog.Entry entry = paymentLog.pay("tx1", cardIssuer, cardNumber, amount, standIn);
+
+            assertEquals(PaymentLog.State.POSTED, entry.getState());
+            assertNotEquals(-1, entry.getHoldNumber());
+
+            List<String> records = new ArrayList<String>();
+            journal.replay(records::add);
+            assertEquals(3, records.size());
+            assertTrue(records.get(1).startsWith("tx1\tHELD\t"));
+        } finally
+        {
+            Bank.clearCircuitBreakers();
+            forwardJournal.close();
+        }
+    }
+
+    @Test
+    public void payStoodInRetryDoesNotQueueTwiceTest() throws IOException
+    {
+        // An issuer that cannot be reached
+        CardIssuer downIssuer = new CardIssuer("Visa")
+        {
+            @Override
+            public int authorizeHold(String cardNumber, BigDecimal amount)
+            {
+                throw new IllegalStateException("Issuer unreachable");
+            }
+        };
+
+        Journal forwardJournal = new Journal(folder.getRoot().toPath().resolve("forward.journal"));
+        ForwardQueue queue = new ForwardQueue(forwardJournal);
+        StandIn standIn = new StandIn("lane1", queue, amount, amount, 1000);
+
+        try
+        {
+            PaymentLog.Entry entry = paymentLog.pay("tx1", downIssuer, cardNumber, amount, standIn);
+            PaymentLog.Entry retry = paymentLog.pay("tx1", downIssuer, cardNumber, amount, standIn);
+
+            assertEquals(PaymentLog.State.STOOD_IN, entry.getState());
+            assertEquals(entry, retry);
+            assertEquals(1, queue.getPending().size());
+        } finally
+        {
+            Bank.clearCircuitBreakers();
+            forwardJournal.close();
+        }
+    }
+
+    @Test
+    public void recoverReleasesHeldTransactionTest() throws IOException
+    {
+        int holdNumber = cardIssuer.authorizeHold(cardNumber, amount);
+        journal.append("tx1\tHELD\tVisa\t" + cardNumber + "\t" + holdNumber + "\t60.00");
+        journal.append("tx2\tREQUESTED\tVisa\t" + cardNumber + "\t-1\t10.00");
+        journal.close();
+
+        journal = new Journal(path);
+        PaymentLog reopened = new PaymentLog(journal);
+        List<PaymentLog.Entry> unfinished = reopened.recover(folder.getRoot().toPath().resolve("payments.archive"));
+
+        assertEquals(2, unfinished.size());
+        assertEquals(PaymentLog.State.FAILED, reopened.get("tx1").getState());
+
+        // The hold was released, so the full limit is available again
+        assertNotEquals(-1, cardIssuer.authorizeHold(cardNumber, cardLimit));
+    }
+
+    @Test
+    public void retryAfterRecoverDoesNotChargeTwiceTest() throws IOException
+    {
+        paymentLog.pay("tx1", cardIssuer, cardNumber, amount);
+        journal.close();
+
+        journal = new Journal(path);
+        PaymentLog reopened = new PaymentLog(journal);
+        reopened.recover(folder.getRoot().toPath().resolve("payments.archive"));
+        journal.close();
+
+        // A second restart reads the rewritten journal
+        journal = new Journal(path);
+        reopened = new PaymentLog(journal);
+        reopened.recover(folder.getRoot().toPath().resolve("payments.archive2"));
+        PaymentLog.Entry retry = reopened.pay("tx1", cardIssuer, cardNumber, amount);
+
+        assertEquals(PaymentLog.State.POSTED, retry.getState());
+
+        // Only one payment was charged, so the rest of the limit is still available
+        assertNotEquals(-1, cardIssuer.authorizeHold(cardNumber, cardLimit.subtract(amount)));
+        assertEquals(-1, cardIssuer.authorizeHold(cardNumber, amount));
+    }
+}
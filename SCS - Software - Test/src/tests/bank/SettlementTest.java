@@ -0,0 +1,202 @@
+package tests.bank;
+
+import bank.Bank;
+import bank.Journal;
+import bank.Settlement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lsmr.selfcheckout.external.CardIssuer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SettlementTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Static variables that will be used during testing
+    final String card1Number = "1234";
+    final String card2Number = "5678";
+    final BigDecimal cardLimit = new BigDecimal("100.00");
+
+    CardIssuer cardIssuer1;
+    CardIssuer cardIssuer2;
+    Journal journal;
+    Settlement settlement;
+
+    // Setup that is run before each test case
+    @Before
+    public void setup() throws IOException
+    {
+        Bank.clearIssuers();
+        Bank.clearCardIssuers();
+
+        Calendar expiry = Calendar.getInstance();
+        expiry.add(Calendar.YEAR, 1);
+
+        cardIssuer1 = new CardIssuer("Visa");
+        cardIssuer2 = new CardIssuer("Mastercard");
+        cardIssuer1.addCardData(card1Number, "John Smith", expiry, "123", cardLimit);
+        cardIssuer2.addCardData(card2Number, "Samantha Smith", expiry, "456", cardLimit);
+
+        journal = new Journal(folder.getRoot().toPath().resolve("settlement.journal"));
+        settlement = new Settlement(journal, folder.getRoot().toPath().resolve("out"));
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        journal.close();
+        Bank.setSettlement(null);
+    }
+
+    @Test
+    public void settleAggregatesPerIssuerTest() throws IOException
+    {
+        int hold1 = cardIssuer1.authorizeHold(card1Number, new BigDecimal("10.00"));
+        int hold2 = cardIssuer1.authorizeHold(card1Number, new BigDecimal("5.50"));
+        int hold3 = cardIssuer2.authorizeHold(card2Number, new BigDecimal("20.00"));
+
+        settlement.capture(cardIssuer1, card1Number, hold1, new BigDecimal("10.00"));
+        settlement.capture(cardIssuer1, card1Number, hold2, new BigDecimal("5.50"));
+        settlement.capture(cardIssuer2, card2Number, hold3, new BigDecimal("20.00"));
+
+        List<Path> files = settlement.settle();
+
+        assertEquals(2, files.size());
+
+        List<String> visa = Files.readAllLines(findFile(files, "Visa"));
+        assertEquals("CARD\t1234\t2\t15.50\t0\t0", visa.get(1));
+        assertEquals("TOTAL\t2\t15.50\t0\t0", visa.get(2));
+
+        List<String> mastercard = Files.readAllLines(findFile(files, "Mastercard"));
+        assertEquals("TOTAL\t1\t20.00\t0\t0", mastercard.get(2));
+
+        // The holds were posted, so only the remaining balance can be held
+        assertEquals(-1, cardIssuer1.authorizeHold(card1Number, new BigDecimal("84.51")));
+        assertNotEquals(-1, cardIssuer1.authorizeHold(card1Number, new BigDecimal("84.50")));
+    }
+
+    @Test(timeout = 5000)
+    public void manyPaymentsOnOneCardTest() throws IOException
+    {
+        Bank.setSettlement(settlement);
+
+        // The issuer has five hold numbers per card, and would wait forever for a sixth
+        for (int i = 0; i < 8; i++)
+        {
+            int hold = cardIssuer1.authorizeHold(card1Number, BigDecimal.ONE);
+            assertTrue(Bank.postTransaction(cardIssuer1, card1Number, hold, BigDecimal.ONE));
+        }
+        assertEquals(Settlement.MAXIMUM_CAPTURED_HOLDS, settlement.getCaptured(cardIssuer1, card1Number));
+
+        settlement.settle();
+        assertEquals(0, settlement.getCaptured(cardIssuer1, card1Number));
+    }
+
+    @Test
+    public void settleEmptiesJournalTest() throws IOException
+    {
+        int hold = cardIssuer1.authorizeHold(card1Number, new BigDecimal("10.00"));
+        settlement.capture(cardIssuer1, card1Number, hold, new BigDecimal("10.00"));
+
+        assertEquals(1, settlement.settle().size());
+        assertEquals(0, settlement.settle().size());
+    }
+
+    @Test
+    public void settleRejectedHoldTest() throws IOException
+    {
+        int hold = cardIssuer1.authorizeHold(card1Number, new BigDecimal("10.00"));
+        cardIssuer1.releaseHold(card1Number, hold);
+        settlement.capture(cardIssuer1, card1Number, hold, new BigDecimal("10.00"));
+
+        List<String> visa = Files.readAllLines(settlement.settle().get(0));
+
+        assertEquals("TOTAL\t0\t0\t1\t10.00", visa.get(2));
+    }
+
+    @Test
+    public void settleAfterRestartUsesBankIssuersTest() throws IOException
+    {
+        Bank.addIssuer(cardIssuer1);
+        int hold = cardIssuer1.authorizeHold(card1Number, new BigDecimal("10.00"));
+        settlement.capture(cardIssuer1, card1Number, hold, new BigDecimal("10.00"));
+
+        Settlement restarted = new Settlement(journal, folder.getRoot().toPath().resolve("out"));
+        List<String> visa = Files.readAllLines(restarted.settle().get(0));
+
+        assertEquals("TOTAL\t1\t10.00\t0\t0", visa.get(2));
+    }
+
+    @Test
+    public void settleAgainAfterCrashTest() throws IOException
+    {
+        int hold = cardIssuer1.authorizeHold(card1Number, new BigDecimal("10.00"));
+        settlement.capture(cardIssuer1, card1Number, hold, new BigDecimal("10.00"));
+
+        // Crashes once the hold is posted, before the settlement file is written
+        Path out = folder.getRoot().toPath().resolve("out");
+        Files.createFile(out);
+        try
+        {
+            settlement.settle();
+            fail("The settlement file cannot be written");
+        }
+        catch (IOException e)
+        {
+        }
+        Files.delete(out);
+
+        // The batch is settled again without posting the hold twice
+        List<Path> files = settlement.settle();
+        assertEquals(1, files.size());
+        assertEquals("TOTAL\t1\t10.00\t0\t0", Files.readAllLines(files.get(0)).get(2));
+        assertEquals(0, settlement.settle().size());
+
+        // Nothing is left of the batch
+        assertEquals(2, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void settleKeepsSettlementFileTest() throws IOException
+    {
+        int hold = cardIssuer1.authorizeHold(card1Number, new BigDecimal("10.00"));
+        settlement.capture(cardIssuer1, card1Number, hold, new BigDecimal("10.00"));
+
+        // A batch left behind after its settlement file was written
+        journal.roll(folder.getRoot().toPath().resolve("settlement.journal.settling-1"));
+        Path out = folder.getRoot().toPath().resolve("out");
+        Files.createDirectories(out);
+        Files.write(out.resolve("Visa-1.settlement"), List.of("written before the crash"));
+
+        List<Path> files = settlement.settle();
+
+        assertEquals(List.of(out.resolve("Visa-1.settlement")), files);
+        assertEquals(List.of("written before the crash"), Files.readAllLines(files.get(0)));
+    }
+
+    private Path findFile(List<Path> files, String issuer)
+    {
+        for (Path file : files)
+        {
+            if (file.getFileName().toString().startsWith(issuer + "-"))
+            {
+                return file;
+            }
+        }
+
+        fail("No settlement file for " + issuer);
+        return null;
+    }
+}
@@ -0,0 +1,190 @@
+package tests.bank;
+
+import bank.Bank;
+import bank.CircuitBreaker;
+import bank.ForwardQueue;
+import bank.Journal;
+import bank.StandIn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lsmr.selfcheckout.external.CardIssuer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StandInTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Card issuer that can be taken down or slowed down
+     */
+    static class UnreliableIssuer extends CardIssuer
+    {
+        volatile boolean down = false;
+        volatile long delay = 0;
+        final AtomicInteger calls = new AtomicInteger();
+
+        UnreliableIssuer(String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public int authorizeHold(String cardNumber, BigDecimal amount)
+        {
+            calls.incrementAndGet();
+
+            if (down)
+            {
+                throw new IllegalStateException("Issuer unreachable");
+            }
+
+            if (delay > 0)
+            {
+                try
+                {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return super.authorizeHold(cardNumber, amount);
+        }
+    }
+
+    // Static variables that will be used during testing
+    final String card1Number = "1234";
+    final String card2Number = "5678";
+    final BigDecimal cardLimit = new BigDecimal("100.00");
+    final BigDecimal standInCardLimit = new BigDecimal("50.00");
+    final BigDecimal standInLaneLimit = new BigDecimal("80.00");
+
+    UnreliableIssuer cardIssuer;
+    Journal journal;
+    ForwardQueue queue;
+    StandIn standIn;
+
+    // Setup that is run before each test case
+    @Before
+    public void setup() throws IOException
+    {
+        Bank.clearIssuers();
+        Bank.clearCardIssuers();
+        Bank.clearCircuitBreakers();
+
+        Calendar expiry = Calendar.getInstance();
+        expiry.add(Calendar.YEAR, 1);
+
+        cardIssuer = new UnreliableIssuer("Visa");
+        cardIssuer.addCardData(card1Number, "John Smith", expiry, "123", cardLimit);
+        cardIssuer.addCardData(card2Number, "Jane Smith", expiry, "456", cardLimit);
+        Bank.addIssuer(cardIssuer);
+
+        journal = new Journal(folder.getRoot().toPath().resolve("forward.journal"));
+        queue = new ForwardQueue(journal);
+        standIn = new StandIn("lane1", queue, standInCardLimit, standInLaneLimit, 200);
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        Bank.clearCircuitBreakers();
+        journal.close();
+    }
+
+    @Test
+    public void onlineApprovalTest()
+    {
+        assertEquals(StandIn.Decision.APPROVED, standIn.pay(cardIssuer, card1Number, new BigDecimal("60.00")));
+        assertTrue(queue.getPending().isEmpty());
+
+        // Only 40.00 is left on the card
+        assertEquals(-1, cardIssuer.authorizeHold(card1Number, new BigDecimal("40.01")));
+    }
+
+    @Test
+    public void onlineDeclineTest()
+    {
+        assertEquals(StandIn.Decision.DECLINED, standIn.pay(cardIssuer, card1Number, new BigDecimal("100.01")));
+        assertTrue(queue.getPending().isEmpty());
+    }
+
+    @Test
+    public void issuerDownStandsInTest()
+    {
+        cardIssuer.down = true;
+
+        assertEquals(StandIn.Decision.STOOD_IN, standIn.pay(cardIssuer, card1Number, new BigDecimal("30.00")));
+        assertEquals(1, queue.getPending().size());
+        assertEquals(0, new BigDecimal("30.00").compareTo(queue.getOutstandingForCard(card1Number)));
+        assertEquals(0, new BigDecimal("30.00").compareTo(queue.getOutstandingForLane("lane1")));
+    }
+
+    @Test
+    public void cardLimitTest()
+    {
+        cardIssuer.down = true;
+
+        assertEquals(StandIn.Decision.STOOD_IN, standIn.pay(cardIssuer, card1Number, new BigDecimal("30.00")));
+        assertEquals(StandIn.Decision.UNAVAILABLE, standIn.pay(cardIssuer, card1Number, new BigDecimal("20.01")));
+        assertEquals(StandIn.Decision.STOOD_IN, standIn.pay(cardIssuer, card1Number, new BigDecimal("20.00")));
+    }
+
+    @Test
+    public void laneLimitTest()
+    {
+        cardIssuer.down = true;
+
+        assertEquals(StandIn.Decision.STOOD_IN, standIn.pay(cardIssuer, card1Number, new BigDecimal("50.00")));
+        assertEquals(StandIn.Decision.UNAVAILABLE, standIn.pay(cardIssuer, card2Number, new BigDecimal("30.01")));
+
+        // Another lane has its own limit
+        StandIn lane2 = new StandIn("lane2", queue, standInCardLimit, standInLaneLimit, 200);
+        assertEquals(StandIn.Decision.STOOD_IN, lane2.pay(cardIssuer, card2Number, new BigDecimal("30.01")));
+    }
+
+    @Test
+    public void slowIssuerTimesOutTest() throws InterruptedException
+    {
+        cardIssuer.delay = 600;
+
+        assertEquals(StandIn.Decision.STOOD_IN, standIn.pay(cardIssuer, card1Number, new BigDecimal("50.00")));
+
+        // The late hold is released instead of charging the card a second time
+        Thread.sleep(800);
+        cardIssuer.delay = 0;
+        assertNotEquals(-1, cardIssuer.authorizeHold(card1Number, cardLimit));
+    }
+
+    @Test
+    public void openBreakerSkipsIssuerTest()
+    {
+        Bank.setCircuitBreaker(cardIssuer.getName(), new CircuitBreaker(2, 60000, 60000));
+        cardIssuer.down = true;
+
+        standIn.pay(cardIssuer, card1Number, new BigDecimal("1.00"));
+        standIn.pay(cardIssuer, card1Number, new BigDecimal("1.00"));
+        assertEquals(2, cardIssuer.calls.get());
+
+        // The breaker is open, so the lane stands in without calling the issuer
+        assertEquals(StandIn.Decision.STOOD_IN, standIn.pay(cardIssuer, card2Number, new BigDecimal("1.00")));
+        assertEquals(2, cardIssuer.calls.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeLimitTest()
+    {
+        new StandIn("lane1", queue, new BigDecimal("-1"), standInLaneLimit, 200);
+    }
+}
@@ -0,0 +1,131 @@
+package tests.benchmark;
+
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.BarcodedItem;
+import org.lsmr.selfcheckout.Coin;
+import org.lsmr.selfcheckout.Item;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.AbstractDevice;
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import software.SelfCheckoutSoftware;
+import software.SelfCheckoutSoftware.PaymentMethod;
+import software.SupervisionSoftware;
+import store.Inventory;
+import user.Customer;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+/**
+ * Counts the times devices are enabled or disabled during a checkout. Each
+ * one notifies every observer of the device, so this is the number of device
+ * notifications each observer gets.
+ *
+ * The checkout scans and bags each item, then pays in cash and takes the bags.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.DeviceToggleBenchmark [items]
+ */
+public class DeviceToggleBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        Inventory.clear();
+        BarcodedProduct product = new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one}), "Item",
+                new BigDecimal("1.00"), 100);
+        Inventory.addProduct(product);
+
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10, 20, 50},
+                new BigDecimal[] {new BigDecimal("0.05"), new BigDecimal("0.10"), new BigDecimal("0.25"),
+                        new BigDecimal("1.00"), new BigDecimal("2.00")}, 100 * items + 1000, 1);
+        station.printer.addPaper(ReceiptPrinter.MAXIMUM_PAPER);
+        station.printer.addInk(ReceiptPrinter.MAXIMUM_INK);
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        new SupervisionSoftware(new SupervisionStation()).add(software);
+
+        long[] toggles = new long[1];
+        for (AbstractDevice<?> device : devices(station))
+        {
+            attach(device, toggles);
+        }
+
+        software.start(new Customer());
+        List<Item> bagged = new ArrayList<>();
+        for (int i = 0; i < items; i++)
+        {
+            Item item = new BarcodedItem(product.getBarcode(), product.getExpectedWeight());
+            while (software.getPhase() == SelfCheckoutSoftware.Phase.SCANNING_ITEM)
+            {
+                station.mainScanner.scan(item);
+            }
+            station.baggingArea.add(item);
+            bagged.add(item);
+        }
+
+        software.checkout();
+        software.selectedPaymentMethod(PaymentMethod.CASH);
+        BigDecimal due = software.getCustomer().getAmountDue();
+        while (software.getCustomer().getCashBalance().compareTo(due) < 0)
+        {
+            station.coinSlot.accept(new Coin(Currency.getInstance("CAD"), new BigDecimal("2.00")));
+        }
+        software.getSelfCheckoutController().getCheckout().makeChange();
+        for (Item item : bagged)
+        {
+            station.baggingArea.remove(item);
+        }
+
+        System.out.printf("checkout: %d items, ended %s%n", items, software.getPhase());
+        System.out.printf("device notifications per observer: %d%n", toggles[0]);
+    }
+
+    private static List<AbstractDevice<?>> devices(SelfCheckoutStation station)
+    {
+        List<AbstractDevice<?>> devices = new ArrayList<>(List.of(station.mainScanner, station.handheldScanner,
+                station.scanningArea, station.baggingArea, station.cardReader, station.coinSlot, station.coinTray,
+                station.coinStorage, station.coinValidator, station.banknoteInput, station.banknoteOutput,
+                station.banknoteStorage, station.banknoteValidator, station.printer, station.screen));
+        devices.addAll(station.coinDispensers.values());
+        devices.addAll(station.banknoteDispensers.values());
+        return devices;
+    }
+
+    /**
+     * Attaches an observer to the device that counts it being enabled or
+     * disabled, and ignores everything else.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void attach(AbstractDevice<?> device, long[] toggles) throws ClassNotFoundException
+    {
+        // Each device is observed through the interface named after it
+        Class<?> type = Class.forName(AbstractDeviceObserver.class.getPackage().getName() + "."
+                + device.getClass().getSimpleName() + "Observer");
+
+        Object observer = Proxy.newProxyInstance(DeviceToggleBenchmark.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, arguments) -> {
+                    switch (method.getName())
+                    {
+                        case "enabled":
+                        case "disabled":
+                            toggles[0]++;
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == arguments[0];
+                        default:
+                            return null;
+                    }
+                });
+        ((AbstractDevice) device).attach((AbstractDeviceObserver) observer);
+    }
+}
@@ -0,0 +1,155 @@
+package tests.benchmark;
+
+import application.Main;
+import interrupt.ProcessItemHandler;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.BarcodedItem;
+import org.lsmr.selfcheckout.Item;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import software.EventBus;
+import software.EventCoalescer;
+import software.SelfCheckoutSoftware;
+import software.SelfCheckoutSoftware.PaymentMethod;
+import software.SupervisionSoftware;
+import software.observers.Event;
+import store.Inventory;
+import store.credentials.CredentialsSystem;
+import user.Attendant;
+import user.Customer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the updates a display observer gets during a checkout, with every
+ * event delivered to it and with state events merged once a frame.
+ *
+ * The checkout scans and bags each item, with a weight discrepancy the
+ * attendant approves every fifth item, then pays and takes the bags. The
+ * customer's actions are a pause apart, longer than a frame by default, so
+ * only the events raised by one action are merged.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.DisplayUpdateBenchmark [items] [pause millis]
+ */
+public class DisplayUpdateBenchmark
+{
+    static final String USERNAME = "benchmark";
+    static final String PASSWORD = "benchmark";
+
+    public static void main(String[] args) throws Exception
+    {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        long pause = args.length > 1 ? Long.parseLong(args[1]) : 25;
+
+        CredentialsSystem.addAccount(USERNAME, PASSWORD);
+        Attendant attendant = new Attendant();
+        attendant.setLogin(USERNAME, PASSWORD);
+        Main.Tangibles.ATTENDANTS.add(attendant);
+
+        Inventory.clear();
+        Inventory.addProduct(new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one}), "Item",
+                new BigDecimal("1.00"), 100));
+
+        long[] every = checkout(items, pause, 0);
+        long[] merged = checkout(items, pause, EventCoalescer.FRAME_MILLIS);
+
+        System.out.printf("checkout: %d items, %d events raised, actions %d ms apart%n", items, every[0], pause);
+        System.out.printf("every event:       %4d updates%n", every[1]);
+        System.out.printf("merged per frame:  %4d updates%n", merged[1]);
+
+        CredentialsSystem.removeAccount(USERNAME);
+    }
+
+    /**
+     * @return the events raised, and the updates the display got
+     */
+    private static long[] checkout(int items, long pause, long frameMillis) throws Exception
+    {
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10, 20, 50},
+                new BigDecimal[] {new BigDecimal("0.05"), new BigDecimal("0.10")}, 100 * items + 1000, 1);
+        station.printer.addPaper(ReceiptPrinter.MAXIMUM_PAPER);
+        station.printer.addInk(ReceiptPrinter.MAXIMUM_INK);
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        SupervisionSoftware supervision = new SupervisionSoftware(new SupervisionStation());
+        supervision.add(software);
+        supervision.login(USERNAME, PASSWORD);
+
+        EventDispatchBenchmark.CountingObserver raised = new EventDispatchBenchmark.CountingObserver();
+        EventDispatchBenchmark.CountingObserver display = new EventDispatchBenchmark.CountingObserver();
+        software.addObserver(raised);
+        software.addObserver(display, Event.ALL_KINDS, EventBus.WaitStrategy.BLOCKING, frameMillis);
+
+        Customer customer = new Customer();
+        ProcessItemHandler handler = software.getSelfCheckoutHandler().getProcessItemHandler();
+        software.start(customer);
+        handler.setCustomer(customer);
+        BarcodedProduct product = (BarcodedProduct) Inventory.getProducts().iterator().next();
+
+        List<Item> bagged = new ArrayList<>();
+        for (int i = 0; i < items; i++)
+        {
+            handler.barcodeScanned(station.mainScanner, product.getBarcode());
+            pause(pause);
+
+            // Every fifth item, something else goes in the bagging area with it
+            Item other = new BarcodedItem(product.getBarcode(), 500);
+            if (i % 5 == 4)
+            {
+                station.baggingArea.add(other);
+                pause(pause);
+            }
+
+            Item item = new BarcodedItem(product.getBarcode(), product.getExpectedWeight());
+            station.baggingArea.add(item);
+            bagged.add(item);
+            pause(pause);
+
+            if (i % 5 == 4)
+            {
+                // The customer takes it out, and the attendant clears the discrepancy
+                station.baggingArea.remove(other);
+                pause(pause);
+                supervision.approveWeightDiscrepancy(software);
+                pause(pause);
+            }
+        }
+
+        software.checkout();
+        pause(pause);
+        software.selectedPaymentMethod(PaymentMethod.CASH);
+        pause(pause);
+        software.paymentCompleted();
+        pause(pause);
+        for (Item item : bagged)
+        {
+            station.baggingArea.remove(item);
+        }
+
+        software.getEventBus().awaitDelivered(60000);
+        software.getEventBus().unsubscribeAll();
+        return new long[] {sum(raised.counts), sum(display.counts)};
+    }
+
+    private static long sum(long[] counts)
+    {
+        long sum = 0;
+        for (long count : counts)
+        {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private static void pause(long millis) throws InterruptedException
+    {
+        TimeUnit.MILLISECONDS.sleep(millis);
+    }
+}
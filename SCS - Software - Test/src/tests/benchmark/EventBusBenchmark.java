@@ -0,0 +1,94 @@
+package tests.benchmark;
+
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import software.EventBus;
+import software.SelfCheckoutSoftware;
+import software.observers.SelfCheckoutEvent;
+import software.observers.SelfCheckoutObserver;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how long SelfCheckoutSoftware.notifyObservers takes to return when
+ * an observer is as slow as a screen repaint, with the observer notified
+ * directly and with it notified through the event bus, and how far the
+ * observer falls behind.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.EventBusBenchmark [events] [observer micros]
+ */
+public class EventBusBenchmark
+{
+    public static void main(String[] args)
+    {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        long observerNanos = (args.length > 1 ? Long.parseLong(args[1]) : 2000) * 1000;
+
+        for (int round = 0; round < 2; round++)
+        {
+            // The first round warms up both paths
+            boolean report = round == 1;
+            run("direct", events, observerNanos, null, report);
+            for (EventBus.WaitStrategy strategy : EventBus.WaitStrategy.values())
+            {
+                run(strategy.toString(), events, observerNanos, strategy, report);
+            }
+        }
+    }
+
+    private static void run(String name, int events, long observerNanos, EventBus.WaitStrategy strategy, boolean report)
+    {
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(new SelfCheckoutStation(Currency.getInstance("CAD"),
+                new int[] {5, 10, 20, 50}, new BigDecimal[] {new BigDecimal("0.05"), new BigDecimal("0.10")}, 1000, 1));
+
+        // Takes observerNanos to handle any notification, as a repaint might
+        SelfCheckoutObserver observer = (SelfCheckoutObserver) Proxy.newProxyInstance(
+                EventBusBenchmark.class.getClassLoader(), new Class<?>[] {SelfCheckoutObserver.class},
+                (proxy, method, arguments) -> {
+                    if (method.getName().equals("equals"))
+                    {
+                        return proxy == arguments[0];
+                    } else if (method.getName().equals("hashCode"))
+                    {
+                        return System.identityHashCode(proxy);
+                    }
+                    LockSupport.parkNanos(observerNanos);
+                    return null;
+                });
+
+        if (strategy == null)
+        {
+            software.addObserver(observer);
+        } else
+        {
+            software.addObserver(observer, strategy);
+        }
+
+        long[] nanos = new long[events];
+        long maximumLag = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < events; i++)
+        {
+            long before = System.nanoTime();
+            software.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED);
+            nanos[i] = System.nanoTime() - before;
+            maximumLag = Math.max(maximumLag, software.getEventBus().getMaximumLag());
+        }
+        long published = System.nanoTime() - start;
+        software.getEventBus().awaitDelivered(60000);
+        long delivered = System.nanoTime() - start;
+        software.getEventBus().unsubscribeAll();
+
+        if (report)
+        {
+            Arrays.sort(nanos);
+            System.out.printf("%-10s notify: median %,8d ns, p99 %,10d ns; all published in %,5d ms, "
+                    + "delivered in %,5d ms, maximum lag %d%n", name, nanos[events / 2], nanos[events * 99 / 100],
+                    published / 1000000, delivered / 1000000, maximumLag);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package tests.benchmark;
+
+import interrupt.ProcessItemHandler;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import software.EventBus;
+import software.SelfCheckoutSoftware;
+import software.SelfCheckoutSoftware.Phase;
+import software.SupervisionSoftware;
+import software.observers.SelfCheckoutEvent;
+import software.observers.SelfCheckoutObserver;
+import store.Inventory;
+import user.Customer;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Measures the memory allocated to notify observers during a simulated 10,000
+ * item checkout, with one observer notified directly and one through the event
+ * bus.
+ *
+ * The checkout is run through ProcessItemHandler, counting the events the lane
+ * raises. The same events are then raised again with the typed, pooled events
+ * the lane uses, and with a capturing lambda for each as the lane used to, and
+ * the bytes allocated by the raising thread are reported for each.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.EventDispatchBenchmark [items]
+ */
+public class EventDispatchBenchmark
+{
+    /**
+     * Counts the notifications it receives, by kind
+     */
+    static class CountingObserver implements SelfCheckoutObserver
+    {
+        final long[] counts = new long[SelfCheckoutEvent.Kind.values().length];
+
+        private void count(SelfCheckoutEvent.Kind kind) { counts[kind.ordinal()]++; }
+
+        public void invalidBanknoteDetected() { count(SelfCheckoutEvent.Kind.INVALID_BANKNOTE_DETECTED); }
+        public void banknoteAdded() { count(SelfCheckoutEvent.Kind.BANKNOTE_ADDED); }
+        public void banknoteStorageFull() { count(SelfCheckoutEvent.Kind.BANKNOTE_STORAGE_FULL); }
+        public void banknoteDispenserEmpty() { count(SelfCheckoutEvent.Kind.BANKNOTE_DISPENSER_EMPTY); }
+        public void invalidCoinDetected() { count(SelfCheckoutEvent.Kind.INVALID_COIN_DETECTED); }
+        public void coinAdded() { count(SelfCheckoutEvent.Kind.COIN_ADDED); }
+        public void coinStorageFull() { count(SelfCheckoutEvent.Kind.COIN_STORAGE_FULL); }
+        public void coinDispenserEmpty() { count(SelfCheckoutEvent.Kind.COIN_DISPENSER_EMPTY); }
+        public void invalidCardTypeDetected() { count(SelfCheckoutEvent.Kind.INVALID_CARD_TYPE_DETECTED); }
+        public void cardTransactionSucceeded() { count(SelfCheckoutEvent.Kind.CARD_TRANSACTION_SUCCEEDED); }
+        public void invalidGiftCardDetected() { count(SelfCheckoutEvent.Kind.INVALID_GIFT_CARD_DETECTED); }
+        public void invalidMembershipCardDetected() { count(SelfCheckoutEvent.Kind.INVALID_MEMBERSHIP_CARD_DETECTED); }
+        public void membershipCardDetected(String memberID) { count(SelfCheckoutEvent.Kind.MEMBERSHIP_CARD_DETECTED); }
+        public void paymentHoldingAuthorizationFailed() { count(SelfCheckoutEvent.Kind.PAYMENT_HOLDING_AUTHORIZATION_FAILED); }
+        public void paymentPostingTransactionFailed() { count(SelfCheckoutEvent.Kind.PAYMENT_POSTING_TRANSACTION_FAILED); }
+        public void paymentCompleted() { count(SelfCheckoutEvent.Kind.PAYMENT_COMPLETED); }
+        public void giftCardRedeemed(BigDecimal amountDue) { count(SelfCheckoutEvent.Kind.GIFT_CARD_REDEEMED); }
+        public void placeInBaggingAreaBlocked() { count(SelfCheckoutEvent.Kind.PLACE_IN_BAGGING_AREA_BLOCKED); }
+        public void placeInBaggingAreaUnblocked() { count(SelfCheckoutEvent.Kind.PLACE_IN_BAGGING_AREA_UNBLOCKED); }
+        public void weightDiscrepancyInBaggingAreaDetected() { count(SelfCheckoutEvent.Kind.WEIGHT_DISCREPANCY_IN_BAGGING_AREA_DETECTED); }
+        public void weightDiscrepancyInBaggingAreaResolved() { count(SelfCheckoutEvent.Kind.WEIGHT_DISCREPANCY_IN_BAGGING_AREA_RESOLVED); }
+        public void productNotFound() { count(SelfCheckoutEvent.Kind.PRODUCT_NOT_FOUND); }
+        public void productNotScannable() { count(SelfCheckoutEvent.Kind.PRODUCT_NOT_SCANNABLE); }
+        public void softwareStarted(SelfCheckoutSoftware scSoftware) { count(SelfCheckoutEvent.Kind.SOFTWARE_STARTED); }
+        public void softwareStopped(SelfCheckoutSoftware scSoftware) { count(SelfCheckoutEvent.Kind.SOFTWARE_STOPPED); }
+        public void touchScreenBlocked() { count(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED); }
+        public void touchScreenUnblocked() { count(SelfCheckoutEvent.Kind.TOUCH_SCREEN_UNBLOCKED); }
+        public void phaseChanged(Phase phase) { count(SelfCheckoutEvent.Kind.PHASE_CHANGED); }
+    }
+
+    public static void main(String[] args)
+    {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        Inventory.clear();
+        BarcodedProduct product = new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one}), "Item",
+                new BigDecimal("1.00"), 100);
+        Inventory.addProduct(product);
+
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10, 20, 50},
+                new BigDecimal[] {new BigDecimal("0.05"), new BigDecimal("0.10")}, 10 * 100 * items, 1);
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        new SupervisionSoftware(new SupervisionStation()).add(software);
+
+        CountingObserver direct = new CountingObserver();
+        CountingObserver queued = new CountingObserver();
+        software.addObserver(direct);
+        software.addObserver(queued, EventBus.WaitStrategy.BLOCKING);
+
+        // The checkout, scanning and bagging every item
+        Customer customer = new Customer();
+        ProcessItemHandler handler = software.getSelfCheckoutHandler().getProcessItemHandler();
+        software.start(customer);
+        handler.setCustomer(customer);
+
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < items; i++)
+        {
+            handler.barcodeScanned(station.mainScanner, product.getBarcode());
+            handler.weightChanged(station.baggingArea, (i + 1) * product.getExpectedWeight());
+        }
+        long checkoutBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+        software.getEventBus().awaitDelivered(60000);
+
+        long[] counts = direct.counts.clone();
+        long events = 0;
+        for (long count : counts)
+        {
+            events += count;
+        }
+        System.out.printf("checkout: %,d items, %,d events, %,d bytes allocated in all%n", items, events,
+                checkoutBytes);
+
+        // The same events again, after a round to warm up each way of raising them
+        for (int round = 0; round < 2; round++)
+        {
+            allocated = threads.getCurrentThreadAllocatedBytes();
+            replayTyped(software, counts);
+            long typed = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            allocated = threads.getCurrentThreadAllocatedBytes();
+            replayLambdas(software, counts);
+            long lambdas = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            if (round == 1)
+            {
+                System.out.printf("typed events: %,d bytes, %.2f per event%n", typed, (double) typed / events);
+                System.out.printf("lambdas:      %,d bytes, %.2f per event%n", lambdas, (double) lambdas / events);
+            }
+        }
+
+        software.getEventBus().awaitDelivered(60000);
+        software.getEventBus().unsubscribeAll();
+    }
+
+    private static void replayTyped(SelfCheckoutSoftware software, long[] counts)
+    {
+        for (SelfCheckoutEvent.Kind kind : SelfCheckoutEvent.Kind.values())
+        {
+            Object argument = kind == SelfCheckoutEvent.Kind.PHASE_CHANGED ? Phase.BAGGING_ITEM : null;
+            for (long i = 0; i < counts[kind.ordinal()]; i++)
+            {
+                software.notifyObservers(kind, argument);
+            }
+        }
+    }
+
+    /**
+     * Raises the events the way the lane used to: a lambda capturing the
+     * argument for each, applied to each observer.
+     */
+    private static void replayLambdas(SelfCheckoutSoftware software, long[] counts)
+    {
+        List<SelfCheckoutObserver> observers = software.getObservers();
+        for (SelfCheckoutEvent.Kind kind : SelfCheckoutEvent.Kind.values())
+        {
+            for (long i = 0; i < counts[kind.ordinal()]; i++)
+            {
+                Phase phase = software.getPhase();
+                Function<SelfCheckoutObserver, Void> function = observer -> {
+                    observer.phaseChanged(phase);
+                    return null;
+                };
+                for (SelfCheckoutObserver observer : observers)
+                {
+                    function.apply(observer);
+                }
+            }
+        }
+    }
+}
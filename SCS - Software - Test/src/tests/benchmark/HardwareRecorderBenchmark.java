@@ -0,0 +1,66 @@
+package tests.benchmark;
+
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.BarcodedItem;
+import org.lsmr.selfcheckout.Item;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import software.HardwareRecorder;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Currency;
+
+/**
+ * Measures what recording the hardware adds to each event, by putting an item
+ * on the bagging area and taking it off again with and without a recorder
+ * attached.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.HardwareRecorderBenchmark [events]
+ */
+public class HardwareRecorderBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Path file = Files.createTempFile("hardware", ".rec");
+
+        for (int round = 0; round < 2; round++)
+        {
+            // The first round warms up both ways
+            double without = run(events, null);
+            double with = run(events, file);
+            if (round == 1)
+            {
+                System.out.printf("without recorder:  %6.1f ns per event%n", without);
+                System.out.printf("with recorder:     %6.1f ns per event%n", with);
+            }
+        }
+
+        Files.delete(file);
+    }
+
+    private static double run(int events, Path file) throws Exception
+    {
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10},
+                new BigDecimal[] {new BigDecimal("0.05")}, 1000, 1);
+        HardwareRecorder recorder = file == null ? null : new HardwareRecorder(station, file);
+        Item item = new BarcodedItem(new Barcode(new Numeral[] {Numeral.one}), 250);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < events / 2; i++)
+        {
+            station.baggingArea.add(item);
+            station.baggingArea.remove(item);
+        }
+        double nanos = (double) (System.nanoTime() - start) / events;
+
+        if (recorder != null)
+        {
+            recorder.close();
+        }
+        return nanos;
+    }
+}
@@ -0,0 +1,96 @@
+package tests.benchmark;
+
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import software.SelfCheckoutSoftware;
+import software.SelfCheckoutSoftware.Phase;
+import software.observers.Event;
+import software.observers.SelfCheckoutEvent;
+import software.observers.SelfCheckoutObserver;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+/**
+ * Measures the cost of raising the events of a checkout with a GUI observer
+ * and several narrow ones alongside it, such as metrics, logging and
+ * journaling, that each care about a few kinds of event: once with every
+ * observer registered for every kind, as before, and once with each registered
+ * only for the kinds it cares about.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.InterestDispatchBenchmark [events] [observers]
+ */
+public class InterestDispatchBenchmark
+{
+    // The kinds raised, in the proportions a checkout raises them
+    static final SelfCheckoutEvent.Kind[] CHECKOUT = {
+            SelfCheckoutEvent.Kind.PHASE_CHANGED, SelfCheckoutEvent.Kind.PHASE_CHANGED,
+            SelfCheckoutEvent.Kind.PHASE_CHANGED, SelfCheckoutEvent.Kind.COIN_ADDED,
+            SelfCheckoutEvent.Kind.PLACE_IN_BAGGING_AREA_BLOCKED, SelfCheckoutEvent.Kind.PLACE_IN_BAGGING_AREA_UNBLOCKED,
+    };
+
+    /**
+     * Counts the notifications of the kinds it cares about, and ignores the
+     * rest as a narrow observer would
+     */
+    static class NarrowObserver extends EventDispatchBenchmark.CountingObserver
+    {
+        final long interests;
+
+        NarrowObserver(long interests)
+        {
+            this.interests = interests;
+        }
+
+        @Override
+        public void phaseChanged(Phase phase)
+        {
+            if ((interests & Event.mask(SelfCheckoutEvent.Kind.PHASE_CHANGED)) != 0)
+            {
+                super.phaseChanged(phase);
+            }
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 3000000;
+        int narrow = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        for (int round = 0; round < 2; round++)
+        {
+            // The first round warms up both ways
+            double everything = run(events, narrow, false);
+            double interested = run(events, narrow, true);
+            if (round == 1)
+            {
+                System.out.printf("%d narrow observers, every kind:      %6.1f ns per event%n", narrow, everything);
+                System.out.printf("%d narrow observers, by interest:     %6.1f ns per event%n", narrow, interested);
+            }
+        }
+    }
+
+    private static double run(int events, int narrow, boolean byInterest)
+    {
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(new SelfCheckoutStation(Currency.getInstance("CAD"),
+                new int[] {5, 10, 20, 50}, new BigDecimal[] {new BigDecimal("0.05"), new BigDecimal("0.10")}, 1000, 1));
+
+        // A GUI-like observer that wants everything, and narrow ones that want one rare kind each
+        software.addObserver(new EventDispatchBenchmark.CountingObserver());
+        for (int i = 0; i < narrow; i++)
+        {
+            long interests = Event.mask(i % 2 == 0 ? SelfCheckoutEvent.Kind.PAYMENT_COMPLETED
+                    : SelfCheckoutEvent.Kind.WEIGHT_DISCREPANCY_IN_BAGGING_AREA_DETECTED);
+            NarrowObserver observer = new NarrowObserver(interests);
+            software.addObserver(observer, byInterest ? interests : Event.ALL_KINDS);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < events; i++)
+        {
+            SelfCheckoutEvent.Kind kind = CHECKOUT[i % CHECKOUT.length];
+            software.notifyObservers(kind, kind == SelfCheckoutEvent.Kind.PHASE_CHANGED ? Phase.BAGGING_ITEM : null);
+        }
+        return (double) (System.nanoTime() - start) / events;
+    }
+}
@@ -0,0 +1,79 @@
+package tests.benchmark;
+
+import software.Log;
+import software.Log.Category;
+import software.Log.Level;
+import software.SelfCheckoutSoftware.Phase;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Measures what logging a phase change costs the thread that changes phase:
+ * printing it to a console as setPhase used to, logging it at debug level while
+ * debug is off, and logging it with the level on. The console and the log both
+ * write to a stream that discards what it is given.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.LogBenchmark [records]
+ */
+public class LogBenchmark
+{
+    private static final Phase[] PHASES = Phase.values();
+    private static final int BURST = 1 << 12;
+
+    public static void main(String[] args)
+    {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        Log log = new Log(BURST, discard::println);
+
+        for (int round = 0; round < 3; round++)
+        {
+            // The first rounds warm up
+            double println = println(records, discard);
+            log.setLevel(Category.PHASE, Level.INFO);
+            double off = log(records, log);
+            log.setLevel(Category.PHASE, Level.DEBUG);
+            double on = log(records, log);
+            log.flush();
+
+            if (round == 2)
+            {
+                System.out.printf("println:        %6.1f ns per record%n", println);
+                System.out.printf("log, debug off: %6.1f ns per record%n", off);
+                System.out.printf("log, debug on:  %6.1f ns per record (%d dropped)%n", on, log.getDropped());
+            }
+        }
+        log.close();
+    }
+
+    private static double println(int records, PrintStream out)
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < records; i++)
+        {
+            out.println("Set phase: " + PHASES[i % PHASES.length]);
+        }
+        return (double) (System.nanoTime() - start) / records;
+    }
+
+    private static double log(int records, Log log)
+    {
+        long nanos = 0;
+        int logged = 0;
+
+        // Logged in bursts that fit in the ring, waiting for each to be written untimed, so none are dropped
+        for (; logged < records; logged += BURST)
+        {
+            long start = System.nanoTime();
+            for (int i = 0; i < BURST; i++)
+            {
+                log.log(Level.DEBUG, Category.PHASE, "Set phase", "phase", PHASES[i % PHASES.length]);
+            }
+            nanos += System.nanoTime() - start;
+            log.flush();
+        }
+        return (double) nanos / logged;
+    }
+}
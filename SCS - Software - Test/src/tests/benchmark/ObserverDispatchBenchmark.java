@@ -0,0 +1,119 @@
+package tests.benchmark;
+
+import org.lsmr.selfcheckout.devices.AbstractDevice;
+import org.lsmr.selfcheckout.devices.ElectronicScale;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
+import org.lsmr.selfcheckout.devices.observers.ElectronicScaleObserver;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+/**
+ * Measures the cost of notifying a device's observers, from 1 to 50 of them:
+ * through the device's copy-on-write observer array, and through an ArrayList
+ * iterated with an iterator as devices used to, to compare against. Also
+ * reports the memory each notification allocates once warmed up.
+ *
+ * Each notification is an enable of an electronic scale, so it includes the
+ * device's own checks as well as the dispatch.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.ObserverDispatchBenchmark [notifications]
+ */
+public class ObserverDispatchBenchmark
+{
+    static final int[] OBSERVERS = {1, 2, 5, 10, 20, 50};
+
+    /**
+     * Counts notifications, so the calls cannot be optimized away
+     */
+    static class CountingObserver implements ElectronicScaleObserver
+    {
+        long count = 0;
+
+        @Override
+        public void enabled(AbstractDevice<? extends AbstractDeviceObserver> device)
+        {
+            count++;
+        }
+
+        @Override
+        public void disabled(AbstractDevice<? extends AbstractDeviceObserver> device)
+        {
+        }
+
+        @Override
+        public void weightChanged(ElectronicScale scale, double weightInGrams)
+        {
+        }
+
+        @Override
+        public void overload(ElectronicScale scale)
+        {
+        }
+
+        @Override
+        public void outOfOverload(ElectronicScale scale)
+        {
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int notifications = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        System.out.printf("%-10s %14s %14s %14s %14s%n", "observers", "array ns", "array bytes", "list ns",
+                "list bytes");
+
+        for (int size : OBSERVERS)
+        {
+            // A station's devices are configured and ready to enable
+            ElectronicScale scale = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10, 20, 50},
+                    new BigDecimal[] {new BigDecimal("0.05"), new BigDecimal("0.10")}, 1000, 1).baggingArea;
+            List<ElectronicScaleObserver> list = new ArrayList<>();
+            for (int i = 0; i < size; i++)
+            {
+                CountingObserver observer = new CountingObserver();
+                scale.attach(observer);
+                list.add(observer);
+            }
+
+            double[] array = {0, 0};
+            double[] iterated = {0, 0};
+
+            // The first round warms up both paths
+            for (int round = 0; round < 2; round++)
+            {
+                long allocated = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                for (int i = 0; i < notifications; i++)
+                {
+                    scale.enable();
+                }
+                array[0] = (double) (System.nanoTime() - start) / notifications;
+                array[1] = (double) (threads.getCurrentThreadAllocatedBytes() - allocated) / notifications;
+
+                allocated = threads.getCurrentThreadAllocatedBytes();
+                start = System.nanoTime();
+                for (int i = 0; i < notifications; i++)
+                {
+                    scale.isDisabled();
+                    for (ElectronicScaleObserver observer : list)
+                    {
+                        observer.enabled(scale);
+                    }
+                }
+                iterated[0] = (double) (System.nanoTime() - start) / notifications;
+                iterated[1] = (double) (threads.getCurrentThreadAllocatedBytes() - allocated) / notifications;
+            }
+
+            System.out.printf("%-10d %14.1f %14.2f %14.1f %14.2f%n", size, array[0], array[1], iterated[0],
+                    iterated[1]);
+        }
+    }
+}
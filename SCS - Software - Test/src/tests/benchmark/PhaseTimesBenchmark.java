@@ -0,0 +1,66 @@
+package tests.benchmark;
+
+import software.PhaseTimes;
+import software.SelfCheckoutSoftware.Phase;
+
+/**
+ * Measures what timing a phase transition costs, including reading the clock,
+ * by going round the phases of scanning and bagging items and having a weight
+ * discrepancy.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.PhaseTimesBenchmark [transitions]
+ */
+public class PhaseTimesBenchmark
+{
+    private static final Phase[] CYCLE = {Phase.SCANNING_ITEM, Phase.BAGGING_ITEM, Phase.SCANNING_ITEM,
+            Phase.BAGGING_ITEM, Phase.HAVING_WEIGHT_DISCREPANCY};
+
+    public static void main(String[] args)
+    {
+        int transitions = args.length > 0 ? Integer.parseInt(args[0]) : 20000000;
+
+        for (int round = 0; round < 3; round++)
+        {
+            // The first rounds warm up
+            double clock = clock(transitions);
+            double timed = timed(transitions);
+            if (round == 2)
+            {
+                System.out.printf("clock alone:      %5.1f ns per transition%n", clock);
+                System.out.printf("timed transition: %5.1f ns per transition%n", timed);
+            }
+        }
+    }
+
+    private static double timed(int transitions)
+    {
+        PhaseTimes times = new PhaseTimes(Phase.IDLE, System.nanoTime());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < transitions; i++)
+        {
+            times.enter(CYCLE[i % CYCLE.length], System.nanoTime());
+        }
+        return (double) (System.nanoTime() - start) / transitions;
+    }
+
+    private static double clock(int transitions)
+    {
+        long sum = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < transitions; i++)
+        {
+            sum += System.nanoTime() + CYCLE[i % CYCLE.length].ordinal();
+        }
+        double nanos = (double) (System.nanoTime() - start) / transitions;
+
+        // Keeps the loop from being optimized away
+        if (sum == 42)
+        {
+            System.out.println();
+        }
+        return nanos;
+    }
+}
@@ -0,0 +1,168 @@
+package tests.benchmark;
+
+import checkout.Receipt;
+import checkout.ReceiptTemplate;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.EmptyException;
+import org.lsmr.selfcheckout.devices.OverloadException;
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import software.SelfCheckoutSoftware;
+import software.SupervisionSoftware;
+import user.Customer;
+import user.Customer.CartEntry;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.List;
+
+/**
+ * Measures printing a 500 line receipt one character at a time against
+ * printing it with the bulk printer API, and the whole Receipt.printReceipt
+ * path for a 500 item cart. Also measures rendering alone with a compiled
+ * ReceiptTemplate, and the memory it allocates once warmed up.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.ReceiptBenchmark [iterations]
+ */
+public class ReceiptBenchmark
+{
+    static final int LINES = 500;
+
+    public static void main(String[] args) throws Exception
+    {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10, 20, 50},
+                new BigDecimal[] {new BigDecimal("0.05"), new BigDecimal("0.10"), new BigDecimal("0.25")}, 100, 1);
+        ReceiptPrinter printer = station.printer;
+
+        String[] lines = new String[LINES];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LINES; i++)
+        {
+            lines[i] = "Item " + i + " Organic whole milk 2L $" + (i % 50) + ".99";
+            text.append(lines[i]).append('\n');
+        }
+
+        // Warm up both paths before measuring
+        run("per character", printer, lines, text, iterations / 4, false);
+        run("bulk", printer, lines, text, iterations / 4, true);
+
+        long perCharacter = run("per character", printer, lines, text, iterations, false);
+        long bulk = run("bulk", printer, lines, text, iterations, true);
+        System.out.printf("speedup: %.1fx%n", (double) perCharacter / bulk);
+
+        // The full receipt path, rendering a 500 item cart
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        new SupervisionSoftware(new SupervisionStation()).add(software);
+        Receipt receipt = new Receipt(software);
+        receipt.detatchAll();
+
+        Customer customer = new Customer();
+        BarcodedProduct product = new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one, Numeral.two}),
+                "Organic whole milk 2L", new BigDecimal("4.99"), 2000);
+        for (int i = 0; i < LINES; i++)
+        {
+            customer.addProduct(product);
+        }
+        receipt.setCustomer(customer);
+
+        for (int round = 0; round < 2; round++)
+        {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+            {
+                refill(printer);
+                receipt.printReceipt();
+                printer.removeReceipt();
+                receipt.resetPaperUsed();
+                receipt.resetInkUsed();
+            }
+            long perReceipt = (System.nanoTime() - start) / iterations;
+            if (round == 1)
+            {
+                System.out.printf("Receipt.printReceipt: %,d ns per %d item receipt%n", perReceipt, LINES);
+            }
+        }
+
+        // Rendering alone, with the product fragments already cached
+        ReceiptTemplate template = ReceiptTemplate.compile(ReceiptTemplate.DEFAULT, Currency.getInstance("CAD"));
+        List<CartEntry> entries = customer.getCartEntries();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int round = 0; round < 2; round++)
+        {
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+            {
+                template.render("1234", entries, start);
+            }
+            long perReceipt = (System.nanoTime() - start) / iterations;
+            long bytes = (threads.getCurrentThreadAllocatedBytes() - allocated) / iterations;
+            if (round == 1)
+            {
+                System.out.printf("ReceiptTemplate.render: %,d ns and %,d bytes allocated per %d item receipt%n",
+                        perReceipt, bytes, LINES);
+            }
+        }
+    }
+
+    private static long run(String name, ReceiptPrinter printer, String[] lines, StringBuilder text, int iterations,
+            boolean bulk) throws EmptyException, OverloadException
+    {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            refill(printer);
+
+            if (bulk)
+            {
+                printer.print(text);
+            } else
+            {
+                for (String line : lines)
+                {
+                    for (int t = 0; t < line.length(); t++)
+                    {
+                        printer.print(line.charAt(t));
+                    }
+                    printer.print('\n');
+                }
+            }
+
+            printer.cutPaper();
+            printer.removeReceipt();
+        }
+
+        long perReceipt = (System.nanoTime() - start) / Math.max(iterations, 1);
+        System.out.printf("%s: %,d ns per %d line receipt%n", name, perReceipt, LINES);
+        return perReceipt;
+    }
+
+    /**
+     * Tops the printer up so every receipt starts with enough ink and paper
+     */
+    private static void refill(ReceiptPrinter printer)
+    {
+        // An overload means the printer already holds more than a receipt needs
+        try
+        {
+            printer.addPaper(LINES + 10);
+        } catch (OverloadException e)
+        {
+        }
+
+        try
+        {
+            printer.addInk(LINES * ReceiptPrinter.CHARACTERS_PER_LINE);
+        } catch (OverloadException e)
+        {
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package tests.benchmark;
+
+import application.Main;
+import org.lsmr.selfcheckout.devices.AbstractDevice;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import software.LatencyHistogram;
+import software.SelfCheckoutSoftware;
+import software.SupervisionSoftware;
+import store.credentials.CredentialsSystem;
+import user.Attendant;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Has the attendant start up a station that is already running, again and
+ * again, timing each restart and counting the observers attached to the
+ * station's devices after it.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.RestartBenchmark [restarts]
+ */
+public class RestartBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int restarts = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        CredentialsSystem.addAccount("restart", "restart");
+        Attendant attendant = new Attendant();
+        attendant.setLogin("restart", "restart");
+        Main.Tangibles.ATTENDANTS.add(attendant);
+
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10, 20, 50},
+                new BigDecimal[] {new BigDecimal("0.05"), new BigDecimal("0.10"), new BigDecimal("0.25"),
+                        new BigDecimal("1.00"), new BigDecimal("2.00")}, 1000, 1);
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        SupervisionSoftware supervision = new SupervisionSoftware(new SupervisionStation());
+        supervision.add(software);
+        supervision.login("restart", "restart");
+
+        List<AbstractDevice<?>> devices = devices(station);
+        LatencyHistogram latency = new LatencyHistogram(TimeUnit.HOURS.toNanos(1), 1);
+        int before = observers(devices);
+
+        for (int i = 0; i < restarts; i++)
+        {
+            long start = System.nanoTime();
+            supervision.startUpStation(software);
+            long end = System.nanoTime();
+            latency.record(end - start, 0);
+        }
+
+        LatencyHistogram.Snapshot snapshot = latency.snapshot(1, 0);
+        System.out.printf("restarts:  %d%n", restarts);
+        System.out.printf("observers: %d before, %d after%n", before, observers(devices));
+        System.out.printf("latency:   mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us%n", snapshot.getMean() / 1000,
+                snapshot.getValueAtPercentile(50) / 1000.0, snapshot.getValueAtPercentile(99) / 1000.0,
+                snapshot.getMax() / 1000.0);
+    }
+
+    private static int observers(List<AbstractDevice<?>> devices)
+    {
+        int observers = 0;
+        for (AbstractDevice<?> device : devices)
+        {
+            observers += device.getObserverCount();
+        }
+        return observers;
+    }
+
+    private static List<AbstractDevice<?>> devices(SelfCheckoutStation station)
+    {
+        List<AbstractDevice<?>> devices = new ArrayList<>(List.of(station.mainScanner, station.handheldScanner,
+                station.scanningArea, station.baggingArea, station.cardReader, station.coinSlot, station.coinTray,
+                station.coinStorage, station.coinValidator, station.banknoteInput, station.banknoteOutput,
+                station.banknoteStorage, station.banknoteValidator, station.printer, station.screen));
+        devices.addAll(station.coinDispensers.values());
+        devices.addAll(station.banknoteDispensers.values());
+        return devices;
+    }
+}
@@ -0,0 +1,257 @@
+package tests.benchmark;
+
+import interrupt.ProcessItemHandler;
+import interrupt.WeightFilter;
+import interrupt.WeightPipeline;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import software.SelfCheckoutSoftware;
+import software.SupervisionSoftware;
+import store.Inventory;
+import user.Customer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays noisy bagging area weight traces through ProcessItemHandler, once
+ * acting on every change the scale announces and once through a WeightFilter,
+ * and counts how often the lane locks with a weight discrepancy.
+ *
+ * The traces are recordings of a scale sampled every 50 ms, generated from a
+ * fixed seed so every run replays the same ones: clean placements, items that
+ * bounce as they land, items put down with a hand still resting on them, a
+ * noisy scale with vibration spikes, and knocks on an empty bagging area. None
+ * of these should lock the lane. Traces where an unexpected item really is
+ * placed should, and are counted as detections.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.ScaleReplay [traces per kind]
+ */
+public class ScaleReplay
+{
+    public static final long SAMPLE_MILLIS = 50;
+
+    // What the raw scale needs to see before it announces a change
+    static final double SENSITIVITY = 1;
+
+    // Samples before the customer puts anything down, and in the whole trace
+    static final int IDLE_SAMPLES = 10;
+    static final int SAMPLES = 60;
+
+    public enum Kind
+    {
+        CLEAN(true, false), BOUNCE(true, false), PARTIAL(true, false), NOISY(true, false), KNOCK(false, false),
+        WRONG_ITEM(true, true), UNEXPECTED_ITEM(false, true);
+
+        /**
+         * True if an item was scanned and the lane is waiting for it to be bagged
+         */
+        final boolean bagging;
+
+        /**
+         * True if the trace really has an unexpected weight, so should lock the lane
+         */
+        final boolean discrepancy;
+
+        Kind(boolean bagging, boolean discrepancy)
+        {
+            this.bagging = bagging;
+            this.discrepancy = discrepancy;
+        }
+    }
+
+    /**
+     * A recorded weight trace, one sample every SAMPLE_MILLIS
+     */
+    public static class Trace
+    {
+        public final Kind kind;
+        public final double expectedWeight;
+        public final double[] weights;
+
+        Trace(Kind kind, double expectedWeight, double[] weights)
+        {
+            this.kind = kind;
+            this.expectedWeight = expectedWeight;
+            this.weights = weights;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int perKind = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        List<Trace> traces = generate(perKind, 501);
+
+        System.out.printf("%-16s %8s %10s %10s%n", "trace", "count", "raw", "filtered");
+
+        int legitimate = 0, rawFalse = 0, filteredFalse = 0;
+        int real = 0, rawDetected = 0, filteredDetected = 0;
+        for (Kind kind : Kind.values())
+        {
+            int count = 0, raw = 0, filtered = 0;
+            for (Trace trace : traces)
+            {
+                if (trace.kind != kind)
+                {
+                    continue;
+                }
+
+                count++;
+                raw += replay(trace, null) ? 1 : 0;
+                filtered += replay(trace, WeightPipeline.standard()) ? 1 : 0;
+            }
+
+            System.out.printf("%-16s %8d %9.1f%% %9.1f%%%n", kind, count, 100.0 * raw / count, 100.0 * filtered / count);
+
+            if (kind.discrepancy)
+            {
+                real += count;
+                rawDetected += raw;
+                filteredDetected += filtered;
+            } else
+            {
+                legitimate += count;
+                rawFalse += raw;
+                filteredFalse += filtered;
+            }
+        }
+
+        System.out.printf("false-lock rate: raw %.1f%%, filtered %.1f%%%n", 100.0 * rawFalse / legitimate,
+                100.0 * filteredFalse / legitimate);
+        System.out.printf("detection rate: raw %.1f%%, filtered %.1f%%%n", 100.0 * rawDetected / real,
+                100.0 * filteredDetected / real);
+    }
+
+    /**
+     * Generates the same traces for the same seed
+     */
+    public static List<Trace> generate(int perKind, long seed)
+    {
+        Random random = new Random(seed);
+        List<Trace> traces = new ArrayList<>();
+
+        for (Kind kind : Kind.values())
+        {
+            for (int i = 0; i < perKind; i++)
+            {
+                double expected = 50 + random.nextInt(1950);
+                double[] weights = new double[SAMPLES];
+                double noise = kind == Kind.NOISY ? 0.6 : 0.2;
+
+                for (int s = 0; s < SAMPLES; s++)
+                {
+                    // Time since the item started to land
+                    double t = (s - IDLE_SAMPLES) * SAMPLE_MILLIS / 1000.0;
+                    double weight = 0;
+
+                    if (t >= 0)
+                    {
+                        switch (kind)
+                        {
+                            case CLEAN:
+                            case NOISY:
+                                weight = expected * Math.min(1, t / 0.1);
+                                break;
+                            case BOUNCE:
+                                // Overshoots and rings down as it lands
+                                weight = expected * (1 + 0.3 * Math.exp(-t / 0.15) * Math.sin(2 * Math.PI * 4 * t));
+                                break;
+                            case PARTIAL:
+                                // Put down with a hand resting on it, then pressed as the hand lets go
+                                weight = t < 0.5 ? expected * 0.6 : t < 0.6 ? expected * 1.3 : expected;
+                                break;
+                            case KNOCK:
+                                weight = t < 0.1 ? 30 + expected / 10 : 0;
+                                break;
+                            case WRONG_ITEM:
+                                weight = expected + 50 + expected / 4;
+                                break;
+                            case UNEXPECTED_ITEM:
+                                weight = expected;
+                                break;
+                        }
+                    }
+
+                    weight += random.nextGaussian() * noise;
+                    if (kind == Kind.NOISY && random.nextInt(10) == 0)
+                    {
+                        // Vibration from the counter
+                        weight += (random.nextBoolean() ? 1 : -1) * (5 + random.nextInt(15));
+                    }
+
+                    weights[s] = Math.max(0, weight);
+                }
+
+                traces.add(new Trace(kind, expected, weights));
+            }
+        }
+
+        return traces;
+    }
+
+    /**
+     * Replays a trace against a fresh lane.
+     *
+     * @param filter the filter to run the samples through, or null to act on
+     *               every change the scale would announce
+     * @return true if the lane locked with a weight discrepancy at any point
+     */
+    public static boolean replay(Trace trace, WeightFilter filter)
+    {
+        Inventory.clear();
+        BarcodedProduct product = new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one}), "Item",
+                new BigDecimal("1.00"), trace.expectedWeight);
+        Inventory.addProduct(product);
+
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10, 20, 50},
+                new BigDecimal[] {new BigDecimal("0.05"), new BigDecimal("0.10"), new BigDecimal("0.25")}, 5000, 1);
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        new SupervisionSoftware(new SupervisionStation()).add(software);
+
+        Customer customer = new Customer();
+        ProcessItemHandler handler = new ProcessItemHandler(software);
+        handler.setCustomer(customer);
+        software.start(customer);
+
+        if (trace.kind.bagging)
+        {
+            handler.barcodeScanned(station.mainScanner, product.getBarcode());
+        }
+
+        boolean locked = false;
+        double announced = 0;
+        long time = 0;
+
+        for (double weight : trace.weights)
+        {
+            if (filter == null)
+            {
+                // The scale only announces a change bigger than its sensitivity
+                if (Math.abs(weight - announced) > SENSITIVITY)
+                {
+                    announced = weight;
+                    handler.weightChanged(station.baggingArea, weight);
+                }
+            } else
+            {
+                double stable = filter.filter(time, weight);
+                if (!Double.isNaN(stable))
+                {
+                    handler.weightChanged(station.baggingArea, stable);
+                }
+            }
+
+            locked |= software.getPhase() == SelfCheckoutSoftware.Phase.HAVING_WEIGHT_DISCREPANCY;
+            time += SAMPLE_MILLIS;
+        }
+
+        return locked;
+    }
+}
@@ -0,0 +1,143 @@
+package tests.benchmark;
+
+import interrupt.ProcessItemHandler;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import software.SelfCheckoutSoftware;
+import software.SupervisionSoftware;
+import store.Inventory;
+import user.Customer;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.Random;
+
+/**
+ * Simulates customers scanning and bagging a cart through ProcessItemHandler
+ * on a simulated clock, with and without scan-ahead, and reports items per
+ * minute.
+ *
+ * The customer scans until the lane asks for bagging, then bags every item
+ * waiting. Each scan takes SCAN_SECONDS, each item put in a bag takes
+ * BAG_SECONDS, and each trip to the bagging area costs TRIP_SECONDS: turning
+ * to it and back, and waiting for the scale to settle and the lane to let
+ * scanning continue. Scan-ahead saves trips, not scans or bagging.
+ *
+ * Not part of the test suite. Run with:
+ * java -cp <classpath> tests.benchmark.ScanAheadBenchmark [carts] [items per cart]
+ */
+public class ScanAheadBenchmark
+{
+    static final double SCAN_SECONDS = 1.5;
+    static final double BAG_SECONDS = 1.2;
+    static final double TRIP_SECONDS = 1.5;
+
+    static final int[] WINDOWS = {1, 2, 3, 5, 8};
+
+    public static void main(String[] args)
+    {
+        int carts = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int items = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        Inventory.clear();
+        BarcodedProduct[] products = new BarcodedProduct[10];
+        Random random = new Random(40);
+        for (int i = 0; i < products.length; i++)
+        {
+            products[i] = new BarcodedProduct(new Barcode(new Numeral[] {Numeral.valueOf((byte) i)}), "Product " + i,
+                    new BigDecimal("1.00"), 50 + random.nextInt(1000));
+            Inventory.addProduct(products[i]);
+        }
+
+        double baseline = 0;
+        for (int window : WINDOWS)
+        {
+            random = new Random(40);
+            double seconds = 0;
+            int discrepancies = 0;
+
+            for (int cart = 0; cart < carts; cart++)
+            {
+                double[] result = run(window, products, items, random);
+                seconds += result[0];
+                discrepancies += (int) result[1];
+            }
+
+            double perMinute = carts * items / (seconds / 60);
+            if (window == 1)
+            {
+                baseline = perMinute;
+            }
+
+            System.out.printf("scan-ahead %d: %.1f items per minute (%.2fx), %d discrepancies%n", window, perMinute,
+                    perMinute / baseline, discrepancies);
+        }
+    }
+
+    /**
+     * Runs one cart through a fresh lane.
+     *
+     * @return the simulated seconds taken and the number of discrepancies
+     */
+    static double[] run(int window, BarcodedProduct[] products, int items, Random random)
+    {
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10, 20, 50},
+                new BigDecimal[] {new BigDecimal("0.05"), new BigDecimal("0.10"), new BigDecimal("0.25")}, 100000, 1);
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        new SupervisionSoftware(new SupervisionStation()).add(software);
+
+        Customer customer = new Customer();
+        ProcessItemHandler handler = software.getSelfCheckoutHandler().getProcessItemHandler();
+        handler.setScanAhead(window);
+        software.start(customer);
+        handler.setCustomer(customer);
+
+        double seconds = 0;
+        double weight = 0;
+        int discrepancies = 0;
+        int waiting = 0;
+        double[] waitingWeights = new double[window];
+
+        for (int i = 0; i <= items; i++)
+        {
+            if (i < items)
+            {
+                BarcodedProduct product = products[random.nextInt(products.length)];
+                handler.barcodeScanned(station.mainScanner, product.getBarcode());
+                waitingWeights[waiting++] = product.getExpectedWeight() + random.nextGaussian() * 0.2;
+                seconds += SCAN_SECONDS;
+            } else
+            {
+                // Done scanning; anything scanned ahead is bagged before paying
+                software.checkout();
+            }
+
+            if (software.getPhase() != SelfCheckoutSoftware.Phase.BAGGING_ITEM)
+            {
+                continue;
+            }
+
+            seconds += TRIP_SECONDS;
+            for (int w = 0; w < waiting; w++)
+            {
+                weight += waitingWeights[w];
+                handler.weightChanged(station.baggingArea, weight);
+                seconds += BAG_SECONDS;
+            }
+            waiting = 0;
+
+            if (software.getPhase() == SelfCheckoutSoftware.Phase.HAVING_WEIGHT_DISCREPANCY)
+            {
+                discrepancies++;
+                handler.overrideWeight();
+                software.getSelfCheckoutState().setIsWeightDiscrepancy(false);
+                software.addItem();
+            }
+        }
+
+        return new double[] {seconds, discrepancies};
+    }
+}
@@ -0,0 +1,121 @@
+package tests.checkout;
+
+import checkout.ConsumablesForecast;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConsumablesForecastTest
+{
+    static final long MINUTE = 60 * 1000L;
+    static final long HOUR = 60 * MINUTE;
+
+    ConsumablesForecast consumables;
+
+    // Setup that is run before each test case
+    @Before
+    public void setup()
+    {
+        consumables = new ConsumablesForecast(30 * MINUTE);
+    }
+
+    /**
+     * Prints a receipt of the given size every minute for the given time
+     */
+    private long printEveryMinute(long start, long duration, int ink, int lines)
+    {
+        long now = start;
+        for (; now < start + duration; now += MINUTE)
+        {
+            consumables.record(now, ink, lines);
+        }
+        return now - MINUTE;
+    }
+
+    @Test
+    public void noUsageTest()
+    {
+        ConsumablesForecast.Forecast forecast = consumables.forecast(1000, 100, 0);
+
+        assertEquals(Long.MAX_VALUE, forecast.getMillisUntilEmpty());
+        assertEquals(Double.POSITIVE_INFINITY, forecast.getReceiptsUntilEmpty(), 0);
+        assertFalse(forecast.needsRefill(HOUR));
+    }
+
+    @Test
+    public void steadyRateTest()
+    {
+        long now = printEveryMinute(0, 5 * HOUR, 200, 10);
+
+        ConsumablesForecast.Forecast forecast = consumables.forecast(12000, 600, now);
+
+        // 10 lines and 200 characters a minute
+        assertEquals(600, forecast.getPaperPerHour(), 600 * 0.05);
+        assertEquals(12000, forecast.getInkPerHour(), 12000 * 0.05);
+        assertEquals(HOUR, forecast.getMillisUntilPaperEmpty(), HOUR * 0.05);
+        assertEquals(HOUR, forecast.getMillisUntilInkEmpty(), HOUR * 0.05);
+        assertEquals(60, forecast.getReceiptsUntilEmpty(), 0.01);
+    }
+
+    @Test
+    public void rateFollowsLoadTest()
+    {
+        long now = printEveryMinute(0, 2 * HOUR, 200, 10);
+        double quiet = consumables.forecast(0, 0, now).getPaperPerHour();
+
+        // Twice as busy for the next two hours
+        now = printEveryMinute(now + MINUTE, 2 * HOUR, 200, 20);
+        double busy = consumables.forecast(0, 0, now).getPaperPerHour();
+
+        assertEquals(2 * quiet, busy, quiet * 0.1);
+    }
+
+    @Test
+    public void idleDecayTest()
+    {
+        long now = printEveryMinute(0, 2 * HOUR, 200, 10);
+        double rate = consumables.forecast(0, 0, now).getPaperPerHour();
+
+        // An hour of no receipts is two time constants
+        double idle = consumables.forecast(0, 0, now + HOUR).getPaperPerHour();
+        assertEquals(rate * Math.exp(-2), idle, rate * 0.001);
+    }
+
+    @Test
+    public void needsRefillTest()
+    {
+        long now = printEveryMinute(0, HOUR, 200, 10);
+
+        // Plenty left for the next hour
+        assertFalse(consumables.forecast(100000, 1000, now).needsRefill(HOUR));
+
+        // Runs out within the hour
+        assertTrue(consumables.forecast(100000, 300, now).needsRefill(HOUR));
+
+        // Not enough paper for another receipt, however slow the lane gets
+        assertTrue(consumables.forecast(100000, 9, now + 10 * HOUR).needsRefill(MINUTE));
+    }
+
+    @Test
+    public void perReceiptAverageTest()
+    {
+        consumables.record(0, 100, 10);
+        assertEquals(10, consumables.forecast(0, 0, 0).getLinesPerReceipt(), 0);
+
+        for (int i = 1; i <= 50; i++)
+        {
+            consumables.record(i * MINUTE, 300, 30);
+        }
+
+        assertEquals(30, consumables.forecast(0, 0, 50 * MINUTE).getLinesPerReceipt(), 0.01);
+        assertEquals(300, consumables.forecast(0, 0, 50 * MINUTE).getInkPerReceipt(), 0.1);
+        assertEquals(51, consumables.getReceipts());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badTimeConstantTest()
+    {
+        new ConsumablesForecast(0);
+    }
+}
@@ -0,0 +1,202 @@
+package tests.checkout;
+
+import checkout.PrintSpooler;
+import checkout.Receipt;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.OverloadException;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import software.SelfCheckoutSoftware;
+import software.SupervisionSoftware;
+import software.observers.SupervisionObserver;
+import user.Customer;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PrintSpoolerTest
+{
+    /**
+     * Counts the printer reports sent to the attendant
+     */
+    static class PrinterObserver implements SupervisionObserver
+    {
+        final AtomicInteger outOfPaper = new AtomicInteger();
+        final AtomicInteger outOfInk = new AtomicInteger();
+
+        public void banknoteStorageFull(SelfCheckoutSoftware scSoftware) { }
+        public void banknoteDispenserEmpty(SelfCheckoutSoftware scSoftware) { }
+        public void coinStorageFull(SelfCheckoutSoftware scSoftware) { }
+        public void coinDispenserEmpty(SelfCheckoutSoftware scSoftware) { }
+        public void dispenseChangeFailed(SelfCheckoutSoftware scSoftware) { }
+        public void receiptPrinterLowOnPaper(SelfCheckoutSoftware scSoftware) { }
+        public void receiptPrinterPaperOverloaded(SelfCheckoutSoftware scSoftware) { }
+        public void receiptPrinterLowOnInk(SelfCheckoutSoftware scSoftware) { }
+        public void receiptPrinterInkOverloaded(SelfCheckoutSoftware scSoftware) { }
+        public void weightDiscrepancyDetected(SelfCheckoutSoftware scSoftware) { }
+        public void touchScreenBlocked(SelfCheckoutSoftware scSoftware) { }
+        public void touchScreenUnblocked(SelfCheckoutSoftware scSoftware) { }
+        public void scaleOverloadedDetected(SelfCheckoutSoftware scSoftware) { }
+        public void scaleOverloadedResolved(SelfCheckoutSoftware scSoftware) { }
+        public void customerDoesNotWantToBagItem(SelfCheckoutSoftware scSoftware) { }
+
+        public void receiptPrinterOutOfPaper(SelfCheckoutSoftware scSoftware)
+        {
+            outOfPaper.incrementAndGet();
+        }
+
+        public void receiptPrinterOutOfInk(SelfCheckoutSoftware scSoftware)
+        {
+            outOfInk.incrementAndGet();
+        }
+    }
+
+    SelfCheckoutStation station;
+    SelfCheckoutSoftware software;
+    PrinterObserver observer;
+    Customer customer;
+    Receipt receipt;
+
+    // Setup that is run before each test case
+    @Before
+    public void setup()
+    {
+        station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10},
+                new BigDecimal[] {new BigDecimal("0.25")}, 10, 1);
+        software = new SelfCheckoutSoftware(station);
+        SupervisionSoftware supervision = new SupervisionSoftware(new SupervisionStation());
+        supervision.add(software);
+        observer = new PrinterObserver();
+        supervision.addObserver(observer);
+
+        customer = new Customer();
+        customer.addProduct(new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one}), "Milk", new BigDecimal("4.99"), 2000));
+
+        receipt = new Receipt(software);
+        receipt.setCustomer(customer);
+        receipt.startPrintSpooler(2);
+    }
+
+    @After
+    public void teardown()
+    {
+        receipt.detatchAll();
+    }
+
+    @Test
+    public void printInBackgroundTest() throws Exception
+    {
+        station.printer.addPaper(100);
+        station.printer.addInk(1000);
+
+        receipt.printReceipt();
+
+        assertTrue(receipt.getPrintSpooler().awaitIdle(5000));
+        assertTrue(station.printer.removeReceipt().contains("Milk"));
+        assertEquals(receipt.getTemplate().getLines(), receipt.getPaperUsed());
+        assertEquals(receipt.getTemplate().getInk(), receipt.getInkUsed());
+    }
+
+    @Test
+    public void outOfPaperRetryTest() throws Exception
+    {
+        station.printer.addInk(1000);
+
+        receipt.printReceipt();
+
+        PrintSpooler spooler = receipt.getPrintSpooler();
+        spooler.awaitIdle(5000);
+        assertTrue(spooler.isStalled());
+        assertEquals(1, spooler.size());
+        assertEquals(1, observer.outOfPaper.get());
+        assertEquals(0, observer.outOfInk.get());
+
+        // The queued receipt is printed once paper is added
+        station.printer.addPaper(100);
+
+        assertTrue(spooler.awaitIdle(5000));
+        assertTrue(station.printer.removeReceipt().contains("Milk"));
+        assertEquals(1, observer.outOfPaper.get());
+    }
+
+    @Test
+    public void outOfInkRetryTest() throws Exception
+    {
+        station.printer.addPaper(100);
+        station.printer.addInk(3);
+
+        receipt.printReceipt();
+
+        PrintSpooler spooler = receipt.getPrintSpooler();
+        spooler.awaitIdle(5000);
+        assertTrue(spooler.isStalled());
+        assertEquals(1, observer.outOfInk.get());
+        assertEquals(0, observer.outOfPaper.get());
+
+        station.printer.addInk(1000);
+
+        assertTrue(spooler.awaitIdle(5000));
+        assertTrue(station.printer.removeReceipt().contains("Milk"));
+    }
+
+    @Test
+    public void boundedQueueTest() throws Exception
+    {
+        for (int i = 0; i < 5; i++)
+        {
+            receipt.printReceipt();
+        }
+
+        PrintSpooler spooler = receipt.getPrintSpooler();
+        spooler.awaitIdle(5000);
+        assertEquals(spooler.getCapacity(), spooler.size());
+
+        station.printer.addPaper(100);
+        station.printer.addInk(1000);
+
+        assertTrue(spooler.awaitIdle(5000));
+        assertEquals(2 * receipt.getTemplate().getLines(), receipt.getPaperUsed());
+    }
+
+    @Test
+    public void paymentCompletedWithoutPaperTest()
+    {
+        software.start(customer);
+        software.checkout();
+        software.selectedPaymentMethod(SelfCheckoutSoftware.PaymentMethod.CASH);
+
+        // The printer is empty, but the payment completes and the receipt waits
+        software.paymentCompleted();
+
+        assertEquals(SelfCheckoutSoftware.Phase.PAYMENT_COMPLETE, software.getPhase());
+    }
+
+    @Test
+    public void stopTest() throws OverloadException
+    {
+        receipt.printReceipt();
+        receipt.stopPrintSpooler();
+
+        assertNull(receipt.getPrintSpooler());
+
+        // Printed as it is made again
+        station.printer.addPaper(100);
+        station.printer.addInk(1000);
+        receipt.printReceipt();
+        assertTrue(station.printer.removeReceipt().contains("Milk"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void startTwiceTest()
+    {
+        receipt.startPrintSpooler(2);
+    }
+}
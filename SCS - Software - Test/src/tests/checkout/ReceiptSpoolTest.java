@@ -0,0 +1,249 @@
+package tests.checkout;
+
+import checkout.Receipt;
+import checkout.ReceiptSpool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.OverloadException;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import software.SelfCheckoutSoftware;
+import software.SupervisionSoftware;
+import user.Customer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Currency;
+
+import static org.junit.Assert.*;
+
+public class ReceiptSpoolTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path directory;
+    ReceiptSpool spool;
+
+    // Setup that is run before each test case
+    @Before
+    public void setup() throws IOException
+    {
+        directory = folder.getRoot().toPath().resolve("spool");
+        spool = new ReceiptSpool(directory, "station1");
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        spool.close();
+    }
+
+    @Test
+    public void appendAndGetTest() throws IOException
+    {
+        spool.append("t1", "===== Receipt =====\nMilk $4.99\n");
+        spool.append("t2", "===== Receipt =====\nBread $2.50\n");
+
+        // Found before and after it is written
+        assertEquals("===== Receipt =====\nMilk $4.99\n", spool.get("t1"));
+        spool.flush();
+        assertEquals("===== Receipt =====\nMilk $4.99\n", spool.get("t1"));
+        assertEquals("===== Receipt =====\nBread $2.50\n", spool.get("t2"));
+        assertEquals(2, spool.size());
+    }
+
+    @Test
+    public void getUnknownTest() throws IOException
+    {
+        assertNull(spool.get("missing"));
+    }
+
+    @Test
+    public void appendCopiesTextTest() throws IOException
+    {
+        char[] text = "first".toCharArray();
+        spool.append("t1", CharBuffer.wrap(text));
+        text[0] = 'F';
+
+        spool.flush();
+        assertEquals("first", spool.get("t1"));
+    }
+
+    @Test
+    public void appendReplacesTest() throws IOException
+    {
+        spool.append("t1", "first");
+        spool.append("t1", "second");
+        spool.flush();
+
+        assertEquals("second", spool.get("t1"));
+        assertEquals(1, spool.size());
+    }
+
+    @Test
+    public void compressedTest() throws IOException
+    {
+        spool.append("t1", "Milk $4.99\n".repeat(1000));
+        spool.close();
+
+        Path segment = Files.list(directory).findFirst().get();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "r"))
+        {
+            // The record length at the start of the segment
+            assertTrue(file.readInt() < 11000 / 10);
+        }
+    }
+
+    @Test
+    public void reopenTest() throws IOException
+    {
+        spool.append("t1", "first");
+        spool.append("t2", "second");
+        spool.close();
+
+        spool = new ReceiptSpool(directory, "station1");
+        assertEquals("first", spool.get("t1"));
+        assertEquals("second", spool.get("t2"));
+
+        spool.append("t3", "third");
+        spool.close();
+
+        spool = new ReceiptSpool(directory, "station1");
+        assertEquals("third", spool.get("t3"));
+        assertEquals(3, spool.size());
+    }
+
+    @Test
+    public void stationsKeptApartTest() throws IOException
+    {
+        spool.append("t1", "first");
+        spool.close();
+
+        spool = new ReceiptSpool(directory, "station2");
+        assertNull(spool.get("t1"));
+    }
+
+    @Test
+    public void rollSegmentsTest() throws IOException
+    {
+        spool.close();
+        spool = new ReceiptSpool(directory, "station1", 64);
+
+        for (int i = 0; i < 50; i++)
+        {
+            spool.append("t" + i, "Receipt number " + i);
+        }
+        // Larger than a whole segment
+        spool.append("big", "Item ".repeat(200) + "x".repeat(100));
+        spool.close();
+
+        assertTrue(Files.list(directory).count() > 1);
+
+        spool = new ReceiptSpool(directory, "station1", 64);
+        for (int i = 0; i < 50; i++)
+        {
+            assertEquals("Receipt number " + i, spool.get("t" + i));
+        }
+        assertEquals("Item ".repeat(200) + "x".repeat(100), spool.get("big"));
+    }
+
+    @Test
+    public void tornRecordTest() throws IOException
+    {
+        spool.append("t1", "first");
+        spool.append("t2", "second");
+        spool.close();
+
+        // Damage the last byte of the second record, as a crash mid-write would
+        Path segment = Files.list(directory).findFirst().get();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw"))
+        {
+            int first = file.readInt();
+            file.seek(8 + first);
+            int second = file.readInt();
+            file.seek(8 + first + 8 + second - 1);
+            int last = file.read();
+            file.seek(8 + first + 8 + second - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        spool = new ReceiptSpool(directory, "station1");
+        assertEquals("first", spool.get("t1"));
+        assertNull(spool.get("t2"));
+
+        // The damaged record is written over
+        spool.append("t3", "third");
+        spool.close();
+        spool = new ReceiptSpool(directory, "station1");
+        assertEquals("third", spool.get("t3"));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void appendNullTest()
+    {
+        spool.append(null, "text");
+    }
+
+    @Test
+    public void printAndReprintReceiptTest() throws IOException, OverloadException
+    {
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10},
+                new BigDecimal[] {new BigDecimal("0.25")}, 10, 1);
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        new SupervisionSoftware(new SupervisionStation()).add(software);
+
+        Receipt receipt = new Receipt(software);
+        receipt.setSpool(spool);
+
+        Customer customer = new Customer();
+        customer.addProduct(new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one}), "Milk", new BigDecimal("4.99"), 2000));
+        receipt.setCustomer(customer);
+
+        station.printer.addPaper(100);
+        station.printer.addInk(1000);
+        receipt.printReceipt();
+        String printed = station.printer.removeReceipt();
+
+        spool.flush();
+        assertEquals(printed, spool.get(customer.getTransactionID()));
+
+        int inkUsed = receipt.getInkUsed();
+        assertTrue(receipt.reprintReceipt(customer.getTransactionID()));
+        assertEquals(printed, station.printer.removeReceipt());
+        assertEquals(2 * inkUsed, receipt.getInkUsed());
+
+        assertFalse(receipt.reprintReceipt("missing"));
+    }
+
+    @Test
+    public void spoolWithoutPaperTest() throws IOException
+    {
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10},
+                new BigDecimal[] {new BigDecimal("0.25")}, 10, 1);
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        new SupervisionSoftware(new SupervisionStation()).add(software);
+
+        Receipt receipt = new Receipt(software);
+        receipt.setSpool(spool);
+
+        Customer customer = new Customer();
+        customer.addProduct(new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one}), "Milk", new BigDecimal("4.99"), 2000));
+        receipt.setCustomer(customer);
+
+        // Nothing can be printed, but the e-receipt is still kept
+        receipt.printReceipt();
+
+        assertTrue(spool.get(customer.getTransactionID()).contains("Milk"));
+    }
+}
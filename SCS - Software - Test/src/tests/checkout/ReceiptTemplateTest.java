@@ -0,0 +1,121 @@
+package tests.checkout;
+
+import checkout.ReceiptTemplate;
+import org.junit.Before;
+import org.junit.Test;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.PriceLookupCode;
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import org.lsmr.selfcheckout.products.PLUCodedProduct;
+import user.Customer;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.Currency;
+
+import static org.junit.Assert.*;
+
+public class ReceiptTemplateTest
+{
+    // Static variables that will be used during testing
+    final Currency currency = Currency.getInstance("CAD");
+    final long now = 1760000000000L;
+    final String date = new Date(now).toString();
+    final BarcodedProduct milk = new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one, Numeral.two}), "Milk", new BigDecimal("4.99"), 2000);
+    final PLUCodedProduct bananas = new PLUCodedProduct(new PriceLookupCode("4011"), "Bananas", new BigDecimal("1.50"));
+
+    Customer customer;
+    ReceiptTemplate template;
+
+    // Setup that is run before each test case
+    @Before
+    public void setup()
+    {
+        customer = new Customer();
+        customer.addProduct(milk);
+        customer.addProduct(bananas, 1500);
+        template = ReceiptTemplate.compile(ReceiptTemplate.DEFAULT, currency);
+    }
+
+    @Test
+    public void renderDefaultTest()
+    {
+        template.render("42", customer.getCartEntries(), now);
+
+        String symbol = currency.getSymbol();
+        String expected = "===== Receipt =====\n"
+                + "Date: " + date + "\n"
+                + "Member ID: 42\n"
+                + "==============\n"
+                + "Milk " + symbol + "4.99\n"
+                + "Bananas " + symbol + "1.50/kg (1500.0 g)\n"
+                + "==============\n"
+                + "Subtotal: " + symbol + "7.24\n";
+
+        assertEquals(expected, template.getText().toString());
+        assertEquals(8, template.getLines());
+        assertEquals(expected.replaceAll("\\s", "").length(), template.getInk());
+    }
+
+    @Test
+    public void renderNonMemberTest()
+    {
+        template.render(null, customer.getCartEntries(), now);
+
+        assertFalse(template.getText().toString().contains("Member ID"));
+        assertEquals(7, template.getLines());
+    }
+
+    @Test
+    public void renderTwiceTest()
+    {
+        template.render("42", customer.getCartEntries(), now);
+        String first = template.getText().toString();
+
+        template.render("42", customer.getCartEntries(), now);
+
+        // Cached fragments give the same receipt
+        assertEquals(first, template.getText().toString());
+    }
+
+    @Test
+    public void customTemplateTest()
+    {
+        ReceiptTemplate custom = ReceiptTemplate.compile("Total {subtotal}\n?member Thanks {member}\n{items}\nBye", currency);
+        custom.render(null, customer.getCartEntries(), now);
+
+        String symbol = currency.getSymbol();
+        assertEquals("Total " + symbol + "7.24\nMilk " + symbol + "4.99\nBananas " + symbol + "1.50/kg (1500.0 g)\nBye\n",
+                custom.getText().toString());
+    }
+
+    @Test
+    public void wrapLongLineTest()
+    {
+        String description = "x".repeat(ReceiptPrinter.CHARACTERS_PER_LINE + 5);
+        Customer longCustomer = new Customer();
+        longCustomer.addProduct(new BarcodedProduct(new Barcode(new Numeral[] {Numeral.nine}), description, new BigDecimal("1.00"), 10));
+
+        template.render(null, longCustomer.getCartEntries(), now);
+
+        for (String line : template.getText().toString().split("\n"))
+        {
+            assertTrue(line.length() <= ReceiptPrinter.CHARACTERS_PER_LINE);
+        }
+        assertEquals(7, template.getLines());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingItemsTest()
+    {
+        ReceiptTemplate.compile("Header\nFooter", currency);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFieldTest()
+    {
+        ReceiptTemplate.compile("{total}\n{items}", currency);
+    }
+}
@@ -22,6 +22,7 @@ import user.Customer;
 import java.math.BigDecimal;
 import java.util.Currency;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -35,6 +36,15 @@ public class ReceiptTest
         }
     }
 
+    class SmallPrinter extends ReceiptPrinter
+    {
+        public SmallPrinter(int outputCapacity)
+        {
+            super(outputCapacity);
+            endConfigurationPhase();
+        }
+    }
+
     class FakeItem extends Item
     {
         public FakeItem(double weight)
@@ -306,6 +316,198 @@ public class ReceiptTest
         receipt.printReceipt();
         assertNotNull(selfCheckoutStation.printer.removeReceipt());
         }
+    @Test
+    public void printReceiptWrapsLongLinesTest() throws OverloadException
+    {
+        supervision.add(selfCheckoutSoftware);
+        Customer customer = new Customer();
+        Receipt receipt = new Receipt(selfCheckoutSoftware);
+        receipt.setCustomer(customer);
+        customer.addProduct(Long);
+        selfCheckoutStation.printer.addPaper(100);
+        selfCheckoutStation.printer.addInk(1000);
+        receipt.printReceipt();
+
+        String printed = selfCheckoutStation.printer.removeReceipt();
+        for (String line : printed.split("\n"))
+        {
+            assertTrue(line.length() <= ReceiptPrinter.CHARACTERS_PER_LINE);
+        }
+
+        // The 71 character product line takes two lines of paper
+        assertEquals(printed.split("\n").length, receipt.getPaperUsed());
+        assertTrue(printed.contains(Long.getDescription().substring(0, ReceiptPrinter.CHARACTERS_PER_LINE) + "\n"));
+    }
+
+    @Test
+    public void printReceiptNotEnoughInkTest() throws OverloadException
+    {
+        supervision.add(selfCheckoutSoftware);
+        Customer customer = new Customer();
+        Receipt receipt = new Receipt(selfCheckoutSoftware);
+        receipt.setCustomer(customer);
+        customer.addProduct(Long);
+        selfCheckoutStation.printer.addPaper(100);
+        selfCheckoutStation.printer.addInk(10);
+        receipt.printReceipt();
+
+        // Nothing is printed rather than half a receipt
+        assertEquals("", selfCheckoutStation.printer.removeReceipt());
+        assertEquals(0, receipt.getInkUsed());
+        assertEquals(0, receipt.getPaperUsed());
+    }
+
+    @Test
+    public void printLinesTest() throws OverloadException, EmptyException
+    {
+        supervision.add(selfCheckoutSoftware);
+        ReceiptPrinter printer = selfCheckoutStation.printer;
+        printer.addPaper(2);
+        printer.addInk(100);
+
+        printer.printLines("first line", "second\tline");
+        printer.cutPaper();
+
+        // Whitespace other than blanks and newlines is not printed
+        assertEquals("first line\nsecondline\n", printer.removeReceipt());
+    }
+
+    @Test(expected = EmptyException.class)
+    public void printLinesOutOfPaperTest() throws OverloadException, EmptyException
+    {
+        supervision.add(selfCheckoutSoftware);
+        ReceiptPrinter printer = selfCheckoutStation.printer;
+        printer.addPaper(1);
+        printer.addInk(100);
+
+        printer.printLines("first line", "second line");
+    }
+
+    @Test(expected = OverloadException.class)
+    public void printTooLongLineTest() throws OverloadException, EmptyException
+    {
+        ReceiptPrinter printer = selfCheckoutStation.printer;
+        printer.addPaper(1);
+        printer.addInk(100);
+
+        printer.print(Long.getDescription());
+    }
+
+    @Test
+    public void receiptViewsTest() throws OverloadException, EmptyException
+    {
+        ReceiptPrinter printer = selfCheckoutStation.printer;
+        printer.addPaper(10);
+        printer.addInk(100);
+
+        printer.print("first\n");
+        printer.cutPaper();
+        printer.print("second\n");
+        printer.cutPaper();
+
+        assertEquals(2, printer.getReceiptCount());
+        assertEquals("first\n", printer.getReceipt(0).toString());
+        assertEquals("second\n", printer.getReceipt(1).toString());
+        assertTrue(printer.getReceipt(0).isReadOnly());
+
+        // Receipts that were not taken go to the next customer too
+        assertEquals("first\nsecond\n", printer.removeReceipt());
+        assertEquals(0, printer.getReceiptCount());
+    }
+
+    @Test
+    public void printSkipsWhitespaceTest() throws OverloadException, EmptyException
+    {
+        ReceiptPrinter printer = selfCheckoutStation.printer;
+        printer.addPaper(10);
+        printer.addInk(100);
+
+        printer.print("a\tb c\r\n");
+        printer.cutPaper();
+
+        assertEquals("ab c\n", printer.getReceipt(0).toString());
+    }
+
+    @Test
+    public void removeDiscardsUncutTest() throws OverloadException, EmptyException
+    {
+        ReceiptPrinter printer = selfCheckoutStation.printer;
+        printer.addPaper(10);
+        printer.addInk(100);
+
+        printer.print("first\n");
+        printer.cutPaper();
+        printer.print("uncut\n");
+
+        assertEquals("first\n", printer.removeReceipt());
+
+        printer.print("second\n");
+        printer.cutPaper();
+        assertEquals("second\n", printer.removeReceipt());
+    }
+
+    @Test
+    public void ringBufferDropsOldestTest() throws OverloadException, EmptyException
+    {
+        // Room for about three receipts
+        ReceiptPrinter printer = new SmallPrinter(32);
+        printer.addPaper(100);
+        printer.addInk(1000);
+
+        for (int i = 0; i < 10; i++)
+        {
+            printer.print("receipt " + i + "\n");
+            printer.cutPaper();
+        }
+
+        // The newest receipts are kept whole, in order
+        int count = printer.getReceiptCount();
+        assertTrue(count >= 2 && count <= 3);
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals("receipt " + (10 - count + i) + "\n", printer.getReceipt(i).toString());
+        }
+    }
+
+    @Test
+    public void ringBufferLongReceiptTest() throws OverloadException, EmptyException
+    {
+        ReceiptPrinter printer = new SmallPrinter(32);
+        printer.addPaper(100);
+        printer.addInk(1000);
+
+        printer.print("old\n");
+        printer.cutPaper();
+
+        // Longer than the buffer, printed a character at a time
+        String text = "0123456789\n".repeat(5);
+        for (int i = 0; i < text.length(); i++)
+        {
+            printer.print(text.charAt(i));
+        }
+        printer.cutPaper();
+
+        // Only the end of it fits
+        assertEquals(1, printer.getReceiptCount());
+        assertEquals(text.substring(text.length() - 32), printer.getReceipt(0).toString());
+    }
+
+    @Test
+    public void ringBufferReceiptLimitTest() throws OverloadException, EmptyException
+    {
+        ReceiptPrinter printer = selfCheckoutStation.printer;
+        printer.addPaper(ReceiptPrinter.MAXIMUM_PAPER);
+        printer.addInk(1000);
+
+        for (int i = 0; i < ReceiptPrinter.MAXIMUM_RECEIPTS + 5; i++)
+        {
+            printer.print("r\n");
+            printer.cutPaper();
+        }
+
+        assertEquals(ReceiptPrinter.MAXIMUM_RECEIPTS, printer.getReceiptCount());
+    }
+
     @Test
     public void outOfPaperTest() throws OverloadException
     { 
@@ -1,9 +1,16 @@
 package tests.interrupt;
 
 import bank.Bank;
+import bank.Journal;
+import bank.PaymentLog;
+import bank.Settlement;
+import bank.StandIn;
+import bank.ForwardQueue;
 import interrupt.CardHandler;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.lsmr.selfcheckout.*;
 import org.lsmr.selfcheckout.devices.OverloadException;
 import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
@@ -19,12 +26,18 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Calendar;
 import java.util.Currency;
+import java.util.ArrayList;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class CardHandlerTest
 {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     // Static variables that will be used during testing
     final Currency currency = Currency.getInstance("CAD");
     final int[] banknoteDenominations = {5, 10, 20, 50};
@@ -174,6 +187,104 @@ public class CardHandlerTest
         performTapOrSwipeOrInsertUntilSuccessful(card1, card1Pin, customer1, "Tap");
     }
 
+    @Test
+    public void cardDataReadBankCardSettlementTest() throws IOException
+    {
+        Journal journal = new Journal(folder.getRoot().toPath().resolve("settlement.journal"));
+        Bank.setSettlement(new Settlement(journal, folder.getRoot().toPath()));
+
+        try
+        {
+            cardHandler.setCustomer(customer1);
+            selfCheckoutSoftware.start(customer1);
+            selfCheckoutStation.mainScanner.scan(new BarcodedItem(barcodedProduct.getBarcode(), barcodedProduct.getExpectedWeight()));
+            selfCheckoutSoftware.addItem();
+            selfCheckoutSoftware.checkout();
+            selfCheckoutSoftware.selectedPaymentMethod(SelfCheckoutSoftware.PaymentMethod.BANK_CARD);
+
+            performTapOrSwipeOrInsertUntilSuccessful(card1, card1Pin, customer1, "Tap");
+
+            // The payment is only captured, the issuer is posted to at settlement
+            List<String> records = new ArrayList<String>();
+            journal.replay(records::add);
+            assertEquals(1, records.size());
+            assertTrue(records.get(0).startsWith("CAPTURE\tVisa\t" + card1Number + "\t"));
+        } finally
+        {
+            Bank.setSettlement(null);
+            journal.close();
+        }
+    }
+
+    @Test
+    public void cardDataReadBankCardStandInTest() throws IOException
+    {
+        // An issuer that cannot be reached
+        CardIssuer downIssuer = new CardIssuer("Visa")
+        {
+            @Override
+            public int authorizeHold(String cardNumber, BigDecimal amount)
+            {
+                throw new IllegalStateException("Issuer unreachable");
+            }
+        };
+        Bank.addCardIssuer(card1Number, downIssuer);
+
+        Journal journal = new Journal(folder.getRoot().toPath().resolve("forward.journal"));
+        ForwardQueue queue = new ForwardQueue(journal);
+        cardHandler.setStandIn(new StandIn("lane1", queue, new BigDecimal("50.00"), new BigDecimal("200.00"), 200));
+
+        try
+        {
+            cardHandler.setCustomer(customer1);
+            selfCheckoutSoftware.start(customer1);
+            while (customer1.getCart().isEmpty())
+            {
+                selfCheckoutStation.mainScanner.scan(new BarcodedItem(barcodedProduct.getBarcode(), barcodedProduct.getExpectedWeight()));
+            }
+            selfCheckoutSoftware.addItem();
+            selfCheckoutSoftware.checkout();
+            selfCheckoutSoftware.selectedPaymentMethod(SelfCheckoutSoftware.PaymentMethod.BANK_CARD);
+
+            performTapOrSwipeOrInsertUntilSuccessful(card1, card1Pin, customer1, "Tap");
+
+            // The lane approved the payment itself and queued it for the issuer
+            assertEquals(SelfCheckoutSoftware.Phase.PAYMENT_COMPLETE, selfCheckoutSoftware.getPhase());
+            assertEquals(1, queue.getPending().size());
+            assertEquals(0, barcodedProduct.getPrice().compareTo(queue.getPending().get(0).getAmount()));
+        } finally
+        {
+            Bank.clearCircuitBreakers();
+            journal.close();
+        }
+    }
+
+    @Test
+    public void cardDataReadBankCardPaymentLogTest() throws IOException
+    {
+        Journal journal = new Journal(folder.getRoot().toPath().resolve("payments.journal"));
+        PaymentLog paymentLog = new PaymentLog(journal);
+        Bank.setPaymentLog(paymentLog);
+
+        try
+        {
+            cardHandler.setCustomer(customer1);
+            selfCheckoutSoftware.start(customer1);
+            selfCheckoutStation.mainScanner.scan(new BarcodedItem(barcodedProduct.getBarcode(), barcodedProduct.getExpectedWeight()));
+            selfCheckoutSoftware.addItem();
+            selfCheckoutSoftware.checkout();
+            selfCheckoutSoftware.selectedPaymentMethod(SelfCheckoutSoftware.PaymentMethod.BANK_CARD);
+
+            performTapOrSwipeOrInsertUntilSuccessful(card1, card1Pin, customer1, "Tap");
+
+            assertEquals(PaymentLog.State.POSTED, paymentLog.get(customer1.getTransactionID()).getState());
+        } finally
+        {
+            Bank.setPaymentLog(null);
+            journal.close();
+        }
+    }
+
     @Test
     public void cardDataReadBankCardFailTest() throws IOException
     {
@@ -241,6 +352,39 @@ public class CardHandlerTest
         performTapOrSwipeOrInsertUntilSuccessful(card3, card3Pin, customer3, "Swipe");
     }
 
+    @Test
+    public void cardDataReadGiftCardPartialTest() throws IOException
+    {
+        Inventory.clear();
+        BarcodedProduct product = new BarcodedProduct(barcodedProduct.getBarcode(), barcodedProduct.getDescription(), balanceAdjustmentAmounts[2], barcodedProduct.getExpectedWeight());
+        Inventory.addProduct(product);
+        cardHandler.setCustomer(customer3);
+        selfCheckoutSoftware.start(customer3);
+
+        // The scanner fails at random, so scan until the item is in the cart
+        while (customer3.getCart().isEmpty())
+        {
+            selfCheckoutStation.mainScanner.scan(new BarcodedItem(product.getBarcode(), product.getExpectedWeight()));
+        }
+        selfCheckoutSoftware.addItem();
+        selfCheckoutSoftware.checkout();
+        selfCheckoutSoftware.selectedPaymentMethod(SelfCheckoutSoftware.PaymentMethod.GIFT_CARD);
+
+        performTapOrSwipeOrInsertUntilSuccessful(card3, card3Pin, customer3, "Swipe");
+
+        // The 10.00 gift card covers half of the 20.00 cart
+        assertEquals(0, new BigDecimal("10.00").compareTo(customer3.getAmountDue()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(GiftCard.getBalance(card3Number)));
+        assertEquals(SelfCheckoutSoftware.Phase.CHOOSING_PAYMENT_METHOD, selfCheckoutSoftware.getPhase());
+
+        // The remainder is paid with a bank card in the same session
+        selfCheckoutSoftware.selectedPaymentMethod(SelfCheckoutSoftware.PaymentMethod.BANK_CARD);
+        performTapOrSwipeOrInsertUntilSuccessful(card1, card1Pin, customer3, "Tap");
+
+        assertEquals(SelfCheckoutSoftware.Phase.PAYMENT_COMPLETE, selfCheckoutSoftware.getPhase());
+        assertEquals(-1, cardIssuer1.authorizeHold(card1Number, new BigDecimal("10.01")));
+    }
+
     @Test
     public void cardDataReadGiftCardTest2() throws IOException
     {
@@ -1,26 +1,37 @@
 package tests.interrupt;
 
 import interrupt.ProcessItemHandler;
+import interrupt.WeightPipeline;
 import org.junit.Before;
 import org.junit.Test;
 import org.lsmr.selfcheckout.Barcode;
 import org.lsmr.selfcheckout.BarcodedItem;
 import org.lsmr.selfcheckout.Numeral;
 import org.lsmr.selfcheckout.PriceLookupCode;
+import org.lsmr.selfcheckout.SimulationException;
+import org.lsmr.selfcheckout.devices.AbstractDevice;
+import org.lsmr.selfcheckout.devices.ElectronicScale;
 import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
 import org.lsmr.selfcheckout.devices.SupervisionStation;
 import org.lsmr.selfcheckout.products.BarcodedProduct;
+import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
+import org.lsmr.selfcheckout.devices.observers.ElectronicScaleObserver;
 import org.lsmr.selfcheckout.products.PLUCodedProduct;
 import software.SelfCheckoutSoftware;
 import software.SupervisionSoftware;
 import store.Inventory;
+import store.WeightProfile;
 import store.Store;
 import user.Customer;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Currency;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class ProcessItemHandlerTest
@@ -258,4 +269,348 @@ public class ProcessItemHandlerTest
         selfCheckoutStation.baggingArea.add(new BarcodedItem(product1.getBarcode(), scaleMaximumWeight * 2));
         processItemHandler.overrideWeight();
     }
+
+    /**
+     * Records the last weight a scale reported
+     */
+    static class WeightObserver implements ElectronicScaleObserver
+    {
+        double weight = Double.NaN;
+
+        @Override
+        public void weightChanged(ElectronicScale scale, double weightInGrams)
+        {
+            weight = weightInGrams;
+        }
+
+        @Override
+        public void overload(ElectronicScale scale) {}
+
+        @Override
+        public void outOfOverload(ElectronicScale scale) {}
+
+        @Override
+        public void enabled(AbstractDevice<? extends AbstractDeviceObserver> device) {}
+
+        @Override
+        public void disabled(AbstractDevice<? extends AbstractDeviceObserver> device) {}
+    }
+
+    @Test
+    public void scaleDoesNotDriftTest() throws Exception
+    {
+        ElectronicScale scale = new SelfCheckoutStation(currency, banknoteDenominations, coinDenominations, 100000, 1).baggingArea;
+        WeightObserver observer = new WeightObserver();
+        scale.attach(observer);
+
+        // Thousands of light items on and off the scale, leaving one behind
+        List<BarcodedItem> items = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+        {
+            BarcodedItem item = new BarcodedItem(product1.getBarcode(), 0.1);
+            items.add(item);
+            scale.add(item);
+        }
+        for (int i = 1; i < items.size(); i++)
+        {
+            scale.remove(items.get(i));
+        }
+
+        scale.add(new BarcodedItem(product1.getBarcode(), 5));
+        assertEquals(5.1, observer.weight, 1e-12);
+
+        // Reads within the simulated noise of the exact weight
+        double weight = scale.getCurrentWeight();
+        assertTrue(weight >= 5.1 - 1e-12 && weight < 5.2);
+    }
+
+    @Test
+    public void scaleEmptiesToZeroTest() throws Exception
+    {
+        ElectronicScale scale = new SelfCheckoutStation(currency, banknoteDenominations, coinDenominations, 100000, 1).baggingArea;
+        WeightObserver observer = new WeightObserver();
+        scale.attach(observer);
+
+        BarcodedItem heavy = new BarcodedItem(product1.getBarcode(), 1234.567);
+        BarcodedItem light = new BarcodedItem(product1.getBarcode(), 0.001);
+        scale.add(heavy);
+        scale.add(light);
+        scale.remove(light);
+        scale.remove(heavy);
+
+        assertEquals(0.0, observer.weight, 0);
+    }
+
+    @Test(expected = SimulationException.class)
+    public void scaleRejectsSameItemTwiceTest()
+    {
+        BarcodedItem item = new BarcodedItem(product1.getBarcode(), 10);
+        selfCheckoutStation.scanningArea.add(item);
+        selfCheckoutStation.scanningArea.add(item);
+    }
+
+    @Test(expected = SimulationException.class)
+    public void scaleRemoveMissingItemTest()
+    {
+        selfCheckoutStation.scanningArea.remove(new BarcodedItem(product1.getBarcode(), 10));
+    }
+
+    /**
+     * Waits for the weight sampler to act, up to a second
+     */
+    private void awaitPhase(SelfCheckoutSoftware.Phase phase) throws InterruptedException
+    {
+        for (int i = 0; i < 100 && selfCheckoutSoftware.getPhase() != phase; i++)
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void weightFilterBagsItemTest() throws Exception
+    {
+        processItemHandler.setWeightFilter(new WeightPipeline(new WeightPipeline.Settle(0.5, 50), new WeightPipeline.Debounce(1)), 10);
+        selfCheckoutSoftware.start(customer);
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+
+        // Not acted on until it has settled
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight());
+        assertEquals(SelfCheckoutSoftware.Phase.BAGGING_ITEM, selfCheckoutSoftware.getPhase());
+
+        awaitPhase(SelfCheckoutSoftware.Phase.SCANNING_ITEM);
+        assertEquals(SelfCheckoutSoftware.Phase.SCANNING_ITEM, selfCheckoutSoftware.getPhase());
+    }
+
+    @Test
+    public void weightFilterBagsTwoItemsTest() throws Exception
+    {
+        // The scale announces each item once, and the lane keeps reading it until the filter settles
+        processItemHandler.setWeightFilter(WeightPipeline.standard(), 10);
+        selfCheckoutSoftware.start(customer);
+
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight());
+        awaitPhase(SelfCheckoutSoftware.Phase.SCANNING_ITEM);
+        assertEquals(SelfCheckoutSoftware.Phase.SCANNING_ITEM, selfCheckoutSoftware.getPhase());
+
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight() * 2);
+        awaitPhase(SelfCheckoutSoftware.Phase.SCANNING_ITEM);
+        assertEquals(SelfCheckoutSoftware.Phase.SCANNING_ITEM, selfCheckoutSoftware.getPhase());
+    }
+
+    @Test
+    public void weightFilterIgnoresKnockTest() throws Exception
+    {
+        processItemHandler.setWeightFilter(new WeightPipeline(new WeightPipeline.Settle(0.5, 50), new WeightPipeline.Debounce(1)), 10);
+        selfCheckoutSoftware.start(customer);
+
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, 40);
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, 0);
+        Thread.sleep(200);
+
+        assertEquals(SelfCheckoutSoftware.Phase.SCANNING_ITEM, selfCheckoutSoftware.getPhase());
+    }
+
+    @Test
+    public void weightFilterDetectsDiscrepancyTest() throws Exception
+    {
+        processItemHandler.setWeightFilter(new WeightPipeline(new WeightPipeline.Settle(0.5, 50), new WeightPipeline.Debounce(1)), 10);
+        selfCheckoutSoftware.start(customer);
+
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, 40);
+
+        awaitPhase(SelfCheckoutSoftware.Phase.HAVING_WEIGHT_DISCREPANCY);
+        assertEquals(SelfCheckoutSoftware.Phase.HAVING_WEIGHT_DISCREPANCY, selfCheckoutSoftware.getPhase());
+    }
+
+    @Test
+    public void weightFilterHoldsStationLockTest() throws Exception
+    {
+        processItemHandler.setWeightFilter(new WeightPipeline(new WeightPipeline.Settle(0.5, 50), new WeightPipeline.Debounce(1)), 10);
+        selfCheckoutSoftware.start(customer);
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, 40);
+
+        // The sampler cannot change phase while another thread holds the station's lock
+        synchronized (selfCheckoutSoftware)
+        {
+            Thread.sleep(200);
+            assertEquals(SelfCheckoutSoftware.Phase.SCANNING_ITEM, selfCheckoutSoftware.getPhase());
+        }
+
+        awaitPhase(SelfCheckoutSoftware.Phase.HAVING_WEIGHT_DISCREPANCY);
+        assertEquals(SelfCheckoutSoftware.Phase.HAVING_WEIGHT_DISCREPANCY, selfCheckoutSoftware.getPhase());
+    }
+
+    @Test
+    public void weightFilterAfterRestartTest()
+    {
+        WeightPipeline filter = WeightPipeline.standard();
+        selfCheckoutSoftware.setWeightFilter(filter, 50);
+
+        // Stopping replaces the handlers, which keep the station's filter
+        selfCheckoutSoftware.stopSystem();
+        selfCheckoutSoftware.startSystem();
+
+        assertSame(filter, selfCheckoutSoftware.getSelfCheckoutHandler().getProcessItemHandler().getWeightFilter());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weightFilterBadSampleTest()
+    {
+        processItemHandler.setWeightFilter(WeightPipeline.standard(), 0);
+    }
+
+    @Test
+    public void learnedToleranceTest()
+    {
+        // This product has been seen to weigh a little more than listed, and to vary
+        WeightProfile profile = Inventory.getWeightProfile(product1.getBarcode());
+        for (int i = 0; i < 20; i++)
+        {
+            profile.observe(product1.getExpectedWeight() + 0.5 + (i % 3 - 1) * 0.3);
+        }
+
+        selfCheckoutSoftware.start(customer);
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight() + 1.4);
+
+        assertEquals(SelfCheckoutSoftware.Phase.SCANNING_ITEM, selfCheckoutSoftware.getPhase());
+        assertEquals(21, profile.getCount());
+    }
+
+    @Test
+    public void learnedToleranceDiscrepancyTest()
+    {
+        WeightProfile profile = Inventory.getWeightProfile(product1.getBarcode());
+        for (int i = 0; i < 20; i++)
+        {
+            profile.observe(product1.getExpectedWeight());
+        }
+
+        selfCheckoutSoftware.start(customer);
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight() + 4);
+
+        // A product that always weighs the same keeps a tight tolerance
+        assertEquals(SelfCheckoutSoftware.Phase.HAVING_WEIGHT_DISCREPANCY, selfCheckoutSoftware.getPhase());
+        assertEquals(20, profile.getCount());
+
+        // The right weight resolves it, and is learned
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight());
+        assertEquals(21, profile.getCount());
+    }
+
+    @Test
+    public void overrideWeightNotLearnedTest()
+    {
+        WeightProfile profile = Inventory.getWeightProfile(product1.getBarcode());
+
+        selfCheckoutSoftware.start(customer);
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight() + 40);
+        assertEquals(SelfCheckoutSoftware.Phase.HAVING_WEIGHT_DISCREPANCY, selfCheckoutSoftware.getPhase());
+
+        // The attendant approving the weight does not make it what the product weighs
+        processItemHandler.overrideWeight();
+        assertEquals(0, profile.getCount());
+    }
+
+    @Test
+    public void scanAheadKeepsScanningTest()
+    {
+        processItemHandler.setScanAhead(3);
+        selfCheckoutSoftware.start(customer);
+
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+
+        assertEquals(SelfCheckoutSoftware.Phase.SCANNING_ITEM, selfCheckoutSoftware.getPhase());
+        assertFalse(selfCheckoutStation.mainScanner.isDisabled());
+        assertTrue(processItemHandler.hasItemsToBag());
+
+        // A full window must be bagged before scanning more
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+
+        assertEquals(SelfCheckoutSoftware.Phase.BAGGING_ITEM, selfCheckoutSoftware.getPhase());
+        assertTrue(selfCheckoutStation.mainScanner.isDisabled());
+        assertEquals(3, customer.getCart().size());
+    }
+
+    @Test
+    public void scanAheadVerifiesTotalTest()
+    {
+        processItemHandler.setScanAhead(3);
+        selfCheckoutSoftware.start(customer);
+
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+
+        // Only one bagged so far
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight());
+        assertEquals(SelfCheckoutSoftware.Phase.SCANNING_ITEM, selfCheckoutSoftware.getPhase());
+        assertTrue(processItemHandler.hasItemsToBag());
+
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight() * 2);
+        assertEquals(SelfCheckoutSoftware.Phase.SCANNING_ITEM, selfCheckoutSoftware.getPhase());
+        assertFalse(processItemHandler.hasItemsToBag());
+    }
+
+    @Test
+    public void scanAheadWindowFullTest()
+    {
+        processItemHandler.setScanAhead(2);
+        selfCheckoutSoftware.start(customer);
+
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+        assertEquals(SelfCheckoutSoftware.Phase.BAGGING_ITEM, selfCheckoutSoftware.getPhase());
+
+        // Bagged one at a time, then both
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight());
+        assertEquals(SelfCheckoutSoftware.Phase.BAGGING_ITEM, selfCheckoutSoftware.getPhase());
+
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight() * 2 + 0.5);
+        assertEquals(SelfCheckoutSoftware.Phase.SCANNING_ITEM, selfCheckoutSoftware.getPhase());
+        assertFalse(selfCheckoutStation.mainScanner.isDisabled());
+    }
+
+    @Test
+    public void scanAheadDiscrepancyTest()
+    {
+        processItemHandler.setScanAhead(3);
+        selfCheckoutSoftware.start(customer);
+
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+        processItemHandler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+
+        // More than everything scanned can never be resolved by bagging
+        processItemHandler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight() * 2 + 50);
+        assertEquals(SelfCheckoutSoftware.Phase.HAVING_WEIGHT_DISCREPANCY, selfCheckoutSoftware.getPhase());
+    }
+
+    @Test
+    public void scanAheadCheckoutTest()
+    {
+        ProcessItemHandler handler = selfCheckoutSoftware.getSelfCheckoutHandler().getProcessItemHandler();
+        handler.setScanAhead(3);
+        selfCheckoutSoftware.start(customer);
+        handler.setCustomer(customer);
+
+        handler.barcodeScanned(selfCheckoutStation.mainScanner, product1.getBarcode());
+
+        // The item scanned ahead has to be bagged first
+        selfCheckoutSoftware.checkout();
+        assertEquals(SelfCheckoutSoftware.Phase.BAGGING_ITEM, selfCheckoutSoftware.getPhase());
+
+        handler.weightChanged(selfCheckoutStation.baggingArea, product1.getExpectedWeight());
+        selfCheckoutSoftware.checkout();
+        assertEquals(SelfCheckoutSoftware.Phase.CHOOSING_PAYMENT_METHOD, selfCheckoutSoftware.getPhase());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scanAheadBadWindowTest()
+    {
+        processItemHandler.setScanAhead(0);
+    }
 }
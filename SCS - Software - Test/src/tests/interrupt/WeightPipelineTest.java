@@ -0,0 +1,148 @@
+package tests.interrupt;
+
+import interrupt.WeightPipeline;
+import org.junit.Test;
+import tests.benchmark.ScaleReplay;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WeightPipelineTest
+{
+    @Test
+    public void medianDropsSpikeTest()
+    {
+        WeightPipeline.Median median = new WeightPipeline.Median(3);
+
+        assertEquals(10, median.filter(0, 10), 0);
+        assertEquals(10, median.filter(50, 10), 0);
+        assertEquals(10, median.filter(100, 500), 0);
+        assertEquals(10, median.filter(150, 10), 0);
+
+        median.reset();
+        assertEquals(7, median.filter(200, 7), 0);
+    }
+
+    @Test
+    public void movingAverageTest()
+    {
+        WeightPipeline.MovingAverage average = new WeightPipeline.MovingAverage(4);
+
+        assertEquals(4, average.filter(0, 4), 0);
+        assertEquals(6, average.filter(50, 8), 0);
+        average.filter(100, 8);
+        average.filter(150, 8);
+        assertEquals(8, average.filter(200, 8), 0);
+    }
+
+    @Test
+    public void settleTest()
+    {
+        WeightPipeline.Settle settle = new WeightPipeline.Settle(0.5, 200);
+
+        assertTrue(Double.isNaN(settle.filter(0, 100)));
+        assertFalse(settle.isSettled());
+        assertTrue(Double.isNaN(settle.filter(100, 100.3)));
+
+        // Moved too far, so starts over
+        assertTrue(Double.isNaN(settle.filter(200, 101)));
+        assertTrue(Double.isNaN(settle.filter(300, 101.2)));
+        assertEquals((101 + 101.2 + 100.9) / 3, settle.filter(400, 100.9), 1e-9);
+        assertTrue(settle.isSettled());
+    }
+
+    @Test
+    public void debounceTest()
+    {
+        WeightPipeline.Debounce debounce = new WeightPipeline.Debounce(1);
+
+        assertTrue(Double.isNaN(debounce.filter(0, 0.5)));
+        assertEquals(20, debounce.filter(50, 20), 0);
+        assertTrue(Double.isNaN(debounce.filter(100, 20.8)));
+        assertEquals(0, debounce.filter(150, 0), 0);
+    }
+
+    @Test
+    public void pipelineTest()
+    {
+        WeightPipeline pipeline = WeightPipeline.standard();
+        long time = 0;
+
+        // An empty scale is not a change
+        for (; time < 1000; time += 50)
+        {
+            assertTrue(Double.isNaN(pipeline.filter(time, 0)));
+        }
+        assertTrue(pipeline.isSettled());
+
+        double weight = Double.NaN;
+        for (; time < 2000 && Double.isNaN(weight); time += 50)
+        {
+            weight = pipeline.filter(time, 250);
+        }
+
+        assertEquals(250, weight, 0);
+        assertTrue(pipeline.isSettled());
+        assertTrue(Double.isNaN(pipeline.filter(time, 250)));
+    }
+
+    @Test
+    public void secondItemTest()
+    {
+        WeightPipeline pipeline = WeightPipeline.standard();
+        long time = 0;
+
+        double weight = Double.NaN;
+        for (; time < 2000 && Double.isNaN(weight); time += 50)
+        {
+            weight = pipeline.filter(time, 250);
+        }
+        assertEquals(250, weight, 0);
+
+        // The scale announces the next item once; the median still passes on the old weight
+        assertTrue(Double.isNaN(pipeline.filter(time, 500)));
+        assertFalse(pipeline.isSettled());
+
+        // Offering it again until settled passes it on
+        weight = Double.NaN;
+        for (time += 50; time < 4000 && Double.isNaN(weight); time += 50)
+        {
+            weight = pipeline.filter(time, 500);
+        }
+        assertEquals(500, weight, 0);
+        assertTrue(pipeline.isSettled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyPipelineTest()
+    {
+        new WeightPipeline();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badWindowTest()
+    {
+        new WeightPipeline.Median(0);
+    }
+
+    @Test
+    public void replayTest()
+    {
+        List<ScaleReplay.Trace> traces = ScaleReplay.generate(5, 501);
+
+        int rawFalse = 0;
+        for (ScaleReplay.Trace trace : traces)
+        {
+            boolean expected = trace.kind == ScaleReplay.Kind.WRONG_ITEM || trace.kind == ScaleReplay.Kind.UNEXPECTED_ITEM;
+
+            rawFalse += !expected && ScaleReplay.replay(trace, null) ? 1 : 0;
+            assertEquals(trace.kind + " trace", expected, ScaleReplay.replay(trace, WeightPipeline.standard()));
+        }
+
+        // The traces are noisy enough to lock a lane that acts on every change
+        assertTrue(rawFalse > 0);
+    }
+}
@@ -0,0 +1,272 @@
+package tests.software;
+
+import org.junit.After;
+import org.junit.Test;
+import software.EventBus;
+import software.EventBus.WaitStrategy;
+import software.observers.Event;
+import software.observers.Observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EventBusTest
+{
+    /**
+     * Records the values it is notified of, optionally waiting on a latch first
+     */
+    static class RecordingObserver implements Observer
+    {
+        final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        CountDownLatch gate = null;
+
+        void received(int value)
+        {
+            try
+            {
+                if (gate != null)
+                {
+                    gate.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            values.add(value);
+        }
+    }
+
+    /**
+     * Carries a value to record, or fails to be handled if it is negative
+     */
+    static class ValueEvent implements Event<RecordingObserver, ValueEvent>
+    {
+        enum Kind
+        {
+            EVEN, ODD
+        }
+
+        int value;
+
+        ValueEvent set(int value)
+        {
+            this.value = value;
+            return this;
+        }
+
+        @Override
+        public Kind getKind()
+        {
+            return value % 2 == 0 ? Kind.EVEN : Kind.ODD;
+        }
+
+        @Override
+        public void dispatchTo(RecordingObserver observer)
+        {
+            if (value < 0)
+            {
+                throw new IllegalStateException("Expected by the test");
+            }
+            observer.received(value);
+        }
+
+        @Override
+        public void copyFrom(ValueEvent event)
+        {
+            value = event.value;
+        }
+    }
+
+    EventBus<RecordingObserver, ValueEvent> bus;
+
+    // Reused for every publish, as the bus copies it
+    ValueEvent event = new ValueEvent();
+
+    @After
+    public void teardown()
+    {
+        if (bus != null)
+        {
+            bus.unsubscribeAll();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityNotPowerOfTwoTest()
+    {
+        new EventBus<RecordingObserver, ValueEvent>(ValueEvent::new, 1000);
+    }
+
+    @Test
+    public void publishDoesNotWaitForObserverTest()
+    {
+        bus = new EventBus<>(ValueEvent::new, 8);
+        RecordingObserver observer = new RecordingObserver();
+        observer.gate = new CountDownLatch(1);
+        bus.subscribe(observer, WaitStrategy.BLOCKING);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++)
+        {
+            bus.publish(event.set(i));
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The observer is stuck on the first event, and none have been handled
+        assertTrue(elapsed < 1000);
+        assertEquals(5, bus.getLag(observer));
+        assertTrue(observer.values.isEmpty());
+
+        observer.gate.countDown();
+        assertTrue(bus.awaitDelivered(5000));
+        assertEquals(0, bus.getLag(observer));
+        assertEquals(List.of(0, 1, 2, 3, 4), observer.values);
+    }
+
+    @Test
+    public void deliversInOrderTest()
+    {
+        // More events than slots, so the ring wraps and publishers wait for the observers
+        for (WaitStrategy strategy : WaitStrategy.values())
+        {
+            bus = new EventBus<>(ValueEvent::new, 16);
+            RecordingObserver first = new RecordingObserver();
+            RecordingObserver second = new RecordingObserver();
+            bus.subscribe(first, strategy);
+            bus.subscribe(second, strategy);
+
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 1000; i++)
+            {
+                bus.publish(event.set(i));
+                expected.add(i);
+            }
+
+            assertTrue(strategy.toString(), bus.awaitDelivered(5000));
+            assertEquals(strategy.toString(), expected, first.values);
+            assertEquals(strategy.toString(), expected, second.values);
+            assertEquals(999, bus.getSequence());
+            bus.unsubscribeAll();
+        }
+    }
+
+    @Test
+    public void concurrentPublishersTest() throws InterruptedException
+    {
+        bus = new EventBus<>(ValueEvent::new, 64);
+        RecordingObserver observer = new RecordingObserver();
+        bus.subscribe(observer, WaitStrategy.YIELDING);
+
+        Thread[] publishers = new Thread[4];
+        for (int t = 0; t < publishers.length; t++)
+        {
+            final int base = t * 1000;
+            publishers[t] = new Thread(() -> {
+                ValueEvent own = new ValueEvent();
+                for (int i = 0; i < 1000; i++)
+                {
+                    bus.publish(own.set(base + i));
+                }
+            });
+            publishers[t].start();
+        }
+        for (Thread publisher : publishers)
+        {
+            publisher.join();
+        }
+
+        assertTrue(bus.awaitDelivered(5000));
+        assertEquals(4000, observer.values.size());
+
+        // Each publisher's events arrive in the order it published them
+        int[] last = {-1, -1, -1, -1};
+        for (int value : observer.values)
+        {
+            assertTrue(value % 1000 > last[value / 1000]);
+            last[value / 1000] = value % 1000;
+        }
+    }
+
+    @Test
+    public void failingNotificationTest()
+    {
+        bus = new EventBus<>(ValueEvent::new, 8);
+        RecordingObserver observer = new RecordingObserver();
+        bus.subscribe(observer, WaitStrategy.SLEEPING);
+
+        bus.publish(event.set(-1));
+        bus.publish(event.set(1));
+
+        assertTrue(bus.awaitDelivered(5000));
+        assertEquals(List.of(1), observer.values);
+    }
+
+    @Test
+    public void interestsTest()
+    {
+        bus = new EventBus<>(ValueEvent::new, 8);
+        RecordingObserver odd = new RecordingObserver();
+        RecordingObserver all = new RecordingObserver();
+        bus.subscribe(odd, Event.mask(ValueEvent.Kind.ODD), WaitStrategy.BLOCKING);
+        bus.subscribe(all, WaitStrategy.BLOCKING);
+
+        for (int i = 0; i < 100; i++)
+        {
+            bus.publish(event.set(i));
+        }
+
+        assertTrue(bus.awaitDelivered(5000));
+        assertEquals(50, odd.values.size());
+        assertEquals(100, all.values.size());
+        for (int value : odd.values)
+        {
+            assertEquals(1, value % 2);
+        }
+
+        // With only the odd observer left, even events are not put in the ring
+        bus.unsubscribe(all);
+        long sequence = bus.getSequence();
+        bus.publish(event.set(100));
+        assertEquals(sequence, bus.getSequence());
+        bus.publish(event.set(101));
+        assertEquals(sequence + 1, bus.getSequence());
+    }
+
+    @Test
+    public void unsubscribeTest()
+    {
+        bus = new EventBus<>(ValueEvent::new, 8);
+        RecordingObserver observer = new RecordingObserver();
+        bus.subscribe(observer, WaitStrategy.BLOCKING);
+        assertTrue(bus.isSubscribed(observer));
+
+        bus.publish(event.set(1));
+        assertTrue(bus.awaitDelivered(5000));
+
+        assertTrue(bus.unsubscribe(observer));
+        assertFalse(bus.unsubscribe(observer));
+        assertFalse(bus.isSubscribed(observer));
+
+        // Nobody is listening, so publishing does not even claim a slot
+        bus.publish(event.set(2));
+        assertEquals(0, bus.getMaximumLag());
+        assertEquals(List.of(1), observer.values);
+
+        try
+        {
+            bus.getLag(observer);
+            fail("Observer is no longer subscribed");
+        } catch (IllegalArgumentException e)
+        {
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package tests.software;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import software.EventCoalescer;
+import software.SelfCheckoutSoftware;
+import software.SelfCheckoutSoftware.Phase;
+import software.observers.SelfCheckoutEvent;
+import software.observers.SelfCheckoutObserver;
+import software.observers.SupervisionEvent;
+import software.observers.SupervisionObserver;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventCoalescerTest
+{
+    static final long FRAME = TimeUnit.MILLISECONDS.toNanos(EventCoalescer.FRAME_MILLIS);
+
+    SelfCheckoutSoftware software;
+    List<String> received;
+    EventCoalescer<SelfCheckoutObserver, SelfCheckoutEvent> coalescer;
+
+    // Reused for every offer, as the coalescer copies what it holds
+    SelfCheckoutEvent event = new SelfCheckoutEvent();
+
+    @Before
+    public void setup()
+    {
+        software = new SelfCheckoutSoftware(new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10},
+                new BigDecimal[] {new BigDecimal("0.05")}, 1000, 1));
+        received = new ArrayList<>();
+        coalescer = new EventCoalescer<>(SoftwareTest.recorder(SelfCheckoutObserver.class, received), FRAME,
+                SelfCheckoutEvent::new);
+    }
+
+    private void offer(SelfCheckoutEvent.Kind kind, Object argument, long now)
+    {
+        coalescer.offer(event.set(software, kind, argument), now);
+    }
+
+    @Test
+    public void mergesWithinFrameTest()
+    {
+        offer(SelfCheckoutEvent.Kind.PHASE_CHANGED, Phase.BAGGING_ITEM, 0);
+        offer(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED, null, 1);
+        offer(SelfCheckoutEvent.Kind.PHASE_CHANGED, Phase.SCANNING_ITEM, 2);
+
+        // Held until the end of the frame the first arrived in
+        assertFalse(coalescer.flushIfDue(FRAME - 1));
+        assertTrue(received.isEmpty());
+        assertTrue(coalescer.isHolding());
+
+        assertTrue(coalescer.flushIfDue(FRAME));
+        assertFalse(coalescer.isHolding());
+        assertEquals(List.of("phaseChanged[SCANNING_ITEM]", "touchScreenBlocked[]"), received);
+    }
+
+    @Test
+    public void otherEventsImmediateTest()
+    {
+        offer(SelfCheckoutEvent.Kind.PHASE_CHANGED, Phase.HAVING_WEIGHT_DISCREPANCY, 0);
+        offer(SelfCheckoutEvent.Kind.WEIGHT_DISCREPANCY_IN_BAGGING_AREA_DETECTED, null, 1);
+        offer(SelfCheckoutEvent.Kind.COIN_ADDED, null, 2);
+        offer(SelfCheckoutEvent.Kind.COIN_ADDED, null, 3);
+
+        assertEquals(List.of("weightDiscrepancyInBaggingAreaDetected[]", "coinAdded[]", "coinAdded[]"), received);
+
+        coalescer.flush();
+        assertEquals("phaseChanged[HAVING_WEIGHT_DISCREPANCY]", received.get(3));
+    }
+
+    @Test
+    public void unchangedStateSkippedTest()
+    {
+        offer(SelfCheckoutEvent.Kind.PHASE_CHANGED, Phase.SCANNING_ITEM, 0);
+        offer(SelfCheckoutEvent.Kind.PLACE_IN_BAGGING_AREA_UNBLOCKED, null, 0);
+        coalescer.flushIfDue(FRAME);
+        assertEquals(2, received.size());
+
+        // Round trips within the next frame end where they started, so there is nothing to show
+        offer(SelfCheckoutEvent.Kind.PHASE_CHANGED, Phase.BAGGING_ITEM, 2 * FRAME);
+        offer(SelfCheckoutEvent.Kind.PLACE_IN_BAGGING_AREA_BLOCKED, null, 2 * FRAME);
+        offer(SelfCheckoutEvent.Kind.PHASE_CHANGED, Phase.SCANNING_ITEM, 2 * FRAME + 1);
+        offer(SelfCheckoutEvent.Kind.PLACE_IN_BAGGING_AREA_UNBLOCKED, null, 2 * FRAME + 1);
+        assertTrue(coalescer.flushIfDue(3 * FRAME));
+        assertEquals(2, received.size());
+
+        offer(SelfCheckoutEvent.Kind.PHASE_CHANGED, Phase.BAGGING_ITEM, 4 * FRAME);
+        coalescer.flushIfDue(5 * FRAME);
+        assertEquals(List.of("phaseChanged[SCANNING_ITEM]", "placeInBaggingAreaUnblocked[]",
+                "phaseChanged[BAGGING_ITEM]"), received);
+    }
+
+    @Test
+    public void stationsKeptApartTest()
+    {
+        List<String> supervised = new ArrayList<>();
+        EventCoalescer<SupervisionObserver, SupervisionEvent> supervision = new EventCoalescer<>(
+                SoftwareTest.recorder(SupervisionObserver.class, supervised), FRAME, SupervisionEvent::new);
+        SelfCheckoutSoftware other = new SelfCheckoutSoftware(new SelfCheckoutStation(Currency.getInstance("CAD"),
+                new int[] {5, 10}, new BigDecimal[] {new BigDecimal("0.05")}, 1000, 1));
+
+        SupervisionEvent event = new SupervisionEvent();
+        supervision.offer(event.set(SupervisionEvent.Kind.TOUCH_SCREEN_BLOCKED, software), 0);
+        supervision.offer(event.set(SupervisionEvent.Kind.TOUCH_SCREEN_BLOCKED, other), 1);
+        supervision.offer(event.set(SupervisionEvent.Kind.TOUCH_SCREEN_UNBLOCKED, software), 2);
+        supervision.flush();
+
+        assertEquals(2, supervised.size());
+        assertEquals("touchScreenUnblocked[" + software + "]", supervised.get(0));
+        assertEquals("touchScreenBlocked[" + other + "]", supervised.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void frameNotPositiveTest()
+    {
+        new EventCoalescer<>(SoftwareTest.recorder(SelfCheckoutObserver.class, received), 0, SelfCheckoutEvent::new);
+    }
+}
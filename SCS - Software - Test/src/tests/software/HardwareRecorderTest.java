@@ -0,0 +1,423 @@
+package tests.software;
+
+import application.Main;
+import checkout.PrintSpooler;
+import interrupt.WeightPipeline;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Card.CardData;
+import org.lsmr.selfcheckout.BarcodedItem;
+import org.lsmr.selfcheckout.Coin;
+import org.lsmr.selfcheckout.Item;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.AbstractDevice;
+import org.lsmr.selfcheckout.devices.CardReader;
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
+import org.lsmr.selfcheckout.devices.observers.CardReaderObserver;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import software.HardwareRecorder;
+import software.HardwareReplay;
+import software.SelfCheckoutSoftware;
+import software.SelfCheckoutSoftware.PaymentMethod;
+import software.SelfCheckoutSoftware.Phase;
+import software.SupervisionSoftware;
+import store.Inventory;
+import store.credentials.CredentialsSystem;
+import user.Attendant;
+import user.Customer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HardwareRecorderTest
+{
+    static final String username = "recorder";
+    static final String password = "recorder";
+
+    final Currency currency = Currency.getInstance("CAD");
+    final BigDecimal loonie = new BigDecimal("1.00");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    BarcodedProduct product;
+    Path file;
+
+    @BeforeClass
+    public static void initialSetup()
+    {
+        CredentialsSystem.addAccount(username, password);
+    }
+
+    @AfterClass
+    public static void cleanup()
+    {
+        CredentialsSystem.removeAccount(username);
+    }
+
+    @Before
+    public void setup()
+    {
+        Attendant attendant = new Attendant();
+        attendant.setLogin(username, password);
+        Main.Tangibles.ATTENDANTS.clear();
+        Main.Tangibles.ATTENDANTS.add(attendant);
+
+        Inventory.clear();
+        product = new BarcodedProduct(new Barcode(new Numeral[] {Numeral.four, Numeral.two}), "Item",
+                new BigDecimal("1.00"), 100);
+        Inventory.addProduct(product);
+
+        file = folder.getRoot().toPath().resolve("lane.rec");
+    }
+
+    private SelfCheckoutStation station()
+    {
+        return new SelfCheckoutStation(currency, new int[] {5, 10}, new BigDecimal[] {new BigDecimal("0.25"), loonie},
+                1000, 1);
+    }
+
+    private SelfCheckoutSoftware software(SelfCheckoutStation station) throws Exception
+    {
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        SupervisionSoftware supervision = new SupervisionSoftware(new SupervisionStation());
+        supervision.add(software);
+        supervision.login(username, password);
+        return software;
+    }
+
+    private void awaitReceipt(SelfCheckoutSoftware software) throws InterruptedException
+    {
+        // Receipts are printed in the background
+        PrintSpooler spooler = software.getSelfCheckoutController().getReceipt().getPrintSpooler();
+        if (spooler != null)
+        {
+            assertTrue(spooler.awaitIdle(5000));
+        }
+    }
+
+    private void scan(SelfCheckoutStation station, SelfCheckoutSoftware software, Item item)
+    {
+        // The scanner misses now and then
+        while (software.getPhase() == Phase.SCANNING_ITEM)
+        {
+            station.mainScanner.scan(item);
+        }
+    }
+
+    /**
+     * Two items, a weight discrepancy the attendant approves, an overloaded
+     * scale, and a cash payment.
+     */
+    private void checkout(SelfCheckoutStation station, SelfCheckoutSoftware software) throws Exception
+    {
+        software.start(new Customer());
+
+        Item first = new BarcodedItem(product.getBarcode(), product.getExpectedWeight());
+        scan(station, software, first);
+        station.baggingArea.add(first);
+
+        Item second = new BarcodedItem(product.getBarcode(), product.getExpectedWeight());
+        Item other = new BarcodedItem(product.getBarcode(), 500);
+        scan(station, software, second);
+        station.baggingArea.add(other);
+        station.baggingArea.add(second);
+        station.baggingArea.remove(other);
+        software.getSupervisionSoftware().approveWeightDiscrepancy(software);
+
+        // Too much on the scale blocks the station until it is taken off, and the attendant checks the bagging area
+        Item heavy = new BarcodedItem(product.getBarcode(), 2000);
+        station.baggingArea.add(heavy);
+        station.baggingArea.remove(heavy);
+        software.getSupervisionSoftware().approveWeightDiscrepancy(software);
+
+        software.checkout();
+        software.selectedPaymentMethod(PaymentMethod.CASH);
+        while (software.getCustomer().getCashBalance().compareTo(new BigDecimal("2.00")) < 0)
+        {
+            station.coinSlot.accept(new Coin(currency, loonie));
+        }
+        software.getSelfCheckoutController().getCheckout().makeChange();
+
+        station.baggingArea.remove(first);
+        station.baggingArea.remove(second);
+    }
+
+    private HardwareRecorder recorder(SelfCheckoutStation station) throws Exception
+    {
+        HardwareRecorder recorder = new HardwareRecorder(station, file);
+        station.printer.addPaper(ReceiptPrinter.MAXIMUM_PAPER);
+        station.printer.addInk(ReceiptPrinter.MAXIMUM_INK);
+        return recorder;
+    }
+
+    @Test
+    public void replayTest() throws Exception
+    {
+        SelfCheckoutStation station = station();
+        HardwareRecorder recorder = recorder(station);
+        SelfCheckoutSoftware software = software(station);
+        recorder.watch(software);
+        checkout(station, software);
+        recorder.close();
+        awaitReceipt(software);
+
+        HardwareReplay replay = new HardwareReplay(file);
+        assertEquals(List.of(Phase.SCANNING_ITEM, Phase.BAGGING_ITEM, Phase.SCANNING_ITEM, Phase.BAGGING_ITEM,
+                Phase.HAVING_WEIGHT_DISCREPANCY, Phase.SCANNING_ITEM, Phase.SCANNING_ITEM, Phase.BLOCKING,
+                Phase.SCANNING_ITEM, Phase.HAVING_WEIGHT_DISCREPANCY, Phase.SCANNING_ITEM,
+                Phase.CHOOSING_PAYMENT_METHOD, Phase.PROCESSING_PAYMENT, Phase.PAYMENT_COMPLETE, Phase.IDLE),
+                replay.getPhases());
+
+        SelfCheckoutStation fresh = station();
+        SelfCheckoutSoftware replayed = software(fresh);
+        HardwareReplay.Result result = replay.replay(replayed, false);
+        result.verify();
+        assertTrue(result.getProblems().toString(), result.getProblems().isEmpty());
+        awaitReceipt(replayed);
+
+        // The coins went through the hardware, and the receipt was printed on the paper added
+        assertEquals(station.coinDispensers.get(loonie).size(), fresh.coinDispensers.get(loonie).size());
+        assertEquals(station.printer.getPaperRemaining(), fresh.printer.getPaperRemaining());
+    }
+
+    @Test
+    public void realTimeTest() throws Exception
+    {
+        SelfCheckoutStation station = station();
+        HardwareRecorder recorder = recorder(station);
+        SelfCheckoutSoftware software = software(station);
+        recorder.watch(software);
+
+        software.start(new Customer());
+        Item item = new BarcodedItem(product.getBarcode(), product.getExpectedWeight());
+        scan(station, software, item);
+        Thread.sleep(200);
+        station.baggingArea.add(item);
+        recorder.close();
+
+        HardwareReplay replay = new HardwareReplay(file);
+        List<HardwareReplay.Record> records = replay.getRecords();
+        long recorded = records.get(records.size() - 1).getNanos();
+        assertTrue(recorded >= 200000000L);
+
+        long start = System.nanoTime();
+        replay.replay(software(station()), true).verify();
+        assertTrue(System.nanoTime() - start >= recorded);
+    }
+
+    @Test
+    public void divergenceTest() throws Exception
+    {
+        SelfCheckoutStation station = station();
+        HardwareRecorder recorder = recorder(station);
+        SelfCheckoutSoftware software = software(station);
+        recorder.watch(software);
+        checkout(station, software);
+        recorder.close();
+
+        // The product is gone, so the scans no longer get the customer to bag it
+        Inventory.clear();
+        HardwareReplay.Result result = new HardwareReplay(file).replay(software(station()), false);
+
+        assertFalse(result.matches());
+        assertEquals(Phase.SCANNING_ITEM, result.getReplayedPhases().get(0));
+        assertEquals(Phase.BAGGING_ITEM, result.getRecordedPhases().get(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void verifyDivergenceTest() throws Exception
+    {
+        SelfCheckoutStation station = station();
+        HardwareRecorder recorder = recorder(station);
+        SelfCheckoutSoftware software = software(station);
+        recorder.watch(software);
+        checkout(station, software);
+        recorder.close();
+
+        Inventory.clear();
+        new HardwareReplay(file).replay(software(station()), false).verify();
+    }
+
+    @Test
+    public void hardwarePhaseNotForcedTest() throws Exception
+    {
+        SelfCheckoutStation station = station();
+        HardwareRecorder recorder = recorder(station);
+        SelfCheckoutSoftware software = software(station);
+        recorder.watch(software);
+        software.start(new Customer());
+        scan(station, software, new BarcodedItem(product.getBarcode(), product.getExpectedWeight()));
+        station.baggingArea.add(new BarcodedItem(product.getBarcode(), 500));
+        recorder.close();
+
+        // Replayed as fast as possible, a lane that waits for weights to settle has not acted on the weight yet
+        SelfCheckoutSoftware filtered = software(station());
+        filtered.setWeightFilter(WeightPipeline.standard(), 50);
+        HardwareReplay.Result result = new HardwareReplay(file).replay(filtered, false);
+
+        assertEquals(Phase.HAVING_WEIGHT_DISCREPANCY, result.getRecordedPhases().get(2));
+        assertFalse(result.getReplayedPhases().contains(Phase.HAVING_WEIGHT_DISCREPANCY));
+        assertTrue(result.getProblems().toString(),
+                result.getProblems().get(0).endsWith("did not cause HAVING_WEIGHT_DISCREPANCY"));
+    }
+
+    @Test
+    public void cardTest() throws Exception
+    {
+        TestCard card = new TestCard("credit", "4510123456789000", "Card Holder", "054");
+        SelfCheckoutStation station = station();
+        HardwareRecorder recorder = recorder(station);
+        station.cardReader.announce(observer -> observer.cardDataRead(station.cardReader, card));
+        recorder.close();
+
+        // Only the type and last four digits are recorded
+        String recorded = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        assertTrue(recorded.contains("credit"));
+        assertTrue(recorded.contains("9000"));
+        assertFalse(recorded.contains(card.getNumber()));
+        assertFalse(recorded.contains(card.getCardholder()));
+
+        // The replay reads the matching test card, seen here whatever the software makes of it
+        List<CardData> read = new ArrayList<>();
+        SelfCheckoutStation fresh = station();
+        fresh.cardReader.attach(new CardReaderObserver()
+        {
+            public void enabled(AbstractDevice<? extends AbstractDeviceObserver> device) {}
+            public void disabled(AbstractDevice<? extends AbstractDeviceObserver> device) {}
+            public void cardInserted(CardReader reader) {}
+            public void cardRemoved(CardReader reader) {}
+            public void cardTapped(CardReader reader) {}
+            public void cardSwiped(CardReader reader) {}
+            public void cardDataRead(CardReader reader, CardData data)
+            {
+                read.add(data);
+            }
+        });
+
+        SelfCheckoutSoftware software = software(fresh);
+        fresh.cardReader.enable();
+
+        HardwareReplay replay = new HardwareReplay(file);
+        replay.addCard(new TestCard("credit", "4510987654321000", "Someone Else", "563"));
+        replay.addCard(card);
+        HardwareReplay.Result result = replay.replay(software, false);
+
+        assertEquals(result.getProblems().toString(), 1, read.size());
+        assertEquals(card.getNumber(), read.get(0).getNumber());
+        assertEquals(card.getCVV(), read.get(0).getCVV());
+    }
+
+    @Test
+    public void cardMissingTest() throws Exception
+    {
+        SelfCheckoutStation station = station();
+        HardwareRecorder recorder = recorder(station);
+        TestCard card = new TestCard("debit", "4511220329440683", "Card Holder", "232");
+        station.cardReader.announce(observer -> observer.cardDataRead(station.cardReader, card));
+        recorder.close();
+
+        SelfCheckoutStation fresh = station();
+        SelfCheckoutSoftware software = software(fresh);
+        fresh.cardReader.enable();
+
+        HardwareReplay.Result result = new HardwareReplay(file).replay(software, false);
+        assertEquals(List.of("No debit card ending in 0683 to read"), result.getProblems());
+    }
+
+    /**
+     * The data read from a card, the same every time
+     */
+    static class TestCard implements CardData
+    {
+        final String type;
+        final String number;
+        final String cardholder;
+        final String cvv;
+
+        TestCard(String type, String number, String cardholder, String cvv)
+        {
+            this.type = type;
+            this.number = number;
+            this.cardholder = cardholder;
+            this.cvv = cvv;
+        }
+
+        public String getType()
+        {
+            return type;
+        }
+
+        public String getNumber()
+        {
+            return number;
+        }
+
+        public String getCardholder()
+        {
+            return cardholder;
+        }
+
+        public String getCVV()
+        {
+            return cvv;
+        }
+    }
+
+    @Test
+    public void ringWrapsTest() throws Exception
+    {
+        SelfCheckoutStation station = station();
+        HardwareRecorder recorder = new HardwareRecorder(station, file, 1 << 17);
+
+        Item item = new BarcodedItem(product.getBarcode(), 250);
+        for (int i = 0; i < 5000; i++)
+        {
+            station.baggingArea.add(item);
+            station.baggingArea.remove(item);
+        }
+        recorder.close();
+
+        List<HardwareReplay.Record> records = new HardwareReplay(file).getRecords();
+        assertEquals(10000, recorder.getRecorded());
+
+        // Only the latest fit, in the order they were recorded
+        assertTrue(records.size() > 3000);
+        assertTrue(records.size() < 10000);
+        for (int i = 1; i < records.size(); i++)
+        {
+            assertTrue(records.get(i - 1).getNanos() <= records.get(i).getNanos());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityTooSmallTest() throws Exception
+    {
+        new HardwareRecorder(station(), file, 1024);
+    }
+
+    @Test(expected = IOException.class)
+    public void notRecordingTest() throws Exception
+    {
+        Files.write(file, new byte[128]);
+        new HardwareReplay(file);
+    }
+}
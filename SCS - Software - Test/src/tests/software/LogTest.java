@@ -0,0 +1,194 @@
+package tests.software;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import software.Log;
+import software.Log.Category;
+import software.Log.Level;
+import software.SelfCheckoutSoftware.Phase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogTest
+{
+    List<String> lines;
+    Log log;
+
+    @Before
+    public void setup()
+    {
+        lines = Collections.synchronizedList(new ArrayList<>());
+        log = new Log(16, lines::add);
+    }
+
+    @After
+    public void teardown()
+    {
+        log.close();
+    }
+
+    @Test
+    public void formatTest()
+    {
+        log.log(Level.INFO, Category.PHASE, "Set phase", "phase", Phase.BAGGING_ITEM);
+        log.log(Level.WARN, Category.HARDWARE, "Scale overloaded", null, null);
+        log.log(Level.ERROR, Category.RECEIPT, "Say \"hi\"\n", "count", 3);
+        log.flush();
+
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0), lines.get(0).matches("\\{\"time\":\\d+,\"level\":\"INFO\",\"category\":\"PHASE\","
+                + "\"event\":\"Set phase\",\"phase\":\"BAGGING_ITEM\"\\}"));
+        assertTrue(lines.get(1), lines.get(1).endsWith(",\"event\":\"Scale overloaded\"}"));
+        assertTrue(lines.get(2), lines.get(2).endsWith(",\"event\":\"Say \\\"hi\\\"\\n\",\"count\":3}"));
+    }
+
+    @Test
+    public void levelsTest()
+    {
+        // Debug is off by default
+        assertEquals(Level.INFO, log.getLevel(Category.PHASE));
+        assertFalse(log.isEnabled(Level.DEBUG, Category.PHASE));
+        log.log(Level.DEBUG, Category.PHASE, "hidden", null, null);
+
+        log.setLevel(Category.PHASE, Level.DEBUG);
+        log.setLevel(Category.GUI, Level.OFF);
+        log.log(Level.DEBUG, Category.PHASE, "shown", null, null);
+        log.log(Level.ERROR, Category.GUI, "hidden", null, null);
+        log.log(Level.DEBUG, Category.RECEIPT, "hidden", null, null);
+        log.flush();
+
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"shown\""));
+    }
+
+    @Test
+    public void dropsWhenFullTest() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> slow = new ArrayList<>();
+        Log blocked = new Log(4, line -> {
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            slow.add(line);
+        });
+
+        for (int i = 0; i < 10; i++)
+        {
+            blocked.log(Level.INFO, Category.GUI, "event " + i, null, null);
+        }
+
+        // The first four fit, and the rest are dropped rather than waited for
+        assertEquals(6, blocked.getDropped());
+        release.countDown();
+        blocked.close();
+
+        assertEquals(4, slow.size());
+        assertTrue(slow.get(3).contains("event 3"));
+    }
+
+    @Test
+    public void threadsTest() throws Exception
+    {
+        Log big = new Log(1 << 16, lines::add);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            String name = "thread " + t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++)
+                {
+                    big.log(Level.INFO, Category.PHASE, name, "i", i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        big.close();
+
+        assertEquals(0, big.getDropped());
+        assertEquals(4000, lines.size());
+
+        // Each thread's records are written in the order it logged them
+        for (int t = 0; t < threads.length; t++)
+        {
+            int next = 0;
+            for (String line : lines)
+            {
+                if (line.contains("\"thread " + t + "\""))
+                {
+                    assertTrue(line.endsWith("\"i\":" + next + "}"));
+                    next++;
+                }
+            }
+            assertEquals(1000, next);
+        }
+    }
+
+    @Test
+    public void numbersTest()
+    {
+        log.log(Level.INFO, Category.HARDWARE, "Weight", "grams", 12.5);
+        log.log(Level.INFO, Category.HARDWARE, "Weight", "grams", Double.NaN);
+        log.log(Level.INFO, Category.HARDWARE, "Weight", "grams", Double.POSITIVE_INFINITY);
+        log.log(Level.INFO, Category.HARDWARE, "Weight", "grams", (Object) Double.NaN);
+        log.log(Level.INFO, Category.HARDWARE, "Count", "items", Long.MAX_VALUE);
+        log.flush();
+
+        // JSON has no numbers for NaN and the infinities, so they are quoted
+        assertTrue(lines.get(0), lines.get(0).endsWith(",\"grams\":12.5}"));
+        assertTrue(lines.get(1), lines.get(1).endsWith(",\"grams\":\"NaN\"}"));
+        assertTrue(lines.get(2), lines.get(2).endsWith(",\"grams\":\"Infinity\"}"));
+        assertTrue(lines.get(3), lines.get(3).endsWith(",\"grams\":\"NaN\"}"));
+        assertTrue(lines.get(4), lines.get(4).endsWith(",\"items\":" + Long.MAX_VALUE + "}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullEventTest()
+    {
+        log.log(Level.INFO, Category.GUI, null, null, null);
+    }
+
+    @Test
+    public void formatFailureTest()
+    {
+        Object broken = new Object()
+        {
+            @Override
+            public String toString()
+            {
+                throw new IllegalStateException();
+            }
+        };
+
+        log.log(Level.INFO, Category.GUI, "broken", "value", broken);
+        log.log(Level.INFO, Category.GUI, "after", null, null);
+        log.flush();
+
+        // A record that cannot be formatted is skipped, and the log keeps going
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"after\""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityTest()
+    {
+        new Log(10, lines::add);
+    }
+}
@@ -0,0 +1,213 @@
+package tests.software;
+
+import application.Main;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.BarcodedItem;
+import org.lsmr.selfcheckout.Item;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import software.LatencyHistogram;
+import software.PhaseTimes;
+import software.SelfCheckoutSoftware;
+import software.SelfCheckoutSoftware.Phase;
+import software.SupervisionSoftware;
+import store.Inventory;
+import store.credentials.CredentialsSystem;
+import user.Attendant;
+import user.Customer;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PhaseTimesTest
+{
+    static final String username = "latency";
+    static final String password = "latency";
+
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    @BeforeClass
+    public static void initialSetup()
+    {
+        CredentialsSystem.addAccount(username, password);
+    }
+
+    @AfterClass
+    public static void cleanup()
+    {
+        CredentialsSystem.removeAccount(username);
+    }
+
+    @Before
+    public void setup()
+    {
+        Attendant attendant = new Attendant();
+        attendant.setLogin(username, password);
+        Main.Tangibles.ATTENDANTS.clear();
+        Main.Tangibles.ATTENDANTS.add(attendant);
+    }
+
+    /**
+     * The reported duration is within the bucket's 3% of the one recorded
+     */
+    private void assertNear(long expected, long actual)
+    {
+        assertTrue(expected + " but was " + actual, actual >= expected && actual <= expected + expected / 32);
+    }
+
+    @Test
+    public void percentileTest()
+    {
+        LatencyHistogram histogram = new LatencyHistogram(MINUTE, 5);
+        for (long i = 1; i <= 1000; i++)
+        {
+            histogram.record(i * 1000, 0);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(MINUTE, 0);
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500500.0, snapshot.getMean(), 0.001);
+        assertNear(500000, snapshot.getValueAtPercentile(50));
+        assertNear(990000, snapshot.getValueAtPercentile(99));
+        assertNear(1000000, snapshot.getMax());
+        assertNear(1000, snapshot.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void exactShortDurationsTest()
+    {
+        LatencyHistogram histogram = new LatencyHistogram(MINUTE, 1);
+        histogram.record(-5, 0);
+        histogram.record(7, 0);
+        histogram.record(63, 0);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(MINUTE, 0);
+        assertEquals(0, snapshot.getValueAtPercentile(1));
+        assertEquals(7, snapshot.getValueAtPercentile(50));
+        assertEquals(63, snapshot.getMax());
+    }
+
+    @Test
+    public void longDurationsTest()
+    {
+        LatencyHistogram histogram = new LatencyHistogram(MINUTE, 1);
+        histogram.record(TimeUnit.HOURS.toNanos(1), 0);
+        histogram.record(Long.MAX_VALUE, 0);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(MINUTE, 0);
+        assertNear(TimeUnit.HOURS.toNanos(1), snapshot.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_NANOS, snapshot.getMax());
+    }
+
+    @Test
+    public void rollingWindowTest()
+    {
+        LatencyHistogram histogram = new LatencyHistogram(MINUTE, 3);
+        histogram.record(SECOND, 0);
+        histogram.record(2 * SECOND, MINUTE);
+        histogram.record(3 * SECOND, 2 * MINUTE + 1);
+
+        assertEquals(1, histogram.snapshot(1, 2 * MINUTE + 1).getCount());
+        assertEquals(2, histogram.snapshot(MINUTE + 1, 2 * MINUTE + 1).getCount());
+        assertEquals(3, histogram.snapshot(10 * MINUTE, 2 * MINUTE + 1).getCount());
+
+        // The first interval's slot is reused, so it drops out of every window
+        histogram.record(4 * SECOND, 3 * MINUTE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(10 * MINUTE, 3 * MINUTE);
+        assertEquals(3, snapshot.getCount());
+        assertNear(2 * SECOND, snapshot.getValueAtPercentile(1));
+
+        // Nothing recorded lately
+        assertEquals(0, histogram.snapshot(10 * MINUTE, 100 * MINUTE).getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noIntervalsTest()
+    {
+        new LatencyHistogram(MINUTE, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badPercentileTest()
+    {
+        new LatencyHistogram(MINUTE, 1).snapshot(MINUTE, 0).getValueAtPercentile(101);
+    }
+
+    @Test
+    public void transitionsTest()
+    {
+        PhaseTimes times = new PhaseTimes(Phase.IDLE, 0);
+        times.enter(Phase.SCANNING_ITEM, SECOND);
+        times.enter(Phase.BAGGING_ITEM, 4 * SECOND);
+        times.enter(Phase.BAGGING_ITEM, 5 * SECOND);
+        times.enter(Phase.HAVING_WEIGHT_DISCREPANCY, 6 * SECOND);
+        times.enter(Phase.SCANNING_ITEM, 16 * SECOND);
+        times.enter(Phase.BAGGING_ITEM, 18 * SECOND);
+        times.enter(Phase.SCANNING_ITEM, 20 * SECOND);
+
+        long now = 20 * SECOND;
+        assertNear(3 * SECOND, times.snapshot(Phase.SCANNING_ITEM, Phase.BAGGING_ITEM, MINUTE, now).getValueAtPercentile(100));
+        assertEquals(2, times.snapshot(Phase.SCANNING_ITEM, Phase.BAGGING_ITEM, MINUTE, now).getCount());
+
+        // Entering the same phase again does not restart its time
+        assertNear(2 * SECOND, times.snapshot(Phase.BAGGING_ITEM, Phase.HAVING_WEIGHT_DISCREPANCY, MINUTE, now).getMax());
+        assertNear(10 * SECOND, times.snapshot(Phase.HAVING_WEIGHT_DISCREPANCY, MINUTE, now).getMax());
+        assertEquals(2, times.snapshot(Phase.BAGGING_ITEM, MINUTE, now).getCount());
+        assertEquals(0, times.snapshot(Phase.PROCESSING_PAYMENT, MINUTE, now).getCount());
+
+        Map<Phase, Map<Phase, LatencyHistogram.Snapshot>> all = times.snapshot(MINUTE, now);
+        assertEquals(4, all.size());
+        assertEquals(2, all.get(Phase.BAGGING_ITEM).size());
+        assertEquals(Phase.SCANNING_ITEM, times.getPhase());
+    }
+
+    @Test
+    public void stationTest() throws Exception
+    {
+        Inventory.clear();
+        BarcodedProduct product = new BarcodedProduct(new Barcode(new Numeral[] {Numeral.four, Numeral.four}), "Item",
+                new BigDecimal("1.00"), 100);
+        Inventory.addProduct(product);
+
+        SelfCheckoutStation station = new SelfCheckoutStation(Currency.getInstance("CAD"), new int[] {5, 10},
+                new BigDecimal[] {new BigDecimal("0.25")}, 1000, 1);
+        SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
+        SupervisionSoftware supervision = new SupervisionSoftware(new SupervisionStation());
+        supervision.add(software);
+        supervision.login(username, password);
+
+        software.start(new Customer());
+        Item item = new BarcodedItem(product.getBarcode(), product.getExpectedWeight());
+        while (software.getPhase() == Phase.SCANNING_ITEM)
+        {
+            station.mainScanner.scan(item);
+        }
+        station.baggingArea.add(new BarcodedItem(product.getBarcode(), 500));
+        Thread.sleep(20);
+        supervision.approveWeightDiscrepancy(software);
+        software.blockSystem();
+        software.unblockSystem();
+
+        long window = PhaseTimes.INTERVAL_NANOS;
+        assertEquals(1, supervision.getPhaseLatency(software, Phase.IDLE, Phase.SCANNING_ITEM, window).getCount());
+        assertEquals(1, supervision.getPhaseLatency(software, Phase.SCANNING_ITEM, Phase.BAGGING_ITEM, window).getCount());
+        assertTrue(supervision.getPhaseLatency(software, Phase.HAVING_WEIGHT_DISCREPANCY, window)
+                .getValueAtPercentile(50) >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1, supervision.getPhaseLatency(software, Phase.BLOCKING, window).getCount());
+
+        Map<Phase, Map<Phase, LatencyHistogram.Snapshot>> latencies = supervision.getPhaseLatencies(window).get(software);
+        assertEquals(1, latencies.get(Phase.BAGGING_ITEM).get(Phase.HAVING_WEIGHT_DISCREPANCY).getCount());
+    }
+}
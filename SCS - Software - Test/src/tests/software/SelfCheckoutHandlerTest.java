@@ -8,10 +8,16 @@ import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
 import java.util.Currency;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.lsmr.selfcheckout.devices.AbstractDevice;
+import org.lsmr.selfcheckout.devices.ElectronicScale;
 import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
+import org.lsmr.selfcheckout.devices.observers.ElectronicScaleObserver;
 
 import software.SelfCheckoutController;
 import software.SelfCheckoutHandler;
@@ -87,6 +93,26 @@ public class SelfCheckoutHandlerTest {
 		
 	}
 	
+	@Test
+	public void testSelfCheckoutHandlerVerifyAttached() {
+		scHandler = new SelfCheckoutHandler(scSoftware);
+		scHandler.verifyAttached();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSelfCheckoutHandlerVerifyAttachedTwice() {
+		scHandler = new SelfCheckoutHandler(scSoftware);
+		scStation.baggingArea.attach(scHandler.getProcessItemHandler());
+		scHandler.verifyAttached();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSelfCheckoutHandlerVerifyDetached() {
+		scHandler = new SelfCheckoutHandler(scSoftware);
+		scStation.cardReader.detach(scHandler.getCardHandler());
+		scHandler.verifyAttached();
+	}
+
 	@Test
 	public void testSelfCheckoutHandlerResetHandlers() {
 		scHandler = new SelfCheckoutHandler(scSoftware);
@@ -98,4 +124,121 @@ public class SelfCheckoutHandlerTest {
 		assertNull(scHandler.getProcessItemHandler());
 		
 	}
+
+	/**
+	 * Counts enable notifications, and can run something while being notified
+	 */
+	private static class CountingObserver implements ElectronicScaleObserver {
+		int enabled = 0;
+		Runnable onEnabled;
+
+		@Override
+		public void enabled(AbstractDevice<? extends AbstractDeviceObserver> device) {
+			this.enabled++;
+			if (this.onEnabled != null) {
+				this.onEnabled.run();
+			}
+		}
+
+		@Override
+		public void disabled(AbstractDevice<? extends AbstractDeviceObserver> device) {}
+
+		@Override
+		public void weightChanged(ElectronicScale scale, double weightInGrams) {}
+
+		@Override
+		public void overload(ElectronicScale scale) {}
+
+		@Override
+		public void outOfOverload(ElectronicScale scale) {}
+	}
+
+	@Test
+	public void testDetachDuringNotification() {
+		ElectronicScale scale = scStation.baggingArea;
+		CountingObserver first = new CountingObserver();
+		CountingObserver second = new CountingObserver();
+		CountingObserver late = new CountingObserver();
+		scale.attach(first);
+		scale.attach(second);
+
+		// The first observer detaches both and attaches another while being notified
+		first.onEnabled = () -> {
+			assertTrue(scale.detach(first));
+			assertTrue(scale.detach(second));
+			scale.attach(late);
+		};
+		scale.enable();
+
+		// The notification in progress carries on with the observers it started with
+		assertEquals(1, first.enabled);
+		assertEquals(1, second.enabled);
+		assertEquals(0, late.enabled);
+
+		first.onEnabled = null;
+		scale.enable();
+		assertEquals(1, first.enabled);
+		assertEquals(1, second.enabled);
+		assertEquals(1, late.enabled);
+		assertFalse(scale.detach(first));
+	}
+
+	@Test
+	public void testRestartDuringNotification() {
+		// Restarting detaches and re-attaches every handler while the scale is notifying
+		ElectronicScaleObserver before = scSoftware.getSelfCheckoutHandler().getProcessItemHandler();
+		CountingObserver observer = new CountingObserver();
+		observer.onEnabled = () -> {
+			observer.onEnabled = null;
+			scSoftware.stopSystem();
+			scSoftware.startSystem();
+		};
+		scStation.baggingArea.attach(observer);
+
+		scStation.baggingArea.enable();
+
+		ElectronicScaleObserver after = scSoftware.getSelfCheckoutHandler().getProcessItemHandler();
+		assertFalse(scStation.baggingArea.detach(before));
+		assertTrue(scStation.baggingArea.detach(after));
+		assertFalse(scStation.baggingArea.detach(after));
+	}
+
+	@Test
+	public void testAttachFromOtherThreads() throws InterruptedException {
+		ElectronicScale scale = scStation.baggingArea;
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		AtomicInteger running = new AtomicInteger(4);
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				try {
+					for (int i = 0; i < 2000; i++) {
+						CountingObserver observer = new CountingObserver();
+						scale.attach(observer);
+						assertTrue(scale.detach(observer));
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					running.decrementAndGet();
+				}
+			});
+			threads[t].start();
+		}
+
+		CountingObserver kept = new CountingObserver();
+		scale.attach(kept);
+		int notifications = 0;
+		while (running.get() > 0) {
+			scale.enable();
+			notifications++;
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+		assertEquals(notifications, kept.enabled);
+	}
 }
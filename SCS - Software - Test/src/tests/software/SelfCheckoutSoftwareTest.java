@@ -8,6 +8,10 @@ import org.lsmr.selfcheckout.Numeral;
 import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
 import org.lsmr.selfcheckout.devices.SupervisionStation;
 import org.lsmr.selfcheckout.products.BarcodedProduct;
+import checkout.PrintSpooler;
+import checkout.Receipt;
+import interrupt.ProcessItemHandler;
+import software.SelfCheckoutHandler;
 import software.SelfCheckoutSoftware;
 import software.SupervisionSoftware;
 import store.Inventory;
@@ -499,6 +503,56 @@ public class SelfCheckoutSoftwareTest
         selfCheckoutSoftware.cancelCheckout();
     }
 
+    @Test
+    public void warmRestartTest()
+    {
+        selfCheckoutSoftware.start(customer);
+        SelfCheckoutHandler handler = selfCheckoutSoftware.getSelfCheckoutHandler();
+        ProcessItemHandler processItemHandler = handler.getProcessItemHandler();
+        int observers = selfCheckoutStation.baggingArea.getObserverCount();
+
+        // Restarting a running station reuses its handlers, attached once each
+        selfCheckoutSoftware.startSystem();
+        selfCheckoutSoftware.startSystem();
+
+        assertSame(handler, selfCheckoutSoftware.getSelfCheckoutHandler());
+        assertSame(processItemHandler, handler.getProcessItemHandler());
+        assertNull(handler.getCoinHandler().getCustomer());
+        assertEquals(observers, selfCheckoutStation.baggingArea.getObserverCount());
+        assertEquals(1, selfCheckoutStation.baggingArea.countAttached(processItemHandler));
+        assertEquals(1, selfCheckoutStation.printer.countAttached(selfCheckoutSoftware.getSelfCheckoutController().getReceipt()));
+        assertFalse(selfCheckoutStation.mainScanner.isDisabled());
+    }
+
+    @Test
+    public void coldRestartTest()
+    {
+        SelfCheckoutHandler handler = selfCheckoutSoftware.getSelfCheckoutHandler();
+        int observers = selfCheckoutStation.cardReader.getObserverCount();
+
+        // Stopping detaches the handlers, so starting again attaches new ones
+        selfCheckoutSoftware.stopSystem();
+        selfCheckoutSoftware.startSystem();
+
+        assertNotSame(handler, selfCheckoutSoftware.getSelfCheckoutHandler());
+        assertEquals(observers, selfCheckoutStation.cardReader.getObserverCount());
+    }
+
+    @Test
+    public void printSpoolerTest()
+    {
+        // Receipts are printed in the background while the station runs
+        PrintSpooler spooler = selfCheckoutSoftware.getSelfCheckoutController().getReceipt().getPrintSpooler();
+        assertNotNull(spooler);
+
+        selfCheckoutSoftware.startSystem();
+        assertSame(spooler, selfCheckoutSoftware.getSelfCheckoutController().getReceipt().getPrintSpooler());
+
+        Receipt receipt = selfCheckoutSoftware.getSelfCheckoutController().getReceipt();
+        selfCheckoutSoftware.stopSystem();
+        assertNull(receipt.getPrintSpooler());
+    }
+
     @Test
     public void setAndGetBanknoteDanglingTest()
     {
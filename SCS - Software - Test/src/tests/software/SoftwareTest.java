@@ -6,16 +6,29 @@ import org.lsmr.selfcheckout.Barcode;
 import org.lsmr.selfcheckout.Numeral;
 import org.lsmr.selfcheckout.PriceLookupCode;
 import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.SupervisionStation;
 import org.lsmr.selfcheckout.products.BarcodedProduct;
 import org.lsmr.selfcheckout.products.PLUCodedProduct;
+import software.EventBus;
 import software.SelfCheckoutSoftware;
+import software.SupervisionSoftware;
+import software.observers.Event;
+import software.observers.SelfCheckoutEvent;
 import software.observers.SelfCheckoutObserver;
+import software.observers.SupervisionEvent;
+import software.observers.SupervisionObserver;
 import store.Inventory;
 
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
 import java.util.Currency;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class SoftwareTest
@@ -49,165 +62,143 @@ public class SoftwareTest
         SelfCheckoutObserver selfCheckoutObserver = new SelfCheckoutObserver()
         {
             @Override
-            public Void invalidBanknoteDetected()
+            public void invalidBanknoteDetected()
             {
-                return null;
             }
 
             @Override
-            public Void banknoteAdded()
+            public void banknoteAdded()
             {
-                return null;
             }
 
             @Override
-            public Void banknoteStorageFull()
+            public void banknoteStorageFull()
             {
-                return null;
             }
 
             @Override
-            public Void banknoteDispenserEmpty()
+            public void banknoteDispenserEmpty()
             {
-                return null;
             }
 
             @Override
-            public Void invalidCoinDetected()
+            public void invalidCoinDetected()
             {
-                return null;
             }
 
             @Override
-            public Void coinAdded()
+            public void coinAdded()
             {
-                return null;
             }
 
             @Override
-            public Void coinStorageFull()
+            public void coinStorageFull()
             {
-                return null;
             }
 
             @Override
-            public Void coinDispenserEmpty()
+            public void coinDispenserEmpty()
             {
-                return null;
             }
 
             @Override
-            public Void invalidCardTypeDetected()
+            public void invalidCardTypeDetected()
             {
-                return null;
             }
 
             @Override
-            public Void cardTransactionSucceeded()
+            public void cardTransactionSucceeded()
             {
-                return null;
             }
 
             @Override
-            public Void invalidGiftCardDetected()
+            public void invalidGiftCardDetected()
             {
-                return null;
             }
 
             @Override
-            public Void invalidMembershipCardDetected()
+            public void invalidMembershipCardDetected()
             {
-                return null;
             }
 
             @Override
-            public Void membershipCardDetected(String memberID)
+            public void membershipCardDetected(String memberID)
             {
-                return null;
             }
 
             @Override
-            public Void paymentHoldingAuthorizationFailed()
+            public void paymentHoldingAuthorizationFailed()
             {
-                return null;
             }
 
             @Override
-            public Void paymentPostingTransactionFailed()
+            public void paymentPostingTransactionFailed()
             {
-                return null;
             }
 
             @Override
-            public Void paymentCompleted()
+            public void paymentCompleted()
             {
-                return null;
             }
 
             @Override
-            public Void placeInBaggingAreaBlocked()
+            public void giftCardRedeemed(BigDecimal amountDue)
             {
-                return null;
             }
 
             @Override
-            public Void placeInBaggingAreaUnblocked()
+            public void placeInBaggingAreaBlocked()
             {
-                return null;
             }
 
             @Override
-            public Void weightDiscrepancyInBaggingAreaDetected()
+            public void placeInBaggingAreaUnblocked()
             {
-                return null;
             }
 
             @Override
-            public Void weightDiscrepancyInBaggingAreaResolved()
+            public void weightDiscrepancyInBaggingAreaDetected()
             {
-                return null;
             }
 
             @Override
-            public Void productNotFound()
+            public void weightDiscrepancyInBaggingAreaResolved()
             {
-                return null;
             }
 
             @Override
-            public Void productNotScannable()
+            public void productNotFound()
             {
-                return null;
             }
 
             @Override
-            public Void softwareStarted(SelfCheckoutSoftware scss)
+            public void productNotScannable()
             {
-                return null;
             }
 
             @Override
-            public Void softwareStopped(SelfCheckoutSoftware scss)
+            public void softwareStarted(SelfCheckoutSoftware scss)
             {
-                return null;
             }
 
             @Override
-            public Void touchScreenBlocked()
+            public void softwareStopped(SelfCheckoutSoftware scss)
             {
-                return null;
             }
 
             @Override
-            public Void touchScreenUnblocked()
+            public void touchScreenBlocked()
             {
-                return null;
             }
 
             @Override
-            public Void phaseChanged(SelfCheckoutSoftware.Phase phase)
+            public void touchScreenUnblocked()
+            {
+            }
+
+            @Override
+            public void phaseChanged(SelfCheckoutSoftware.Phase phase)
             {
-                return null;
             }
         };
 
@@ -218,7 +209,7 @@ public class SoftwareTest
         assertEquals(1, selfCheckoutSoftware.getObservers().size());
         assertTrue(selfCheckoutSoftware.getObservers().contains(selfCheckoutObserver));
 
-        selfCheckoutSoftware.notifyObservers(observer -> observer.softwareStarted(selfCheckoutSoftware));
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.SOFTWARE_STARTED);
 
         assertEquals(1, selfCheckoutSoftware.getObservers().size());
         assertTrue(selfCheckoutSoftware.getObservers().contains(selfCheckoutObserver));
@@ -228,6 +219,205 @@ public class SoftwareTest
         assertTrue(selfCheckoutSoftware.getObservers().isEmpty());
     }
 
+    @Test
+    public void asyncObserverTest()
+    {
+        // Records the name of every notification it receives
+        List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        SelfCheckoutObserver observer = (SelfCheckoutObserver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {SelfCheckoutObserver.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("equals"))
+                    {
+                        return proxy == args[0];
+                    } else if (method.getDeclaringClass() == Object.class)
+                    {
+                        return method.getName().equals("hashCode") ? System.identityHashCode(proxy) : "observer";
+                    }
+                    received.add(method.getName());
+                    return null;
+                });
+
+        selfCheckoutSoftware.addObserver(observer, EventBus.WaitStrategy.BLOCKING);
+        assertTrue(selfCheckoutSoftware.getObservers().isEmpty());
+        assertTrue(selfCheckoutSoftware.getEventBus().isSubscribed(observer));
+
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_UNBLOCKED);
+        assertTrue(selfCheckoutSoftware.getEventBus().awaitDelivered(5000));
+        assertEquals(List.of("touchScreenBlocked", "touchScreenUnblocked"), received);
+
+        selfCheckoutSoftware.removeObserver(observer);
+        assertFalse(selfCheckoutSoftware.getEventBus().isSubscribed(observer));
+    }
+
+    /**
+     * Creates an observer that records each method called on it and its
+     * arguments
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T recorder(Class<T> type, List<String> received)
+    {
+        return (T) Proxy.newProxyInstance(SoftwareTest.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("equals"))
+                    {
+                        return proxy == args[0];
+                    } else if (method.getDeclaringClass() == Object.class)
+                    {
+                        return method.getName().equals("hashCode") ? System.identityHashCode(proxy) : "observer";
+                    }
+                    received.add(method.getName() + Arrays.toString(args == null ? new Object[0] : args));
+                    return null;
+                });
+    }
+
+    /**
+     * @return the observer method name for an event kind, such as phaseChanged
+     *         for PHASE_CHANGED
+     */
+    private static String methodName(Enum<?> kind)
+    {
+        StringBuilder name = new StringBuilder();
+        for (String word : kind.name().toLowerCase().split("_"))
+        {
+            name.append(name.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+        }
+        return name.toString();
+    }
+
+    @Test
+    public void selfCheckoutEventKindsTest()
+    {
+        List<String> received = new ArrayList<>();
+        selfCheckoutSoftware.addObserver(recorder(SelfCheckoutObserver.class, received));
+
+        for (SelfCheckoutEvent.Kind kind : SelfCheckoutEvent.Kind.values())
+        {
+            Object argument = null;
+            String expected = "[]";
+            if (kind.getArgumentType() == String.class)
+            {
+                argument = "12345";
+                expected = "[12345]";
+            } else if (kind.getArgumentType() == BigDecimal.class)
+            {
+                argument = new BigDecimal("2.50");
+                expected = "[2.50]";
+            } else if (kind.getArgumentType() == SelfCheckoutSoftware.Phase.class)
+            {
+                argument = SelfCheckoutSoftware.Phase.BAGGING_ITEM;
+                expected = "[BAGGING_ITEM]";
+            } else if (kind == SelfCheckoutEvent.Kind.SOFTWARE_STARTED || kind == SelfCheckoutEvent.Kind.SOFTWARE_STOPPED)
+            {
+                expected = "[" + selfCheckoutSoftware + "]";
+            }
+
+            received.clear();
+            selfCheckoutSoftware.notifyObservers(kind, argument);
+            assertEquals(List.of(methodName(kind) + expected), received);
+        }
+    }
+
+    @Test
+    public void supervisionEventKindsTest()
+    {
+        List<String> received = new ArrayList<>();
+        SupervisionSoftware supervisionSoftware = new SupervisionSoftware(new SupervisionStation());
+        supervisionSoftware.addObserver(recorder(SupervisionObserver.class, received));
+
+        for (SupervisionEvent.Kind kind : SupervisionEvent.Kind.values())
+        {
+            received.clear();
+            supervisionSoftware.notifyObservers(kind, selfCheckoutSoftware);
+            assertEquals(List.of(methodName(kind) + "[" + selfCheckoutSoftware + "]"), received);
+        }
+    }
+
+    @Test
+    public void nestedNotificationTest()
+    {
+        // An observer that raises another event while being notified of one, before the recorder is notified
+        List<String> received = new ArrayList<>();
+        selfCheckoutSoftware.addObserver((SelfCheckoutObserver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {SelfCheckoutObserver.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("touchScreenBlocked"))
+                    {
+                        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED,
+                                SelfCheckoutSoftware.Phase.BLOCKING);
+                    }
+                    return method.getName().equals("equals") ? proxy == args[0] : null;
+                }));
+        selfCheckoutSoftware.addObserver(recorder(SelfCheckoutObserver.class, received));
+
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_UNBLOCKED);
+
+        // The outer event is not overwritten by the one raised inside it
+        assertEquals(List.of("phaseChanged[BLOCKING]", "touchScreenBlocked[]", "touchScreenUnblocked[]"), received);
+    }
+
+    @Test
+    public void interestsTest()
+    {
+        List<String> blocking = new ArrayList<>();
+        List<String> everything = new ArrayList<>();
+        SelfCheckoutObserver interested = recorder(SelfCheckoutObserver.class, blocking);
+        selfCheckoutSoftware.addObserver(interested,
+                Event.mask(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED, SelfCheckoutEvent.Kind.TOUCH_SCREEN_UNBLOCKED));
+        selfCheckoutSoftware.addObserver(recorder(SelfCheckoutObserver.class, everything));
+
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED, SelfCheckoutSoftware.Phase.BLOCKING);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.PRODUCT_NOT_FOUND);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_UNBLOCKED);
+
+        assertEquals(List.of("touchScreenBlocked[]", "touchScreenUnblocked[]"), blocking);
+        assertEquals(4, everything.size());
+
+        // Once removed, it is not notified of anything
+        selfCheckoutSoftware.removeObserver(interested);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED);
+        assertEquals(2, blocking.size());
+        assertEquals(5, everything.size());
+    }
+
+    @Test
+    public void coalescedObserverTest()
+    {
+        List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        SelfCheckoutObserver observer = recorder(SelfCheckoutObserver.class, received);
+        // A frame long enough that the whole burst falls in it
+        selfCheckoutSoftware.addObserver(observer, Event.ALL_KINDS, EventBus.WaitStrategy.BLOCKING, 250);
+
+        // A burst of state changes, with a weight discrepancy in the middle of it
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED, SelfCheckoutSoftware.Phase.BAGGING_ITEM);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED,
+                SelfCheckoutSoftware.Phase.HAVING_WEIGHT_DISCREPANCY);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.WEIGHT_DISCREPANCY_IN_BAGGING_AREA_DETECTED);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_UNBLOCKED);
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED);
+
+        assertTrue(selfCheckoutSoftware.getEventBus().awaitDelivered(5000));
+        selfCheckoutSoftware.removeObserver(observer);
+
+        // The discrepancy does not wait for the frame, and only the latest states are delivered
+        assertEquals(List.of("weightDiscrepancyInBaggingAreaDetected[]", "phaseChanged[HAVING_WEIGHT_DISCREPANCY]",
+                "touchScreenBlocked[]"), received);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void eventArgumentTypeTest()
+    {
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED, "not a phase");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void eventUnexpectedArgumentTest()
+    {
+        selfCheckoutSoftware.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED, "unexpected");
+    }
+
     @Test
     public void lookupProductTest()
     {
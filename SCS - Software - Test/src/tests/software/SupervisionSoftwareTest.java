@@ -7,6 +7,11 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
 import org.lsmr.selfcheckout.devices.SupervisionStation;
+import checkout.ConsumablesForecast;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
 import software.SelfCheckoutSoftware;
 import software.SupervisionSoftware;
 import store.Store;
@@ -17,6 +22,7 @@ import user.Customer;
 import java.math.BigDecimal;
 import java.util.Currency;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -382,4 +388,52 @@ public class SupervisionSoftwareTest
     {
         supervisionSoftware.approveUseOfOwnBags(selfCheckoutSoftware1);
     }
+
+    @Test
+    public void printerForecastsTest() throws Exception
+    {
+        supervisionSoftware.add(selfCheckoutSoftware1);
+        supervisionSoftware.add(selfCheckoutSoftware2);
+
+        selfCheckoutStation1.printer.addPaper(ReceiptPrinter.MAXIMUM_PAPER);
+        selfCheckoutStation1.printer.addInk(ReceiptPrinter.MAXIMUM_INK);
+        selfCheckoutStation2.printer.addPaper(ReceiptPrinter.MAXIMUM_PAPER);
+        selfCheckoutStation2.printer.addInk(ReceiptPrinter.MAXIMUM_INK);
+
+        customer.addProduct(new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one}), "Milk", new BigDecimal("4.99"), 2000));
+        selfCheckoutSoftware1.getSelfCheckoutController().getReceipt().setCustomer(customer);
+        for (int i = 0; i < 10; i++)
+        {
+            selfCheckoutSoftware1.getSelfCheckoutController().getReceipt().printReceipt();
+        }
+        assertTrue(selfCheckoutSoftware1.getSelfCheckoutController().getReceipt().getPrintSpooler().awaitIdle(5000));
+
+        Map<SelfCheckoutSoftware, ConsumablesForecast.Forecast> forecasts = supervisionSoftware.getPrinterForecasts();
+
+        assertEquals(2, forecasts.size());
+        assertEquals(selfCheckoutStation1.printer.getPaperRemaining(), forecasts.get(selfCheckoutSoftware1).getPaperRemaining());
+        assertTrue(forecasts.get(selfCheckoutSoftware1).getPaperPerHour() > 0);
+        assertTrue(forecasts.get(selfCheckoutSoftware1).getMillisUntilEmpty() < Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, forecasts.get(selfCheckoutSoftware2).getMillisUntilEmpty());
+    }
+
+    @Test
+    public void printersNeedingRefillTest() throws Exception
+    {
+        supervisionSoftware.add(selfCheckoutSoftware1);
+        supervisionSoftware.add(selfCheckoutSoftware2);
+
+        selfCheckoutStation1.printer.addPaper(100);
+        selfCheckoutStation1.printer.addInk(10000);
+
+        customer.addProduct(new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one}), "Milk", new BigDecimal("4.99"), 2000));
+        selfCheckoutSoftware1.getSelfCheckoutController().getReceipt().setCustomer(customer);
+        selfCheckoutSoftware1.getSelfCheckoutController().getReceipt().printReceipt();
+        assertTrue(selfCheckoutSoftware1.getSelfCheckoutController().getReceipt().getPrintSpooler().awaitIdle(5000));
+
+        // Station 1 prints quickly enough to run out within a day; station 2 has
+        // never printed
+        List<SelfCheckoutSoftware> stations = supervisionSoftware.getPrintersNeedingRefill(24 * 60 * 60 * 1000L);
+        assertEquals(List.of(selfCheckoutSoftware1), stations);
+    }
 }
@@ -0,0 +1,63 @@
+package tests.store;
+
+import org.junit.Test;
+import store.BloomFilter;
+
+import static org.junit.Assert.*;
+
+public class BloomFilterTest
+{
+    @Test
+    public void noFalseNegativesTest()
+    {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+
+        for (long i = 1; i <= 10000; i++)
+        {
+            filter.add(i * 7919);
+        }
+
+        for (long i = 1; i <= 10000; i++)
+        {
+            assertTrue(filter.mightContain(i * 7919));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateTest()
+    {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+
+        for (long i = 1; i <= 10000; i++)
+        {
+            filter.add(i);
+        }
+
+        int falsePositives = 0;
+        for (long i = 10001; i <= 110000; i++)
+        {
+            if (filter.mightContain(i))
+            {
+                falsePositives++;
+            }
+        }
+
+        // Sized for 1%, allow some slack
+        assertTrue("False positives: " + falsePositives, falsePositives < 2000);
+    }
+
+    @Test
+    public void emptyFilterTest()
+    {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+
+        assertFalse(filter.mightContain(1));
+        assertFalse(filter.mightContain(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRateTest()
+    {
+        new BloomFilter(100, 1.0);
+    }
+}
@@ -1,15 +1,23 @@
 package tests.store;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import store.GiftCard;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.junit.Assert.*;
 
 public class GiftCardTest
 {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     // Static variables that will be used during testing
     final String giftCard1ID = "1";
     final String giftCard2ID = "2";
@@ -51,9 +59,78 @@ public class GiftCardTest
         assertFalse(GiftCard.isGiftCard(giftCard2ID));
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void giftCardDuplicateTest()
+    {
+        GiftCard.createGiftCard(giftCard1ID, giftCard1Balance);
+        GiftCard.createGiftCard(giftCard1ID, giftCard2Balance);
+    }
+
+    @Test
+    public void getBalanceTest()
+    {
+        assertNull(GiftCard.getBalance(giftCard1ID));
+
+        GiftCard.createGiftCard(giftCard1ID, giftCard1Balance);
+
+        assertEquals(giftCard1Balance, GiftCard.getBalance(giftCard1ID));
+    }
+
+    @Test
+    public void redeemFullAmountTest()
+    {
+        GiftCard.createGiftCard(giftCard2ID, giftCard2Balance);
+
+        assertEquals(new BigDecimal("15.00"), GiftCard.redeem(giftCard2ID, new BigDecimal("15.00")));
+        assertEquals(new BigDecimal("5.00"), GiftCard.getBalance(giftCard2ID));
+    }
+
     @Test
-    public void getCardIssuerTest()
+    public void redeemPartialAmountTest()
     {
-        assertNotNull(GiftCard.getCardIssuer());
+        GiftCard.createGiftCard(giftCard1ID, giftCard1Balance);
+
+        assertEquals(giftCard1Balance, GiftCard.redeem(giftCard1ID, new BigDecimal("25.00")));
+        assertEquals(new BigDecimal("0.00"), GiftCard.getBalance(giftCard1ID));
+        assertEquals(new BigDecimal("0.00"), GiftCard.redeem(giftCard1ID, new BigDecimal("25.00")));
+    }
+
+    @Test
+    public void redeemRoundsUpToCentTest()
+    {
+        GiftCard.createGiftCard(giftCard1ID, giftCard1Balance);
+
+        assertEquals(new BigDecimal("1.01"), GiftCard.redeem(giftCard1ID, new BigDecimal("1.001")));
+    }
+
+    @Test
+    public void redeemUnknownCardTest()
+    {
+        assertEquals(BigDecimal.ZERO, GiftCard.redeem(giftCard1ID, giftCard1Balance));
+    }
+
+    @Test
+    public void activateGiftCardsTest() throws IOException
+    {
+        Path file = folder.newFile("giftcards.csv").toPath();
+        StringBuilder sb = new StringBuilder("# cardNumber,value\n");
+        for (int t = 0; t < 1000; t++)
+        {
+            sb.append(600000 + t).append(",25.00\n");
+        }
+        Files.writeString(file, sb.toString());
+
+        assertEquals(1000, GiftCard.activateGiftCards(file));
+        assertTrue(GiftCard.isGiftCard("600999"));
+        assertEquals(new BigDecimal("25.00"), GiftCard.getBalance("600000"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void activateGiftCardsMalformedTest() throws IOException
+    {
+        Path file = folder.newFile("giftcards.csv").toPath();
+        Files.writeString(file, "600000 25.00\n");
+
+        GiftCard.activateGiftCards(file);
     }
 }
@@ -0,0 +1,75 @@
+package tests.store;
+
+import org.junit.Test;
+import store.MemberNumberSet;
+
+import static org.junit.Assert.*;
+
+public class MemberNumberSetTest
+{
+    @Test
+    public void encodeTest()
+    {
+        assertEquals(142L, MemberNumberSet.encode("42"));
+        assertEquals(10042L, MemberNumberSet.encode("0042"));
+        assertEquals(1999999999999999999L, MemberNumberSet.encode("999999999999999999"));
+
+        assertEquals(0L, MemberNumberSet.encode(null));
+        assertEquals(0L, MemberNumberSet.encode(""));
+        assertEquals(0L, MemberNumberSet.encode("-42"));
+        assertEquals(0L, MemberNumberSet.encode("1234567890123456789"));
+    }
+
+    @Test
+    public void addAndContainsTest()
+    {
+        MemberNumberSet set = new MemberNumberSet();
+
+        assertTrue(set.add(MemberNumberSet.encode("1")));
+        assertFalse(set.add(MemberNumberSet.encode("1")));
+        assertTrue(set.add(MemberNumberSet.encode("01")));
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains(MemberNumberSet.encode("1")));
+        assertTrue(set.contains(MemberNumberSet.encode("01")));
+        assertFalse(set.contains(MemberNumberSet.encode("001")));
+        assertFalse(set.contains(0L));
+    }
+
+    @Test
+    public void growTest()
+    {
+        MemberNumberSet set = new MemberNumberSet(1);
+
+        for (long i = 1; i <= 10000; i++)
+        {
+            assertTrue(set.add(i));
+        }
+
+        assertEquals(10000, set.size());
+        assertEquals(10000, set.toArray().length);
+
+        for (long i = 1; i <= 10000; i++)
+        {
+            assertTrue(set.contains(i));
+        }
+        assertFalse(set.contains(10001));
+    }
+
+    @Test
+    public void clearTest()
+    {
+        MemberNumberSet set = new MemberNumberSet();
+        set.add(7);
+        set.clear();
+
+        assertEquals(0, set.size());
+        assertFalse(set.contains(7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addEmptyKeyTest()
+    {
+        new MemberNumberSet().add(0L);
+    }
+}
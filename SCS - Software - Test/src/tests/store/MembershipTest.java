@@ -1,14 +1,24 @@
 package tests.store;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import store.Membership;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class MembershipTest
 {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     // Static variables that will be used during testing
     final String membership1ID = "1";
     final String membership2ID = "2";
@@ -56,4 +66,74 @@ public class MembershipTest
         assertFalse(Membership.isMember(membership1ID));
         assertFalse(Membership.isMember(membership2ID));
     }
+
+    @Test
+    public void membershipLeadingZerosTest()
+    {
+        Membership.createMembership("0042", membership1Name);
+
+        assertTrue(Membership.isMember("0042"));
+        assertFalse(Membership.isMember("42"));
+        assertFalse(Membership.isMember("042"));
+    }
+
+    @Test
+    public void invalidMemberIDTest()
+    {
+        assertFalse(Membership.isMember(null));
+        assertFalse(Membership.isMember(""));
+        assertFalse(Membership.isMember("12a"));
+        assertFalse(Membership.isMember("1234567890123456789"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonNumericSignupTest()
+    {
+        Membership.createMembership("ABC", membership1Name);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooLongSignupTest()
+    {
+        Membership.createMembership("1234567890123456789", membership1Name);
+    }
+
+    @Test
+    public void loadMembersTest() throws IOException
+    {
+        Path file = folder.newFile("members.csv").toPath();
+        Files.write(file, "# memberID,holder\n1,Customer 1\n\n2\n1,Customer 1 again\n".getBytes());
+
+        assertEquals(2, Membership.loadMembers(file));
+        assertEquals(2, Membership.size());
+        assertTrue(Membership.isMember(membership1ID));
+        assertTrue(Membership.isMember(membership2ID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void loadMalformedMembersTest() throws IOException
+    {
+        Path file = folder.newFile("members.csv").toPath();
+        Files.write(file, "1,Customer 1\nnot a number\n".getBytes());
+
+        Membership.loadMembers(file);
+    }
+
+    @Test
+    public void manyMembersTest()
+    {
+        // More members than the filter starts with, so it is rebuilt while loading
+        for (int i = 0; i < 5000; i++)
+        {
+            Membership.createMembership(Integer.toString(i * 2), "Customer " + i);
+        }
+
+        assertEquals(5000, Membership.size());
+
+        for (int i = 0; i < 5000; i++)
+        {
+            assertTrue(Membership.isMember(Integer.toString(i * 2)));
+            assertFalse(Membership.isMember(Integer.toString(i * 2 + 1)));
+        }
+    }
 }
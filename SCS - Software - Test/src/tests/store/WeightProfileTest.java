@@ -0,0 +1,209 @@
+package tests.store;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import store.Inventory;
+import store.WeightProfile;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WeightProfileTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    BarcodedProduct coffee = new BarcodedProduct(new Barcode(new Numeral[] {Numeral.nine, Numeral.four}), "Coffee", new BigDecimal("12.99"), 940);
+    BarcodedProduct bag = new BarcodedProduct(new Barcode(new Numeral[] {Numeral.one}), "Bag", new BigDecimal("0.10"), 1);
+
+    @Before
+    public void setup()
+    {
+        Inventory.clear();
+        Inventory.addProduct(coffee);
+        Inventory.addProduct(bag);
+    }
+
+    @Test
+    public void defaultLimitsTest()
+    {
+        WeightProfile profile = Inventory.getWeightProfile(coffee.getBarcode());
+
+        for (int i = 0; i < WeightProfile.MINIMUM_OBSERVATIONS - 1; i++)
+        {
+            profile.observe(950);
+        }
+
+        // Not enough observations, so the catalog weight and default tolerance
+        assertEquals(940, profile.getLimits().getExpectedWeight(), 0);
+        assertEquals(WeightProfile.DEFAULT_TOLERANCE, profile.getLimits().getTolerance(), 0);
+        assertTrue(profile.getLimits().accepts(940.5));
+        assertFalse(profile.getLimits().accepts(942));
+    }
+
+    @Test
+    public void welfordTest()
+    {
+        WeightProfile profile = new WeightProfile(500);
+        Random random = new Random(39);
+        double[] weights = new double[1000];
+
+        for (int i = 0; i < weights.length; i++)
+        {
+            weights[i] = 500 + random.nextGaussian() * 4;
+            profile.observe(weights[i]);
+        }
+
+        double mean = 0;
+        for (double weight : weights)
+        {
+            mean += weight;
+        }
+        mean /= weights.length;
+
+        double variance = 0;
+        for (double weight : weights)
+        {
+            variance += (weight - mean) * (weight - mean);
+        }
+        variance /= weights.length - 1;
+
+        assertEquals(1000, profile.getCount());
+        assertEquals(mean, profile.getMean(), 1e-9);
+        assertEquals(variance, profile.getVariance(), 1e-9);
+    }
+
+    @Test
+    public void heavyItemToleranceTest()
+    {
+        WeightProfile profile = Inventory.getWeightProfile(coffee.getBarcode());
+        Random random = new Random(940);
+
+        for (int i = 0; i < 200; i++)
+        {
+            profile.observe(944 + random.nextGaussian() * 3);
+        }
+
+        // Three standard deviations either side of what it really weighs
+        WeightProfile.Limits limits = profile.getLimits();
+        assertEquals(944, limits.getExpectedWeight(), 1);
+        assertEquals(9, limits.getTolerance(), 1.5);
+        assertTrue(limits.accepts(950));
+        assertTrue(limits.accepts(938));
+        assertFalse(limits.accepts(960));
+    }
+
+    @Test
+    public void toleranceBoundsTest()
+    {
+        WeightProfile light = Inventory.getWeightProfile(bag.getBarcode());
+        WeightProfile heavy = new WeightProfile(100);
+
+        for (int i = 0; i < 50; i++)
+        {
+            light.observe(1);
+            heavy.observe(i % 2 == 0 ? 50 : 150);
+        }
+
+        // Never tighter than the scale's own error, never wider than a tenth of the weight
+        assertEquals(WeightProfile.DEFAULT_TOLERANCE, light.getLimits().getTolerance(), 0);
+        assertEquals(10, heavy.getLimits().getTolerance(), 1e-9);
+    }
+
+    @Test
+    public void driftBoundsTest()
+    {
+        WeightProfile profile = new WeightProfile(100);
+
+        for (int i = 0; i < 50; i++)
+        {
+            profile.observe(200);
+        }
+
+        // However far the observations are off, only weights near the catalog weight are accepted
+        WeightProfile.Limits limits = profile.getLimits();
+        assertEquals(109, limits.getExpectedWeight(), 1e-9);
+        assertEquals(WeightProfile.DEFAULT_TOLERANCE, limits.getTolerance(), 0);
+        assertTrue(limits.accepts(110));
+        assertFalse(limits.accepts(111));
+        assertFalse(limits.accepts(200));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void observeNaNTest()
+    {
+        new WeightProfile(100).observe(Double.NaN);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void observeZeroTest()
+    {
+        new WeightProfile(100).observe(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restoreNegativeMeanTest()
+    {
+        new WeightProfile(100).restore(5, -10, 0);
+    }
+
+    @Test
+    public void saveAndLoadTest() throws IOException
+    {
+        WeightProfile profile = Inventory.getWeightProfile(coffee.getBarcode());
+        for (int i = 0; i < 10; i++)
+        {
+            profile.observe(940 + i);
+        }
+        WeightProfile.Limits limits = profile.getLimits();
+
+        Path file = folder.getRoot().toPath().resolve("weights.csv");
+        Inventory.saveWeightProfiles(file);
+
+        // As after a restart
+        Inventory.clear();
+        Inventory.addProduct(coffee);
+        Inventory.addProduct(bag);
+        assertEquals(0, Inventory.getWeightProfile(coffee.getBarcode()).getCount());
+
+        assertEquals(2, Inventory.loadWeightProfiles(file));
+        profile = Inventory.getWeightProfile(coffee.getBarcode());
+        assertEquals(10, profile.getCount());
+        assertEquals(limits.getExpectedWeight(), profile.getLimits().getExpectedWeight(), 1e-9);
+        assertEquals(limits.getTolerance(), profile.getLimits().getTolerance(), 1e-9);
+        assertEquals(0, Inventory.getWeightProfile(bag.getBarcode()).getCount());
+    }
+
+    @Test
+    public void loadSkipsUnknownProductsTest() throws IOException
+    {
+        Path file = folder.newFile("weights.csv").toPath();
+        Files.write(file, "# barcode,count,mean,m2\n94,5,941.0,10.0\n\n12345,5,10.0,1.0\n".getBytes());
+
+        assertEquals(1, Inventory.loadWeightProfiles(file));
+        assertEquals(941, Inventory.getWeightProfile(coffee.getBarcode()).getLimits().getExpectedWeight(), 0);
+        assertNull(Inventory.getWeightProfile(new Barcode(new Numeral[] {Numeral.one, Numeral.two, Numeral.three, Numeral.four, Numeral.five})));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void loadMalformedTest() throws IOException
+    {
+        Path file = folder.newFile("weights.csv").toPath();
+        Files.write(file, "94,five,941.0,10.0\n".getBytes());
+
+        Inventory.loadWeightProfiles(file);
+    }
+}
@@ -55,6 +55,41 @@ public class CustomerTest
         assertEquals(coinDenominations[0].add(new BigDecimal(banknoteDenominations[0])), customer.getCashBalance());
     }
 
+    @Test
+    public void giftCardBalanceAndAmountDueTest()
+    {
+        Inventory.addProduct(product1);
+        customer.addProduct(product1);
+
+        assertEquals(product1.getPrice(), customer.getAmountDue());
+
+        customer.addGiftCardBalance(new BigDecimal("3.00"));
+
+        assertEquals(new BigDecimal("3.00"), customer.getGiftCardBalance());
+        assertEquals(new BigDecimal("2.00"), customer.getAmountDue());
+        assertFalse(customer.hasSufficientCashBalance());
+
+        customer.addCashBalance(new BigDecimal("2.00"));
+
+        assertTrue(customer.hasSufficientCashBalance());
+
+        customer.addGiftCardBalance(new BigDecimal("10.00"));
+
+        assertEquals(BigDecimal.ZERO, customer.getAmountDue());
+    }
+
+    @Test
+    public void transactionIDTest()
+    {
+        String transactionID = customer.getTransactionID();
+
+        assertEquals(transactionID, customer.getTransactionID());
+
+        customer.newTransactionID();
+
+        assertNotEquals(transactionID, customer.getTransactionID());
+    }
+
     @Test
     public void addAndGetPLUTest()
     {
@@ -13,6 +13,7 @@ import org.lsmr.selfcheckout.PLUCodedItem;
 import org.lsmr.selfcheckout.PriceLookupCode;
 import org.lsmr.selfcheckout.devices.DisabledException;
 import org.lsmr.selfcheckout.devices.OverloadException;
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
 import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
 import org.lsmr.selfcheckout.products.BarcodedProduct;
 import org.lsmr.selfcheckout.products.PLUCodedProduct;
@@ -20,6 +21,9 @@ import org.lsmr.selfcheckout.products.Product;
 
 import application.AppControl;
 import application.Main;
+import software.EventBus;
+import software.EventCoalescer;
+import software.Log;
 import software.SelfCheckoutSoftware.PaymentMethod;
 import software.SelfCheckoutSoftware.Phase;
 import software.SelfCheckoutSoftware;
@@ -46,9 +50,14 @@ public class GUI {
 		// Initializes the openning scene, Self-Checkout Overview
 		scenes.getScene(Scenes.SC_OVERVIEW);
 
-		Store.getSupervisionSoftware().addObserver(observer);
+		// Screens are redrawn on their own thread, so hardware handlers never wait for them
+		// and are only told of the events they show something for, with state
+		// changes merged to at most one a frame
+		Store.getSupervisionSoftware().addObserver(observer, GUIObserver.SUPERVISION_INTERESTS,
+				EventBus.WaitStrategy.BLOCKING, EventCoalescer.FRAME_MILLIS);
 		for (SelfCheckoutSoftware scs : Store.getSelfCheckoutSoftwareList()) {
-			scs.addObserver(observer);
+			scs.addObserver(observer, GUIObserver.SELF_CHECKOUT_INTERESTS, EventBus.WaitStrategy.BLOCKING,
+					EventCoalescer.FRAME_MILLIS);
 		}
 	}
 
@@ -459,11 +468,12 @@ public class GUI {
 			SelfCheckoutSoftware scss = ac.getSelfCheckoutSoftware(currentStation);
 			SelfCheckoutStation scs = scss.getSelfCheckoutStation();
 			try {
-				if (scss.getSelfCheckoutController().getReceipt().getPaperUsed() == 0) {
+				int missing = ReceiptPrinter.MAXIMUM_PAPER - scs.printer.getPaperRemaining();
+				if (missing == 0) {
 					Scenes.errorMsg("The paper cartridge is already full");
 				} else {
 					// refill the printer to max capacity
-					scs.printer.addPaper(scss.getSelfCheckoutController().getReceipt().getPaperUsed());
+					scs.printer.addPaper(missing);
 					scss.getSelfCheckoutController().getReceipt().resetPaperUsed();
 				}
 			} catch (OverloadException e) {
@@ -477,10 +487,11 @@ public class GUI {
 			SelfCheckoutSoftware scss = ac.getSelfCheckoutSoftware(currentStation);
 			SelfCheckoutStation scs = scss.getSelfCheckoutStation();
 			try {
-				if (scss.getSelfCheckoutController().getReceipt().getInkUsed() == 0) {
+				int missing = ReceiptPrinter.MAXIMUM_INK - scs.printer.getInkRemaining();
+				if (missing == 0) {
 					Scenes.errorMsg("The ink cartridge is already full");
 				} else {
-					scs.printer.addInk(scss.getSelfCheckoutController().getReceipt().getInkUsed());
+					scs.printer.addInk(missing);
 					scss.getSelfCheckoutController().getReceipt().resetInkUsed();
 				}
 			} catch (OverloadException e) {
@@ -722,7 +733,8 @@ public class GUI {
 	}
 
 	public static Phase getPhase(int stationNumber) {
-		System.out.println(ac.getSelfCheckoutSoftware(stationNumber).getPhase()); // TODO remove after testing
-		return ac.getSelfCheckoutSoftware(stationNumber).getPhase();
+		Phase phase = ac.getSelfCheckoutSoftware(stationNumber).getPhase();
+		Log.debug(Log.Category.GUI, "Get phase", "phase", phase);
+		return phase;
 	}
 }
@@ -1,277 +1,265 @@
 package GUI;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 import software.SelfCheckoutSoftware;
 import software.SelfCheckoutSoftware.Phase;
+import software.observers.Event;
+import software.observers.SelfCheckoutEvent;
 import software.observers.SelfCheckoutObserver;
+import software.observers.SupervisionEvent;
 import software.observers.SupervisionObserver;
 
 public class GUIObserver implements SelfCheckoutObserver, SupervisionObserver {
-
-    @Override
-    public Void banknoteStorageFull(SelfCheckoutSoftware scs) {
+    /**
+     * The self-checkout events the screens react to; the rest are no-ops here
+     */
+    public static final long SELF_CHECKOUT_INTERESTS = Event.mask(SelfCheckoutEvent.Kind.BANKNOTE_STORAGE_FULL,
+            SelfCheckoutEvent.Kind.BANKNOTE_DISPENSER_EMPTY, SelfCheckoutEvent.Kind.COIN_STORAGE_FULL,
+            SelfCheckoutEvent.Kind.COIN_DISPENSER_EMPTY, SelfCheckoutEvent.Kind.INVALID_CARD_TYPE_DETECTED,
+            SelfCheckoutEvent.Kind.INVALID_GIFT_CARD_DETECTED, SelfCheckoutEvent.Kind.INVALID_MEMBERSHIP_CARD_DETECTED,
+            SelfCheckoutEvent.Kind.MEMBERSHIP_CARD_DETECTED, SelfCheckoutEvent.Kind.PAYMENT_HOLDING_AUTHORIZATION_FAILED,
+            SelfCheckoutEvent.Kind.PAYMENT_POSTING_TRANSACTION_FAILED, SelfCheckoutEvent.Kind.GIFT_CARD_REDEEMED,
+            SelfCheckoutEvent.Kind.WEIGHT_DISCREPANCY_IN_BAGGING_AREA_DETECTED,
+            SelfCheckoutEvent.Kind.PRODUCT_NOT_FOUND);
+
+    /**
+     * The supervision events the screens react to; the rest are no-ops here
+     */
+    public static final long SUPERVISION_INTERESTS = Event.mask(SupervisionEvent.Kind.BANKNOTE_STORAGE_FULL,
+            SupervisionEvent.Kind.BANKNOTE_DISPENSER_EMPTY, SupervisionEvent.Kind.COIN_STORAGE_FULL,
+            SupervisionEvent.Kind.COIN_DISPENSER_EMPTY, SupervisionEvent.Kind.DISPENSE_CHANGE_FAILED,
+            SupervisionEvent.Kind.RECEIPT_PRINTER_OUT_OF_PAPER, SupervisionEvent.Kind.RECEIPT_PRINTER_LOW_ON_PAPER,
+            SupervisionEvent.Kind.RECEIPT_PRINTER_OUT_OF_INK, SupervisionEvent.Kind.RECEIPT_PRINTER_LOW_ON_INK,
+            SupervisionEvent.Kind.WEIGHT_DISCREPANCY_DETECTED);
+
+    @Override
+    public void banknoteStorageFull(SelfCheckoutSoftware scs) {
         Scenes.errorMsg("Banknote Storage Full");
-        return null;
     }
 
     @Override
-    public Void banknoteDispenserEmpty(SelfCheckoutSoftware scs) {
+    public void banknoteDispenserEmpty(SelfCheckoutSoftware scs) {
         Scenes.errorMsg("Banknote Dispenser Empty");
-        return null;
     }
 
     @Override
-    public Void coinStorageFull(SelfCheckoutSoftware scs) {
+    public void coinStorageFull(SelfCheckoutSoftware scs) {
         Scenes.errorMsg("Coin Storage Full");
-        return null;
     }
 
     @Override
-    public Void coinDispenserEmpty(SelfCheckoutSoftware scs) {
+    public void coinDispenserEmpty(SelfCheckoutSoftware scs) {
         Scenes.errorMsg("Coin Dispenser Empty");
-        return null;
     }
 
     @Override
-    public Void dispenseChangeFailed(SelfCheckoutSoftware scs) {
+    public void dispenseChangeFailed(SelfCheckoutSoftware scs) {
         Scenes.errorMsg("Dispense Change Failed");
-        return null;
     }
 
     @Override
-    public Void receiptPrinterOutOfPaper(SelfCheckoutSoftware scs) {
+    public void receiptPrinterOutOfPaper(SelfCheckoutSoftware scs) {
         Scenes.errorMsg("Receipt Printer Out of Paper");
-        return null;
     }
 
     @Override
-    public Void receiptPrinterLowOnPaper(SelfCheckoutSoftware scs) {
+    public void receiptPrinterLowOnPaper(SelfCheckoutSoftware scs) {
         Scenes.errorMsg("Receipt printer paper cartridge at 10% of max capacity");
-        return null;
     }
 
     @Override
-    public Void receiptPrinterPaperOverloaded(SelfCheckoutSoftware scs) {
+    public void receiptPrinterPaperOverloaded(SelfCheckoutSoftware scs) {
         // not needed
-        return null;
     }
 
     @Override
-    public Void receiptPrinterOutOfInk(SelfCheckoutSoftware scs) {
+    public void receiptPrinterOutOfInk(SelfCheckoutSoftware scs) {
         Scenes.errorMsg("Receipt Printer Out of Ink");
-        return null;
     }
 
     @Override
-    public Void receiptPrinterLowOnInk(SelfCheckoutSoftware scs) {
+    public void receiptPrinterLowOnInk(SelfCheckoutSoftware scs) {
         Scenes.errorMsg("Receipt printer ink cartridge at 10% of max capacity");
-        return null;
     }
 
     @Override
-    public Void receiptPrinterInkOverloaded(SelfCheckoutSoftware scs) {
+    public void receiptPrinterInkOverloaded(SelfCheckoutSoftware scs) {
         // not needed
-        return null;
     }
 
     @Override
-    public Void weightDiscrepancyDetected(SelfCheckoutSoftware scs) {
+    public void weightDiscrepancyDetected(SelfCheckoutSoftware scs) {
         Scenes.errorMsg("Weight Discrepancy Detected");
-        return null;
     }
 
     @Override
-    public Void touchScreenBlocked(SelfCheckoutSoftware scs) {
+    public void touchScreenBlocked(SelfCheckoutSoftware scs) {
         // not needed
-        return null;
     }
 
     @Override
-    public Void touchScreenUnblocked(SelfCheckoutSoftware scs) {
+    public void touchScreenUnblocked(SelfCheckoutSoftware scs) {
         // not needed
-        return null;
     }
 
     @Override
-    public Void scaleOverloadedDetected(SelfCheckoutSoftware scs) {
+    public void scaleOverloadedDetected(SelfCheckoutSoftware scs) {
         // not needed
-        return null;
     }
 
     @Override
-    public Void scaleOverloadedResolved(SelfCheckoutSoftware scs) {
+    public void scaleOverloadedResolved(SelfCheckoutSoftware scs) {
         // not needed
-        return null;
     }
 
     @Override
-    public Void customerDoesNotWantToBagItem(SelfCheckoutSoftware scs) {
+    public void customerDoesNotWantToBagItem(SelfCheckoutSoftware scs) {
         // not needed
         // Scenes.errorMsg("Customer Does Not Want to Bag Item");
-        return null;
     }
 
     @Override
-    public Void invalidBanknoteDetected() {
+    public void invalidBanknoteDetected() {
         // need other prompt method
-        return null;
     }
 
     @Override
-    public Void banknoteAdded() {
+    public void banknoteAdded() {
         // need other prompt method
-        return null;
     }
 
     @Override
-    public Void banknoteStorageFull() {
+    public void banknoteStorageFull() {
         Scenes.errorMsg("Banknote Storage Full");
-        return null;
     }
 
     @Override
-    public Void banknoteDispenserEmpty() {
+    public void banknoteDispenserEmpty() {
         Scenes.errorMsg("Banknote Dispenser Empty");
-        return null;
     }
 
     @Override
-    public Void invalidCoinDetected() {
+    public void invalidCoinDetected() {
         // need other prompt method
-        return null;
     }
 
     @Override
-    public Void coinAdded() {
+    public void coinAdded() {
         // need other prompt method
-        return null;
     }
 
     @Override
-    public Void coinStorageFull() {
+    public void coinStorageFull() {
         Scenes.errorMsg("Coin Storage Full");
-        return null;
     }
 
     @Override
-    public Void coinDispenserEmpty() {
+    public void coinDispenserEmpty() {
         Scenes.errorMsg("Coin Dispenser Empty");
-        return null;
     }
 
     @Override
-    public Void invalidCardTypeDetected() {
+    public void invalidCardTypeDetected() {
         Scenes.errorMsg("Invalid Card Type Detected");
-        return null;
     }
 
     @Override
-    public Void cardTransactionSucceeded() {
+    public void cardTransactionSucceeded() {
         // need other prompt method
-        return null;
     }
 
     @Override
-    public Void invalidGiftCardDetected() {
+    public void invalidGiftCardDetected() {
         Scenes.errorMsg("Invalid Gift Card Detected");
-        return null;
     }
 
     @Override
-    public Void invalidMembershipCardDetected() {
+    public void invalidMembershipCardDetected() {
         Scenes.errorMsg("Invalid Membership Card Detected");
-        return null;
     }
 
     @Override
-    public Void membershipCardDetected(String memberID) {
+    public void membershipCardDetected(String memberID) {
         // not needed
         System.out.println("Membership id: " + memberID);
-        return null;
     }
 
     @Override
-    public Void paymentHoldingAuthorizationFailed() {
+    public void paymentHoldingAuthorizationFailed() {
         Scenes.errorMsg("Payment Holding Authorization Failed");
-        return null;
     }
 
     @Override
-    public Void paymentPostingTransactionFailed() {
+    public void paymentPostingTransactionFailed() {
         Scenes.errorMsg("Payment Posting Transaction Failed");
-        return null;
     }
 
     @Override
-    public Void paymentCompleted() {
+    public void giftCardRedeemed(BigDecimal amountDue) {
+        Scenes.errorMsg("Gift card balance used, remaining due: " + amountDue.setScale(2, RoundingMode.HALF_UP));
+    }
+
+    @Override
+    public void paymentCompleted() {
         // need other prompt method
-        return null;
     }
 
     @Override
-    public Void placeInBaggingAreaBlocked() {
+    public void placeInBaggingAreaBlocked() {
         // not needed
         // Scenes.errorMsg("Place In Bagging Area Blocked");
-        return null;
     }
 
     @Override
-    public Void placeInBaggingAreaUnblocked() {
+    public void placeInBaggingAreaUnblocked() {
         // not needed
-        return null;
     }
 
     @Override
-    public Void weightDiscrepancyInBaggingAreaDetected() {
+    public void weightDiscrepancyInBaggingAreaDetected() {
         Scenes.errorMsg("Weight Discrepancy In Bagging Area Detected");
-        return null;
     }
 
     @Override
-    public Void weightDiscrepancyInBaggingAreaResolved() {
+    public void weightDiscrepancyInBaggingAreaResolved() {
         // not needed
-        return null;
     }
 
     @Override
-    public Void productNotFound() {
+    public void productNotFound() {
         Scenes.errorMsg("Product Not Found ");
-        return null;
     }
 
     @Override
-    public Void softwareStarted(SelfCheckoutSoftware scss) {
+    public void softwareStarted(SelfCheckoutSoftware scss) {
         // not needed
-        return null;
     }
 
     @Override
-    public Void softwareStopped(SelfCheckoutSoftware scss) {
+    public void softwareStopped(SelfCheckoutSoftware scss) {
         // not needed
-        return null;
     }
 
     @Override
-    public Void touchScreenBlocked() {
+    public void touchScreenBlocked() {
         // not needed
         // Scenes.errorMsg("Touch Screen Blocked");
-        return null;
     }
 
     @Override
-    public Void touchScreenUnblocked() {
+    public void touchScreenUnblocked() {
         // not needed
-        return null;
     }
 
     @Override
-    public Void phaseChanged(Phase phase) {
+    public void phaseChanged(Phase phase) {
         // not needed
-        return null;
     }
 
     @Override
-    public Void productNotScannable() {
+    public void productNotScannable() {
         // TODO Auto-generated method stub
-        return null;
     }
 }
@@ -497,7 +497,7 @@ public class AppControl {
 		Customer c = selfStationSoftwares.get(station - 1).getCustomer();
 		if (c != null) {
 			DecimalFormat df = new DecimalFormat("0.00");
-			String paid = String.valueOf(df.format(c.getCashBalance()));
+			String paid = String.valueOf(df.format(c.getCashBalance().add(c.getGiftCardBalance())));
 			System.out.println("Paid " + paid);
 			return paid;
 		}
@@ -1,6 +1,10 @@
 package application;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Currency;
@@ -8,6 +12,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JDialog;
 
@@ -33,10 +40,14 @@ import GUI.BanknoteWallet;
 import GUI.CoinWallet;
 import GUI.GUI;
 import bank.Bank;
+import bank.Journal;
+import bank.PaymentLog;
+import interrupt.WeightPipeline;
 import store.Membership;
 import store.Store;
 import store.credentials.CredentialsSystem;
 import user.Attendant;
+import software.Log;
 import software.SelfCheckoutSoftware;
 import software.SupervisionSoftware;
 import store.Inventory;
@@ -60,10 +71,13 @@ import store.Inventory;
 
 public final class Main {
     private static Store store;
+    private static ScheduledExecutorService weightProfileSaver;
 
     public static void main(String[] args) {
         Main.initializeCardAndIssuers();
+        Main.initializePaymentLog();
         Main.initializeProductDatabase();
+        Main.initializeWeightProfiles();
         Main.initializeStore();
         Main.initializeMembership();
         Main.initializeCredentialsSytem();
@@ -106,6 +120,30 @@ public final class Main {
         Bank.addCardIssuer(cardNo3, scotia);
     }
 
+    /**
+     * Opens the card payment log and resolves the payments a previous run left
+     * unfinished, before any station takes a payment.
+     */
+    public static void initializePaymentLog() {
+        try {
+            Files.createDirectories(Configurations.dataDirectory);
+            Path path = Configurations.dataDirectory.resolve("payments.journal");
+            PaymentLog paymentLog = new PaymentLog(new Journal(path));
+
+            List<PaymentLog.Entry> unfinished = paymentLog
+                    .recover(path.resolveSibling("payments.journal." + System.currentTimeMillis()));
+            for (PaymentLog.Entry entry : unfinished) {
+                Log.warn(Log.Category.PAYMENT, "Unfinished card payment marked as failed", "transaction",
+                        entry.getTransactionID());
+            }
+
+            Bank.setPaymentLog(paymentLog);
+        } catch (IOException e) {
+            // Card payments are still taken, without the log
+            e.printStackTrace();
+        }
+    }
+
     public static void initializeProductDatabase() {
         Inventory.clear();
 
@@ -212,6 +250,55 @@ public final class Main {
 
     }
 
+    /**
+     * Restores what products have been seen to weigh when bagged, and saves it
+     * again when the software shuts down, so lanes keep what they learned.
+     */
+    public static void initializeWeightProfiles() {
+        Path path = Configurations.dataDirectory.resolve("weights.csv");
+
+        try {
+            if (Files.exists(path)) {
+                Inventory.loadWeightProfiles(path);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // Lanes start again from the catalog weights
+            e.printStackTrace();
+        }
+
+        Main.scheduleWeightProfileSaves(path);
+    }
+
+    /**
+     * Saves the weight profiles every so often and when the program exits, so a
+     * crash loses only what was learned since the last save. Only the first call
+     * schedules anything.
+     */
+    private static synchronized void scheduleWeightProfileSaves(Path path) {
+        if (weightProfileSaver != null) {
+            return;
+        }
+
+        Runnable save = () -> {
+            try {
+                Files.createDirectories(Configurations.dataDirectory);
+                Inventory.saveWeightProfiles(path);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        };
+
+        weightProfileSaver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Save weight profiles");
+            thread.setDaemon(true);
+            return thread;
+        });
+        weightProfileSaver.scheduleWithFixedDelay(save, Configurations.weightProfileSaveMillis,
+                Configurations.weightProfileSaveMillis, TimeUnit.MILLISECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(save, "Save weight profiles"));
+    }
+
     // We assume we are working in Canadian denominations
     public static void initializeStore() {
         Currency currency = Configurations.currency;
@@ -316,6 +403,9 @@ public final class Main {
             // and add this softeare to supervision software
             SelfCheckoutSoftware software = new SelfCheckoutSoftware(station);
             Store.addSelfCheckoutSoftware(software);
+
+            // Only act on the bagging area's weight once it has settled
+            software.setWeightFilter(WeightPipeline.standard(), Configurations.weightSampleMillis);
             
         }
     }
@@ -448,5 +538,8 @@ public final class Main {
     public static class Configurations {
         public static final Currency currency = Currency.getInstance("CAD");
         public static final int stations = 6;
+        public static final Path dataDirectory = Paths.get("data");
+        public static final long weightSampleMillis = 50;
+        public static final long weightProfileSaveMillis = 5 * 60 * 1000;
     }
 }
\ No newline at end of file
@@ -1,10 +1,13 @@
 package bank;
 
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.lsmr.selfcheckout.Card;
 import org.lsmr.selfcheckout.external.CardIssuer;
@@ -25,6 +28,14 @@ import org.lsmr.selfcheckout.external.CardIssuer;
 public final class Bank {
 	private static final List<CardIssuer> ISSUERS = new ArrayList<CardIssuer>();
 	private static final Map<String, CardIssuer> CARD_ISSUER = new HashMap<String, CardIssuer>();
+	private static Settlement SETTLEMENT;
+	private static PaymentLog PAYMENT_LOG;
+	private static final Map<String, CircuitBreaker> CIRCUIT_BREAKERS = new ConcurrentHashMap<String, CircuitBreaker>();
+
+	// Open after 5 failures in a row, for 1 second at first and at most a minute
+	private static final int BREAKER_FAILURE_THRESHOLD = 5;
+	private static final long BREAKER_OPEN_MILLIS = 1000;
+	private static final long BREAKER_MAX_OPEN_MILLIS = 60000;
 
 	/**
 	 * Instantiation of this class is not needed, so the constructor is private.
@@ -48,6 +59,22 @@ public final class Bank {
 		Bank.ISSUERS.clear();
 	}
 
+	/**
+	 * Finds a card issuer by name.
+	 * 
+	 * @param name the name of the issuer
+	 * @return the issuer, or null if there is no issuer with that name
+	 */
+	public static CardIssuer getIssuer(String name) {
+		for (CardIssuer issuer : Bank.ISSUERS) {
+			if (issuer.getName().equals(name)) {
+				return issuer;
+			}
+		}
+
+		return null;
+	}
+
 	public static CardIssuer getCardIssuer(String cardNumber) {
 		return Bank.CARD_ISSUER.get(cardNumber);
 	}
@@ -63,4 +90,79 @@ public final class Bank {
 	public static void clearCardIssuers() {
 		Bank.CARD_ISSUER.clear();
 	}
+
+	/**
+	 * @return the settlement that card payments are captured into, or null if
+	 *         payments are posted to the issuer immediately
+	 */
+	public static Settlement getSettlement() {
+		return Bank.SETTLEMENT;
+	}
+
+	/**
+	 * Sets the settlement that card payments are captured into. Use null to post
+	 * payments to the issuer immediately.
+	 * 
+	 * @param settlement
+	 */
+	public static void setSettlement(Settlement settlement) {
+		Bank.SETTLEMENT = settlement;
+	}
+
+	/**
+	 * @return the log that card payments are recorded in, or null if payments
+	 *         are not logged
+	 */
+	public static PaymentLog getPaymentLog() {
+		return Bank.PAYMENT_LOG;
+	}
+
+	public static void setPaymentLog(PaymentLog paymentLog) {
+		Bank.PAYMENT_LOG = paymentLog;
+	}
+
+	/**
+	 * Gets the circuit breaker of an issuer, shared by every lane. It is created
+	 * with the default thresholds the first time it is asked for.
+	 * 
+	 * @param issuerName the name of the issuer
+	 * @return the circuit breaker of the issuer
+	 */
+	public static CircuitBreaker getCircuitBreaker(String issuerName) {
+		return Bank.CIRCUIT_BREAKERS.computeIfAbsent(issuerName, name -> new CircuitBreaker(
+				BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MILLIS, BREAKER_MAX_OPEN_MILLIS));
+	}
+
+	public static void setCircuitBreaker(String issuerName, CircuitBreaker breaker) {
+		Bank.CIRCUIT_BREAKERS.put(issuerName, breaker);
+	}
+
+	public static void clearCircuitBreakers() {
+		Bank.CIRCUIT_BREAKERS.clear();
+	}
+
+	/**
+	 * Posts a transaction against a hold. When a settlement is configured, the
+	 * hold is captured into the settlement journal instead and posted at the end
+	 * of the day, unless the card already has as many captures waiting as it
+	 * may, in which case it is posted now. If the capture cannot be written the
+	 * hold is released.
+	 * 
+	 * @return true if the transaction was posted or captured; otherwise, false
+	 */
+	public static boolean postTransaction(CardIssuer issuer, String cardNumber, int holdNumber, BigDecimal amount) {
+		Settlement settlement = Bank.SETTLEMENT;
+
+		if (settlement == null) {
+			return issuer.postTransaction(cardNumber, holdNumber, amount);
+		}
+
+		try {
+			return settlement.capture(issuer, cardNumber, holdNumber, amount)
+					|| issuer.postTransaction(cardNumber, holdNumber, amount);
+		} catch (IOException e) {
+			issuer.releaseHold(cardNumber, holdNumber);
+			return false;
+		}
+	}
 }
@@ -0,0 +1,129 @@
+package bank;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker guarding calls to a card issuer.
+ *
+ * While the breaker is CLOSED every call goes to the issuer. After a number of
+ * consecutive failures it OPENS and calls are refused straight away, so lanes
+ * stop waiting on an issuer that is down. Once the open period is over the
+ * breaker is HALF_OPEN and lets a single trial call through: a success closes
+ * it again, a failure opens it for twice as long as before, up to a maximum.
+ */
+public class CircuitBreaker {
+	public static enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openMillis;
+	private final long maxOpenMillis;
+	private final LongSupplier clock;
+
+	private State state = State.CLOSED;
+	private int failures = 0;
+	private long currentOpenMillis;
+	private long openUntil = 0;
+	private boolean trialInFlight = false;
+
+	/**
+	 * @param failureThreshold the number of consecutive failures that opens the
+	 *                         breaker
+	 * @param openMillis       how long the breaker stays open the first time
+	 * @param maxOpenMillis    the longest the breaker stays open after repeated
+	 *                         failed trials
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis, long maxOpenMillis) {
+		this(failureThreshold, openMillis, maxOpenMillis, System::currentTimeMillis);
+	}
+
+	/**
+	 * @param clock the current time in milliseconds
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis, long maxOpenMillis, LongSupplier clock) {
+		if (failureThreshold <= 0) {
+			throw new IllegalArgumentException("Failure threshold must be positive");
+		}
+
+		if (openMillis <= 0 || maxOpenMillis < openMillis) {
+			throw new IllegalArgumentException("Open period must be positive and at most the maximum");
+		}
+
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+		this.maxOpenMillis = maxOpenMillis;
+		this.currentOpenMillis = openMillis;
+		this.clock = clock;
+	}
+
+	public synchronized State getState() {
+		this.update();
+		return this.state;
+	}
+
+	/**
+	 * Asks whether a call may go to the issuer. In the HALF_OPEN state only one
+	 * trial call is let through until its outcome is recorded.
+	 *
+	 * @return true if the call may go ahead
+	 */
+	public synchronized boolean allowRequest() {
+		this.update();
+
+		switch (this.state) {
+		case CLOSED:
+			return true;
+		case HALF_OPEN:
+			if (this.trialInFlight) {
+				return false;
+			}
+			this.trialInFlight = true;
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Records that the issuer answered, whether it approved or declined.
+	 */
+	public synchronized void recordSuccess() {
+		this.state = State.CLOSED;
+		this.failures = 0;
+		this.currentOpenMillis = this.openMillis;
+		this.trialInFlight = false;
+	}
+
+	/**
+	 * Records that the issuer could not be reached or did not answer in time.
+	 */
+	public synchronized void recordFailure() {
+		this.update();
+
+		if (this.state == State.HALF_OPEN) {
+			// The trial failed, back off for longer
+			this.currentOpenMillis = Math.min(this.currentOpenMillis * 2, this.maxOpenMillis);
+			this.open();
+			return;
+		}
+
+		if (this.state == State.CLOSED && ++this.failures >= this.failureThreshold) {
+			this.open();
+		}
+	}
+
+	private void open() {
+		this.state = State.OPEN;
+		this.openUntil = this.clock.getAsLong() + this.currentOpenMillis;
+		this.failures = 0;
+		this.trialInFlight = false;
+	}
+
+	private void update() {
+		if (this.state == State.OPEN && this.clock.getAsLong() >= this.openUntil) {
+			this.state = State.HALF_OPEN;
+			this.trialInFlight = false;
+		}
+	}
+}
@@ -0,0 +1,374 @@
+package bank;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.lsmr.selfcheckout.external.CardIssuer;
+
+/**
+ * Durable store-and-forward queue of payments approved in stand-in.
+ *
+ * When an issuer cannot be reached, a lane may approve a payment locally (see
+ * {@link StandIn}) and queue it here. The queue is written to a
+ * {@link Journal} before the customer is let go, and {@link #forward(long)}
+ * later charges every queued payment to its issuer. Issuers that are still
+ * down are skipped until their {@link CircuitBreaker} lets a trial call
+ * through, so an outage is retried with backoff instead of on every round.
+ *
+ * The queue also keeps the amount still outstanding per card and per lane,
+ * which is what stand-in risk limits are checked against.
+ *
+ * Journal records have the form:
+ *
+ * <pre>
+ * QUEUED	id	laneID	issuer	cardNumber	amount
+ * FORWARDED	id
+ * DECLINED	id
+ * </pre>
+ */
+public class ForwardQueue {
+	public static enum State {
+		QUEUED, FORWARDED, DECLINED
+	}
+
+	/**
+	 * A payment approved in stand-in.
+	 */
+	public static class Entry {
+		private final long id;
+		private final String laneID;
+		private final String issuer;
+		private final String cardNumber;
+		private final BigDecimal amount;
+		private volatile State state = State.QUEUED;
+
+		// False while the payment is reserved but not yet written to the journal
+		private boolean journaled;
+
+		private Entry(long id, String laneID, String issuer, String cardNumber, BigDecimal amount) {
+			this.id = id;
+			this.laneID = laneID;
+			this.issuer = issuer;
+			this.cardNumber = cardNumber;
+			this.amount = amount;
+		}
+
+		public long getID() {
+			return this.id;
+		}
+
+		public String getLaneID() {
+			return this.laneID;
+		}
+
+		public String getIssuer() {
+			return this.issuer;
+		}
+
+		public String getCardNumber() {
+			return this.cardNumber;
+		}
+
+		public BigDecimal getAmount() {
+			return this.amount;
+		}
+
+		/**
+		 * @return QUEUED until the payment is forwarded, then FORWARDED, or DECLINED
+		 *         if the issuer refused it and the store carries the loss
+		 */
+		public State getState() {
+			return this.state;
+		}
+	}
+
+	private final Journal journal;
+
+	// Every entry by ID, in the order they were queued
+	private final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+	private final Map<String, BigDecimal> outstandingByCard = new HashMap<String, BigDecimal>();
+	private final Map<String, BigDecimal> outstandingByLane = new HashMap<String, BigDecimal>();
+	private long nextID = 1;
+
+	private final Object forwarding = new Object();
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Opens a forward queue and replays its journal, so payments queued before a
+	 * restart are still forwarded.
+	 *
+	 * @param journal the journal the queue is written to
+	 * @throws IOException if the journal cannot be read
+	 */
+	public ForwardQueue(Journal journal) throws IOException {
+		this.journal = journal;
+
+		this.journal.replay(record -> {
+			String[] fields = record.split("\t");
+
+			if (fields[0].equals(State.QUEUED.name()) && fields.length == 6) {
+				// A journal compacted by an older version may hold a payment twice
+				if (this.entries.containsKey(Long.parseLong(fields[1]))) {
+					return;
+				}
+
+				Entry entry = new Entry(Long.parseLong(fields[1]), fields[2], fields[3], fields[4],
+						new BigDecimal(fields[5]));
+				entry.journaled = true;
+				this.add(entry);
+				this.nextID = Math.max(this.nextID, entry.id + 1);
+			} else if (fields.length == 2) {
+				Entry entry = this.entries.get(Long.parseLong(fields[1]));
+				if (entry != null && entry.state == State.QUEUED) {
+					this.remove(entry, State.valueOf(fields[0]));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Queues a payment if it keeps the card and the lane within their limits.
+	 * Returns once the payment is durable in the journal. Until then it counts
+	 * towards the limits, but is not pending, so it is neither forwarded nor
+	 * compacted.
+	 *
+	 * @param laneID     the lane that approved the payment
+	 * @param issuer     the issuer of the card
+	 * @param cardNumber the card to charge
+	 * @param amount     the amount to charge
+	 * @param cardLimit  the most that may be outstanding on the card
+	 * @param laneLimit  the most that may be outstanding for the lane
+	 * @return the queued payment, or null if it would exceed a limit
+	 * @throws IOException if the payment could not be written, in which case it
+	 *                     is not queued
+	 */
+	public Entry enqueue(String laneID, String issuer, String cardNumber, BigDecimal amount, BigDecimal cardLimit,
+			BigDecimal laneLimit) throws IOException {
+		Entry entry;
+
+		// Reserve the amount first so concurrent lanes cannot overrun a limit, but
+		// write to the journal outside the lock so their writes are batched
+		synchronized (this) {
+			if (this.getOutstandingForCard(cardNumber).add(amount).compareTo(cardLimit) > 0
+					|| this.getOutstandingForLane(laneID).add(amount).compareTo(laneLimit) > 0) {
+				return null;
+			}
+
+			entry = new Entry(this.nextID++, laneID, issuer, cardNumber, amount);
+			this.add(entry);
+		}
+
+		try {
+			this.journal.append(State.QUEUED + "\t" + entry.id + "\t" + laneID + "\t" + issuer + "\t" + cardNumber + "\t"
+					+ amount.toPlainString());
+		} catch (IOException e) {
+			synchronized (this) {
+				this.remove(entry, null);
+				this.entries.remove(entry.id);
+				this.notifyAll();
+			}
+			throw e;
+		}
+
+		synchronized (this) {
+			entry.journaled = true;
+			this.notifyAll();
+		}
+		return entry;
+	}
+
+	/**
+	 * @param id
+	 * @return the payment with the given ID, or null if it is unknown
+	 */
+	public synchronized Entry get(long id) {
+		return this.entries.get(id);
+	}
+
+	/**
+	 * @return the payments written to the journal and not yet forwarded, oldest
+	 *         first
+	 */
+	public synchronized List<Entry> getPending() {
+		List<Entry> pending = new ArrayList<Entry>();
+
+		for (Entry entry : this.entries.values()) {
+			if (entry.state == State.QUEUED && entry.journaled) {
+				pending.add(entry);
+			}
+		}
+
+		return pending;
+	}
+
+	public synchronized BigDecimal getOutstandingForCard(String cardNumber) {
+		return this.outstandingByCard.getOrDefault(cardNumber, BigDecimal.ZERO);
+	}
+
+	public synchronized BigDecimal getOutstandingForLane(String laneID) {
+		return this.outstandingByLane.getOrDefault(laneID, BigDecimal.ZERO);
+	}
+
+	/**
+	 * Forwards every pending payment whose issuer is reachable. Payments to an
+	 * issuer whose circuit breaker is open are left for a later round, as are the
+	 * rest of an issuer's payments once one of them fails.
+	 *
+	 * @param timeoutMillis how long to wait for the issuer on each payment
+	 * @return the payments that were forwarded or declined in this round
+	 * @throws IOException if the outcome of a payment could not be written. The
+	 *                     payment is not charged again unless the queue is
+	 *                     reopened from the journal.
+	 */
+	public List<Entry> forward(long timeoutMillis) throws IOException {
+		List<Entry> completed = new ArrayList<Entry>();
+
+		synchronized (this.forwarding) {
+			Set<String> unreachable = new HashSet<String>();
+
+			for (Entry entry : this.getPending()) {
+				CardIssuer issuer = Bank.getIssuer(entry.issuer);
+				if (issuer == null || unreachable.contains(entry.issuer)) {
+					continue;
+				}
+
+				CircuitBreaker breaker = Bank.getCircuitBreaker(entry.issuer);
+				if (!breaker.allowRequest()) {
+					unreachable.add(entry.issuer);
+					continue;
+				}
+
+				StandIn.Decision decision = StandIn.charge(issuer, entry.cardNumber, entry.amount, timeoutMillis);
+
+				if (decision == StandIn.Decision.UNAVAILABLE) {
+					breaker.recordFailure();
+					unreachable.add(entry.issuer);
+					continue;
+				}
+
+				breaker.recordSuccess();
+				State state = decision == StandIn.Decision.APPROVED ? State.FORWARDED : State.DECLINED;
+
+				// The issuer has answered, so never charge the payment again from
+				// this queue, even if the outcome cannot be written
+				synchronized (this) {
+					this.remove(entry, state);
+				}
+				completed.add(entry);
+
+				this.journal.append(state + "\t" + entry.id);
+			}
+		}
+
+		return completed;
+	}
+
+	/**
+	 * Forwards pending payments in the background until {@link #stop()} is
+	 * called.
+	 *
+	 * @param periodMillis  how often to try
+	 * @param timeoutMillis how long to wait for the issuer on each payment
+	 */
+	public synchronized void start(long periodMillis, long timeoutMillis) {
+		if (this.scheduler != null) {
+			return;
+		}
+
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ForwardQueue");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		this.scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				this.forward(timeoutMillis);
+			} catch (IOException e) {
+				// The journal could not be written, try again next round
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+			this.scheduler = null;
+		}
+	}
+
+	/**
+	 * Copies the journal to the given file and rewrites it to hold only the
+	 * pending payments, so the journal does not grow forever. A crash while
+	 * compacting leaves the journal as it was or compacted, so pending payments
+	 * are always still in it. Payments being queued are waited for, so each is
+	 * written either before the journal is rewritten, and kept, or after.
+	 *
+	 * @param archive where the current journal is copied to
+	 * @throws IOException          if the journal cannot be copied or rewritten
+	 * @throws InterruptedException if interrupted while waiting for payments
+	 *                              being queued
+	 */
+	public void compact(Path archive) throws IOException, InterruptedException {
+		synchronized (this.forwarding) {
+			synchronized (this) {
+				while (this.isQueueing()) {
+					this.wait();
+				}
+
+				List<String> records = new ArrayList<String>();
+				for (Entry entry : this.getPending()) {
+					records.add(State.QUEUED + "\t" + entry.id + "\t" + entry.laneID + "\t" + entry.issuer + "\t"
+							+ entry.cardNumber + "\t" + entry.amount.toPlainString());
+				}
+
+				this.journal.rewrite(archive, records);
+				this.entries.values().removeIf(entry -> entry.state != State.QUEUED);
+			}
+		}
+	}
+
+	private boolean isQueueing() {
+		for (Entry entry : this.entries.values()) {
+			if (!entry.journaled) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void add(Entry entry) {
+		this.entries.put(entry.id, entry);
+		this.outstandingByCard.merge(entry.cardNumber, entry.amount, BigDecimal::add);
+		this.outstandingByLane.merge(entry.laneID, entry.amount, BigDecimal::add);
+	}
+
+	/**
+	 * Takes a queued entry off the outstanding totals and sets its final state.
+	 */
+	private void remove(Entry entry, State state) {
+		this.outstandingByCard.computeIfPresent(entry.cardNumber, (card, total) -> {
+			BigDecimal left = total.subtract(entry.amount);
+			return left.signum() == 0 ? null : left;
+		});
+		this.outstandingByLane.computeIfPresent(entry.laneID, (lane, total) -> {
+			BigDecimal left = total.subtract(entry.amount);
+			return left.signum() == 0 ? null : left;
+		});
+
+		if (state != null) {
+			entry.state = state;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package bank;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An append-only, line oriented journal on the local disk.
+ *
+ * Records are appended with group commit: every caller of
+ * {@link #append(String)} waits until its record is forced to disk, but
+ * callers that arrive while a force is in progress are gathered into the next
+ * batch and share a single write and force. Under load this turns one disk
+ * sync per record into one disk sync per batch.
+ *
+ * A record is a single line of text, so records must not contain line breaks.
+ */
+public class Journal implements Closeable {
+	private final Path path;
+	private FileChannel channel;
+
+	// Records that have been appended but not yet written
+	private StringBuilder pending = new StringBuilder();
+
+	// Sequence numbers of the last appended record, the last record forced to
+	// disk and the last record lost in a failed write
+	private long appended = 0;
+	private long durable = 0;
+	private long failed = 0;
+	private boolean committing = false;
+
+	/**
+	 * Opens the journal at the given path, creating it if it does not exist.
+	 * Existing records are kept and new records are appended after them.
+	 *
+	 * @param path the journal file
+	 * @throws IOException if the file cannot be opened
+	 */
+	public Journal(Path path) throws IOException {
+		this.path = path;
+		this.channel = Journal.open(path);
+	}
+
+	private static FileChannel open(Path path) throws IOException {
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	public Path getPath() {
+		return this.path;
+	}
+
+	/**
+	 * Appends a record and waits until it, and every record appended before it,
+	 * is durable.
+	 *
+	 * @param record the record, without a line break
+	 * @return the sequence number of the record
+	 * @throws IOException if the batch containing the record could not be written
+	 */
+	public long append(String record) throws IOException {
+		if (record.indexOf('\n') >= 0 || record.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException("A journal record cannot contain line breaks");
+		}
+
+		long sequence;
+		synchronized (this) {
+			if (this.channel == null) {
+				throw new IllegalStateException("Journal is closed");
+			}
+
+			this.pending.append(record).append('\n');
+			sequence = ++this.appended;
+		}
+
+		this.commit(sequence);
+		return sequence;
+	}
+
+	/**
+	 * Waits until the record with the given sequence number is durable. The first
+	 * waiter that finds no commit in progress becomes the leader and writes every
+	 * pending record on behalf of the others.
+	 */
+	private void commit(long sequence) throws IOException {
+		byte[] batch;
+		long batchEnd;
+
+		synchronized (this) {
+			while (this.committing && this.durable < sequence) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for journal commit", e);
+				}
+			}
+
+			if (sequence <= this.failed) {
+				throw new IOException("Journal batch containing record " + sequence + " was not written");
+			}
+
+			if (this.durable >= sequence) {
+				return;
+			}
+
+			this.committing = true;
+			batch = this.pending.toString().getBytes(StandardCharsets.UTF_8);
+			this.pending.setLength(0);
+			batchEnd = this.appended;
+		}
+
+		boolean written = false;
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(batch);
+			while (buffer.hasRemaining()) {
+				this.channel.write(buffer);
+			}
+			this.channel.force(false);
+			written = true;
+		} finally {
+			synchronized (this) {
+				if (written) {
+					this.durable = batchEnd;
+				} else {
+					this.failed = batchEnd;
+				}
+				this.committing = false;
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Streams every durable record, in the order they were appended, to the
+	 * consumer. Records are read one line at a time so the journal never has to
+	 * fit in memory.
+	 *
+	 * @param consumer receives each record
+	 * @throws IOException if the journal cannot be read
+	 */
+	public void replay(Consumer<String> consumer) throws IOException {
+		Journal.replay(this.path, consumer);
+	}
+
+	/**
+	 * Streams every record in a journal file to the consumer.
+	 *
+	 * @param path     the journal file
+	 * @param consumer receives each record
+	 * @throws IOException if the file cannot be read
+	 */
+	public static void replay(Path path, Consumer<String> consumer) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					consumer.accept(line);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves every durable record to the given file and starts an empty journal in
+	 * place. Appends made while rolling wait and land in the new journal.
+	 *
+	 * @param target where the current records are moved to
+	 * @throws IOException if the journal cannot be moved or reopened
+	 */
+	public synchronized void roll(Path target) throws IOException {
+		this.flush();
+
+		this.channel.close();
+		Files.move(this.path, target, StandardCopyOption.REPLACE_EXISTING);
+		this.channel = Journal.open(this.path);
+	}
+
+	/**
+	 * Replaces every durable record with the given ones, keeping a copy of the
+	 * journal as it was in the given file. The new records are written to a
+	 * separate file and forced to disk first, then moved over the journal in one
+	 * step, so a crash leaves either the old records or the new ones. Appends
+	 * made while rewriting wait and land after the new records.
+	 *
+	 * @param archive where the current records are copied to
+	 * @param records the records the journal is left with
+	 * @throws IOException if the journal cannot be copied or rewritten, in which
+	 *                     case it still holds the current records
+	 */
+	public synchronized void rewrite(Path archive, List<String> records) throws IOException {
+		this.flush();
+
+		StringBuilder text = new StringBuilder();
+		for (String record : records) {
+			if (record.indexOf('\n') >= 0 || record.indexOf('\r') >= 0) {
+				throw new IllegalArgumentException("A journal record cannot contain line breaks");
+			}
+			text.append(record).append('\n');
+		}
+
+		Path rewritten = this.path.resolveSibling(this.path.getFileName() + ".rewrite");
+		try (FileChannel channel = FileChannel.open(rewritten, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+
+		Files.copy(this.path, archive, StandardCopyOption.REPLACE_EXISTING);
+
+		this.channel.close();
+		try {
+			Files.move(rewritten, this.path, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			this.channel = Journal.open(this.path);
+		}
+	}
+
+	/**
+	 * Waits for a commit in progress and writes what is pending, so every record
+	 * appended so far is durable.
+	 */
+	private void flush() throws IOException {
+		while (this.committing) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for journal commit", e);
+			}
+		}
+
+		// Make sure nothing appended so far is left behind
+		byte[] batch = this.pending.toString().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.wrap(batch);
+		while (buffer.hasRemaining()) {
+			this.channel.write(buffer);
+		}
+		this.channel.force(false);
+		this.pending.setLength(0);
+		this.durable = this.appended;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.channel != null) {
+			this.channel.close();
+			this.channel = null;
+		}
+	}
+}
@@ -0,0 +1,321 @@
+package bank;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.lsmr.selfcheckout.external.CardIssuer;
+
+/**
+ * Write-ahead log of card payments.
+ *
+ * Every payment is identified by a transaction ID and each step of it is
+ * written to the log before the lane moves on:
+ * REQUESTED, then HELD once the issuer authorized the hold, and finally POSTED
+ * or FAILED, or STOOD_IN if a {@link StandIn} approved it while the issuer was
+ * unavailable. Because the log knows how far every transaction got, a request
+ * repeated with the same transaction ID never charges the card twice: a posted
+ * transaction returns its recorded result, and a held transaction only posts
+ * the hold it already has.
+ *
+ * The one step the log cannot make safe is the call that follows REQUESTED:
+ * after a crash there the issuer may hold the amount under a hold number that
+ * was never logged, and it has no way to look holds up, or a stand-in may have
+ * queued the payment to be forwarded. Such a transaction is never authorized
+ * again, so the card is not held twice, and {@link #recover(Path)} reports it
+ * so the store can reconcile it with the issuer.
+ *
+ * Records are appended through a {@link Journal}, so concurrent lanes share
+ * disk syncs instead of waiting on one each. Log records have the form:
+ *
+ * <pre>
+ * transactionID	state	issuer	cardNumber	holdNumber	amount
+ * </pre>
+ */
+public class PaymentLog {
+	public static enum State {
+		REQUESTED, HELD, POSTED, FAILED,
+
+		/**
+		 * The issuer was unavailable and the lane approved the payment itself,
+		 * queueing it to be forwarded
+		 */
+		STOOD_IN
+	}
+
+	/**
+	 * The last recorded state of a transaction.
+	 */
+	public static class Entry {
+		private final String transactionID;
+		private final State state;
+		private final String issuer;
+		private final String cardNumber;
+		private final int holdNumber;
+		private final BigDecimal amount;
+
+		private Entry(String transactionID, State state, String issuer, String cardNumber, int holdNumber,
+				BigDecimal amount) {
+			this.transactionID = transactionID;
+			this.state = state;
+			this.issuer = issuer;
+			this.cardNumber = cardNumber;
+			this.holdNumber = holdNumber;
+			this.amount = amount;
+		}
+
+		public String getTransactionID() {
+			return this.transactionID;
+		}
+
+		public State getState() {
+			return this.state;
+		}
+
+		public String getIssuer() {
+			return this.issuer;
+		}
+
+		public String getCardNumber() {
+			return this.cardNumber;
+		}
+
+		/**
+		 * @return the hold number, or -1 if no hold was authorized
+		 */
+		public int getHoldNumber() {
+			return this.holdNumber;
+		}
+
+		public BigDecimal getAmount() {
+			return this.amount;
+		}
+
+		private boolean isFinished() {
+			return this.state == State.POSTED || this.state == State.FAILED || this.state == State.STOOD_IN;
+		}
+
+		private Entry next(State state, int holdNumber) {
+			return new Entry(this.transactionID, state, this.issuer, this.cardNumber, holdNumber, this.amount);
+		}
+
+		private String toRecord() {
+			return this.transactionID + "\t" + this.state + "\t" + this.issuer + "\t" + this.cardNumber + "\t"
+					+ this.holdNumber + "\t" + this.amount.toPlainString();
+		}
+
+		private static Entry fromRecord(String record) {
+			String[] fields = record.split("\t");
+			if (fields.length != 6) {
+				return null;
+			}
+
+			return new Entry(fields[0], State.valueOf(fields[1]), fields[2], fields[3], Integer.parseInt(fields[4]),
+					new BigDecimal(fields[5]));
+		}
+	}
+
+	private final Journal journal;
+	private final Map<String, Entry> transactions = new ConcurrentHashMap<String, Entry>();
+
+	// Transactions a previous run left REQUESTED, which may hold an unknown hold
+	private final Set<String> interrupted = ConcurrentHashMap.newKeySet();
+
+	// Calls for the same transaction are serialized, different transactions only
+	// share a lock when their IDs hash to the same stripe
+	private final Object[] locks = new Object[64];
+
+	/**
+	 * Opens a payment log and replays it to restore the last state of every
+	 * transaction. Call {@link #recover(Path)} afterwards to resolve transactions
+	 * left unfinished by a crash.
+	 *
+	 * @param journal the journal the log is written to
+	 * @throws IOException if the journal cannot be read
+	 */
+	public PaymentLog(Journal journal) throws IOException {
+		this.journal = journal;
+
+		for (int t = 0; t < this.locks.length; t++) {
+			this.locks[t] = new Object();
+		}
+
+		this.journal.replay(record -> {
+			Entry entry = Entry.fromRecord(record);
+			if (entry != null) {
+				this.transactions.put(entry.transactionID, entry);
+			}
+		});
+
+		for (Entry entry : this.transactions.values()) {
+			if (entry.state == State.REQUESTED) {
+				this.interrupted.add(entry.transactionID);
+			}
+		}
+	}
+
+	/**
+	 * @param transactionID
+	 * @return the last recorded state of the transaction, or null if it is unknown
+	 */
+	public Entry get(String transactionID) {
+		return this.transactions.get(transactionID);
+	}
+
+	/**
+	 * Pays the amount with the card, logging every step. Repeating a call with
+	 * the same transaction ID returns the recorded result of the previous call
+	 * without charging the card again; if the previous call stopped after the
+	 * hold, only the post is retried. A transaction a previous run left before
+	 * its hold was logged fails without being authorized again.
+	 *
+	 * @param transactionID identifies the payment
+	 * @param issuer        the issuer of the card
+	 * @param cardNumber    the card to charge
+	 * @param amount        the amount to charge
+	 * @return the final entry, either POSTED or FAILED. A FAILED entry with a
+	 *         hold number of -1 failed to authorize the hold.
+	 * @throws IOException if a step could not be logged. The transaction is
+	 *                     left as it was last recorded.
+	 */
+	public Entry pay(String transactionID, CardIssuer issuer, String cardNumber, BigDecimal amount)
+			throws IOException {
+		return this.pay(transactionID, issuer, cardNumber, amount, null);
+	}
+
+	/**
+	 * Pays the amount with the card as {@link #pay(String, CardIssuer, String, BigDecimal)}
+	 * does, but through the stand-in processor, so the issuer is only waited for
+	 * so long and the payment may be approved locally while it is unavailable.
+	 *
+	 * @param standIn the stand-in processor of the lane, or null to wait for the
+	 *                issuer
+	 * @return the final entry, either POSTED, STOOD_IN or FAILED
+	 */
+	public Entry pay(String transactionID, CardIssuer issuer, String cardNumber, BigDecimal amount, StandIn standIn)
+			throws IOException {
+		synchronized (this.locks[(transactionID.hashCode() & 0x7fffffff) % this.locks.length]) {
+			return this.process(transactionID, issuer, cardNumber, amount, standIn);
+		}
+	}
+
+	private Entry process(String transactionID, CardIssuer issuer, String cardNumber, BigDecimal amount,
+			StandIn standIn) throws IOException {
+		Entry entry = this.transactions.get(transactionID);
+
+		if (entry != null && entry.isFinished()) {
+			return entry;
+		}
+
+		if (entry != null && entry.state == State.REQUESTED && this.interrupted.contains(transactionID)) {
+			// The issuer may already hold the amount for it, under a number that was never logged
+			return this.write(entry.next(State.FAILED, -1));
+		}
+
+		if (entry == null || entry.state == State.REQUESTED) {
+			entry = new Entry(transactionID, State.REQUESTED, issuer.getName(), cardNumber, -1, amount);
+			this.write(entry);
+
+			if (standIn != null) {
+				return this.standIn(entry, issuer, standIn);
+			}
+
+			int holdNumber = issuer.authorizeHold(cardNumber, amount);
+			if (holdNumber == -1) {
+				return this.write(entry.next(State.FAILED, -1));
+			}
+
+			try {
+				entry = this.write(entry.next(State.HELD, holdNumber));
+			} catch (IOException e) {
+				// Nothing knows the hold number but this call, so release the hold
+				// before the transaction is left REQUESTED for the retry
+				issuer.releaseHold(cardNumber, holdNumber);
+				throw e;
+			}
+		}
+
+		// The transaction is held, either just now or by an earlier attempt
+		if (Bank.postTransaction(issuer, entry.cardNumber, entry.holdNumber, entry.amount)) {
+			return this.write(entry.next(State.POSTED, entry.holdNumber));
+		}
+
+		return this.write(entry.next(State.FAILED, entry.holdNumber));
+	}
+
+	private Entry standIn(Entry requested, CardIssuer issuer, StandIn standIn) throws IOException {
+		// The hold is logged from the issuer call, before the post, as it is without a stand-in
+		StandIn.Decision decision = standIn.pay(issuer, requested.cardNumber, requested.amount,
+				holdNumber -> this.write(requested.next(State.HELD, holdNumber)));
+
+		Entry entry = this.transactions.get(requested.transactionID);
+		int holdNumber = entry.state == State.HELD ? entry.holdNumber : -1;
+
+		switch (decision) {
+		case APPROVED:
+			return this.write(requested.next(State.POSTED, holdNumber));
+		case STOOD_IN:
+			return this.write(requested.next(State.STOOD_IN, -1));
+		default:
+			return this.write(requested.next(State.FAILED, holdNumber));
+		}
+	}
+
+	/**
+	 * Resolves transactions left unfinished by a crash. The lane never confirmed
+	 * these payments to the customer, so a held transaction has its hold
+	 * released, and every unfinished transaction is marked as failed. A
+	 * transaction still REQUESTED may be held under a hold number that was never
+	 * logged, which only the issuer can release. The log is then archived to the
+	 * given file and rewritten to hold only the last state of every transaction,
+	 * so a transaction repeated after a restart still returns its recorded
+	 * result.
+	 * 
+	 * This is meant to run at startup, before any lane takes payments.
+	 *
+	 * @param archive where the current log is copied to
+	 * @return the transactions that were unfinished
+	 * @throws IOException if the log cannot be written or archived
+	 */
+	public List<Entry> recover(Path archive) throws IOException {
+		List<Entry> unfinished = new ArrayList<Entry>();
+
+		for (Entry entry : this.transactions.values()) {
+			if (entry.isFinished()) {
+				continue;
+			}
+
+			unfinished.add(entry);
+
+			if (entry.state == State.HELD) {
+				CardIssuer issuer = Bank.getIssuer(entry.issuer);
+				if (issuer != null) {
+					issuer.releaseHold(entry.cardNumber, entry.holdNumber);
+				}
+			}
+
+			this.write(entry.next(State.FAILED, entry.holdNumber));
+		}
+
+		List<String> records = new ArrayList<String>();
+		for (Entry entry : this.transactions.values()) {
+			records.add(entry.toRecord());
+		}
+
+		this.journal.rewrite(archive, records);
+		this.interrupted.clear();
+
+		return unfinished;
+	}
+
+	private Entry write(Entry entry) throws IOException {
+		this.journal.append(entry.toRecord());
+		this.transactions.put(entry.transactionID, entry);
+		return entry;
+	}
+}
@@ -0,0 +1,305 @@
+package bank;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.lsmr.selfcheckout.external.CardIssuer;
+
+/**
+ * Batched settlement of card payments.
+ *
+ * Instead of posting every sale to the issuer as it happens, a lane only
+ * places the hold and captures it into the settlement journal. At the end of
+ * the day {@link #settle()} streams the journal, posts the captured holds to
+ * their issuers, and writes one settlement file per issuer with the totals per
+ * card.
+ *
+ * Journal records have the form:
+ *
+ * <pre>
+ * CAPTURE	issuer	cardNumber	holdNumber	amount
+ * </pre>
+ *
+ * An issuer has only a few hold numbers per card, and a captured hold keeps
+ * one until it is settled, so a card may only have
+ * {@link #MAXIMUM_CAPTURED_HOLDS} captures waiting at a time. Once it has, its
+ * payments are posted as they happen instead.
+ *
+ * The holds of a batch that have been posted are logged as
+ *
+ * <pre>
+ * issuer	cardNumber	holdNumber	accepted
+ * </pre>
+ */
+public class Settlement {
+	/**
+	 * Captures a card may have waiting to be settled. The issuer has five hold
+	 * numbers per card, and the rest are left for payments in progress.
+	 */
+	public static final int MAXIMUM_CAPTURED_HOLDS = 2;
+
+	private static final String CAPTURE = "CAPTURE";
+	private static final String SETTLING = ".settling-";
+	private static final String POSTED = ".posted-";
+
+	private final Journal journal;
+	private final Path outputDirectory;
+
+	// Issuers seen by this lane, so their captures can be settled by name
+	private final Map<String, CardIssuer> issuers = new ConcurrentHashMap<String, CardIssuer>();
+
+	// Issuer and card number -> captures waiting to be settled
+	private final Map<String, Integer> captured = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * @param journal         the journal authorizations are captured into
+	 * @param outputDirectory where settlement files are written
+	 */
+	public Settlement(Journal journal, Path outputDirectory) {
+		this.journal = journal;
+		this.outputDirectory = outputDirectory;
+	}
+
+	public Journal getJournal() {
+		return this.journal;
+	}
+
+	/**
+	 * Captures an authorized hold for settlement, unless the card already has
+	 * {@link #MAXIMUM_CAPTURED_HOLDS} captures waiting. Returns once the capture
+	 * is durable in the journal.
+	 *
+	 * @param issuer     the issuer that authorized the hold
+	 * @param cardNumber the card the hold was placed on
+	 * @param holdNumber the hold number returned by the issuer
+	 * @param amount     the amount to be charged
+	 * @return true if the hold was captured; false if it should be posted now
+	 * @throws IOException if the capture could not be written
+	 */
+	public boolean capture(CardIssuer issuer, String cardNumber, int holdNumber, BigDecimal amount)
+			throws IOException {
+		String card = issuer.getName() + "\t" + cardNumber;
+		boolean[] reserved = new boolean[1];
+		this.captured.compute(card, (key, count) -> {
+			int waiting = count == null ? 0 : count;
+			reserved[0] = waiting < MAXIMUM_CAPTURED_HOLDS;
+			return reserved[0] ? waiting + 1 : waiting;
+		});
+		if (!reserved[0]) {
+			return false;
+		}
+
+		this.issuers.putIfAbsent(issuer.getName(), issuer);
+		try {
+			this.journal.append(CAPTURE + "\t" + card + "\t" + holdNumber + "\t" + amount.toPlainString());
+		} catch (IOException e) {
+			this.release(card);
+			throw e;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the captures of a card waiting to be settled
+	 */
+	public int getCaptured(CardIssuer issuer, String cardNumber) {
+		return this.captured.getOrDefault(issuer.getName() + "\t" + cardNumber, 0);
+	}
+
+	private void release(String card) {
+		this.captured.computeIfPresent(card, (key, count) -> count > 1 ? count - 1 : null);
+	}
+
+	/**
+	 * Settles every capture in the journal. The journal is rolled first, so lanes
+	 * can keep capturing while the batch is being settled. Batches left behind by
+	 * an interrupted settlement are settled as well.
+	 *
+	 * Settling a batch can be repeated after a crash. The outcome of every hold
+	 * is recorded in a log next to the batch once it is posted, and holds already
+	 * in it are not posted again, and a settlement file that already exists is
+	 * never overwritten. Only a hold posted just before a crash, and not yet
+	 * recorded, is posted again, and the issuer rejects it as already posted.
+	 *
+	 * @return the settlement files that were written, one per issuer and batch
+	 * @throws IOException if the journal or a settlement file cannot be accessed
+	 */
+	public List<Path> settle() throws IOException {
+		String batchID = Long.toString(System.currentTimeMillis());
+		this.journal.roll(this.journal.getPath().resolveSibling(this.journal.getPath().getFileName() + SETTLING + batchID));
+
+		Path directory = this.journal.getPath().toAbsolutePath().getParent();
+		String name = this.journal.getPath().getFileName().toString();
+
+		List<Path> batches = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, name + SETTLING + "*")) {
+			for (Path batch : stream) {
+				batches.add(batch);
+			}
+		}
+		batches.sort(null);
+
+		List<Path> written = new ArrayList<Path>();
+		for (Path batch : batches) {
+			String id = batch.getFileName().toString().substring(name.length() + SETTLING.length());
+			Path posted = directory.resolve(name + POSTED + id);
+
+			written.addAll(this.settleBatch(batch, posted, id));
+
+			// The batch goes first, so a crash in between leaves a log without a batch, not a batch without a log
+			Files.delete(batch);
+			Files.deleteIfExists(posted);
+		}
+
+		// Logs of batches that were deleted just before a crash
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, name + POSTED + "*")) {
+			for (Path posted : stream) {
+				String id = posted.getFileName().toString().substring(name.length() + POSTED.length());
+				if (!Files.exists(directory.resolve(name + SETTLING + id))) {
+					Files.delete(posted);
+				}
+			}
+		}
+
+		return written;
+	}
+
+	private List<Path> settleBatch(Path batch, Path postedPath, String batchID) throws IOException {
+		// issuer, card number and hold number -> whether the issuer accepted it, for holds already posted
+		Map<String, Boolean> outcomes = new HashMap<String, Boolean>();
+		Journal.replay(postedPath, record -> {
+			int tab = record.lastIndexOf('\t');
+			outcomes.put(record.substring(0, tab), Boolean.valueOf(record.substring(tab + 1)));
+		});
+
+		// issuer -> card number -> totals, sorted so settlement files are stable
+		Map<String, Map<String, CardTotal>> totals = new TreeMap<String, Map<String, CardTotal>>();
+
+		try (Journal posted = new Journal(postedPath)) {
+			Journal.replay(batch, record -> {
+				String[] fields = record.split("\t");
+				if (fields.length != 5 || !fields[0].equals(CAPTURE)) {
+					return;
+				}
+
+				String issuerName = fields[1];
+				String cardNumber = fields[2];
+				int holdNumber = Integer.parseInt(fields[3]);
+				BigDecimal amount = new BigDecimal(fields[4]);
+
+				CardTotal total = totals.computeIfAbsent(issuerName, name -> new TreeMap<String, CardTotal>())
+						.computeIfAbsent(cardNumber, number -> new CardTotal());
+
+				String hold = issuerName + "\t" + cardNumber + "\t" + holdNumber;
+				Boolean accepted = outcomes.get(hold);
+				if (accepted == null) {
+					CardIssuer issuer = this.findIssuer(issuerName);
+					accepted = issuer != null && issuer.postTransaction(cardNumber, holdNumber, amount);
+					outcomes.put(hold, accepted);
+
+					// The card may be captured into again once this is posted, however the issuer answered
+					this.release(issuerName + "\t" + cardNumber);
+
+					try {
+						posted.append(hold + "\t" + accepted);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+
+				if (accepted) {
+					total.count++;
+					total.amount = total.amount.add(amount);
+				} else {
+					total.rejected++;
+					total.rejectedAmount = total.rejectedAmount.add(amount);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		List<Path> written = new ArrayList<Path>();
+		for (Map.Entry<String, Map<String, CardTotal>> entry : totals.entrySet()) {
+			written.add(this.writeSettlementFile(entry.getKey(), batchID, entry.getValue()));
+		}
+
+		return written;
+	}
+
+	private Path writeSettlementFile(String issuerName, String batchID, Map<String, CardTotal> cards)
+			throws IOException {
+		Files.createDirectories(this.outputDirectory);
+		Path file = this.outputDirectory.resolve(issuerName.replaceAll("[^A-Za-z0-9_-]", "_") + "-" + batchID + ".settlement");
+
+		// Written before a crash, so it already has the outcomes recorded for the batch
+		if (Files.exists(file)) {
+			return file;
+		}
+
+		Path partial = file.resolveSibling(file.getFileName() + ".partial");
+
+		int count = 0;
+		BigDecimal amount = BigDecimal.ZERO;
+		int rejected = 0;
+		BigDecimal rejectedAmount = BigDecimal.ZERO;
+
+		try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+			writer.write("ISSUER\t" + issuerName + "\t" + batchID);
+			writer.newLine();
+
+			for (Map.Entry<String, CardTotal> entry : cards.entrySet()) {
+				CardTotal total = entry.getValue();
+				writer.write("CARD\t" + entry.getKey() + "\t" + total.count + "\t" + total.amount.toPlainString() + "\t"
+						+ total.rejected + "\t" + total.rejectedAmount.toPlainString());
+				writer.newLine();
+
+				count += total.count;
+				amount = amount.add(total.amount);
+				rejected += total.rejected;
+				rejectedAmount = rejectedAmount.add(total.rejectedAmount);
+			}
+
+			writer.write("TOTAL\t" + count + "\t" + amount.toPlainString() + "\t" + rejected + "\t"
+					+ rejectedAmount.toPlainString());
+			writer.newLine();
+		}
+
+		// Only a complete settlement file ever appears under its name
+		try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+		Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+
+		return file;
+	}
+
+	private CardIssuer findIssuer(String name) {
+		CardIssuer issuer = this.issuers.get(name);
+
+		// After a restart, fall back to the issuers known to the bank
+		return issuer != null ? issuer : Bank.getIssuer(name);
+	}
+
+	private static class CardTotal {
+		int count = 0;
+		BigDecimal amount = BigDecimal.ZERO;
+		int rejected = 0;
+		BigDecimal rejectedAmount = BigDecimal.ZERO;
+	}
+}
@@ -0,0 +1,261 @@
+package bank;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lsmr.selfcheckout.external.CardIssuer;
+
+/**
+ * Stand-in processing of card payments for one lane.
+ *
+ * A payment is sent to the issuer as usual, but the lane only waits so long
+ * for an answer. If the issuer does not answer in time, fails, or its
+ * {@link CircuitBreaker} is open because it has been failing, the lane
+ * approves the payment itself and queues it in a {@link ForwardQueue} to be
+ * charged once the issuer is back. Stand-in approval is only given while the
+ * amount outstanding in the queue stays within a limit per card and a limit
+ * per lane, so an outage cannot be used to run up an unbounded loss.
+ *
+ * Circuit breakers are shared by every lane through
+ * {@link Bank#getCircuitBreaker(String)}, so once one lane finds an issuer
+ * down the others go straight to stand-in.
+ *
+ * When a {@link PaymentLog} is configured, payments go through
+ * {@link PaymentLog#pay(String, CardIssuer, String, BigDecimal, StandIn)}, which
+ * logs each step of the stand-in decision.
+ */
+public class StandIn {
+	public static enum Decision {
+		/**
+		 * The issuer approved and the payment was posted
+		 */
+		APPROVED,
+
+		/**
+		 * The issuer was unavailable and the payment was approved locally
+		 */
+		STOOD_IN,
+
+		/**
+		 * The issuer refused to hold the amount
+		 */
+		DECLINED,
+
+		/**
+		 * The issuer held the amount but the transaction could not be posted
+		 */
+		POST_FAILED,
+
+		/**
+		 * The issuer was unavailable and the payment is over the stand-in limits
+		 */
+		UNAVAILABLE
+	}
+
+	/**
+	 * Told the hold number once the issuer holds the amount, before the
+	 * transaction is posted.
+	 */
+	public interface HoldListener {
+		/**
+		 * @param holdNumber the hold the issuer placed
+		 * @throws IOException if the hold could not be recorded, in which case it is
+		 *                     released and the transaction is not posted
+		 */
+		void held(int holdNumber) throws IOException;
+	}
+
+	// Issuer calls run here so a lane can stop waiting on them
+	private static final ExecutorService ISSUER_CALLS = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "StandIn");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static final int RUNNING = 0;
+	private static final int POSTING = 1;
+	private static final int ABANDONED = 2;
+
+	private final String laneID;
+	private final ForwardQueue queue;
+	private final BigDecimal cardLimit;
+	private final BigDecimal laneLimit;
+	private final long timeoutMillis;
+
+	/**
+	 * @param laneID        identifies the lane in the forward queue. It should stay
+	 *                      the same across restarts, so the lane limit still
+	 *                      counts payments queued before the restart.
+	 * @param queue         where payments approved in stand-in are queued
+	 * @param cardLimit     the most that may be outstanding in stand-in on a card
+	 * @param laneLimit     the most that may be outstanding in stand-in for this
+	 *                      lane
+	 * @param timeoutMillis how long to wait for the issuer before standing in
+	 */
+	public StandIn(String laneID, ForwardQueue queue, BigDecimal cardLimit, BigDecimal laneLimit, long timeoutMillis) {
+		if (cardLimit.signum() < 0 || laneLimit.signum() < 0) {
+			throw new IllegalArgumentException("Stand-in limits cannot be negative");
+		}
+
+		if (timeoutMillis <= 0) {
+			throw new IllegalArgumentException("Timeout must be positive");
+		}
+
+		this.laneID = laneID;
+		this.queue = queue;
+		this.cardLimit = cardLimit;
+		this.laneLimit = laneLimit;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public String getLaneID() {
+		return this.laneID;
+	}
+
+	public ForwardQueue getQueue() {
+		return this.queue;
+	}
+
+	/**
+	 * Pays the amount with the card, standing in for the issuer if it is
+	 * unavailable.
+	 *
+	 * @param issuer     the issuer of the card
+	 * @param cardNumber the card to charge
+	 * @param amount     the amount to charge
+	 * @return the decision; the payment succeeded if it is APPROVED or STOOD_IN
+	 */
+	public Decision pay(CardIssuer issuer, String cardNumber, BigDecimal amount) {
+		return this.pay(issuer, cardNumber, amount, holdNumber -> {
+		});
+	}
+
+	/**
+	 * Pays the amount with the card, standing in for the issuer if it is
+	 * unavailable, and tells the listener the hold number if the issuer holds
+	 * the amount.
+	 *
+	 * @param issuer     the issuer of the card
+	 * @param cardNumber the card to charge
+	 * @param amount     the amount to charge
+	 * @param listener   told the hold number before the transaction is posted
+	 * @return the decision; the payment succeeded if it is APPROVED or STOOD_IN
+	 */
+	public Decision pay(CardIssuer issuer, String cardNumber, BigDecimal amount, HoldListener listener) {
+		CircuitBreaker breaker = Bank.getCircuitBreaker(issuer.getName());
+
+		if (breaker.allowRequest()) {
+			Decision decision = StandIn.charge(issuer, cardNumber, amount, this.timeoutMillis, listener);
+
+			if (decision != Decision.UNAVAILABLE) {
+				breaker.recordSuccess();
+				return decision;
+			}
+
+			breaker.recordFailure();
+		}
+
+		try {
+			ForwardQueue.Entry entry = this.queue.enqueue(this.laneID, issuer.getName(), cardNumber, amount,
+					this.cardLimit, this.laneLimit);
+			return entry == null ? Decision.UNAVAILABLE : Decision.STOOD_IN;
+		} catch (IOException e) {
+			return Decision.UNAVAILABLE;
+		}
+	}
+
+	/**
+	 * Holds and posts the amount, waiting at most the timeout for the issuer.
+	 *
+	 * If the issuer answers too late, the call is abandoned and a hold it placed
+	 * is released, so a payment the lane stands in for is never also charged by
+	 * the abandoned call. Once the hold is in and the post has started, the call
+	 * is waited for to the end.
+	 *
+	 * @return APPROVED, DECLINED or POST_FAILED if the issuer answered in time;
+	 *         otherwise, UNAVAILABLE
+	 */
+	static Decision charge(CardIssuer issuer, String cardNumber, BigDecimal amount, long timeoutMillis) {
+		return StandIn.charge(issuer, cardNumber, amount, timeoutMillis, holdNumber -> {
+		});
+	}
+
+	/**
+	 * Holds and posts the amount as {@link #charge(CardIssuer, String, BigDecimal, long)}
+	 * does, telling the listener the hold number in between. If the listener
+	 * fails the hold is released and the payment is POST_FAILED.
+	 */
+	static Decision charge(CardIssuer issuer, String cardNumber, BigDecimal amount, long timeoutMillis,
+			HoldListener listener) {
+		AtomicInteger progress = new AtomicInteger(RUNNING);
+
+		CompletableFuture<Decision> call = CompletableFuture.supplyAsync(() -> {
+			int holdNumber = issuer.authorizeHold(cardNumber, amount);
+
+			if (holdNumber == -1) {
+				return Decision.DECLINED;
+			}
+
+			if (!progress.compareAndSet(RUNNING, POSTING)) {
+				issuer.releaseHold(cardNumber, holdNumber);
+				return Decision.UNAVAILABLE;
+			}
+
+			try {
+				listener.held(holdNumber);
+			} catch (IOException e) {
+				issuer.releaseHold(cardNumber, holdNumber);
+				return Decision.POST_FAILED;
+			}
+
+			return Bank.postTransaction(issuer, cardNumber, holdNumber, amount) ? Decision.APPROVED
+					: Decision.POST_FAILED;
+		}, ISSUER_CALLS);
+
+		try {
+			return call.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			if (progress.compareAndSet(RUNNING, ABANDONED)) {
+				return Decision.UNAVAILABLE;
+			}
+
+			// The post already started, so its outcome decides the payment
+			return StandIn.await(call);
+		} catch (ExecutionException e) {
+			// The issuer failed rather than answered, unless it failed while posting
+			return progress.get() == POSTING ? Decision.POST_FAILED : Decision.UNAVAILABLE;
+		} catch (InterruptedException e) {
+			Decision decision = progress.compareAndSet(RUNNING, ABANDONED) ? Decision.UNAVAILABLE
+					: StandIn.await(call);
+			Thread.currentThread().interrupt();
+			return decision;
+		}
+	}
+
+	private static Decision await(CompletableFuture<Decision> call) {
+		boolean interrupted = false;
+
+		try {
+			while (true) {
+				try {
+					return call.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					return Decision.POST_FAILED;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -13,6 +13,7 @@ import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
 import software.SelfCheckoutSoftware;
 import software.SelfCheckoutSoftware.PaymentMethod;
 import software.SelfCheckoutSoftware.Phase;
+import software.observers.SupervisionEvent;
 import user.Customer;
 
 /**
@@ -54,6 +55,13 @@ public class Checkout {
 		return customer;
 	}
 
+	/**
+	 * Forgets the change still to be returned, as when the station restarts.
+	 */
+	public void clearPendingChanges() {
+		this.pendingChanges = new ArrayList<Cash>();
+	}
+
 	/**
 	 * Customer wish to proceed to checkout.
 	 * Enables/disables each device in a self checkout station.
@@ -91,7 +99,7 @@ public class Checkout {
 			throw new IllegalStateException("No customer at checkout station.");
 		}
 
-		BigDecimal subtotal = this.customer.getCartSubtotal();
+		BigDecimal subtotal = this.customer.getAmountDue();
 
 		if (subtotal.compareTo(customer.getCashBalance()) < 1 // x.compareTo(y): returns 1 if x is < y
 																// this may be backwards ^ consider the reverse when
@@ -150,14 +158,14 @@ public class Checkout {
 		}
 
 		// If customer does not have enough cash balance
-		if (this.customer.getCashBalance().compareTo(this.customer.getCartSubtotal()) <= -1) {
+		if (this.customer.getCashBalance().compareTo(this.customer.getAmountDue()) <= -1) {
 			throw new IllegalStateException("Customer has insufficient cash balance to make change");
 		}
 
 		// If the pending change has not been calculated yet, calculate it
 		if (this.pendingChanges.isEmpty()) {
 			// Calculate how much change to return to customer
-			BigDecimal change = this.customer.getCashBalance().subtract(this.customer.getCartSubtotal());
+			BigDecimal change = this.customer.getCashBalance().subtract(this.customer.getAmountDue());
 			this.pendingChanges = new ArrayList<Cash>(this.calculatePendingChanges(change));
 		}
 
@@ -182,7 +190,7 @@ public class Checkout {
 		if (size <= newPendingChanges.size()) {
 			this.scSoftware.errorOccur();
 			this.scSoftware.getSupervisionSoftware()
-					.notifyObservers(observer -> observer.dispenseChangeFailed(this.scSoftware));
+					.notifyObservers(SupervisionEvent.Kind.DISPENSE_CHANGE_FAILED, this.scSoftware);
 			return;
 		}
 
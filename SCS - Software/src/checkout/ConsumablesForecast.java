@@ -0,0 +1,212 @@
+package checkout;
+
+/**
+ * Forecasts when the receipt printer of a lane runs out of paper and ink.
+ *
+ * Every printed receipt is recorded with the ink and paper it used. The usage
+ * rate is an exponentially weighted average over time: each receipt adds its
+ * usage divided by the time constant, and the rate decays by
+ * {@code exp(-elapsed / timeConstant)} as time passes, including while the lane
+ * is idle. A lane that has been busy for the last half hour therefore weighs
+ * far more than one that was busy this morning. The ink and paper of a typical
+ * receipt are averaged the same way per receipt, so a printer can be refilled
+ * before a receipt would run out part way through.
+ */
+public class ConsumablesForecast {
+	/**
+	 * The default time constant of the usage rate: thirty minutes
+	 */
+	public static final long DEFAULT_TIME_CONSTANT = 30 * 60 * 1000L;
+
+	// Weight of the newest receipt in the per-receipt averages
+	private static final double RECEIPT_WEIGHT = 0.2;
+
+	private static final double MILLIS_PER_HOUR = 60 * 60 * 1000.0;
+
+	/**
+	 * The forecast for a printer at one point in time.
+	 */
+	public static class Forecast {
+		private final int paperRemaining;
+		private final int inkRemaining;
+		private final double paperPerHour;
+		private final double inkPerHour;
+		private final double linesPerReceipt;
+		private final double inkPerReceipt;
+
+		private Forecast(int paperRemaining, int inkRemaining, double paperPerHour, double inkPerHour,
+				double linesPerReceipt, double inkPerReceipt) {
+			this.paperRemaining = paperRemaining;
+			this.inkRemaining = inkRemaining;
+			this.paperPerHour = paperPerHour;
+			this.inkPerHour = inkPerHour;
+			this.linesPerReceipt = linesPerReceipt;
+			this.inkPerReceipt = inkPerReceipt;
+		}
+
+		public int getPaperRemaining() {
+			return this.paperRemaining;
+		}
+
+		public int getInkRemaining() {
+			return this.inkRemaining;
+		}
+
+		/**
+		 * @return the recent paper usage, in lines per hour
+		 */
+		public double getPaperPerHour() {
+			return this.paperPerHour;
+		}
+
+		/**
+		 * @return the recent ink usage, in characters per hour
+		 */
+		public double getInkPerHour() {
+			return this.inkPerHour;
+		}
+
+		/**
+		 * @return the paper a typical receipt uses, in lines
+		 */
+		public double getLinesPerReceipt() {
+			return this.linesPerReceipt;
+		}
+
+		/**
+		 * @return the ink a typical receipt uses, in characters
+		 */
+		public double getInkPerReceipt() {
+			return this.inkPerReceipt;
+		}
+
+		/**
+		 * @return the time until the paper runs out at the recent rate, or
+		 *         Long.MAX_VALUE if no paper is being used
+		 */
+		public long getMillisUntilPaperEmpty() {
+			return Forecast.millisUntilEmpty(this.paperRemaining, this.paperPerHour);
+		}
+
+		/**
+		 * @return the time until the ink runs out at the recent rate, or
+		 *         Long.MAX_VALUE if no ink is being used
+		 */
+		public long getMillisUntilInkEmpty() {
+			return Forecast.millisUntilEmpty(this.inkRemaining, this.inkPerHour);
+		}
+
+		/**
+		 * @return the time until the paper or the ink runs out, whichever is first
+		 */
+		public long getMillisUntilEmpty() {
+			return Math.min(this.getMillisUntilPaperEmpty(), this.getMillisUntilInkEmpty());
+		}
+
+		/**
+		 * @return how many typical receipts can still be printed, or
+		 *         Double.POSITIVE_INFINITY if no receipt has been printed yet
+		 */
+		public double getReceiptsUntilEmpty() {
+			double paper = this.linesPerReceipt > 0 ? this.paperRemaining / this.linesPerReceipt
+					: Double.POSITIVE_INFINITY;
+			double ink = this.inkPerReceipt > 0 ? this.inkRemaining / this.inkPerReceipt : Double.POSITIVE_INFINITY;
+			return Math.min(paper, ink);
+		}
+
+		/**
+		 * @param horizonMillis how far ahead to look
+		 * @return true if the printer is forecast to run out within the horizon, or
+		 *         does not have enough left for another typical receipt
+		 */
+		public boolean needsRefill(long horizonMillis) {
+			return this.getMillisUntilEmpty() <= horizonMillis || this.getReceiptsUntilEmpty() < 1;
+		}
+
+		private static long millisUntilEmpty(int remaining, double perHour) {
+			if (perHour <= 0) {
+				return Long.MAX_VALUE;
+			}
+
+			double millis = remaining / perHour * MILLIS_PER_HOUR;
+			return millis >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) millis;
+		}
+	}
+
+	private final long timeConstant;
+
+	// Usage rates per millisecond as of lastTime
+	private double paperRate = 0;
+	private double inkRate = 0;
+	private long lastTime = Long.MIN_VALUE;
+
+	private double linesPerReceipt = 0;
+	private double inkPerReceipt = 0;
+	private long receipts = 0;
+
+	public ConsumablesForecast() {
+		this(DEFAULT_TIME_CONSTANT);
+	}
+
+	/**
+	 * @param timeConstant how quickly past usage is forgotten, in milliseconds
+	 */
+	public ConsumablesForecast(long timeConstant) {
+		if (timeConstant <= 0) {
+			throw new IllegalArgumentException("Time constant must be positive");
+		}
+
+		this.timeConstant = timeConstant;
+	}
+
+	/**
+	 * Records a printed receipt.
+	 *
+	 * @param now   when it was printed, in milliseconds
+	 * @param ink   the ink it used, in characters
+	 * @param lines the paper it used, in lines
+	 */
+	public synchronized void record(long now, int ink, int lines) {
+		double decay = this.decaySince(now);
+		this.paperRate = this.paperRate * decay + (double) lines / this.timeConstant;
+		this.inkRate = this.inkRate * decay + (double) ink / this.timeConstant;
+		this.lastTime = Math.max(this.lastTime, now);
+
+		if (this.receipts++ == 0) {
+			this.linesPerReceipt = lines;
+			this.inkPerReceipt = ink;
+		} else {
+			this.linesPerReceipt += RECEIPT_WEIGHT * (lines - this.linesPerReceipt);
+			this.inkPerReceipt += RECEIPT_WEIGHT * (ink - this.inkPerReceipt);
+		}
+	}
+
+	/**
+	 * Forecasts from the usage recorded so far.
+	 *
+	 * @param inkRemaining   the ink left in the printer, in characters
+	 * @param paperRemaining the paper left in the printer, in lines
+	 * @param now            the current time, in milliseconds
+	 */
+	public synchronized Forecast forecast(int inkRemaining, int paperRemaining, long now) {
+		double decay = this.decaySince(now);
+
+		return new Forecast(paperRemaining, inkRemaining, this.paperRate * decay * MILLIS_PER_HOUR,
+				this.inkRate * decay * MILLIS_PER_HOUR, this.linesPerReceipt, this.inkPerReceipt);
+	}
+
+	/**
+	 * @return the number of receipts recorded
+	 */
+	public synchronized long getReceipts() {
+		return this.receipts;
+	}
+
+	private double decaySince(long now) {
+		if (this.lastTime == Long.MIN_VALUE || now <= this.lastTime) {
+			return 1;
+		}
+
+		return Math.exp(-(double) (now - this.lastTime) / this.timeConstant);
+	}
+}
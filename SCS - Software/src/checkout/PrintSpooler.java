@@ -0,0 +1,234 @@
+package checkout;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.lsmr.selfcheckout.SimulationException;
+import org.lsmr.selfcheckout.devices.EmptyException;
+import org.lsmr.selfcheckout.devices.OverloadException;
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
+
+import software.Log;
+
+/**
+ * Prints the receipts of one station on a worker thread, so a customer's
+ * payment is complete as soon as the receipt is queued rather than once it is
+ * printed.
+ *
+ * Receipts are printed in the order they were queued. When the printer does
+ * not have enough paper or ink for the next receipt, the worker reports it to
+ * the attendant once and waits; the receipt stays at the head of the queue and
+ * is printed when paper or ink is added (see {@link #retry()}). The queue is
+ * bounded, so a printer left empty cannot hold on to an unbounded number of
+ * receipts.
+ *
+ * Created and driven by {@link Receipt#startPrintSpooler(int)}, which every
+ * station calls when it starts.
+ */
+public class PrintSpooler {
+	/**
+	 * A rendered receipt waiting to be printed.
+	 */
+	static class Job {
+		final String text;
+		final int ink;
+		final int lines;
+
+		Job(String text, int ink, int lines) {
+			this.text = text;
+			this.ink = ink;
+			this.lines = lines;
+		}
+	}
+
+	private final Receipt receipt;
+	private final ReceiptPrinter printer;
+	private final int capacity;
+	private final Deque<Job> queue = new ArrayDeque<Job>();
+	private final Thread worker;
+
+	private boolean running = true;
+
+	// Set when the head of the queue cannot be printed until the printer is refilled
+	private boolean stalled = false;
+	private long refills = 0;
+
+	PrintSpooler(Receipt receipt, ReceiptPrinter printer, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Print queue capacity must be positive");
+		}
+
+		this.receipt = receipt;
+		this.printer = printer;
+		this.capacity = capacity;
+
+		this.worker = new Thread(this::work, "PrintSpooler");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Queues a receipt without waiting for it to be printed.
+	 *
+	 * @return false if the queue is full or stopped, in which case the receipt is
+	 *         not queued
+	 */
+	synchronized boolean submit(Job job) {
+		if (!this.running || this.queue.size() == this.capacity) {
+			return false;
+		}
+
+		this.queue.addLast(job);
+		this.notifyAll();
+		return true;
+	}
+
+	/**
+	 * Tries the receipt at the head of the queue again, after paper or ink has
+	 * been added.
+	 */
+	public synchronized void retry() {
+		this.refills++;
+		this.stalled = false;
+		this.notifyAll();
+	}
+
+	/**
+	 * @return the number of receipts waiting to be printed
+	 */
+	public synchronized int size() {
+		return this.queue.size();
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return true if the printer has run short and the queue is waiting for
+	 *         paper or ink
+	 */
+	public synchronized boolean isStalled() {
+		return this.stalled;
+	}
+
+	/**
+	 * Waits until every queued receipt is printed, the queue is stalled, or the
+	 * timeout passes.
+	 *
+	 * @param timeoutMillis the longest to wait
+	 * @return true if the queue is empty
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+
+		while (!this.queue.isEmpty() && !this.stalled) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				break;
+			}
+			this.wait(remaining);
+		}
+
+		return this.queue.isEmpty();
+	}
+
+	/**
+	 * Stops the worker once it has finished the receipt it is printing. Receipts
+	 * still queued are not printed.
+	 */
+	public void stop() {
+		synchronized (this) {
+			this.running = false;
+			this.notifyAll();
+		}
+
+		if (Thread.currentThread() != this.worker) {
+			try {
+				this.worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void work() {
+		while (true) {
+			Job job;
+			long refills;
+
+			synchronized (this) {
+				while (this.running && (this.queue.isEmpty() || this.stalled)) {
+					try {
+						this.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				if (!this.running) {
+					return;
+				}
+
+				job = this.queue.peekFirst();
+				refills = this.refills;
+			}
+
+			boolean printed = false;
+			try {
+				// Print and cut together, so a receipt taken meanwhile is never half printed
+				synchronized (this.printer) {
+					this.printer.print(job.text);
+					this.printer.cutPaper();
+				}
+				printed = true;
+			} catch (EmptyException e) {
+				this.stall(job, refills);
+				continue;
+			} catch (OverloadException e) {
+				// The receipt can never be printed, so drop it
+				Log.error(Log.Category.RECEIPT, "Receipt not printed", "exception", e);
+			} catch (SimulationException e) {
+				// The printer is out of order; wait until it is refilled or serviced
+				this.stall(null, refills);
+				continue;
+			}
+
+			if (printed) {
+				this.receipt.printed(job.ink, job.lines);
+			}
+
+			synchronized (this) {
+				this.queue.pollFirst();
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Holds the queue until {@link #retry()} and tells the attendant what the
+	 * printer is short of.
+	 */
+	private void stall(Job job, long refills) {
+		// Read the printer outside the queue lock, since adding paper or ink holds
+		// the printer while it calls retry()
+		if (job != null && this.printer.getPaperRemaining() < job.lines) {
+			this.receipt.notifyOutOfPaper();
+		}
+
+		if (job != null && this.printer.getInkRemaining() < job.ink) {
+			this.receipt.notifyOutOfInk();
+		}
+
+		synchronized (this) {
+			// Refilled since the receipt was tried, so try it again now
+			if (this.refills != refills) {
+				return;
+			}
+
+			this.stalled = true;
+			this.notifyAll();
+		}
+	}
+}
@@ -1,19 +1,16 @@
 package checkout;
 
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.sql.Date;
+import java.io.IOException;
 
 import org.lsmr.selfcheckout.devices.*;
 import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
 import org.lsmr.selfcheckout.devices.observers.ReceiptPrinterObserver;
-import org.lsmr.selfcheckout.products.BarcodedProduct;
-import org.lsmr.selfcheckout.products.PLUCodedProduct;
-import org.lsmr.selfcheckout.products.Product;
 
+import software.Log;
 import software.SelfCheckoutSoftware;
+import software.SupervisionSoftware;
+import software.observers.SupervisionEvent;
 import user.Customer;
-import user.Customer.CartEntry;
 import application.Main.Configurations;
 
 /**
@@ -29,6 +26,11 @@ public class Receipt implements ReceiptPrinterObserver {
 	private Customer customer;
 	private int inkUsed = 0;
 	private int paperUsed = 0;
+	private final ConsumablesForecast consumables = new ConsumablesForecast();
+
+	private ReceiptTemplate template = ReceiptTemplate.compile(ReceiptTemplate.DEFAULT, Configurations.currency);
+	private ReceiptSpool spool;
+	private volatile PrintSpooler printSpooler;
 
 	public Receipt(SelfCheckoutSoftware scSoftware) {
 		this.scSoftware = scSoftware;
@@ -56,6 +58,7 @@ public class Receipt implements ReceiptPrinterObserver {
 	 */
 	public void detatchAll() {
 		this.scStation.printer.detach(this);
+		this.stopPrintSpooler();
 	}
 
 	/**
@@ -72,91 +75,105 @@ public class Receipt implements ReceiptPrinterObserver {
 		this.scStation.printer.disable();
 	}
 
+	public ReceiptTemplate getTemplate() {
+		return this.template;
+	}
+
 	/**
-	 * Method that iterates through each item in the customer's cart, printing out a
-	 * receipt
-	 * including the description and price of each item, as well as a subtotal at
-	 * the bottom.
+	 * Sets the layout receipts are printed with.
 	 * 
-	 * @throws OverloadException
-	 * @throws EmptyException
+	 * @param template a template compiled for this lane only
 	 */
-	private void printLine(String line) {
-		try{
-			for (int t = 0; t < line.length(); t++) {
-				// When reaches the maximum character of a line, start a new line
-				if (t % (ReceiptPrinter.CHARACTERS_PER_LINE - 1) == 0 && t != 0) {
-					this.scStation.printer.print('\n');
-					// update the amount of paper that has been used each time a new line is printed
-					this.paperUsed++;
-				}
-
-				if (Character.isWhitespace(line.charAt(t))) {
-					this.scStation.printer.print(' ');
-				} else {
-					this.scStation.printer.print(line.charAt(t));
-					// update the amount of ink used each time a non-whitespace character is printed
-					this.inkUsed++;
-				}
-			}
-			this.scStation.printer.print('\n');
-			// update the amount of paper that has been used each time a new line is printed
-			this.paperUsed++;
-		} catch (OverloadException e) {
-			System.out.println("OverloadException: " + e.getMessage());
-		} catch (EmptyException e) {
-			System.out.println("EmptyException: " + e.getMessage());
-		}
+	public void setTemplate(ReceiptTemplate template) {
+		this.template = template;
 	}
 
-	public void printReceipt() {
-		this.printLine("===== Receipt =====");
+	public ReceiptSpool getSpool() {
+		return this.spool;
+	}
+
+	/**
+	 * Keeps an electronic copy of every receipt from now on, by the customer's
+	 * transaction ID.
+	 * 
+	 * @param spool the spool of this station, or null to stop keeping copies
+	 */
+	public void setSpool(ReceiptSpool spool) {
+		this.spool = spool;
+	}
+
+	public PrintSpooler getPrintSpooler() {
+		return this.printSpooler;
+	}
+
+	/**
+	 * Prints receipts on a worker thread from now on, so completing a payment
+	 * does not wait for the printer. Receipts the printer is short of paper or ink
+	 * for are kept and printed once paper or ink is added.
+	 * 
+	 * @param capacity the most receipts that may wait to be printed
+	 */
+	public void startPrintSpooler(int capacity) {
+		if (this.printSpooler != null) {
+			throw new IllegalStateException("Print spooler is already started");
+		}
 
-		String date = new Date(System.currentTimeMillis()).toString();
-		this.printLine("Date: " + date);
+		this.printSpooler = new PrintSpooler(this, this.scStation.printer, capacity);
+	}
 
-		// Print Membership
-		if (this.customer.getMemberID() != null) {
-			String membership = "Member ID: " + this.customer.getMemberID();
-			this.printLine(membership);
+	/**
+	 * Goes back to printing receipts as they are made. Receipts still waiting are
+	 * not printed.
+	 */
+	public void stopPrintSpooler() {
+		if (this.printSpooler != null) {
+			this.printSpooler.stop();
+			this.printSpooler = null;
 		}
+	}
+
+	/**
+	 * Method that iterates through each item in the customer's cart, printing out a
+	 * receipt including the description and price of each item, as well as a
+	 * subtotal at the bottom.
+	 * 
+	 * The whole receipt is rendered with the template first and sent to the
+	 * printer in one call, so it is printed completely or, if the printer is short
+	 * of ink or paper, not at all. If a spool is set, the receipt is also
+	 * spooled, even when the printer cannot print it.
+	 * 
+	 * If the print spooler is started, the receipt is queued for it instead and
+	 * this returns without waiting for the printer.
+	 */
+	public void printReceipt() {
+		this.template.render(this.customer.getMemberID(), this.customer.getCartEntries(), System.currentTimeMillis());
 
-		// for loop iterates through each item in customer's cart
-		this.printLine("==============");
-		for (CartEntry entry : this.customer.getCartEntries()) {
-			Product product = entry.getProduct();
-			double weight = entry.getWeight();
+		if (this.spool != null) {
+			this.spool.append(this.customer.getTransactionID(), this.template.getText());
+		}
 
-			String itemDescription = "";
-			String currentPrice = product.getPrice().toString();
+		PrintSpooler printSpooler = this.printSpooler;
+		if (printSpooler != null) {
+			PrintSpooler.Job job = new PrintSpooler.Job(this.template.getText().toString(), this.template.getInk(),
+					this.template.getLines());
 
-			if (product instanceof BarcodedProduct) {
-				BarcodedProduct barcodedProduct = (BarcodedProduct) product;
-				itemDescription = barcodedProduct.getDescription();
-			} else if (product instanceof PLUCodedProduct) {
-				PLUCodedProduct pluCodedProduct = (PLUCodedProduct) product;
-				itemDescription = pluCodedProduct.getDescription();
+			if (!printSpooler.submit(job)) {
+				Log.warn(Log.Category.RECEIPT, "Print queue is full, receipt not printed");
 			}
+			return;
+		}
 
-			String line = itemDescription + " ";
-			if (!product.isPerUnit()) {
-				line += Configurations.currency.getSymbol() + currentPrice + "/kg" + " (" + weight + " g)";
-			} else {
-				line += Configurations.currency.getSymbol() + currentPrice;
-			}
+		try {
+			this.scStation.printer.print(this.template.getText());
 
-			this.printLine(line);
+			// update the amount of ink and paper used by the printed receipt
+			this.recordUsage(this.template.getInk(), this.template.getLines());
+		} catch (OverloadException e) {
+			Log.error(Log.Category.RECEIPT, "Receipt not printed", "exception", e);
+		} catch (EmptyException e) {
+			Log.error(Log.Category.RECEIPT, "Receipt not printed", "exception", e);
 		}
 
-
-		// Once all items (with price) have been printed to the receipt, print the
-		// subtotal header at the bottom
-		// st is used to print out the Subtotal header at the bottom of the receipt
-		double subtotal = Math.round(this.customer.getCartSubtotal().doubleValue() * 100.00) / 100.00; // Rounded to 2 decimal places
-		String st = "Subtotal: " + Configurations.currency.getSymbol() + subtotal;
-		this.printLine("==============");
-		this.printLine(st);
-		
 		// cut the receipt so that the customer can easily remove it
 		this.scStation.printer.cutPaper();
 		
@@ -164,14 +181,128 @@ public class Receipt implements ReceiptPrinterObserver {
 		this.checkLowPrinterCapacity();
 	}
 	
+	/**
+	 * Prints the spooled copy of an earlier receipt again.
+	 * 
+	 * @param transactionID the transaction the receipt was printed for
+	 * @return true if the receipt was printed, or queued if the print spooler is
+	 *         started; false if there is no spool, it holds no receipt for the
+	 *         transaction, or the receipt could not be printed or queued
+	 */
+	public boolean reprintReceipt(String transactionID) {
+		if (this.spool == null) {
+			return false;
+		}
+
+		String text;
+		try {
+			text = this.spool.get(transactionID);
+		} catch (IOException e) {
+			Log.error(Log.Category.RECEIPT, "Spooled receipt not read", "exception", e);
+			return false;
+		}
+
+		if (text == null) {
+			return false;
+		}
+
+		// the spooled text is already wrapped, so each newline is a line of paper
+		int ink = 0;
+		int lines = 0;
+		for (int t = 0; t < text.length(); t++) {
+			char c = text.charAt(t);
+			if (c == '\n') {
+				lines++;
+			} else if (!Character.isWhitespace(c)) {
+				ink++;
+			}
+		}
+
+		PrintSpooler printSpooler = this.printSpooler;
+		if (printSpooler != null) {
+			return printSpooler.submit(new PrintSpooler.Job(text, ink, lines));
+		}
+
+		try {
+			this.scStation.printer.print(text);
+			this.scStation.printer.cutPaper();
+		} catch (OverloadException e) {
+			Log.error(Log.Category.RECEIPT, "Receipt not reprinted", "exception", e);
+			return false;
+		} catch (EmptyException e) {
+			Log.error(Log.Category.RECEIPT, "Receipt not reprinted", "exception", e);
+			return false;
+		}
+
+		this.printed(ink, lines);
+		return true;
+	}
+
+	/**
+	 * Counts the ink and paper of a printed receipt.
+	 */
+	void printed(int ink, int lines) {
+		this.recordUsage(ink, lines);
+		this.checkLowPrinterCapacity();
+	}
+
+	private void recordUsage(int ink, int lines) {
+		this.inkUsed += ink;
+		this.paperUsed += lines;
+		this.consumables.record(System.currentTimeMillis(), ink, lines);
+	}
+
+	public ConsumablesForecast getConsumablesForecast() {
+		return this.consumables;
+	}
+
+	/**
+	 * Forecasts when the printer runs out of paper and ink, from what is left in
+	 * it and how fast this lane has been using it.
+	 * 
+	 * @param now the current time, in milliseconds
+	 */
+	public ConsumablesForecast.Forecast forecastConsumables(long now) {
+		return this.consumables.forecast(this.scStation.printer.getInkRemaining(),
+				this.scStation.printer.getPaperRemaining(), now);
+	}
+
+	void notifyOutOfPaper() {
+		SupervisionSoftware svs = this.scSoftware.getSupervisionSoftware();
+		if (svs != null) {
+			svs.notifyObservers(SupervisionEvent.Kind.RECEIPT_PRINTER_OUT_OF_PAPER, this.scSoftware);
+		}
+	}
+
+	void notifyOutOfInk() {
+		SupervisionSoftware svs = this.scSoftware.getSupervisionSoftware();
+		if (svs != null) {
+			svs.notifyObservers(SupervisionEvent.Kind.RECEIPT_PRINTER_OUT_OF_INK, this.scSoftware);
+		}
+	}
+
+	/**
+	 * Notifies the attendant if the paper or ink left in the printer is low: at
+	 * most 10% of the maximum capacity, or not enough for another typical receipt
+	 * of this lane.
+	 */
 	public void checkLowPrinterCapacity() {
-		// check to see if the amount of paper printed exceeds 90% of the maximum capacity for paper
-		if (this.paperUsed >= (int)((ReceiptPrinter.MAXIMUM_PAPER * 9) / 10)) {
-			this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.receiptPrinterLowOnPaper(this.scSoftware));
+		SupervisionSoftware svs = this.scSoftware.getSupervisionSoftware();
+		if (svs == null) {
+			return;
 		}
-		// check to see if the amount of ink printed exceeds 90% of the maximum capacity for ink
-		if (this.inkUsed >= (int)((ReceiptPrinter.MAXIMUM_INK * 9) / 10)) {
-			this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.receiptPrinterLowOnInk(this.scSoftware));
+
+		ConsumablesForecast.Forecast forecast = this.forecastConsumables(System.currentTimeMillis());
+
+		// check to see if the paper left is within 10% of the maximum capacity for paper
+		if (forecast.getPaperRemaining() <= ReceiptPrinter.MAXIMUM_PAPER / 10
+				|| forecast.getPaperRemaining() < forecast.getLinesPerReceipt()) {
+			svs.notifyObservers(SupervisionEvent.Kind.RECEIPT_PRINTER_LOW_ON_PAPER, this.scSoftware);
+		}
+		// check to see if the ink left is within 10% of the maximum capacity for ink
+		if (forecast.getInkRemaining() <= ReceiptPrinter.MAXIMUM_INK / 10
+				|| forecast.getInkRemaining() < forecast.getInkPerReceipt()) {
+			svs.notifyObservers(SupervisionEvent.Kind.RECEIPT_PRINTER_LOW_ON_INK, this.scSoftware);
 		}
 	}
 	
@@ -214,7 +345,7 @@ public class Receipt implements ReceiptPrinterObserver {
 		scStation.printer.disable();
 
 		// announce that machine has run out of paper
-		this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.receiptPrinterOutOfPaper(this.scSoftware));
+		this.notifyOutOfPaper();
 	}
 
 	/**
@@ -229,16 +360,24 @@ public class Receipt implements ReceiptPrinterObserver {
 		scStation.printer.disable();
 
 		// announce that machine has run out of ink
-		this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.receiptPrinterOutOfInk(this.scSoftware));
+		this.notifyOutOfInk();
 	}
 
 	@Override
 	public void paperAdded(ReceiptPrinter printer) {
-		// we don't currently do anything when paper is added to the device
+		// receipts waiting for paper can be printed now
+		PrintSpooler printSpooler = this.printSpooler;
+		if (printSpooler != null) {
+			printSpooler.retry();
+		}
 	}
 
 	@Override
 	public void inkAdded(ReceiptPrinter printer) {
-		// we don't currently do anything when ink is added to the device
+		// receipts waiting for ink can be printed now
+		PrintSpooler printSpooler = this.printSpooler;
+		if (printSpooler != null) {
+			printSpooler.retry();
+		}
 	}
 }
@@ -0,0 +1,380 @@
+package checkout;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An electronic copy of every receipt a station generates, kept for e-receipts
+ * and reprints.
+ *
+ * Receipts are appended to segment files that are memory-mapped and only ever
+ * appended to. Each receipt is compressed and stored as one record:
+ *
+ * <pre>
+ * length	crc	idLength	transactionID	textLength	compressed text
+ * </pre>
+ *
+ * where the length and CRC cover everything after them. An in-memory index
+ * maps each transaction ID to the segment and offset of its record, so a
+ * receipt is found without scanning. The index is rebuilt from the segments
+ * when the spool is opened, without decompressing the receipts; a record whose
+ * CRC does not match, such as one cut short by a crash, ends the scan.
+ *
+ * Records are written by a background thread. {@link #append(String, CharSequence)}
+ * only copies the text and returns, so completing a payment never waits on
+ * the disk. A receipt that has not been written yet is still found by
+ * {@link #get(String)}.
+ */
+public class ReceiptSpool implements Closeable {
+	/**
+	 * The default size of a segment file
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 4 << 20;
+
+	private static final String SUFFIX = ".spool";
+	private static final int HEADER = 8;
+
+	private final Path directory;
+	private final String stationID;
+	private final int segmentSize;
+
+	// Mapped segments in order; only the last is appended to
+	private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<MappedByteBuffer>();
+	private int position = 0;
+
+	// Segment number in the high half, offset in the low half
+	private final Map<String, Long> index = new ConcurrentHashMap<String, Long>();
+
+	// Receipts handed to the writer but not written yet
+	private final Map<String, String> pending = new ConcurrentHashMap<String, String>();
+
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ReceiptSpool");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final CRC32 crc = new CRC32();
+	private byte[] compressed = new byte[4096];
+	private volatile IOException error;
+
+	/**
+	 * Opens the spool of a station, creating the directory if it does not exist.
+	 * Receipts spooled before a restart can still be looked up.
+	 *
+	 * @param directory where the segment files are kept
+	 * @param stationID names the segment files of this station
+	 * @throws IOException if the directory or segments cannot be opened
+	 */
+	public ReceiptSpool(Path directory, String stationID) throws IOException {
+		this(directory, stationID, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param segmentSize the size of a segment file, in bytes. A receipt larger
+	 *                    than this gets a segment to itself.
+	 */
+	public ReceiptSpool(Path directory, String stationID, int segmentSize) throws IOException {
+		if (segmentSize <= HEADER) {
+			throw new IllegalArgumentException("Segment size is too small");
+		}
+
+		this.directory = directory;
+		this.stationID = stationID;
+		this.segmentSize = segmentSize;
+
+		Files.createDirectories(directory);
+		this.recover();
+	}
+
+	/**
+	 * Maps every existing segment and indexes its records.
+	 */
+	private void recover() throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, this.stationID + "-*" + SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		Collections.sort(files);
+
+		for (Path file : files) {
+			MappedByteBuffer segment = ReceiptSpool.map(file, (int) Files.size(file));
+			int number = this.segments.size();
+			this.segments.add(segment);
+
+			int offset = 0;
+			while (true) {
+				String transactionID = this.check(segment, offset);
+				if (transactionID == null) {
+					break;
+				}
+
+				this.index.put(transactionID, ReceiptSpool.locate(number, offset));
+				offset += HEADER + segment.getInt(offset);
+			}
+			this.position = offset;
+		}
+	}
+
+	/**
+	 * @return the transaction ID of the record at the offset, or null if there is
+	 *         no complete record there
+	 */
+	private String check(MappedByteBuffer segment, int offset) {
+		if (offset > segment.capacity() - HEADER) {
+			return null;
+		}
+
+		int length = segment.getInt(offset);
+		if (length <= 6 || length > segment.capacity() - offset - HEADER) {
+			return null;
+		}
+
+		byte[] body = new byte[length];
+		segment.duplicate().position(offset + HEADER).get(body);
+
+		this.crc.reset();
+		this.crc.update(body);
+		if ((int) this.crc.getValue() != segment.getInt(offset + 4)) {
+			return null;
+		}
+
+		int idLength = ByteBuffer.wrap(body).getShort() & 0xFFFF;
+		return new String(body, 2, idLength, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Queues a receipt to be written and returns straight away. The text is
+	 * copied, so the caller may reuse it.
+	 *
+	 * @param transactionID identifies the receipt; a later receipt with the same
+	 *                      ID replaces it
+	 * @param text          the receipt
+	 */
+	public void append(String transactionID, CharSequence text) {
+		if (transactionID == null || text == null) {
+			throw new NullPointerException("Transaction ID and receipt text cannot be null");
+		}
+
+		if (transactionID.getBytes(StandardCharsets.UTF_8).length > 0xFFFF) {
+			throw new IllegalArgumentException("Transaction ID is too long");
+		}
+
+		String copy = text.toString();
+		this.pending.put(transactionID, copy);
+
+		this.writer.execute(() -> {
+			try {
+				this.write(transactionID, copy);
+				this.pending.remove(transactionID, copy);
+			} catch (IOException e) {
+				// Kept in pending, so it can still be looked up until a restart
+				this.error = e;
+			}
+		});
+	}
+
+	/**
+	 * Looks up the receipt of a transaction.
+	 *
+	 * @param transactionID
+	 * @return the receipt, or null if none was spooled for the transaction
+	 * @throws IOException if the record is corrupt
+	 */
+	public String get(String transactionID) throws IOException {
+		String text = this.pending.get(transactionID);
+		if (text != null) {
+			return text;
+		}
+
+		Long location = this.index.get(transactionID);
+		if (location == null) {
+			return null;
+		}
+
+		ByteBuffer record = this.segments.get((int) (location >>> 32)).duplicate();
+		record.position((int) location.longValue());
+		int length = record.getInt();
+		record.getInt();
+		int idLength = record.getShort() & 0xFFFF;
+		record.position(record.position() + idLength);
+		int textLength = record.getInt();
+		byte[] data = new byte[length - 2 - idLength - 4];
+		record.get(data);
+
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			byte[] bytes = new byte[textLength];
+			int read = 0;
+			while (read < textLength && !inflater.finished()) {
+				int count = inflater.inflate(bytes, read, textLength - read);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				read += count;
+			}
+
+			if (read != textLength) {
+				throw new IOException("Receipt " + transactionID + " is truncated");
+			}
+
+			return new String(bytes, StandardCharsets.UTF_8);
+		} catch (DataFormatException e) {
+			throw new IOException("Receipt " + transactionID + " is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * @return the number of receipts in the spool, written or not
+	 */
+	public int size() {
+		int size = this.index.size();
+
+		for (String transactionID : this.pending.keySet()) {
+			if (!this.index.containsKey(transactionID)) {
+				size++;
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Waits until every receipt appended so far is written and forced to disk.
+	 *
+	 * @throws IOException if a receipt could not be written
+	 */
+	public void flush() throws IOException {
+		try {
+			this.writer.submit(() -> {
+				if (!this.segments.isEmpty()) {
+					this.segments.get(this.segments.size() - 1).force();
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while flushing the receipt spool", e);
+		} catch (Exception e) {
+			throw new IOException("Receipt spool could not be flushed", e);
+		}
+
+		IOException error = this.error;
+		if (error != null) {
+			this.error = null;
+			throw error;
+		}
+	}
+
+	/**
+	 * Runs on the writer thread only.
+	 */
+	private void write(String transactionID, String text) throws IOException {
+		byte[] id = transactionID.getBytes(StandardCharsets.UTF_8);
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+		this.deflater.reset();
+		this.deflater.setInput(bytes);
+		this.deflater.finish();
+		int size = 0;
+		while (!this.deflater.finished()) {
+			if (size == this.compressed.length) {
+				this.compressed = Arrays.copyOf(this.compressed, size * 2);
+			}
+			size += this.deflater.deflate(this.compressed, size, this.compressed.length - size);
+		}
+
+		int length = 2 + id.length + 4 + size;
+		if (this.segments.isEmpty()
+				|| this.position + HEADER + length > this.segments.get(this.segments.size() - 1).capacity()) {
+			this.roll(HEADER + length);
+		}
+
+		int number = this.segments.size() - 1;
+		MappedByteBuffer segment = this.segments.get(number);
+		int offset = this.position;
+
+		ByteBuffer body = segment.duplicate();
+		body.position(offset + HEADER);
+		body.putShort((short) id.length).put(id).putInt(bytes.length).put(this.compressed, 0, size);
+
+		this.crc.reset();
+		this.crc.update(segment.duplicate().position(offset + HEADER).limit(offset + HEADER + length));
+
+		// The length goes in last, so a record cut short reads as the end
+		segment.putInt(offset + 4, (int) this.crc.getValue());
+		segment.putInt(offset, length);
+
+		this.position = offset + HEADER + length;
+		this.index.put(transactionID, ReceiptSpool.locate(number, offset));
+	}
+
+	/**
+	 * Forces the current segment and starts a new one with room for the record.
+	 */
+	private void roll(int needed) throws IOException {
+		if (!this.segments.isEmpty()) {
+			this.segments.get(this.segments.size() - 1).force();
+		}
+
+		Path file = this.directory
+				.resolve(String.format("%s-%06d%s", this.stationID, this.segments.size() + 1, SUFFIX));
+		this.segments.add(ReceiptSpool.map(file, Math.max(this.segmentSize, needed)));
+		this.position = 0;
+	}
+
+	private static MappedByteBuffer map(Path file, int size) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+	private static long locate(int segment, int offset) {
+		return ((long) segment << 32) | offset;
+	}
+
+	/**
+	 * Writes every queued receipt and stops the writer.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.writer.shutdown();
+
+		try {
+			this.writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		for (MappedByteBuffer segment : this.segments) {
+			segment.force();
+		}
+	}
+}
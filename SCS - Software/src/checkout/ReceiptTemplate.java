@@ -0,0 +1,469 @@
+package checkout;
+
+import java.math.RoundingMode;
+import java.nio.CharBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
+import org.lsmr.selfcheckout.products.BarcodedProduct;
+import org.lsmr.selfcheckout.products.PLUCodedProduct;
+import org.lsmr.selfcheckout.products.Product;
+
+import user.Customer.CartEntry;
+
+/**
+ * A compiled receipt layout.
+ *
+ * A template is written as lines of text. A line holding only {@code {items}}
+ * marks where the items in the cart go; the lines before it are the header and
+ * the lines after it the footer. Lines starting with {@code ?member } are only
+ * printed for members. Lines may contain the fields {@code {date}},
+ * {@code {member}} and {@code {subtotal}}. See {@link #DEFAULT}.
+ *
+ * The layout is parsed once into literal fragments and fields. The description
+ * and price of a product are formatted the first time it is printed and cached
+ * with it, so rendering an item line copies the cached fragment and only
+ * formats the weight of items sold by the kilogram. Rendering reuses the same
+ * output buffer, so once it has grown to fit a receipt and the products have
+ * been seen, rendering does not allocate.
+ *
+ * A template renders one receipt at a time; each lane has its own.
+ */
+public class ReceiptTemplate {
+	public static final String DEFAULT = "===== Receipt =====\n"
+			+ "Date: {date}\n"
+			+ "?member Member ID: {member}\n"
+			+ "==============\n"
+			+ "{items}\n"
+			+ "==============\n"
+			+ "Subtotal: {subtotal}";
+
+	private static final String ITEMS = "{items}";
+	private static final String MEMBER_ONLY = "?member ";
+
+	private static final int LITERAL = 0;
+	private static final int DATE = 1;
+	private static final int MEMBER = 2;
+	private static final int SUBTOTAL = 3;
+	private static final String[] FIELDS = { null, "{date}", "{member}", "{subtotal}" };
+
+	private static final int LINE_LENGTH = ReceiptPrinter.CHARACTERS_PER_LINE;
+
+	/**
+	 * A line of the layout: literal fragments and fields, in order.
+	 */
+	private static class Line {
+		final boolean memberOnly;
+		final int[] fields;
+		final char[][] literals;
+		final int[] literalInk;
+
+		Line(boolean memberOnly, int[] fields, char[][] literals, int[] literalInk) {
+			this.memberOnly = memberOnly;
+			this.fields = fields;
+			this.literals = literals;
+			this.literalInk = literalInk;
+		}
+	}
+
+	/**
+	 * The formatted description and price of a product.
+	 */
+	private static class Fragment {
+		final char[] text;
+		final int ink;
+		final boolean perUnit;
+		final long cents;
+
+		Fragment(char[] text, int ink, boolean perUnit, long cents) {
+			this.text = text;
+			this.ink = ink;
+			this.perUnit = perUnit;
+			this.cents = cents;
+		}
+	}
+
+	private static final char[] WEIGHT_END = " g)".toCharArray();
+	private static final int WEIGHT_END_INK = 2;
+
+	private final Line[] header;
+	private final Line[] footer;
+	private final char[] currencySymbol;
+	private final Map<Product, Fragment> fragments = new ConcurrentHashMap<Product, Fragment>();
+
+	// The date is only formatted again once the day changes
+	private final char[] date = new char[10];
+	private long dayStart = Long.MAX_VALUE;
+	private long dayEnd = Long.MIN_VALUE;
+
+	private char[] buffer = new char[1024];
+	private CharBuffer view = CharBuffer.wrap(this.buffer);
+	private int length = 0;
+	private int column = 0;
+	private int ink = 0;
+	private int lines = 0;
+
+	private ReceiptTemplate(Line[] header, Line[] footer, Currency currency) {
+		this.header = header;
+		this.footer = footer;
+		this.currencySymbol = ReceiptTemplate.sanitize(currency.getSymbol());
+	}
+
+	/**
+	 * Compiles a receipt layout.
+	 *
+	 * @param template the layout, as described above
+	 * @param currency the currency prices are shown in
+	 * @return the compiled template
+	 * @throws IllegalArgumentException if the layout has no {@code {items}} line,
+	 *                                  more than one, or an unknown field
+	 */
+	public static ReceiptTemplate compile(String template, Currency currency) {
+		List<Line> header = new ArrayList<Line>();
+		List<Line> footer = new ArrayList<Line>();
+		List<Line> current = header;
+
+		for (String text : template.split("\n", -1)) {
+			if (text.strip().equals(ITEMS)) {
+				if (current == footer) {
+					throw new IllegalArgumentException("A receipt template can only list the items once");
+				}
+				current = footer;
+				continue;
+			}
+
+			current.add(ReceiptTemplate.compileLine(text));
+		}
+
+		if (current != footer) {
+			throw new IllegalArgumentException("A receipt template must have an " + ITEMS + " line");
+		}
+
+		return new ReceiptTemplate(header.toArray(new Line[0]), footer.toArray(new Line[0]), currency);
+	}
+
+	private static Line compileLine(String text) {
+		boolean memberOnly = text.startsWith(MEMBER_ONLY);
+		if (memberOnly) {
+			text = text.substring(MEMBER_ONLY.length());
+		}
+
+		List<Integer> fields = new ArrayList<Integer>();
+		List<char[]> literals = new ArrayList<char[]>();
+		int start = 0;
+
+		while (start < text.length()) {
+			int open = text.indexOf('{', start);
+			if (open < 0) {
+				open = text.length();
+			}
+
+			if (open > start) {
+				fields.add(LITERAL);
+				literals.add(ReceiptTemplate.sanitize(text.substring(start, open)));
+			}
+
+			if (open == text.length()) {
+				break;
+			}
+
+			int close = text.indexOf('}', open);
+			String field = close < 0 ? text.substring(open) : text.substring(open, close + 1);
+			int code = Arrays.asList(FIELDS).indexOf(field);
+
+			if (code <= LITERAL) {
+				throw new IllegalArgumentException("Unknown receipt template field " + field);
+			}
+
+			fields.add(code);
+			literals.add(null);
+			start = close + 1;
+		}
+
+		int[] codes = new int[fields.size()];
+		int[] ink = new int[fields.size()];
+		for (int t = 0; t < codes.length; t++) {
+			codes[t] = fields.get(t);
+			ink[t] = literals.get(t) == null ? 0 : ReceiptTemplate.countInk(literals.get(t));
+		}
+
+		return new Line(memberOnly, codes, literals.toArray(new char[0][]), ink);
+	}
+
+	/**
+	 * Renders a receipt. The result stays available through {@link #getText()}
+	 * until the next receipt is rendered.
+	 *
+	 * @param memberID the member ID of the customer, or null if not a member
+	 * @param entries  the items in the cart
+	 * @param now      the time of the receipt, in milliseconds since the epoch
+	 */
+	public void render(String memberID, List<CartEntry> entries, long now) {
+		this.length = 0;
+		this.column = 0;
+		this.ink = 0;
+		this.lines = 0;
+
+		// Total first, so the subtotal can go in the header as well as the footer
+		long unitCents = 0;
+		double weightedCents = 0;
+		for (int t = 0; t < entries.size(); t++) {
+			CartEntry entry = entries.get(t);
+			Fragment fragment = this.fragmentOf(entry.getProduct());
+
+			if (fragment.perUnit) {
+				unitCents += fragment.cents;
+			} else {
+				weightedCents += fragment.cents * entry.getWeight() / 1000;
+			}
+		}
+		long subtotal = unitCents + Math.round(weightedCents);
+
+		this.writeLines(this.header, memberID, subtotal, now);
+
+		for (int t = 0; t < entries.size(); t++) {
+			CartEntry entry = entries.get(t);
+			Fragment fragment = this.fragmentOf(entry.getProduct());
+
+			this.write(fragment.text, fragment.ink);
+
+			if (!fragment.perUnit) {
+				this.writeTenths(Math.round(entry.getWeight() * 10));
+				this.write(WEIGHT_END, WEIGHT_END_INK);
+			}
+
+			this.endLine();
+		}
+
+		this.writeLines(this.footer, memberID, subtotal, now);
+	}
+
+	/**
+	 * @return the rendered receipt. The view is reused by the next receipt.
+	 */
+	public CharBuffer getText() {
+		if (this.view.array() != this.buffer) {
+			this.view = CharBuffer.wrap(this.buffer);
+		}
+
+		this.view.clear().limit(this.length);
+		return this.view;
+	}
+
+	/**
+	 * @return the ink the rendered receipt needs, in characters
+	 */
+	public int getInk() {
+		return this.ink;
+	}
+
+	/**
+	 * @return the paper the rendered receipt needs, in lines
+	 */
+	public int getLines() {
+		return this.lines;
+	}
+
+	private void writeLines(Line[] lines, String memberID, long subtotal, long now) {
+		for (Line line : lines) {
+			if (line.memberOnly && memberID == null) {
+				continue;
+			}
+
+			for (int t = 0; t < line.fields.length; t++) {
+				switch (line.fields[t]) {
+				case LITERAL:
+					this.write(line.literals[t], line.literalInk[t]);
+					break;
+				case DATE:
+					this.write(this.dateOf(now), this.date.length);
+					break;
+				case MEMBER:
+					if (memberID != null) {
+						this.write(memberID);
+					}
+					break;
+				case SUBTOTAL:
+					this.write(this.currencySymbol, ReceiptTemplate.countInk(this.currencySymbol));
+					this.writeCents(subtotal);
+					break;
+				}
+			}
+
+			this.endLine();
+		}
+	}
+
+	private Fragment fragmentOf(Product product) {
+		Fragment fragment = this.fragments.get(product);
+
+		if (fragment == null) {
+			String description = "";
+			if (product instanceof BarcodedProduct) {
+				description = ((BarcodedProduct) product).getDescription();
+			} else if (product instanceof PLUCodedProduct) {
+				description = ((PLUCodedProduct) product).getDescription();
+			}
+
+			String price = product.getPrice().toString();
+			String text = description + " " + new String(this.currencySymbol) + price;
+			if (!product.isPerUnit()) {
+				text += "/kg" + " (";
+			}
+
+			char[] chars = ReceiptTemplate.sanitize(text);
+			long cents = product.getPrice().setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+			fragment = new Fragment(chars, ReceiptTemplate.countInk(chars), product.isPerUnit(), cents);
+			this.fragments.put(product, fragment);
+		}
+
+		return fragment;
+	}
+
+	private char[] dateOf(long now) {
+		if (now < this.dayStart || now >= this.dayEnd) {
+			ZoneId zone = ZoneId.systemDefault();
+			LocalDate day = Instant.ofEpochMilli(now).atZone(zone).toLocalDate();
+			this.dayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+			this.dayEnd = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+			// yyyy-mm-dd, as java.sql.Date prints it
+			ReceiptTemplate.digits(this.date, 0, day.getYear(), 4);
+			this.date[4] = '-';
+			ReceiptTemplate.digits(this.date, 5, day.getMonthValue(), 2);
+			this.date[7] = '-';
+			ReceiptTemplate.digits(this.date, 8, day.getDayOfMonth(), 2);
+		}
+
+		return this.date;
+	}
+
+	private static void digits(char[] target, int offset, int value, int count) {
+		for (int t = offset + count - 1; t >= offset; t--) {
+			target[t] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	/**
+	 * Copies pre-sanitized characters, wrapping at the end of a printed line.
+	 */
+	private void write(char[] chars, int ink) {
+		this.ensureCapacity(this.length + chars.length + chars.length / LINE_LENGTH + 1);
+
+		int offset = 0;
+		while (offset < chars.length) {
+			if (this.column == LINE_LENGTH) {
+				this.wrap();
+			}
+
+			int count = Math.min(chars.length - offset, LINE_LENGTH - this.column);
+			System.arraycopy(chars, offset, this.buffer, this.length, count);
+			this.length += count;
+			this.column += count;
+			offset += count;
+		}
+
+		this.ink += ink;
+	}
+
+	private void write(String text) {
+		for (int t = 0; t < text.length(); t++) {
+			this.write(text.charAt(t));
+		}
+	}
+
+	private void write(char c) {
+		this.ensureCapacity(this.length + 2);
+
+		if (this.column == LINE_LENGTH) {
+			this.wrap();
+		}
+
+		if (Character.isWhitespace(c)) {
+			this.buffer[this.length++] = ' ';
+		} else {
+			this.buffer[this.length++] = c;
+			this.ink++;
+		}
+		this.column++;
+	}
+
+	private void writeTenths(long tenths) {
+		this.writeDigits(tenths / 10);
+		this.write('.');
+		this.write((char) ('0' + tenths % 10));
+	}
+
+	private void writeCents(long cents) {
+		this.writeDigits(cents / 100);
+		this.write('.');
+		this.write((char) ('0' + cents / 10 % 10));
+		this.write((char) ('0' + cents % 10));
+	}
+
+	private void writeDigits(long value) {
+		long divisor = 1;
+		while (value / divisor >= 10) {
+			divisor *= 10;
+		}
+
+		for (; divisor > 0; divisor /= 10) {
+			this.write((char) ('0' + value / divisor % 10));
+		}
+	}
+
+	private void wrap() {
+		this.buffer[this.length++] = '\n';
+		this.lines++;
+		this.column = 0;
+	}
+
+	private void endLine() {
+		this.ensureCapacity(this.length + 1);
+		this.buffer[this.length++] = '\n';
+		this.lines++;
+		this.column = 0;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(capacity, this.buffer.length * 2));
+		}
+	}
+
+	/**
+	 * Replaces whitespace with blanks, as the printer only prints blanks.
+	 */
+	private static char[] sanitize(String text) {
+		char[] chars = text.toCharArray();
+
+		for (int t = 0; t < chars.length; t++) {
+			if (Character.isWhitespace(chars[t])) {
+				chars[t] = ' ';
+			}
+		}
+
+		return chars;
+	}
+
+	private static int countInk(char[] chars) {
+		int ink = 0;
+
+		for (char c : chars) {
+			if (c != ' ') {
+				ink++;
+			}
+		}
+
+		return ink;
+	}
+}
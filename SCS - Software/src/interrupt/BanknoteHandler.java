@@ -13,6 +13,8 @@ import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
 import org.lsmr.selfcheckout.devices.observers.*;
 
 import software.SelfCheckoutSoftware;
+import software.observers.SelfCheckoutEvent;
+import software.observers.SupervisionEvent;
 import user.Customer;
 
 /**
@@ -145,7 +147,7 @@ public class BanknoteHandler extends Handler implements BanknoteDispenserObserve
 	public void invalidBanknoteDetected(BanknoteValidator validator) {
 		this.banknoteDetected = false;
 		this.banknoteValue = BigDecimal.ZERO;
-		this.scSoftware.notifyObservers(observer -> observer.invalidBanknoteDetected());
+		this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.INVALID_BANKNOTE_DETECTED);
 	}
 
 	/**
@@ -154,8 +156,8 @@ public class BanknoteHandler extends Handler implements BanknoteDispenserObserve
 	@Override
 	public void banknotesFull(BanknoteStorageUnit unit) {
 		this.scStation.banknoteInput.disable();
-		this.scSoftware.notifyObservers(observer -> observer.banknoteStorageFull());
-		this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.banknoteStorageFull(scSoftware));
+		this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.BANKNOTE_STORAGE_FULL);
+		this.scSoftware.getSupervisionSoftware().notifyObservers(SupervisionEvent.Kind.BANKNOTE_STORAGE_FULL, scSoftware);
 	}
 
 	/**
@@ -168,7 +170,7 @@ public class BanknoteHandler extends Handler implements BanknoteDispenserObserve
 			this.customer.addCashBalance(banknoteValue);
 
 			// Notify observer so GUI can update current cash balance on display
-			this.scSoftware.notifyObservers(observer -> observer.banknoteAdded());
+			this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.BANKNOTE_ADDED);
 		}
 
 		this.banknoteDetected = false;
@@ -223,8 +225,8 @@ public class BanknoteHandler extends Handler implements BanknoteDispenserObserve
 
 	@Override
 	public void banknotesEmpty(BanknoteDispenser dispenser) {
-		this.scSoftware.notifyObservers(observer -> observer.banknoteDispenserEmpty());
-		this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.banknoteDispenserEmpty(this.scSoftware));
+		this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.BANKNOTE_DISPENSER_EMPTY);
+		this.scSoftware.getSupervisionSoftware().notifyObservers(SupervisionEvent.Kind.BANKNOTE_DISPENSER_EMPTY, this.scSoftware);
 	}
 
 	@Override
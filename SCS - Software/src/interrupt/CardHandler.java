@@ -1,5 +1,8 @@
 package interrupt;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+
 import org.lsmr.selfcheckout.Card.CardData;
 import org.lsmr.selfcheckout.devices.*;
 import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
@@ -7,7 +10,10 @@ import org.lsmr.selfcheckout.devices.observers.CardReaderObserver;
 import org.lsmr.selfcheckout.external.CardIssuer;
 
 import bank.Bank;
+import bank.PaymentLog;
+import bank.StandIn;
 import software.SelfCheckoutSoftware;
+import software.observers.SelfCheckoutEvent;
 import store.GiftCard;
 import store.Membership;
 import user.Customer;
@@ -24,6 +30,7 @@ public class CardHandler extends Handler implements CardReaderObserver {
 	private final SelfCheckoutSoftware scSoftware;
 	private final SelfCheckoutStation scStation;
 	private Customer customer;
+	private StandIn standIn;
 
 	/*
 	 * Constructor for creating a CardHandler. Attaches itself to the cardReader.
@@ -40,6 +47,18 @@ public class CardHandler extends Handler implements CardReaderObserver {
 		this.customer = customer;
 	}
 
+	/**
+	 * Sets the stand-in processor this lane uses when an issuer is unavailable.
+	 * Use null to fail payments to an unavailable issuer instead.
+	 */
+	public void setStandIn(StandIn standIn) {
+		this.standIn = standIn;
+	}
+
+	public StandIn getStandIn() {
+		return this.standIn;
+	}
+
 	public void attachAll() {
 		this.scStation.cardReader.attach(this);
 	}
@@ -125,7 +144,7 @@ public class CardHandler extends Handler implements CardReaderObserver {
 		} else if (type.equals("debit") || type.equals("credit") || type.equals("gift")) {
 			this.processPayment(reader, data, type);
 		} else {
-			this.scSoftware.notifyObservers(observer -> observer.invalidCardTypeDetected());
+			this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.INVALID_CARD_TYPE_DETECTED);
 		}
 
 		// Re-enable card reader since transaction is complete or failed.
@@ -139,46 +158,98 @@ public class CardHandler extends Handler implements CardReaderObserver {
 		boolean isMember = Membership.isMember(memberID);
 
 		if (!isMember) {
-			this.scSoftware.notifyObservers(observer -> observer.invalidMembershipCardDetected());
+			this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.INVALID_MEMBERSHIP_CARD_DETECTED);
 			return;
 		}
 
 		this.customer.setMemberID(memberID);
-		this.scSoftware.notifyObservers(observer -> observer.membershipCardDetected(memberID));
+		this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.MEMBERSHIP_CARD_DETECTED, memberID);
 	}
 	
 	private void processPayment(CardReader reader, CardData data, String type) {
 		String cardNumber = data.getNumber();
-		CardIssuer issuer = null;
+
 		if (type.equals("gift")) {
 			if (GiftCard.isGiftCard(data.getNumber())) {
-				issuer = GiftCard.getCardIssuer();
+				this.processGiftCard(cardNumber);
 			} else {
-				this.scSoftware.notifyObservers(observer -> observer.invalidGiftCardDetected());
+				this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.INVALID_GIFT_CARD_DETECTED);
 				this.scSoftware.paymentCompleted();
+			}
+			return;
+		}
+
+		CardIssuer issuer = Bank.getCardIssuer(cardNumber);
+		BigDecimal amountDue = this.customer.getAmountDue();
+
+		PaymentLog paymentLog = Bank.getPaymentLog();
+		boolean held;
+		boolean posted;
+
+		if (paymentLog != null) {
+			// Logged payments can be retried safely with the same transaction ID,
+			// whether or not a stand-in decides them
+			PaymentLog.Entry entry;
+			try {
+				entry = paymentLog.pay(this.customer.getTransactionID(), issuer, cardNumber, amountDue, this.standIn);
+			} catch (IOException e) {
+				// The outcome is unknown until the log is written, so keep the
+				// transaction ID for the retry
+				this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.PAYMENT_POSTING_TRANSACTION_FAILED);
 				return;
 			}
-		} else if (type.equals("debit") || type.equals("credit")) {
-			issuer = Bank.getCardIssuer(cardNumber);
+
+			posted = entry.getState() == PaymentLog.State.POSTED || entry.getState() == PaymentLog.State.STOOD_IN;
+			held = posted || entry.getHoldNumber() != -1;
+
+			if (!posted) {
+				this.customer.newTransactionID();
+			}
+		} else if (this.standIn != null) {
+			// Approved locally if the issuer is unavailable, within the stand-in limits
+			StandIn.Decision decision = this.standIn.pay(issuer, cardNumber, amountDue);
+			held = decision != StandIn.Decision.DECLINED && decision != StandIn.Decision.UNAVAILABLE;
+			posted = decision == StandIn.Decision.APPROVED || decision == StandIn.Decision.STOOD_IN;
+		} else {
+			int holdNumber = issuer.authorizeHold(cardNumber, amountDue);
+			held = holdNumber != -1;
+			posted = held && Bank.postTransaction(issuer, cardNumber, holdNumber, amountDue);
 		}
-		
-		int holdNumber = issuer.authorizeHold(cardNumber, this.customer.getCartSubtotal());
 
 		// Fail to hold the authorization
-		if (holdNumber == -1) {
-			this.scSoftware.notifyObservers(observer -> observer.paymentHoldingAuthorizationFailed());
+		if (!held) {
+			this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.PAYMENT_HOLDING_AUTHORIZATION_FAILED);
 			return;
 		}
 
-		boolean posted = issuer.postTransaction(cardNumber, holdNumber, this.customer.getCartSubtotal());
-
 		// Fail to post transaction
 		if (!posted) {
-			this.scSoftware.notifyObservers(observer -> observer.paymentPostingTransactionFailed());
+			this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.PAYMENT_POSTING_TRANSACTION_FAILED);
 			return;
 		}
 
 		this.scSoftware.paymentCompleted(); // Transaction is complete, go to idle state
-		this.scSoftware.notifyObservers(observer -> observer.paymentCompleted());
+		this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.PAYMENT_COMPLETED);
+	}
+
+	/**
+	 * Redeems the gift card towards the amount due. If the balance on the card
+	 * does not cover it, the customer goes back to choosing a payment method to
+	 * pay the remainder with cash or a bank card.
+	 */
+	private void processGiftCard(String cardNumber) {
+		BigDecimal redeemed = GiftCard.redeem(cardNumber, this.customer.getAmountDue());
+		this.customer.addGiftCardBalance(redeemed);
+
+		BigDecimal amountDue = this.customer.getAmountDue();
+
+		if (amountDue.signum() > 0) {
+			this.scSoftware.paymentRemainderDue();
+			this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.GIFT_CARD_REDEEMED, amountDue);
+			return;
+		}
+
+		this.scSoftware.paymentCompleted();
+		this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.PAYMENT_COMPLETED);
 	}
-}
\ No newline at end of file
+}
@@ -18,6 +18,8 @@ import org.lsmr.selfcheckout.devices.observers.CoinValidatorObserver;
 
 import software.SelfCheckoutSoftware;
 import software.SupervisionSoftware;
+import software.observers.SelfCheckoutEvent;
+import software.observers.SupervisionEvent;
 import user.Customer;
 
 /**
@@ -143,7 +145,7 @@ public class CoinHandler extends Handler
 	public void invalidCoinDetected(CoinValidator validator) {
 		this.coinDetected = false;
 		this.coinValue = BigDecimal.ZERO;
-		this.scSoftware.notifyObservers(observer -> observer.invalidCoinDetected());
+		this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.INVALID_COIN_DETECTED);
 	}
 
 	@Override
@@ -162,9 +164,9 @@ public class CoinHandler extends Handler
 
 		// Notify attendant that the coin storage is full
 		SupervisionSoftware svs = scSoftware.getSupervisionSoftware();
-		svs.notifyObservers(observer -> observer.coinStorageFull(scSoftware));
+		svs.notifyObservers(SupervisionEvent.Kind.COIN_STORAGE_FULL, scSoftware);
 
-		this.scSoftware.notifyObservers(observer -> observer.coinStorageFull());
+		this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.COIN_STORAGE_FULL);
 	}
 	
 	private void coinAddedLogic() {
@@ -172,7 +174,7 @@ public class CoinHandler extends Handler
 			this.customer.addCashBalance(coinValue);
 
 			// Notify observer so GUI can update current cash balance on display
-			this.scSoftware.notifyObservers(observer -> observer.coinAdded());
+			this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.COIN_ADDED);
 		}
 
 		this.coinDetected = false;
@@ -193,8 +195,8 @@ public class CoinHandler extends Handler
 
 	@Override
 	public void coinsEmpty(CoinDispenser dispenser) {
-		this.scSoftware.notifyObservers(observer -> observer.coinDispenserEmpty());
-		this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.coinDispenserEmpty(this.scSoftware));
+		this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.COIN_DISPENSER_EMPTY);
+		this.scSoftware.getSupervisionSoftware().notifyObservers(SupervisionEvent.Kind.COIN_DISPENSER_EMPTY, this.scSoftware);
 	}
 
 	/**
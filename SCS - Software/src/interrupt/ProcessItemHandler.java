@@ -1,10 +1,13 @@
 package interrupt;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import org.lsmr.selfcheckout.Barcode;
 import org.lsmr.selfcheckout.devices.AbstractDevice;
 import org.lsmr.selfcheckout.devices.BarcodeScanner;
 import org.lsmr.selfcheckout.devices.ElectronicScale;
-import org.lsmr.selfcheckout.devices.OverloadException;
 import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
 import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
 import org.lsmr.selfcheckout.devices.observers.BarcodeScannerObserver;
@@ -13,9 +16,13 @@ import org.lsmr.selfcheckout.products.BarcodedProduct;
 import org.lsmr.selfcheckout.products.PLUCodedProduct;
 import org.lsmr.selfcheckout.products.Product;
 
+import software.Log;
 import software.SelfCheckoutSoftware;
 import software.SelfCheckoutSoftware.Phase;
+import software.observers.SelfCheckoutEvent;
+import software.observers.SupervisionEvent;
 import store.Inventory;
+import store.WeightProfile;
 import user.Customer;
 
 /**
@@ -23,6 +30,12 @@ import user.Customer;
  * the bagging area.
  * Easily extendable to incorporate PLU codes in future iterations.
  * 
+ * With a weight filter set, weights the sampler reads again are acted on from
+ * its thread rather than the one delivering device events. So everything the
+ * handler keeps is read and changed holding the station's lock, the
+ * {@link SelfCheckoutSoftware} it belongs to, which the station also holds to
+ * change phase.
+ * 
  * @author joshuaplosz
  * @author Michelle Cheung
  * @author Yunfan Yang
@@ -32,14 +45,33 @@ public class ProcessItemHandler extends Handler implements BarcodeScannerObserve
 
 	private static double DISCREPANCY = 1.0; // Scales have margins of errors, this is how much we allow
 
+	// Re-reads the bagging area of every station while its weight filter is waiting
+	private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "WeightSampler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	private final SelfCheckoutStation scStation;
 	private final SelfCheckoutSoftware scSoftware;
 	private Customer customer;
 
 	private double currentWeight = 0.0;
 	private double expectedWeight = 0.0;
+	// What the barcoded item being bagged has been seen to weigh, if any
+	private WeightProfile expectedProfile;
+
+	// Items scanned but not yet bagged, and how far their total weight may be off
+	private int scanAhead = 1;
+	private int pendingItems = 0;
+	private double expectedTolerance = 0.0;
 	private boolean scaleOverloaded;
 
+	private WeightFilter weightFilter;
+	private long sampleMillis;
+	private double baggingAreaWeight = 0.0;
+	private boolean samplePending = false;
+
 	public ProcessItemHandler(SelfCheckoutSoftware scSoftware) {
 		this.scSoftware = scSoftware;
 		this.scStation = this.scSoftware.getSelfCheckoutStation();
@@ -54,9 +86,78 @@ public class ProcessItemHandler extends Handler implements BarcodeScannerObserve
 	 * @param customer
 	 */
 	public void setCustomer(Customer customer) {
-		this.customer = customer;
-		resetScale();
-		this.scaleOverloaded = false;
+		synchronized (this.scSoftware) {
+			this.customer = customer;
+			resetScale();
+			this.scaleOverloaded = false;
+		}
+	}
+
+	/**
+	 * Runs bagging area weights through a filter before acting on them, so that
+	 * noise, knocks and items still being put down do not cause a weight
+	 * discrepancy. The scale only announces a change, so while the filter is
+	 * waiting for the weight to settle, the last weight announced is read again
+	 * every sampleMillis.
+	 * 
+	 * @param weightFilter the filter, or null to act on every weight announced
+	 * @param sampleMillis how often to read the weight while the filter waits
+	 */
+	public void setWeightFilter(WeightFilter weightFilter, long sampleMillis) {
+		if (weightFilter != null && sampleMillis <= 0) {
+			throw new IllegalArgumentException("Sample interval must be positive");
+		}
+
+		synchronized (this.scSoftware) {
+			this.weightFilter = weightFilter;
+			this.sampleMillis = sampleMillis;
+
+			if (weightFilter != null) {
+				weightFilter.reset();
+			}
+		}
+	}
+
+	public WeightFilter getWeightFilter() {
+		synchronized (this.scSoftware) {
+			return this.weightFilter;
+		}
+	}
+
+	/**
+	 * Lets the customer scan several items before bagging them. The scanners stay
+	 * enabled until the given number of items are waiting to be bagged, and the
+	 * bagging area is checked against the total weight of the items waiting, so
+	 * they can be bagged in any order and together. A weight that is still short
+	 * of the total is taken as bagging in progress; only a weight that can no
+	 * longer match, such as more than was scanned, is a discrepancy.
+	 * 
+	 * @param items how many items may wait to be bagged, or 1 to bag each item as
+	 *              it is scanned
+	 */
+	public void setScanAhead(int items) {
+		if (items < 1) {
+			throw new IllegalArgumentException("Scan-ahead must allow at least one item");
+		}
+
+		synchronized (this.scSoftware) {
+			this.scanAhead = items;
+		}
+	}
+
+	public int getScanAhead() {
+		synchronized (this.scSoftware) {
+			return this.scanAhead;
+		}
+	}
+
+	/**
+	 * @return true if items have been scanned that are not yet bagged
+	 */
+	public boolean hasItemsToBag() {
+		synchronized (this.scSoftware) {
+			return this.pendingItems > 0;
+		}
 	}
 
 	public void attachAll() {
@@ -120,42 +221,52 @@ public class ProcessItemHandler extends Handler implements BarcodeScannerObserve
 	 */
 	@Override
 	public void barcodeScanned(BarcodeScanner barcodeScanner, Barcode barcode) {
-		if (this.customer == null) {
-			return;
-		}
+		synchronized (this.scSoftware) {
+			if (this.customer == null) {
+				return;
+			}
 
-		Product product = Inventory.getProduct(barcode);
+			Product product = Inventory.getProduct(barcode);
 
-		if (product == null) {
-			this.scSoftware.notifyObservers(observer -> observer.productNotScannable());
-			return;
-		}
+			if (product == null) {
+				this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.PRODUCT_NOT_SCANNABLE);
+				return;
+			}
 
-		this.scStation.mainScanner.disable();
-		this.scStation.handheldScanner.disable();
+			// This can only be BarcodedProduct
+			if (product instanceof BarcodedProduct) {
+				BarcodedProduct barcodedProduct = (BarcodedProduct) product;
+				this.expectItem(barcodedProduct.getExpectedWeight(), Inventory.getWeightProfile(barcodedProduct.getBarcode()));
+			}
 
-		// This can only be BarcodedProduct
-		if (product instanceof BarcodedProduct) {
-			BarcodedProduct barcodedProduct = (BarcodedProduct) product;
-			this.expectedWeight = barcodedProduct.getExpectedWeight();
-		}
+			// TODO: For PLU items, Incorporate this scanning area electronic scale
 
-		// TODO: For PLU items, Incorporate this scanning area electronic scale
+			this.customer.addProduct(product);
 
-		this.customer.addProduct(product);
-		this.scSoftware.bagItem();
-		this.scSoftware.notifyObservers(observer -> observer.placeInBaggingAreaBlocked());
+			// In scan-ahead mode, keep scanning until enough items are waiting to be bagged
+			if (this.scanAhead > 1 && this.pendingItems < this.scanAhead) {
+				return;
+			}
+
+			// Bagging the item disables the scanners
+			this.scSoftware.bagItem();
+			this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.PLACE_IN_BAGGING_AREA_BLOCKED);
+		}
 	}
 
 	/**
-	 * Override the current recorded weight with the actual weight on scale
+	 * Override the current recorded weight with the weight the scale last
+	 * announced. The weight is not learned for the item being bagged, as the
+	 * attendant approving it says nothing about what the product weighs.
+	 * 
+	 * The announced weight is used rather than reading the scale again, so what
+	 * the lane does depends only on the events it was sent, and a recording of
+	 * them replays the same way.
 	 */
 	public void overrideWeight() {
-		try {
-			this.currentWeight = this.scStation.baggingArea.getCurrentWeight();
-			this.expectedWeight = 0.0;
-		} catch (OverloadException e) {
-			// Hopefully not possible
+		synchronized (this.scSoftware) {
+			this.currentWeight = this.baggingAreaWeight;
+			this.clearExpectedItems();
 		}
 	}
 
@@ -175,20 +286,66 @@ public class ProcessItemHandler extends Handler implements BarcodeScannerObserve
 	 */
 	@Override
 	public void weightChanged(ElectronicScale scale, double weightInGrams) {
-		if (this.scaleOverloaded) {
-			return;
+		synchronized (this.scSoftware) {
+			if (this.scaleOverloaded) {
+				return;
+			}
+
+			if (scale.equals(this.scStation.scanningArea)) {
+				if (this.scSoftware.getPhase() == Phase.WEIGHING_PLU_ITEM) {
+					customer.addProduct(Inventory.getProduct(this.customer.getPLU()), weightInGrams);
+					this.expectItem(weightInGrams, null);
+					this.scSoftware.bagItem();
+					return; //we want to get the call from bagging area.
+				}
+				return;
+			}
+
+			this.baggingAreaWeight = weightInGrams;
+			if (this.weightFilter != null) {
+				this.filterBaggingAreaWeight();
+				return;
+			}
+
+			this.baggingAreaWeightChanged(weightInGrams);
 		}
+	}
+
+	/**
+	 * Offers the bagging area weight to the filter, acts on it if the filter
+	 * passes it on, and offers it again later until the filter has settled on
+	 * it. Called holding the station's lock.
+	 */
+	private void filterBaggingAreaWeight() {
+		double weightInGrams = this.weightFilter.filter(System.currentTimeMillis(), this.baggingAreaWeight);
+
+		if (!Double.isNaN(weightInGrams)) {
+			this.baggingAreaWeightChanged(weightInGrams);
+		}
+
+		if (!this.weightFilter.isSettled() && !this.samplePending) {
+			this.samplePending = true;
+			SAMPLER.schedule(this::sampleBaggingAreaWeight, this.sampleMillis, TimeUnit.MILLISECONDS);
+		}
+	}
 
-		if (scale.equals(this.scStation.scanningArea)) {
-			if (this.scSoftware.getPhase() == Phase.WEIGHING_PLU_ITEM) {
-				customer.addProduct(Inventory.getProduct(this.customer.getPLU()), weightInGrams);
-				this.expectedWeight = weightInGrams;
-				this.scSoftware.bagItem();
-				return; //we want to get the call from bagging area.
+	private void sampleBaggingAreaWeight() {
+		synchronized (this.scSoftware) {
+			this.samplePending = false;
+
+			if (this.weightFilter == null || this.scaleOverloaded) {
+				return;
 			}
-			return;
+
+			this.filterBaggingAreaWeight();
 		}
+	}
 
+	/**
+	 * Acts on a new weight in the bagging area. Called holding the station's
+	 * lock.
+	 */
+	private void baggingAreaWeightChanged(double weightInGrams) {
 		if (this.scSoftware.getPhase() == Phase.PAYMENT_COMPLETE) {
 			if (weightInGrams == 0.0) {
 				this.scSoftware.checkoutComplete();
@@ -213,39 +370,46 @@ public class ProcessItemHandler extends Handler implements BarcodeScannerObserve
 			// weight.
 			// this.expectedWeight will always be set to 0.0 when the item is added, so that
 			// it guarantees the validity of discrepancy algorithm.
-			double expected = this.currentWeight + this.expectedWeight;
-			double discrepancy = Math.abs(expected - weightInGrams);
-
 			// Discrepancy is resolved
-			if (discrepancy <= DISCREPANCY) {
+			if (this.isExpectedWeight(weightInGrams)) {
 				this.acceptNewWeight(weightInGrams);
-				this.scSoftware.notifyObservers(observer -> observer.weightDiscrepancyInBaggingAreaResolved());
+				this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.WEIGHT_DISCREPANCY_IN_BAGGING_AREA_RESOLVED);
 			}
 			// Else do nothing, the discrepancy phase keeps
 
 			return;
 		}
 
+		// In scan-ahead mode, the items waiting are checked together, and a weight
+		// short of their total means some are still to be bagged
+		if (this.scanAhead > 1 && this.pendingItems > 0
+				&& (this.scSoftware.getPhase() == Phase.SCANNING_ITEM || this.scSoftware.getPhase() == Phase.BAGGING_ITEM)) {
+			if (this.isExpectedWeight(weightInGrams)) {
+				this.acceptNewWeight(weightInGrams);
+				return;
+			}
+
+			if (weightInGrams >= this.currentWeight - DISCREPANCY
+					&& weightInGrams <= this.currentWeight + this.expectedWeight + this.expectedTolerance) {
+				return;
+			}
+		}
+
 		// If the current phase is not bagging item, then there's unexpected item
 		if (this.scSoftware.getPhase() != Phase.BAGGING_ITEM) {
 			this.scSoftware.weightDiscrepancy();
-			this.scSoftware.notifyObservers(observer -> observer.weightDiscrepancyInBaggingAreaDetected());
-			this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.weightDiscrepancyDetected(this.scSoftware));
+			this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.WEIGHT_DISCREPANCY_IN_BAGGING_AREA_DETECTED);
+			this.scSoftware.getSupervisionSoftware().notifyObservers(SupervisionEvent.Kind.WEIGHT_DISCREPANCY_DETECTED, this.scSoftware);
 			return;
 		}
 
 		// ========= The rest is only for bagging item phase ========= //
 
-		double expected = this.currentWeight + this.expectedWeight;
-		double discrepancy = Math.abs(expected - weightInGrams);
-		
-		
-
 		// If the discrepancy is too large
-		if (discrepancy > DISCREPANCY) {
+		if (!this.isExpectedWeight(weightInGrams)) {
 			this.scSoftware.weightDiscrepancy();
-			this.scSoftware.notifyObservers(observer -> observer.weightDiscrepancyInBaggingAreaDetected());
-			this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.weightDiscrepancyDetected(this.scSoftware));
+			this.scSoftware.notifyObservers(SelfCheckoutEvent.Kind.WEIGHT_DISCREPANCY_IN_BAGGING_AREA_DETECTED);
+			this.scSoftware.getSupervisionSoftware().notifyObservers(SupervisionEvent.Kind.WEIGHT_DISCREPANCY_DETECTED, this.scSoftware);
 			return;
 		}
 
@@ -254,30 +418,96 @@ public class ProcessItemHandler extends Handler implements BarcodeScannerObserve
 
 	}
 
+	/**
+	 * Checks the bagging area weight against the weight already accepted plus
+	 * the item being bagged, if any. A barcoded item is checked against what it
+	 * has been seen to weigh, with a tolerance learned for that product; anything
+	 * else is allowed the scale's usual margin of error.
+	 */
+	private boolean isExpectedWeight(double weightInGrams) {
+		WeightProfile profile = this.expectedProfile;
+		if (profile != null) {
+			return profile.getLimits().accepts(weightInGrams - this.currentWeight);
+		}
+
+		double tolerance = this.pendingItems > 0 ? this.expectedTolerance : DISCREPANCY;
+		return Math.abs(this.currentWeight + this.expectedWeight - weightInGrams) <= tolerance;
+	}
+
+	/**
+	 * Adds an item to those waiting to be bagged. Their expected weights and
+	 * tolerances add up; a weight is only learned for an item bagged on its own.
+	 */
+	private void expectItem(double catalogWeight, WeightProfile profile) {
+		WeightProfile.Limits limits = profile == null ? null : profile.getLimits();
+
+		this.expectedWeight += limits == null ? catalogWeight : limits.getExpectedWeight();
+		this.expectedTolerance += limits == null ? DISCREPANCY : limits.getTolerance();
+		this.pendingItems++;
+		this.expectedProfile = this.pendingItems == 1 ? profile : null;
+	}
+
+	private void clearExpectedItems() {
+		this.expectedWeight = 0.0;
+		this.expectedTolerance = 0.0;
+		this.expectedProfile = null;
+		this.pendingItems = 0;
+	}
+
+	/**
+	 * Stops expecting the items waiting to be bagged, as when the attendant
+	 * approves leaving an item out of the bagging area.
+	 */
+	public void skipBagging() {
+		synchronized (this.scSoftware) {
+			this.clearExpectedItems();
+		}
+	}
+
+	/**
+	 * Accepts a weight found within tolerance, learning it for the item bagged
+	 * on its own, if it added anything.
+	 */
 	private void acceptNewWeight(double weightInGrams) {
+		double added = weightInGrams - this.currentWeight;
+		if (this.expectedProfile != null && added > 0) {
+			this.expectedProfile.observe(added);
+		}
+
 		this.currentWeight = weightInGrams;
-		this.expectedWeight = 0.0;
+		this.clearExpectedItems();
 		this.scSoftware.addItem(); // Go back to add item phase
 	}
 
 	public void resetScale() {
-		this.currentWeight = 0.0;
-		this.expectedWeight = 0.0;
+		synchronized (this.scSoftware) {
+			this.currentWeight = 0.0;
+			this.clearExpectedItems();
+
+			this.baggingAreaWeight = 0.0;
+			if (this.weightFilter != null) {
+				this.weightFilter.reset();
+			}
+		}
 	}
 
 	@Override
 	public void overload(ElectronicScale scale) {
-		System.out.println("Scale overloaded");
-		this.scaleOverloaded = true;
-		this.scSoftware.blockSystem();
-		this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.scaleOverloadedDetected(this.scSoftware));
+		Log.warn(Log.Category.HARDWARE, "Scale overloaded");
+		synchronized (this.scSoftware) {
+			this.scaleOverloaded = true;
+			this.scSoftware.blockSystem();
+		}
+		this.scSoftware.getSupervisionSoftware().notifyObservers(SupervisionEvent.Kind.SCALE_OVERLOADED_DETECTED, this.scSoftware);
 	}
 
 	@Override
 	public void outOfOverload(ElectronicScale scale) {
-		System.out.println("Scale out of overloaded");
-		this.scaleOverloaded = false;
-		this.scSoftware.unblockSystem();
-		this.scSoftware.getSupervisionSoftware().notifyObservers(observer -> observer.scaleOverloadedResolved(this.scSoftware));
+		Log.info(Log.Category.HARDWARE, "Scale out of overload");
+		synchronized (this.scSoftware) {
+			this.scaleOverloaded = false;
+			this.scSoftware.unblockSystem();
+		}
+		this.scSoftware.getSupervisionSoftware().notifyObservers(SupervisionEvent.Kind.SCALE_OVERLOADED_RESOLVED, this.scSoftware);
 	}
 }
\ No newline at end of file
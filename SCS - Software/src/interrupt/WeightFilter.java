@@ -0,0 +1,36 @@
+package interrupt;
+
+/**
+ * A stage between an electronic scale and the logic that acts on its weight.
+ * Readings go in one at a time with the time they were taken; a filter may
+ * pass on a changed weight, or hold readings back until the weight is worth
+ * acting on.
+ *
+ * @see WeightPipeline
+ * @see ProcessItemHandler#setWeightFilter(WeightFilter, long)
+ */
+public interface WeightFilter {
+	/**
+	 * Takes the next reading.
+	 *
+	 * @param timeMillis    when the reading was taken, in milliseconds
+	 * @param weightInGrams the reading
+	 * @return the weight to act on, or NaN if there is nothing to act on yet
+	 */
+	public double filter(long timeMillis, double weightInGrams);
+
+	/**
+	 * A scale only announces a weight when it changes, so a lane keeps offering
+	 * the last one until its filter is settled.
+	 *
+	 * @return false while the filter is waiting for more readings before it can
+	 *         decide, such as while the weight is still moving or its output has
+	 *         not yet caught up with the latest reading
+	 */
+	public boolean isSettled();
+
+	/**
+	 * Forgets every reading, as when a new customer starts.
+	 */
+	public void reset();
+}
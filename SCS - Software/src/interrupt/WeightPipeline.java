@@ -0,0 +1,276 @@
+package interrupt;
+
+import java.util.Arrays;
+
+/**
+ * Runs scale readings through a chain of filters, so that only a stable weight
+ * reaches the weight discrepancy logic. A reading is passed from stage to stage
+ * until one holds it back.
+ *
+ * The stages provided smooth out noise ({@link MovingAverage}), throw away
+ * spikes such as a knock on the bagging area ({@link Median}), wait for the
+ * weight to stop moving after an item is put down ({@link Settle}), and only
+ * pass on a weight that differs from the last one acted on
+ * ({@link Debounce}). {@link #standard()} chains all four.
+ */
+public class WeightPipeline implements WeightFilter {
+	/**
+	 * Passes on the median of the last few readings. It is settled once its
+	 * window holds only the latest reading, so its median is that reading.
+	 */
+	public static class Median implements WeightFilter {
+		private final double[] window;
+		private final double[] sorted;
+		private int count = 0;
+		private int next = 0;
+
+		/**
+		 * @param size how many readings to take the median of
+		 */
+		public Median(int size) {
+			if (size <= 0) {
+				throw new IllegalArgumentException("Window size must be positive");
+			}
+
+			this.window = new double[size];
+			this.sorted = new double[size];
+		}
+
+		@Override
+		public double filter(long timeMillis, double weightInGrams) {
+			this.window[this.next] = weightInGrams;
+			this.next = (this.next + 1) % this.window.length;
+			this.count = Math.min(this.count + 1, this.window.length);
+
+			System.arraycopy(this.window, 0, this.sorted, 0, this.count);
+			Arrays.sort(this.sorted, 0, this.count);
+
+			if (this.count % 2 == 1) {
+				return this.sorted[this.count / 2];
+			}
+			return (this.sorted[this.count / 2 - 1] + this.sorted[this.count / 2]) / 2;
+		}
+
+		@Override
+		public boolean isSettled() {
+			return WeightPipeline.isUniform(this.window, this.count, this.next);
+		}
+
+		@Override
+		public void reset() {
+			this.count = 0;
+			this.next = 0;
+		}
+	}
+
+	/**
+	 * Passes on the average of the last few readings. It is settled once its
+	 * window holds only the latest reading, so its average is that reading.
+	 */
+	public static class MovingAverage implements WeightFilter {
+		private final double[] window;
+		private int count = 0;
+		private int next = 0;
+
+		/**
+		 * @param size how many readings to average
+		 */
+		public MovingAverage(int size) {
+			if (size <= 0) {
+				throw new IllegalArgumentException("Window size must be positive");
+			}
+
+			this.window = new double[size];
+		}
+
+		@Override
+		public double filter(long timeMillis, double weightInGrams) {
+			this.window[this.next] = weightInGrams;
+			this.next = (this.next + 1) % this.window.length;
+			this.count = Math.min(this.count + 1, this.window.length);
+
+			// Summed afresh each time, so the average never drifts
+			double sum = 0;
+			for (int i = 0; i < this.count; i++) {
+				sum += this.window[i];
+			}
+			return sum / this.count;
+		}
+
+		@Override
+		public boolean isSettled() {
+			return WeightPipeline.isUniform(this.window, this.count, this.next);
+		}
+
+		@Override
+		public void reset() {
+			this.count = 0;
+			this.next = 0;
+		}
+	}
+
+	/**
+	 * Holds readings back until the weight has stayed within a tolerance of its
+	 * average for a settle time. Until it moves again, every reading then passes
+	 * on the average of the readings since it became stable.
+	 */
+	public static class Settle implements WeightFilter {
+		private final double tolerance;
+		private final long settleMillis;
+
+		// Readings since the weight last moved
+		private long since;
+		private double sum;
+		private int count = 0;
+		private boolean settled = true;
+
+		/**
+		 * @param tolerance    how far the weight may move and still count as
+		 *                     stable, in grams
+		 * @param settleMillis how long the weight must be stable
+		 */
+		public Settle(double tolerance, long settleMillis) {
+			if (tolerance < 0 || settleMillis < 0) {
+				throw new IllegalArgumentException("Tolerance and settle time cannot be negative");
+			}
+
+			this.tolerance = tolerance;
+			this.settleMillis = settleMillis;
+		}
+
+		@Override
+		public double filter(long timeMillis, double weightInGrams) {
+			if (this.count == 0 || Math.abs(weightInGrams - this.sum / this.count) > this.tolerance) {
+				this.since = timeMillis;
+				this.sum = 0;
+				this.count = 0;
+			}
+
+			this.sum += weightInGrams;
+			this.count++;
+
+			this.settled = timeMillis - this.since >= this.settleMillis;
+			return this.settled ? this.sum / this.count : Double.NaN;
+		}
+
+		@Override
+		public boolean isSettled() {
+			return this.settled;
+		}
+
+		@Override
+		public void reset() {
+			this.count = 0;
+			this.settled = true;
+		}
+	}
+
+	/**
+	 * Passes on a reading only if it differs from the last one passed on by more
+	 * than a minimum change. Before any reading is passed on, the last weight is
+	 * taken to be an empty scale.
+	 */
+	public static class Debounce implements WeightFilter {
+		private final double minimumChange;
+		private double last = 0;
+
+		/**
+		 * @param minimumChange the smallest change worth acting on, in grams
+		 */
+		public Debounce(double minimumChange) {
+			if (minimumChange < 0) {
+				throw new IllegalArgumentException("Minimum change cannot be negative");
+			}
+
+			this.minimumChange = minimumChange;
+		}
+
+		@Override
+		public double filter(long timeMillis, double weightInGrams) {
+			if (Math.abs(weightInGrams - this.last) <= this.minimumChange) {
+				return Double.NaN;
+			}
+
+			this.last = weightInGrams;
+			return weightInGrams;
+		}
+
+		@Override
+		public boolean isSettled() {
+			return true;
+		}
+
+		@Override
+		public void reset() {
+			this.last = 0;
+		}
+	}
+
+	/**
+	 * @return true if the readings in a window are all the latest one
+	 */
+	private static boolean isUniform(double[] window, int count, int next) {
+		double latest = window[(next + window.length - 1) % window.length];
+		for (int i = 0; i < count; i++) {
+			if (window[i] != latest) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private final WeightFilter[] stages;
+
+	/**
+	 * @param stages the filters to run readings through, in order
+	 */
+	public WeightPipeline(WeightFilter... stages) {
+		if (stages.length == 0) {
+			throw new IllegalArgumentException("A pipeline needs at least one stage");
+		}
+
+		this.stages = stages.clone();
+	}
+
+	/**
+	 * A pipeline for a bagging area sampled every 50 ms or so: the median of 5
+	 * readings, averaged over 5, stable to within half a gram for 300 ms, and
+	 * changed by more than two grams. Two estimates of the same weight on a noisy
+	 * scale can be a gram apart, so a smaller change is not taken for a new item.
+	 */
+	public static WeightPipeline standard() {
+		return new WeightPipeline(new Median(5), new MovingAverage(5), new Settle(0.5, 300), new Debounce(2.0));
+	}
+
+	@Override
+	public double filter(long timeMillis, double weightInGrams) {
+		double weight = weightInGrams;
+
+		for (WeightFilter stage : this.stages) {
+			weight = stage.filter(timeMillis, weight);
+			if (Double.isNaN(weight)) {
+				return Double.NaN;
+			}
+		}
+
+		return weight;
+	}
+
+	@Override
+	public boolean isSettled() {
+		for (WeightFilter stage : this.stages) {
+			if (!stage.isSettled()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public void reset() {
+		for (WeightFilter stage : this.stages) {
+			stage.reset();
+		}
+	}
+}
@@ -0,0 +1,491 @@
+package software;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import software.observers.Event;
+import software.observers.Observer;
+
+/**
+ * Delivers observer notifications on a thread per observer, so that whoever
+ * raises an event does not wait for the observers to handle it.
+ *
+ * Events are published into a ring buffer whose events are allocated up front
+ * and reused. Publishing claims the next sequence number, copies the event into
+ * the slot for it and marks it published, so it costs the same however slow the observers
+ * are. Each observer has a consumer thread that handles events in order and
+ * records the sequence number of the last one it handled; how far that is
+ * behind the latest event is its lag. A slot is only reused once every
+ * consumer has handled it, so a publisher waits only if an observer falls a
+ * whole ring behind.
+ *
+ * Consumers wait for events with a {@link WaitStrategy}, trading CPU for how
+ * quickly they wake up. An observer that displays state can be subscribed with
+ * a frame, so its consumer merges state events with an {@link EventCoalescer}.
+ *
+ * @param <T> the type of observer
+ * @param <E> the type of event
+ */
+public class EventBus<T extends Observer, E extends Event<T, E>> {
+    /**
+     * The default number of slots in the ring
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * How a consumer waits for the next event.
+     */
+    public enum WaitStrategy {
+        /**
+         * Parks the thread until a publisher wakes it. Uses no CPU while idle,
+         * but waking costs the most.
+         */
+        BLOCKING,
+        /**
+         * Spins briefly, then yields, then sleeps for short periods.
+         */
+        SLEEPING,
+        /**
+         * Spins briefly, then yields the CPU to other threads.
+         */
+        YIELDING,
+        /**
+         * Spins without giving up the CPU. Wakes the quickest, but keeps a core
+         * busy.
+         */
+        BUSY_SPIN
+    }
+
+    /**
+     * Delivers events to one observer on its own thread.
+     */
+    private static class Consumer<T extends Observer, E extends Event<T, E>> implements Runnable {
+        private final EventBus<T, E> bus;
+        private final T observer;
+        private final long interests;
+        private final WaitStrategy strategy;
+        private final EventCoalescer<T, E> coalescer;
+        private final Thread thread;
+
+        // The sequence number of the last event handled
+        private final AtomicLong sequence;
+        private volatile boolean running = true;
+        private volatile boolean parked = false;
+
+        Consumer(EventBus<T, E> bus, T observer, long interests, WaitStrategy strategy, long frameMillis,
+                long sequence) {
+            this.bus = bus;
+            this.observer = observer;
+            this.interests = interests;
+            this.strategy = strategy;
+            this.coalescer = frameMillis == 0 ? null
+                    : new EventCoalescer<T, E>(observer, TimeUnit.MILLISECONDS.toNanos(frameMillis), bus.factory);
+            this.sequence = new AtomicLong(sequence);
+            this.thread = new Thread(this, "EventBus-" + observer.getClass().getSimpleName());
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+
+            while (this.running) {
+                long next = this.sequence.get() + 1;
+
+                if (!this.bus.isPublished(next)) {
+                    idle = this.idle(next, idle);
+                    continue;
+                }
+                idle = 0;
+
+                // Handle everything already published in one batch
+                long last = next;
+                while (this.bus.isPublished(last + 1)) {
+                    last++;
+                }
+
+                for (long s = next; s <= last && this.running; s++) {
+                    E event = this.bus.slots[this.bus.index(s)];
+                    try {
+                        if ((this.interests & (1L << event.getKind().ordinal())) != 0) {
+                            if (this.coalescer == null) {
+                                event.dispatchTo(this.observer);
+                            } else {
+                                this.coalescer.offer(event, System.nanoTime());
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        // One failed notification must not stop the ones after it
+                        Log.error(Log.Category.GUI, "Notification failed", "exception", e);
+                    }
+                    this.sequence.set(s);
+                }
+                this.flushIfDue();
+            }
+        }
+
+        /**
+         * Delivers the state events held by the coalescer, if their frame has
+         * ended.
+         */
+        private void flushIfDue() {
+            if (this.coalescer == null || !this.coalescer.isHolding()) {
+                return;
+            }
+
+            try {
+                this.coalescer.flushIfDue(System.nanoTime());
+            } catch (RuntimeException e) {
+                Log.error(Log.Category.GUI, "Notification failed", "exception", e);
+            }
+        }
+
+        boolean isHolding() {
+            return this.coalescer != null && this.coalescer.isHolding();
+        }
+
+        /**
+         * Waits a little for the given event to be published.
+         *
+         * @return how many times in a row the consumer has waited
+         */
+        private int idle(long next, int idle) {
+            this.flushIfDue();
+
+            switch (this.strategy) {
+            case BUSY_SPIN:
+                Thread.onSpinWait();
+                break;
+            case YIELDING:
+                if (idle < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+                break;
+            case SLEEPING:
+                if (idle < 100) {
+                    Thread.onSpinWait();
+                } else if (idle < 200) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                }
+                break;
+            case BLOCKING:
+                this.parked = true;
+                // Checked again after saying so, so a publish in between is not missed
+                if (!this.bus.isPublished(next) && this.running) {
+                    if (this.isHolding()) {
+                        // Wake up in time to deliver the held events
+                        LockSupport.parkNanos(this, this.coalescer.getDeadline() - System.nanoTime());
+                    } else {
+                        LockSupport.park(this);
+                    }
+                }
+                this.parked = false;
+                break;
+            }
+
+            return idle + 1;
+        }
+
+        void wake() {
+            if (this.parked) {
+                LockSupport.unpark(this.thread);
+            }
+        }
+
+        void stop() {
+            this.running = false;
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    // Creates the events in the ring, and those consumers hold
+    private final Supplier<E> factory;
+
+    // The events in the ring, reused for every lap of it
+    private final E[] slots;
+    private final int mask;
+
+    // The sequence number published into each slot
+    private final AtomicLongArray published;
+
+    // The last sequence number claimed by a publisher
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    private final Object consumersLock = new Object();
+
+    // Every kind of event some consumer is interested in
+    private volatile long interests = 0;
+
+    @SuppressWarnings("unchecked")
+    private volatile Consumer<T, E>[] consumers = (Consumer<T, E>[]) new Consumer<?, ?>[0];
+
+    /**
+     * @param factory creates the events in the ring
+     */
+    public EventBus(Supplier<E> factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param factory  creates the events in the ring
+     * @param capacity the number of slots in the ring, a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public EventBus(Supplier<E> factory, int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+
+        this.factory = factory;
+        this.slots = (E[]) new Event<?, ?>[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.slots[i] = factory.get();
+        }
+        this.mask = capacity - 1;
+
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            this.published.set(i, -1);
+        }
+    }
+
+    /**
+     * Starts delivering events published from now on to the observer, on a
+     * thread of its own.
+     *
+     * @param observer the observer
+     * @param strategy how its thread waits for events
+     */
+    public void subscribe(T observer, WaitStrategy strategy) {
+        this.subscribe(observer, Event.ALL_KINDS, strategy);
+    }
+
+    /**
+     * Starts delivering the kinds of event the observer is interested in, from
+     * now on, on a thread of its own.
+     *
+     * @param observer  the observer
+     * @param interests the kinds of event to deliver, as a bitmask from
+     *                  {@link Event#mask(Enum...)}
+     * @param strategy  how its thread waits for events
+     */
+    public void subscribe(T observer, long interests, WaitStrategy strategy) {
+        this.subscribe(observer, interests, strategy, 0);
+    }
+
+    /**
+     * Starts delivering the kinds of event an observer that displays state is
+     * interested in, from now on, on a thread of its own. State events are
+     * merged and delivered once a frame; see {@link EventCoalescer}.
+     *
+     * @param observer    the observer
+     * @param interests   the kinds of event to deliver, as a bitmask from
+     *                    {@link Event#mask(Enum...)}
+     * @param strategy    how its thread waits for events
+     * @param frameMillis how long to merge state events for, such as
+     *                    {@link EventCoalescer#FRAME_MILLIS}, or 0 to deliver
+     *                    every event as it is handled
+     */
+    public void subscribe(T observer, long interests, WaitStrategy strategy, long frameMillis) {
+        if (observer == null || strategy == null) {
+            throw new IllegalArgumentException("Observer and wait strategy cannot be null");
+        }
+        if (frameMillis < 0) {
+            throw new IllegalArgumentException("Frame cannot be negative");
+        }
+
+        Consumer<T, E> consumer;
+        synchronized (this.consumersLock) {
+            consumer = new Consumer<T, E>(this, observer, interests, strategy, frameMillis, this.claimed.get());
+            Consumer<T, E>[] replacement = Arrays.copyOf(this.consumers, this.consumers.length + 1);
+            replacement[replacement.length - 1] = consumer;
+            this.consumers = replacement;
+            this.interests |= interests;
+        }
+        consumer.thread.start();
+    }
+
+    /**
+     * Stops delivering events to the observer. Events it has not handled yet
+     * are dropped.
+     *
+     * @param observer the observer
+     * @return true if the observer was subscribed
+     */
+    public boolean unsubscribe(T observer) {
+        synchronized (this.consumersLock) {
+            Consumer<T, E>[] current = this.consumers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].observer.equals(observer)) {
+                    Consumer<T, E>[] replacement = Arrays.copyOf(current, current.length - 1);
+                    System.arraycopy(current, i + 1, replacement, i, current.length - i - 1);
+                    this.consumers = replacement;
+                    this.interests = getInterests(replacement);
+                    current[i].stop();
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Stops delivering events to every observer.
+     */
+    public void unsubscribeAll() {
+        Consumer<T, E>[] current;
+        synchronized (this.consumersLock) {
+            current = this.consumers;
+            this.consumers = Arrays.copyOf(current, 0);
+            this.interests = 0;
+        }
+
+        for (Consumer<T, E> consumer : current) {
+            consumer.stop();
+        }
+    }
+
+    /**
+     * @param observer the observer
+     * @return true if events are delivered to it by this bus
+     */
+    public boolean isSubscribed(T observer) {
+        for (Consumer<T, E> consumer : this.consumers) {
+            if (consumer.observer.equals(observer)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Publishes an event to every subscribed observer interested in it. Returns
+     * as soon as the event is in the ring, unless the slowest observer is a
+     * whole ring behind. An event no observer is interested in is not put in
+     * the ring at all.
+     *
+     * @param event the event, which is copied, so can be reused once this
+     *              returns
+     */
+    public void publish(E event) {
+        Consumer<T, E>[] current = this.consumers;
+        if ((this.interests & (1L << event.getKind().ordinal())) == 0) {
+            return;
+        }
+
+        long sequence = this.claimed.incrementAndGet();
+
+        // Wait for the slot to be handled by everyone on the last lap
+        while (sequence - this.slots.length > this.getMinimumSequence(current)) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+            current = this.consumers;
+        }
+
+        int index = this.index(sequence);
+        this.slots[index].copyFrom(event);
+        this.published.set(index, sequence);
+
+        for (Consumer<T, E> consumer : current) {
+            consumer.wake();
+        }
+    }
+
+    /**
+     * @return the sequence number of the last event published, or -1 if there
+     *         are none
+     */
+    public long getSequence() {
+        return this.claimed.get();
+    }
+
+    /**
+     * @param observer the observer
+     * @return how many published events the observer has not handled yet
+     * @throws IllegalArgumentException if the observer is not subscribed
+     */
+    public long getLag(T observer) {
+        for (Consumer<T, E> consumer : this.consumers) {
+            if (consumer.observer.equals(observer)) {
+                return Math.max(0, this.claimed.get() - consumer.sequence.get());
+            }
+        }
+
+        throw new IllegalArgumentException("Observer is not subscribed");
+    }
+
+    /**
+     * @return the lag of the observer furthest behind, or 0 if there are none
+     */
+    public long getMaximumLag() {
+        Consumer<T, E>[] current = this.consumers;
+        if (current.length == 0) {
+            return 0;
+        }
+
+        return Math.max(0, this.claimed.get() - this.getMinimumSequence(current));
+    }
+
+    /**
+     * Waits for every observer to handle every event published so far,
+     * including any state events held to merge.
+     *
+     * @param timeoutMillis how long to wait at most
+     * @return true if they caught up in time
+     */
+    public boolean awaitDelivered(long timeoutMillis) {
+        long target = this.claimed.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        while (this.getMinimumSequence(this.consumers) < target || this.isHolding(this.consumers)) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+
+        return true;
+    }
+
+    private static long getInterests(Consumer<?, ?>[] consumers) {
+        long interests = 0;
+        for (Consumer<?, ?> consumer : consumers) {
+            interests |= consumer.interests;
+        }
+        return interests;
+    }
+
+    private boolean isHolding(Consumer<T, E>[] current) {
+        for (Consumer<T, E> consumer : current) {
+            if (consumer.isHolding()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getMinimumSequence(Consumer<T, E>[] current) {
+        long minimum = Long.MAX_VALUE;
+        for (Consumer<T, E> consumer : current) {
+            minimum = Math.min(minimum, consumer.sequence.get());
+        }
+        return minimum;
+    }
+
+    private boolean isPublished(long sequence) {
+        return this.published.get(this.index(sequence)) == sequence;
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & this.mask;
+    }
+}
@@ -0,0 +1,162 @@
+package software;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import software.observers.Event;
+import software.observers.Observer;
+
+/**
+ * Merges the state events an observer that only displays state would redraw
+ * for one after another, such as a phase change followed by the touch screen
+ * being blocked, into at most one update per state per frame.
+ *
+ * An event with a state key, see {@link Event#getStateKey()}, is held until the
+ * end of the frame it arrived in, and replaces any held event with the same
+ * key. At the end of the frame each held event is delivered, unless it reports
+ * the same state as the last one delivered with its key. Every other event,
+ * such as a weight discrepancy or a failed payment, is delivered at once, so
+ * it may reach the observer up to a frame before state events raised just
+ * ahead of it.
+ *
+ * A coalescer is used by one thread at a time, such as the thread an
+ * {@link EventBus} delivers events to its observer on.
+ *
+ * @param <T> the type of observer
+ * @param <E> the type of event
+ */
+public class EventCoalescer<T extends Observer, E extends Event<T, E>> {
+    /**
+     * A frame at 60 frames a second, about how often a screen is redrawn
+     */
+    public static final long FRAME_MILLIS = 16;
+
+    private final T observer;
+    private final long frameNanos;
+    private final Supplier<E> factory;
+
+    // The state events held until the end of the frame, in the order they arrived
+    private final List<E> pending = new ArrayList<E>();
+
+    // The last state event delivered with each key
+    private final List<E> delivered = new ArrayList<E>();
+
+    // Events no longer held or delivered, to reuse
+    private final List<E> spare = new ArrayList<E>();
+
+    private long deadline;
+    private volatile boolean holding = false;
+
+    /**
+     * @param observer   the observer to deliver to
+     * @param frameNanos how long to hold state events for
+     * @param factory    creates the events to hold copies of state events in
+     */
+    public EventCoalescer(T observer, long frameNanos, Supplier<E> factory) {
+        if (observer == null || factory == null) {
+            throw new IllegalArgumentException("Observer and factory cannot be null");
+        }
+        if (frameNanos <= 0) {
+            throw new IllegalArgumentException("Frame must be longer than 0");
+        }
+
+        this.observer = observer;
+        this.frameNanos = frameNanos;
+        this.factory = factory;
+    }
+
+    /**
+     * Delivers an event, or holds a copy of it to deliver at the end of the
+     * frame if it is a state event.
+     *
+     * @param event the event, which can be reused once this returns
+     * @param now   the current {@link System#nanoTime()}
+     */
+    public void offer(E event, long now) {
+        if (event.getStateKey() == null) {
+            event.dispatchTo(this.observer);
+            return;
+        }
+
+        for (E held : this.pending) {
+            if (held.hasSameStateKey(event)) {
+                held.copyFrom(event);
+                return;
+            }
+        }
+
+        if (this.pending.isEmpty()) {
+            this.deadline = now + this.frameNanos;
+        }
+        E held = this.spare.isEmpty() ? this.factory.get() : this.spare.remove(this.spare.size() - 1);
+        held.copyFrom(event);
+        this.pending.add(held);
+        this.holding = true;
+    }
+
+    /**
+     * Delivers the held events if their frame has ended.
+     *
+     * @param now the current {@link System#nanoTime()}
+     * @return true if the frame had ended
+     */
+    public boolean flushIfDue(long now) {
+        if (!this.holding || now - this.deadline < 0) {
+            return false;
+        }
+
+        this.flush();
+        return true;
+    }
+
+    /**
+     * Delivers the held events now. If the observer fails to handle one, the
+     * events after it stay held.
+     */
+    public void flush() {
+        while (!this.pending.isEmpty()) {
+            E held = this.pending.remove(0);
+
+            int last = this.indexOfDelivered(held);
+            if (last >= 0 && held.hasSameState(this.delivered.get(last))) {
+                // Nothing has changed since the observer last heard
+                this.spare.add(held);
+                continue;
+            }
+
+            if (last >= 0) {
+                this.spare.add(this.delivered.set(last, held));
+            } else {
+                this.delivered.add(held);
+            }
+            held.dispatchTo(this.observer);
+        }
+
+        this.holding = false;
+    }
+
+    /**
+     * @return true if state events are held, to deliver at the end of the frame
+     */
+    public boolean isHolding() {
+        return this.holding;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} the held events are due at, if
+     *         there are any
+     */
+    public long getDeadline() {
+        return this.deadline;
+    }
+
+    private int indexOfDelivered(E event) {
+        for (int i = 0; i < this.delivered.size(); i++) {
+            if (this.delivered.get(i).hasSameStateKey(event)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
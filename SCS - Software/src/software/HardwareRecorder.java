@@ -0,0 +1,589 @@
+package software;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+
+import org.lsmr.selfcheckout.Banknote;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Card.CardData;
+import org.lsmr.selfcheckout.Coin;
+import org.lsmr.selfcheckout.devices.AbstractDevice;
+import org.lsmr.selfcheckout.devices.BanknoteDispenser;
+import org.lsmr.selfcheckout.devices.BanknoteSlot;
+import org.lsmr.selfcheckout.devices.BanknoteValidator;
+import org.lsmr.selfcheckout.devices.BarcodeScanner;
+import org.lsmr.selfcheckout.devices.CardReader;
+import org.lsmr.selfcheckout.devices.CoinDispenser;
+import org.lsmr.selfcheckout.devices.CoinValidator;
+import org.lsmr.selfcheckout.devices.ElectronicScale;
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
+import org.lsmr.selfcheckout.devices.observers.BanknoteDispenserObserver;
+import org.lsmr.selfcheckout.devices.observers.BanknoteSlotObserver;
+import org.lsmr.selfcheckout.devices.observers.BanknoteValidatorObserver;
+import org.lsmr.selfcheckout.devices.observers.BarcodeScannerObserver;
+import org.lsmr.selfcheckout.devices.observers.CardReaderObserver;
+import org.lsmr.selfcheckout.devices.observers.CoinDispenserObserver;
+import org.lsmr.selfcheckout.devices.observers.CoinValidatorObserver;
+import org.lsmr.selfcheckout.devices.observers.ElectronicScaleObserver;
+import org.lsmr.selfcheckout.devices.observers.ReceiptPrinterObserver;
+
+import software.SelfCheckoutSoftware.Phase;
+import software.observers.Event;
+import software.observers.SelfCheckoutAdapter;
+import software.observers.SelfCheckoutEvent;
+
+/**
+ * Records what happens to the hardware of a station, such as scans, weights,
+ * coins, banknotes, cards and printer refills, so a lane that got into a bad
+ * state can be replayed with {@link HardwareReplay}.
+ *
+ * Records are written to a ring file that is memory-mapped, so recording an
+ * event only copies a few bytes and never waits on the disk. The file starts
+ * with a header:
+ *
+ * <pre>
+ * magic	version	capacity	reserved	startMillis	head	tail
+ * </pre>
+ *
+ * followed by a ring of the given capacity holding records:
+ *
+ * <pre>
+ * type	device	payloadLength	nanos	payload
+ * </pre>
+ *
+ * where nanos is the time since the recording started, and device is the
+ * index of the device in {@link #devices(SelfCheckoutStation)}. Head and tail
+ * are the number of bytes ever written up to the end of the newest record and
+ * the start of the oldest. A record never wraps around the end of the ring; the
+ * space left at the end is marked with a {@link #PAD} record instead. Once the
+ * ring is full, the oldest records are dropped to make room, so the file holds
+ * the latest events. The head is moved last, so a record cut short by a crash
+ * is not read.
+ *
+ * A recorder should be attached to a station before the software, so each
+ * hardware event is recorded ahead of the phase changes it causes. Only what
+ * happens to the hardware is recorded: events the devices raise in turn, such
+ * as a dispenser announcing a coin a validator passed to it, happen again on
+ * replay.
+ *
+ * A card that is read is recorded only as its type, the last four digits of
+ * its number and whether a CVV was read, never its full number, cardholder or
+ * CVV.
+ */
+public class HardwareRecorder implements Closeable, BarcodeScannerObserver, ElectronicScaleObserver,
+        CoinValidatorObserver, BanknoteValidatorObserver, BanknoteSlotObserver, CoinDispenserObserver,
+        BanknoteDispenserObserver, CardReaderObserver, ReceiptPrinterObserver {
+    /**
+     * The default size of the ring, in bytes
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    static final int MAGIC = 0x53435352;
+    static final int VERSION = 2;
+    static final int HEADER = 40;
+    static final int RECORD_HEADER = 12;
+    static final int MAXIMUM_PAYLOAD = 0xFFFF;
+
+    // Offsets in the header
+    static final int CAPACITY = 8;
+    static final int START = 16;
+    static final int HEAD = 24;
+    static final int TAIL = 32;
+
+    // Record types
+    static final byte PAD = 0;
+    static final byte BARCODE_SCANNED = 1;
+    static final byte WEIGHT_CHANGED = 2;
+    static final byte OVERLOAD = 3;
+    static final byte OUT_OF_OVERLOAD = 4;
+    static final byte VALID_COIN = 5;
+    static final byte INVALID_COIN = 6;
+    static final byte VALID_BANKNOTE = 7;
+    static final byte INVALID_BANKNOTE = 8;
+    static final byte BANKNOTE_REMOVED = 9;
+    static final byte COINS_LOADED = 10;
+    static final byte BANKNOTES_LOADED = 11;
+    static final byte UNLOADED = 12;
+    static final byte CARD_INSERTED = 13;
+    static final byte CARD_REMOVED = 14;
+    static final byte CARD_TAPPED = 15;
+    static final byte CARD_SWIPED = 16;
+    static final byte CARD_DATA_READ = 17;
+    static final byte PAPER_ADDED = 18;
+    static final byte INK_ADDED = 19;
+    static final byte OUT_OF_PAPER = 20;
+    static final byte OUT_OF_INK = 21;
+    static final byte PHASE_CHANGED = 22;
+
+    // The device of a record that is not about one
+    static final int NO_DEVICE = 0xFF;
+
+    private final SelfCheckoutStation station;
+    private final List<AbstractDevice<?>> devices;
+    private final MappedByteBuffer ring;
+    private final int capacity;
+    private final long start;
+    private long head;
+    private long tail;
+    private long recorded = 0;
+
+    // The payload of the record being written
+    private final ByteBuffer payload = ByteBuffer.allocate(MAXIMUM_PAYLOAD);
+
+    private final SelfCheckoutAdapter phases = new SelfCheckoutAdapter() {
+        @Override
+        public void phaseChanged(Phase phase) {
+            HardwareRecorder.this.phaseChanged(phase);
+        }
+    };
+    private SelfCheckoutSoftware software;
+
+    /**
+     * Starts recording the hardware of a station to a new ring file, replacing
+     * any file already there.
+     *
+     * @param station the station to record
+     * @param file    the ring file
+     * @throws IOException if the file cannot be created
+     */
+    public HardwareRecorder(SelfCheckoutStation station, Path file) throws IOException {
+        this(station, file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the size of the ring, in bytes, which must hold at least
+     *                 the largest record
+     */
+    public HardwareRecorder(SelfCheckoutStation station, Path file, int capacity) throws IOException {
+        if (station == null || file == null) {
+            throw new IllegalArgumentException("Station and file cannot be null");
+        }
+        if (capacity < RECORD_HEADER + MAXIMUM_PAYLOAD) {
+            throw new IllegalArgumentException("Capacity is too small");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.ring = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + capacity);
+        }
+
+        this.station = station;
+        this.devices = HardwareRecorder.devices(station);
+        this.capacity = capacity;
+        this.start = System.nanoTime();
+
+        this.ring.putInt(0, MAGIC);
+        this.ring.putInt(4, VERSION);
+        this.ring.putInt(CAPACITY, capacity);
+        this.ring.putLong(START, System.currentTimeMillis());
+        this.ring.putLong(HEAD, 0);
+        this.ring.putLong(TAIL, 0);
+
+        this.attach();
+    }
+
+    /**
+     * The devices that are recorded, in the order their index is written in.
+     * Stations with the same configuration list their devices the same way.
+     *
+     * @param station
+     * @return the devices of the station
+     */
+    static List<AbstractDevice<?>> devices(SelfCheckoutStation station) {
+        List<AbstractDevice<?>> devices = new ArrayList<AbstractDevice<?>>();
+        devices.add(station.mainScanner);
+        devices.add(station.handheldScanner);
+        devices.add(station.scanningArea);
+        devices.add(station.baggingArea);
+        devices.add(station.coinValidator);
+        devices.add(station.banknoteInput);
+        devices.add(station.banknoteOutput);
+        devices.add(station.banknoteValidator);
+        devices.add(station.cardReader);
+        devices.add(station.printer);
+
+        List<BigDecimal> coins = new ArrayList<BigDecimal>(station.coinDispensers.keySet());
+        Collections.sort(coins);
+        for (BigDecimal denomination : coins) {
+            devices.add(station.coinDispensers.get(denomination));
+        }
+
+        List<Integer> banknotes = new ArrayList<Integer>(station.banknoteDispensers.keySet());
+        Collections.sort(banknotes);
+        for (Integer denomination : banknotes) {
+            devices.add(station.banknoteDispensers.get(denomination));
+        }
+
+        return devices;
+    }
+
+    private void attach() {
+        this.station.mainScanner.attach(this);
+        this.station.handheldScanner.attach(this);
+        this.station.scanningArea.attach(this);
+        this.station.baggingArea.attach(this);
+        this.station.coinValidator.attach(this);
+        this.station.banknoteInput.attach(this);
+        this.station.banknoteOutput.attach(this);
+        this.station.banknoteValidator.attach(this);
+        this.station.cardReader.attach(this);
+        this.station.printer.attach(this);
+        this.station.coinDispensers.forEach((k, v) -> v.attach(this));
+        this.station.banknoteDispensers.forEach((k, v) -> v.attach(this));
+    }
+
+    /**
+     * Also records the phase changes of the software running the station, so a
+     * replay can check it ends up in the same phases.
+     *
+     * @param software the software of the recorded station
+     */
+    public synchronized void watch(SelfCheckoutSoftware software) {
+        if (software.getSelfCheckoutStation() != this.station) {
+            throw new IllegalArgumentException("Software does not run the recorded station");
+        }
+        if (this.software != null) {
+            this.software.removeObserver(this.phases);
+        }
+
+        this.software = software;
+        software.addObserver(this.phases, Event.mask(SelfCheckoutEvent.Kind.PHASE_CHANGED));
+    }
+
+    /**
+     * @return the number of records written, including any since dropped
+     */
+    public synchronized long getRecorded() {
+        return this.recorded;
+    }
+
+    /**
+     * Stops recording and forces the ring to disk.
+     */
+    @Override
+    public synchronized void close() {
+        this.station.mainScanner.detach(this);
+        this.station.handheldScanner.detach(this);
+        this.station.scanningArea.detach(this);
+        this.station.baggingArea.detach(this);
+        this.station.coinValidator.detach(this);
+        this.station.banknoteInput.detach(this);
+        this.station.banknoteOutput.detach(this);
+        this.station.banknoteValidator.detach(this);
+        this.station.cardReader.detach(this);
+        this.station.printer.detach(this);
+        this.station.coinDispensers.forEach((k, v) -> v.detach(this));
+        this.station.banknoteDispensers.forEach((k, v) -> v.detach(this));
+
+        if (this.software != null) {
+            this.software.removeObserver(this.phases);
+            this.software = null;
+        }
+
+        this.ring.force();
+    }
+
+    // ========== WRITING ========== //
+
+    private int indexOf(AbstractDevice<?> device) {
+        for (int i = 0; i < this.devices.size(); i++) {
+            if (this.devices.get(i) == device) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("Device is not part of the recorded station");
+    }
+
+    private void record(byte type, AbstractDevice<?> device) {
+        this.payload.clear();
+        this.write(type, this.indexOf(device));
+    }
+
+    /**
+     * Writes a record with what has been put in the payload.
+     */
+    private void write(byte type, int device) {
+        int length = this.payload.position();
+        int size = RECORD_HEADER + length;
+
+        // A record does not wrap, so pad out the end of the ring if it does not fit
+        int offset = (int) (this.head % this.capacity);
+        int pad = offset + size > this.capacity ? this.capacity - offset : 0;
+
+        while (this.head + pad + size - this.tail > this.capacity) {
+            this.drop();
+        }
+
+        if (pad > 0) {
+            this.ring.put(HEADER + offset, PAD);
+            this.head += pad;
+            offset = 0;
+        }
+
+        int position = HEADER + offset;
+        this.ring.put(position, type);
+        this.ring.put(position + 1, (byte) device);
+        this.ring.putShort(position + 2, (short) length);
+        this.ring.putLong(position + 4, System.nanoTime() - this.start);
+        this.ring.put(position + RECORD_HEADER, this.payload, 0, length);
+
+        this.head += size;
+        this.recorded++;
+        this.ring.putLong(TAIL, this.tail);
+        this.ring.putLong(HEAD, this.head);
+    }
+
+    /**
+     * Drops the oldest record.
+     */
+    private void drop() {
+        int offset = (int) (this.tail % this.capacity);
+        if (this.ring.get(HEADER + offset) == PAD) {
+            this.tail += this.capacity - offset;
+        } else {
+            this.tail += RECORD_HEADER + (this.ring.getShort(HEADER + offset + 2) & 0xFFFF);
+        }
+    }
+
+    private void putString(String string) {
+        if (string == null) {
+            this.payload.putShort((short) -1);
+            return;
+        }
+
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        this.payload.putShort((short) bytes.length);
+        this.payload.put(bytes);
+    }
+
+    private synchronized void phaseChanged(Phase phase) {
+        this.payload.clear();
+        this.payload.put((byte) phase.ordinal());
+        this.write(PHASE_CHANGED, NO_DEVICE);
+    }
+
+    // ========== DEVICE EVENTS ========== //
+
+    @Override
+    public void enabled(AbstractDevice<? extends AbstractDeviceObserver> device) {
+    }
+
+    @Override
+    public void disabled(AbstractDevice<? extends AbstractDeviceObserver> device) {
+    }
+
+    @Override
+    public synchronized void barcodeScanned(BarcodeScanner barcodeScanner, Barcode barcode) {
+        this.payload.clear();
+        for (int i = 0; i < barcode.digitCount(); i++) {
+            this.payload.put(barcode.getDigitAt(i).getValue());
+        }
+        this.write(BARCODE_SCANNED, this.indexOf(barcodeScanner));
+    }
+
+    @Override
+    public synchronized void weightChanged(ElectronicScale scale, double weightInGrams) {
+        this.payload.clear();
+        this.payload.putDouble(weightInGrams);
+        this.write(WEIGHT_CHANGED, this.indexOf(scale));
+    }
+
+    @Override
+    public synchronized void overload(ElectronicScale scale) {
+        this.record(OVERLOAD, scale);
+    }
+
+    @Override
+    public synchronized void outOfOverload(ElectronicScale scale) {
+        this.record(OUT_OF_OVERLOAD, scale);
+    }
+
+    @Override
+    public synchronized void validCoinDetected(CoinValidator validator, BigDecimal value) {
+        this.payload.clear();
+        this.payload.putInt(value.scale());
+        this.payload.putLong(value.unscaledValue().longValue());
+        this.write(VALID_COIN, this.indexOf(validator));
+    }
+
+    @Override
+    public synchronized void invalidCoinDetected(CoinValidator validator) {
+        this.record(INVALID_COIN, validator);
+    }
+
+    @Override
+    public synchronized void validBanknoteDetected(BanknoteValidator validator, Currency currency, int value) {
+        this.payload.clear();
+        this.putString(currency.getCurrencyCode());
+        this.payload.putInt(value);
+        this.write(VALID_BANKNOTE, this.indexOf(validator));
+    }
+
+    @Override
+    public synchronized void invalidBanknoteDetected(BanknoteValidator validator) {
+        this.record(INVALID_BANKNOTE, validator);
+    }
+
+    @Override
+    public void banknoteInserted(BanknoteSlot slot) {
+        // Recorded by the validator, with the banknote
+    }
+
+    @Override
+    public void banknotesEjected(BanknoteSlot slot) {
+        // Raised again on replay
+    }
+
+    @Override
+    public synchronized void banknoteRemoved(BanknoteSlot slot) {
+        this.record(BANKNOTE_REMOVED, slot);
+    }
+
+    @Override
+    public void coinsFull(CoinDispenser dispenser) {
+    }
+
+    @Override
+    public void coinsEmpty(CoinDispenser dispenser) {
+    }
+
+    @Override
+    public void coinAdded(CoinDispenser dispenser, Coin coin) {
+        // Raised again on replay
+    }
+
+    @Override
+    public void coinRemoved(CoinDispenser dispenser, Coin coin) {
+        // Raised again on replay
+    }
+
+    @Override
+    public synchronized void coinsLoaded(CoinDispenser dispenser, Coin... coins) {
+        this.payload.clear();
+        this.payload.putInt(coins.length);
+        this.write(COINS_LOADED, this.indexOf(dispenser));
+    }
+
+    @Override
+    public synchronized void coinsUnloaded(CoinDispenser dispenser, Coin... coins) {
+        this.record(UNLOADED, dispenser);
+    }
+
+    @Override
+    public void moneyFull(BanknoteDispenser dispenser) {
+    }
+
+    @Override
+    public void banknotesEmpty(BanknoteDispenser dispenser) {
+    }
+
+    @Override
+    public void billAdded(BanknoteDispenser dispenser, Banknote banknote) {
+        // Raised again on replay
+    }
+
+    @Override
+    public void banknoteRemoved(BanknoteDispenser dispenser, Banknote banknote) {
+        // Raised again on replay
+    }
+
+    @Override
+    public synchronized void banknotesLoaded(BanknoteDispenser dispenser, Banknote... banknotes) {
+        this.payload.clear();
+        this.payload.putInt(banknotes.length);
+        this.write(BANKNOTES_LOADED, this.indexOf(dispenser));
+    }
+
+    @Override
+    public synchronized void banknotesUnloaded(BanknoteDispenser dispenser, Banknote... banknotes) {
+        this.record(UNLOADED, dispenser);
+    }
+
+    @Override
+    public synchronized void cardInserted(CardReader reader) {
+        this.record(CARD_INSERTED, reader);
+    }
+
+    @Override
+    public synchronized void cardRemoved(CardReader reader) {
+        this.record(CARD_REMOVED, reader);
+    }
+
+    @Override
+    public synchronized void cardTapped(CardReader reader) {
+        this.record(CARD_TAPPED, reader);
+    }
+
+    @Override
+    public synchronized void cardSwiped(CardReader reader) {
+        this.record(CARD_SWIPED, reader);
+    }
+
+    @Override
+    public synchronized void cardDataRead(CardReader reader, CardData data) {
+        // Only enough to pick the same card out of the test cards on replay
+        this.payload.clear();
+        this.putString(data.getType());
+        this.putString(HardwareRecorder.lastDigits(data.getNumber()));
+
+        boolean cvv;
+        try {
+            cvv = data.getCVV() != null;
+        } catch (UnsupportedOperationException e) {
+            // A swiped card has no CVV
+            cvv = false;
+        }
+        this.payload.put((byte) (cvv ? 1 : 0));
+
+        this.write(CARD_DATA_READ, this.indexOf(reader));
+    }
+
+    /**
+     * @return the last four digits of a card number, or all of it if it is
+     *         shorter
+     */
+    static String lastDigits(String number) {
+        if (number == null) {
+            return null;
+        }
+        return number.substring(Math.max(0, number.length() - 4));
+    }
+
+    @Override
+    public synchronized void outOfPaper(ReceiptPrinter printer) {
+        this.record(OUT_OF_PAPER, printer);
+    }
+
+    @Override
+    public synchronized void outOfInk(ReceiptPrinter printer) {
+        this.record(OUT_OF_INK, printer);
+    }
+
+    @Override
+    public synchronized void paperAdded(ReceiptPrinter printer) {
+        this.payload.clear();
+        this.payload.putInt(printer.getPaperRemaining());
+        this.write(PAPER_ADDED, this.indexOf(printer));
+    }
+
+    @Override
+    public synchronized void inkAdded(ReceiptPrinter printer) {
+        this.payload.clear();
+        this.payload.putInt(printer.getInkRemaining());
+        this.write(INK_ADDED, this.indexOf(printer));
+    }
+}
@@ -0,0 +1,727 @@
+package software;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.lsmr.selfcheckout.Banknote;
+import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Card.CardData;
+import org.lsmr.selfcheckout.Coin;
+import org.lsmr.selfcheckout.Numeral;
+import org.lsmr.selfcheckout.devices.AbstractDevice;
+import org.lsmr.selfcheckout.devices.BanknoteDispenser;
+import org.lsmr.selfcheckout.devices.BanknoteSlot;
+import org.lsmr.selfcheckout.devices.BanknoteValidator;
+import org.lsmr.selfcheckout.devices.BarcodeScanner;
+import org.lsmr.selfcheckout.devices.CardReader;
+import org.lsmr.selfcheckout.devices.CoinDispenser;
+import org.lsmr.selfcheckout.devices.CoinValidator;
+import org.lsmr.selfcheckout.devices.ElectronicScale;
+import org.lsmr.selfcheckout.devices.ReceiptPrinter;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
+import org.lsmr.selfcheckout.devices.observers.BanknoteValidatorObserver;
+import org.lsmr.selfcheckout.devices.observers.CoinValidatorObserver;
+
+import software.SelfCheckoutSoftware.PaymentMethod;
+import software.SelfCheckoutSoftware.Phase;
+import software.observers.Event;
+import software.observers.SelfCheckoutAdapter;
+import software.observers.SelfCheckoutEvent;
+import user.Customer;
+
+/**
+ * Feeds a recording made by {@link HardwareRecorder} back into a fresh station
+ * and its software, and compares the phases the software goes through with the
+ * recorded ones.
+ *
+ * Devices whose simulation is random, the scanners, scales and card reader,
+ * have their recorded events announced to their observers as they were
+ * recorded. Coins, banknotes, dispenser loads and printer refills go through
+ * the hardware, so the storage units, dispensers and printer end up holding
+ * what they did; a coin or banknote the validator falsely rejects is put in
+ * again.
+ *
+ * Cards are recorded only as their type and the last four digits of their
+ * number, so the replay reads the matching card of those given to
+ * {@link #addCard(CardData)}, such as the test cards of a simulation.
+ *
+ * What the customer and attendant do on the screen is not recorded. When the
+ * recording reaches a phase change the hardware did not cause, the replay
+ * makes the screen action that leads to it, such as starting a checkout or
+ * approving a weight discrepancy. A weight discrepancy, error or blocked
+ * station the hardware should have caused is never forced, but reported as a
+ * problem. Choices made on the screen, such as a PLU product, cannot be
+ * recovered, and card payments are checked against the banks as they are when
+ * replayed. A lane with a weight filter acts on weights as they settle over
+ * time, so it should be replayed in real time.
+ */
+public class HardwareReplay {
+    // A currency no station takes, for coins and banknotes that were rejected
+    private static final Currency REJECTED = Currency.getInstance("XTS");
+
+    // How many times a coin or banknote is put in again if it is falsely rejected
+    private static final int RETRIES = 100;
+
+    /**
+     * An event in a recording
+     */
+    public static class Record {
+        private final byte type;
+        private final int device;
+        private final long nanos;
+        private final ByteBuffer payload;
+
+        Record(byte type, int device, long nanos, ByteBuffer payload) {
+            this.type = type;
+            this.device = device;
+            this.nanos = nanos;
+            this.payload = payload;
+        }
+
+        /**
+         * @return the time of the event, since the recording started
+         */
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        /**
+         * @return true if the record is a phase change of the software, rather
+         *         than an event of the hardware
+         */
+        public boolean isPhase() {
+            return this.type == HardwareRecorder.PHASE_CHANGED;
+        }
+
+        /**
+         * @return the phase the software changed to
+         */
+        public Phase getPhase() {
+            if (!this.isPhase()) {
+                throw new IllegalStateException("Record is not a phase change");
+            }
+            return Phase.values()[this.payload.get(0)];
+        }
+
+        ByteBuffer payload() {
+            return this.payload.duplicate();
+        }
+    }
+
+    /**
+     * How a replay went
+     */
+    public static class Result {
+        private final List<Phase> recorded;
+        private final List<Phase> replayed;
+        private final List<String> problems;
+
+        Result(List<Phase> recorded, List<Phase> replayed, List<String> problems) {
+            this.recorded = Collections.unmodifiableList(recorded);
+            this.replayed = Collections.unmodifiableList(replayed);
+            this.problems = Collections.unmodifiableList(problems);
+        }
+
+        /**
+         * @return the phases in the recording, in order
+         */
+        public List<Phase> getRecordedPhases() {
+            return this.recorded;
+        }
+
+        /**
+         * @return the phases the software went through on replay, in order
+         */
+        public List<Phase> getReplayedPhases() {
+            return this.replayed;
+        }
+
+        /**
+         * @return the events that could not be replayed as recorded
+         */
+        public List<String> getProblems() {
+            return this.problems;
+        }
+
+        /**
+         * @return true if the replay went through the recorded phases
+         */
+        public boolean matches() {
+            return this.recorded.equals(this.replayed);
+        }
+
+        /**
+         * @throws IllegalStateException if the replay did not go through the
+         *                               recorded phases
+         */
+        public void verify() {
+            if (this.matches()) {
+                return;
+            }
+
+            int i = 0;
+            while (i < this.recorded.size() && i < this.replayed.size()
+                    && this.recorded.get(i) == this.replayed.get(i)) {
+                i++;
+            }
+
+            throw new IllegalStateException(String.format("Phase %d was %s when recorded but %s on replay %s", i,
+                    i < this.recorded.size() ? this.recorded.get(i) : "the end",
+                    i < this.replayed.size() ? this.replayed.get(i) : "the end", this.problems));
+        }
+    }
+
+    /**
+     * A card read as it was recorded, with a CVV only if one was read then
+     */
+    private static class RecordedCardData implements CardData {
+        private final CardData card;
+        private final boolean cvv;
+
+        RecordedCardData(CardData card, boolean cvv) {
+            this.card = card;
+            this.cvv = cvv;
+        }
+
+        @Override
+        public String getType() {
+            return this.card.getType();
+        }
+
+        @Override
+        public String getNumber() {
+            return this.card.getNumber();
+        }
+
+        @Override
+        public String getCardholder() {
+            return this.card.getCardholder();
+        }
+
+        @Override
+        public String getCVV() {
+            if (!this.cvv) {
+                throw new UnsupportedOperationException();
+            }
+            return this.card.getCVV();
+        }
+    }
+
+    /**
+     * Tells whether the validators took the last coin and banknote put in
+     */
+    private static class Validation implements CoinValidatorObserver, BanknoteValidatorObserver {
+        private boolean valid;
+
+        @Override
+        public void enabled(AbstractDevice<? extends AbstractDeviceObserver> device) {
+        }
+
+        @Override
+        public void disabled(AbstractDevice<? extends AbstractDeviceObserver> device) {
+        }
+
+        @Override
+        public void validCoinDetected(CoinValidator validator, BigDecimal value) {
+            this.valid = true;
+        }
+
+        @Override
+        public void invalidCoinDetected(CoinValidator validator) {
+            this.valid = false;
+        }
+
+        @Override
+        public void validBanknoteDetected(BanknoteValidator validator, Currency currency, int value) {
+            this.valid = true;
+        }
+
+        @Override
+        public void invalidBanknoteDetected(BanknoteValidator validator) {
+            this.valid = false;
+        }
+    }
+
+    private final long startMillis;
+    private final List<Record> records = new ArrayList<Record>();
+    private final List<CardData> cards = new ArrayList<CardData>();
+
+    /**
+     * Reads a recording.
+     *
+     * @param file a ring file written by {@link HardwareRecorder}
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public HardwareReplay(Path file) throws IOException {
+        MappedByteBuffer ring;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HardwareRecorder.HEADER) {
+                throw new IOException(file + " is not a hardware recording");
+            }
+            ring = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (ring.getInt(0) != HardwareRecorder.MAGIC) {
+            throw new IOException(file + " is not a hardware recording");
+        }
+        if (ring.getInt(4) != HardwareRecorder.VERSION) {
+            throw new IOException(file + " was recorded in an unknown version");
+        }
+
+        int capacity = ring.getInt(HardwareRecorder.CAPACITY);
+        long head = ring.getLong(HardwareRecorder.HEAD);
+        long tail = ring.getLong(HardwareRecorder.TAIL);
+        if (ring.capacity() != HardwareRecorder.HEADER + capacity || tail > head || head - tail > capacity) {
+            throw new IOException(file + " is corrupt");
+        }
+
+        this.startMillis = ring.getLong(HardwareRecorder.START);
+
+        while (tail < head) {
+            int position = HardwareRecorder.HEADER + (int) (tail % capacity);
+            byte type = ring.get(position);
+            if (type == HardwareRecorder.PAD) {
+                tail += capacity - (position - HardwareRecorder.HEADER);
+                continue;
+            }
+
+            int length = ring.getShort(position + 2) & 0xFFFF;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            for (int i = 0; i < length; i++) {
+                payload.put(i, ring.get(position + HardwareRecorder.RECORD_HEADER + i));
+            }
+
+            this.records.add(new Record(type, ring.get(position + 1) & 0xFF, ring.getLong(position + 4), payload));
+            tail += HardwareRecorder.RECORD_HEADER + length;
+        }
+    }
+
+    /**
+     * @return the {@link System#currentTimeMillis()} the recording started at
+     */
+    public long getStartMillis() {
+        return this.startMillis;
+    }
+
+    /**
+     * Adds a card for recorded card reads to be matched to, by its type and the
+     * last four digits of its number.
+     *
+     * @param card the data read from the card, with its CVV
+     */
+    public void addCard(CardData card) {
+        if (card == null) {
+            throw new IllegalArgumentException("Card cannot be null");
+        }
+
+        this.cards.add(card);
+    }
+
+    /**
+     * @return the records, oldest first
+     */
+    public List<Record> getRecords() {
+        return Collections.unmodifiableList(this.records);
+    }
+
+    /**
+     * @return the phases in the recording, in order
+     */
+    public List<Phase> getPhases() {
+        List<Phase> phases = new ArrayList<Phase>();
+        for (Record record : this.records) {
+            if (record.isPhase()) {
+                phases.add(record.getPhase());
+            }
+        }
+        return phases;
+    }
+
+    /**
+     * Replays the recording into software that has just started, on a station
+     * configured like the recorded one.
+     *
+     * @param software the software to replay into
+     * @param realTime true to wait between events as long as when they were
+     *                 recorded, false to replay as fast as possible
+     * @return the phases recorded and replayed
+     * @throws InterruptedException if interrupted while waiting for the next
+     *                              event in real time
+     */
+    public Result replay(SelfCheckoutSoftware software, boolean realTime) throws InterruptedException {
+        SelfCheckoutStation station = software.getSelfCheckoutStation();
+        List<AbstractDevice<?>> devices = HardwareRecorder.devices(station);
+
+        List<Phase> recorded = new ArrayList<Phase>();
+        List<Phase> replayed = new ArrayList<Phase>();
+        List<String> problems = new ArrayList<String>();
+
+        SelfCheckoutAdapter phases = new SelfCheckoutAdapter() {
+            @Override
+            public void phaseChanged(Phase phase) {
+                replayed.add(phase);
+            }
+        };
+        Validation validation = new Validation();
+
+        software.addObserver(phases, Event.mask(SelfCheckoutEvent.Kind.PHASE_CHANGED));
+        station.coinValidator.attach(validation);
+        station.banknoteValidator.attach(validation);
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < this.records.size(); i++) {
+                Record record = this.records.get(i);
+
+                if (realTime) {
+                    long wait = record.nanos - (System.nanoTime() - start);
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+
+                try {
+                    if (record.isPhase()) {
+                        recorded.add(record.getPhase());
+
+                        // The hardware did not get the software here, so something was done on the screen
+                        if (replayed.size() < recorded.size()) {
+                            this.act(software, record.getPhase(), i, problems);
+                        }
+                    } else {
+                        this.feed(station, devices, record, validation, problems);
+                    }
+                } catch (Exception e) {
+                    problems.add("Record " + i + ": " + e);
+                }
+            }
+        } finally {
+            software.removeObserver(phases);
+            station.coinValidator.detach(validation);
+            station.banknoteValidator.detach(validation);
+        }
+
+        return new Result(recorded, replayed, problems);
+    }
+
+    /**
+     * Makes the screen action that changes the software to the phase. Phases
+     * only the hardware causes are reported rather than forced, as the replay
+     * would otherwise hide that the hardware events no longer cause them.
+     *
+     * @param index the record of the phase change
+     */
+    private void act(SelfCheckoutSoftware software, Phase phase, int index, List<String> problems) {
+        Phase current = software.getPhase();
+
+        // An attendant clears what was holding up the station
+        if (current != phase && current == Phase.BLOCKING) {
+            software.unblockSystem();
+            return;
+        } else if (current != phase && current == Phase.ERROR) {
+            software.resolveError();
+            return;
+        } else if (current != phase && current == Phase.HAVING_WEIGHT_DISCREPANCY) {
+            software.approveWeightDiscrepancy();
+            return;
+        }
+
+        switch (phase) {
+            case IDLE:
+                if (current == Phase.PAYMENT_COMPLETE) {
+                    software.checkoutComplete();
+                } else {
+                    software.idle();
+                }
+                break;
+            case SCANNING_ITEM:
+                if (current == Phase.IDLE) {
+                    software.start(new Customer());
+                } else if (current == Phase.CHOOSING_PAYMENT_METHOD || current == Phase.PROCESSING_PAYMENT) {
+                    software.cancelCheckout();
+                } else {
+                    software.addItem();
+                }
+                break;
+            case WEIGHING_PLU_ITEM:
+                software.addPLUItem();
+                break;
+            case BAGGING_ITEM:
+                software.bagItem();
+                break;
+            case PLACING_OWN_BAG:
+                software.addOwnBag();
+                break;
+            case NON_BAGGABLE_ITEM:
+                software.notBaggingItem();
+                break;
+            case CHOOSING_PAYMENT_METHOD:
+                software.checkout();
+                break;
+            case PROCESSING_PAYMENT:
+                software.selectedPaymentMethod(this.paymentMethod(index));
+                break;
+            case PAYMENT_COMPLETE:
+                if (this.paidInCash(software)) {
+                    software.getSelfCheckoutController().getCheckout().makeChange();
+                } else {
+                    software.paymentCompleted();
+                }
+                break;
+            case ERROR:
+                // Such as change that could not be dispensed
+                if (this.paidInCash(software)) {
+                    software.getSelfCheckoutController().getCheckout().makeChange();
+                } else {
+                    problems.add("Record " + index + ": the hardware did not cause " + phase);
+                }
+                break;
+            case BLOCKING:
+            case HAVING_WEIGHT_DISCREPANCY:
+                problems.add("Record " + index + ": the hardware did not cause " + phase);
+                break;
+            default:
+                problems.add("Record " + index + ": cannot change to " + phase);
+        }
+    }
+
+    /**
+     * @return true if the customer is paying and has put in enough cash, so
+     *         finishing the payment gives them their change
+     */
+    private boolean paidInCash(SelfCheckoutSoftware software) {
+        Customer customer = software.getCustomer();
+        return software.getPhase() == Phase.PROCESSING_PAYMENT && customer != null
+                && customer.getCashBalance().compareTo(customer.getAmountDue()) >= 0
+                && customer.getCashBalance().signum() > 0;
+    }
+
+    /**
+     * @return how the customer paid, going by what they put in next
+     */
+    private PaymentMethod paymentMethod(int index) {
+        for (int i = index + 1; i < this.records.size(); i++) {
+            Record record = this.records.get(i);
+            switch (record.type) {
+                case HardwareRecorder.VALID_COIN:
+                case HardwareRecorder.INVALID_COIN:
+                case HardwareRecorder.VALID_BANKNOTE:
+                case HardwareRecorder.INVALID_BANKNOTE:
+                    return PaymentMethod.CASH;
+                case HardwareRecorder.CARD_DATA_READ:
+                    String type = HardwareReplay.getString(record.payload());
+                    return type != null && type.toLowerCase().strip().equals("gift") ? PaymentMethod.GIFT_CARD
+                            : PaymentMethod.BANK_CARD;
+                default:
+                    break;
+            }
+        }
+
+        return PaymentMethod.CASH;
+    }
+
+    /**
+     * Makes a hardware event happen again.
+     */
+    private void feed(SelfCheckoutStation station, List<AbstractDevice<?>> devices, Record record,
+            Validation validation, List<String> problems) throws Exception {
+        AbstractDevice<?> device = devices.get(record.device);
+        ByteBuffer payload = record.payload();
+
+        switch (record.type) {
+            case HardwareRecorder.BARCODE_SCANNED: {
+                BarcodeScanner scanner = (BarcodeScanner) device;
+                Numeral[] digits = new Numeral[payload.remaining()];
+                for (int i = 0; i < digits.length; i++) {
+                    digits[i] = Numeral.valueOf(payload.get());
+                }
+
+                Barcode barcode = new Barcode(digits);
+                if (scanner.isDisabled()) {
+                    problems.add("Scanned " + barcode + " while the scanner is disabled");
+                } else {
+                    scanner.announce(observer -> observer.barcodeScanned(scanner, barcode));
+                }
+                break;
+            }
+            case HardwareRecorder.WEIGHT_CHANGED: {
+                ElectronicScale scale = (ElectronicScale) device;
+                double weight = payload.getDouble();
+                scale.announce(observer -> observer.weightChanged(scale, weight));
+                break;
+            }
+            case HardwareRecorder.OVERLOAD: {
+                ElectronicScale scale = (ElectronicScale) device;
+                scale.announce(observer -> observer.overload(scale));
+                break;
+            }
+            case HardwareRecorder.OUT_OF_OVERLOAD: {
+                ElectronicScale scale = (ElectronicScale) device;
+                scale.announce(observer -> observer.outOfOverload(scale));
+                break;
+            }
+            case HardwareRecorder.VALID_COIN: {
+                int scale = payload.getInt();
+                BigDecimal value = new BigDecimal(BigInteger.valueOf(payload.getLong()), scale);
+                Coin coin = new Coin(station.coinValidator.currency, value);
+                for (int tries = 0; tries < RETRIES; tries++) {
+                    station.coinSlot.accept(coin);
+                    if (validation.valid) {
+                        break;
+                    }
+                }
+                break;
+            }
+            case HardwareRecorder.INVALID_COIN:
+                station.coinSlot.accept(new Coin(REJECTED, BigDecimal.ONE));
+                break;
+            case HardwareRecorder.VALID_BANKNOTE: {
+                Currency currency = Currency.getInstance(HardwareReplay.getString(payload));
+                Banknote banknote = new Banknote(currency, payload.getInt());
+                for (int tries = 0; tries < RETRIES; tries++) {
+                    station.banknoteInput.accept(banknote);
+                    if (validation.valid) {
+                        break;
+                    }
+                    station.banknoteInput.removeDanglingBanknotes();
+                }
+                break;
+            }
+            case HardwareRecorder.INVALID_BANKNOTE:
+                station.banknoteInput.accept(new Banknote(REJECTED, 1));
+                break;
+            case HardwareRecorder.BANKNOTE_REMOVED:
+                ((BanknoteSlot) device).removeDanglingBanknotes();
+                break;
+            case HardwareRecorder.COINS_LOADED: {
+                CoinDispenser dispenser = (CoinDispenser) device;
+                BigDecimal denomination = null;
+                for (BigDecimal key : station.coinDispensers.keySet()) {
+                    if (station.coinDispensers.get(key) == dispenser) {
+                        denomination = key;
+                    }
+                }
+
+                Coin[] coins = new Coin[payload.getInt()];
+                for (int i = 0; i < coins.length; i++) {
+                    coins[i] = new Coin(station.coinValidator.currency, denomination);
+                }
+                dispenser.load(coins);
+                break;
+            }
+            case HardwareRecorder.BANKNOTES_LOADED: {
+                BanknoteDispenser dispenser = (BanknoteDispenser) device;
+                int denomination = 0;
+                for (Integer key : station.banknoteDispensers.keySet()) {
+                    if (station.banknoteDispensers.get(key) == dispenser) {
+                        denomination = key;
+                    }
+                }
+
+                Banknote[] banknotes = new Banknote[payload.getInt()];
+                for (int i = 0; i < banknotes.length; i++) {
+                    banknotes[i] = new Banknote(station.coinValidator.currency, denomination);
+                }
+                dispenser.load(banknotes);
+                break;
+            }
+            case HardwareRecorder.UNLOADED:
+                if (device instanceof CoinDispenser) {
+                    ((CoinDispenser) device).unload();
+                } else {
+                    ((BanknoteDispenser) device).unload();
+                }
+                break;
+            case HardwareRecorder.CARD_INSERTED:
+            case HardwareRecorder.CARD_REMOVED:
+            case HardwareRecorder.CARD_TAPPED:
+            case HardwareRecorder.CARD_SWIPED:
+            case HardwareRecorder.CARD_DATA_READ:
+                this.feedCard((CardReader) device, record.type, payload, problems);
+                break;
+            case HardwareRecorder.PAPER_ADDED: {
+                ReceiptPrinter printer = (ReceiptPrinter) device;
+                printer.addPaper(Math.max(0, payload.getInt() - printer.getPaperRemaining()));
+                break;
+            }
+            case HardwareRecorder.INK_ADDED: {
+                ReceiptPrinter printer = (ReceiptPrinter) device;
+                printer.addInk(Math.max(0, payload.getInt() - printer.getInkRemaining()));
+                break;
+            }
+            default:
+                // Running out of paper or ink happens again when the receipts are printed
+                break;
+        }
+    }
+
+    private void feedCard(CardReader reader, byte type, ByteBuffer payload, List<String> problems) {
+        switch (type) {
+            case HardwareRecorder.CARD_INSERTED:
+                reader.announce(observer -> observer.cardInserted(reader));
+                break;
+            case HardwareRecorder.CARD_REMOVED:
+                reader.announce(observer -> observer.cardRemoved(reader));
+                break;
+            case HardwareRecorder.CARD_TAPPED:
+                reader.announce(observer -> observer.cardTapped(reader));
+                break;
+            case HardwareRecorder.CARD_SWIPED:
+                reader.announce(observer -> observer.cardSwiped(reader));
+                break;
+            default:
+                String cardType = HardwareReplay.getString(payload);
+                String lastDigits = HardwareReplay.getString(payload);
+                boolean cvv = payload.get() != 0;
+
+                CardData card = this.findCard(cardType, lastDigits);
+                if (card == null) {
+                    problems.add("No " + cardType + " card ending in " + lastDigits + " to read");
+                } else if (reader.isDisabled()) {
+                    problems.add("Read a " + cardType + " card while the card reader is disabled");
+                } else {
+                    CardData data = new RecordedCardData(card, cvv);
+                    reader.announce(observer -> observer.cardDataRead(reader, data));
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return the card of the type whose number ends in the digits, or null if
+     *         none was added
+     */
+    private CardData findCard(String type, String lastDigits) {
+        for (CardData card : this.cards) {
+            if (card.getType().equals(type) && HardwareRecorder.lastDigits(card.getNumber()).equals(lastDigits)) {
+                return card;
+            }
+        }
+
+        return null;
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getShort();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,266 @@
+package software;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts how often durations occur over a rolling window of time, without
+ * locking.
+ *
+ * Durations are counted in buckets whose width grows with the duration, as in
+ * an HDR histogram: each power of two from {@link #SUB_BUCKETS} on is split
+ * into half that many buckets, so a duration is known to within about 3%
+ * however long it is. Durations from {@link #MAX_NANOS} on are counted as
+ * that.
+ *
+ * The counts are kept for each of the last few intervals of time. Recording
+ * increments the counts of the interval it is in, starting a new one once the
+ * interval has passed, so a snapshot can cover the intervals of any window up
+ * to the whole of them. Any number of threads can record and take snapshots at
+ * once; a snapshot taken while durations are being recorded may leave out
+ * some of them.
+ */
+public class LatencyHistogram {
+    /**
+     * The durations shorter than this are each counted in a bucket of their own
+     */
+    public static final int SUB_BUCKETS = 64;
+
+    /**
+     * The longest duration told apart from longer ones, about two and a half
+     * hours
+     */
+    public static final long MAX_NANOS = (1L << 43) - 1;
+
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int BUCKETS = index(MAX_NANOS) + 1;
+
+    // The total of the durations is kept after the buckets
+    private static final int SUM = BUCKETS;
+
+    private final long intervalNanos;
+    private final AtomicReferenceArray<Interval> intervals;
+
+    /**
+     * The counts of one interval of time, from its start to the start of the
+     * next one
+     */
+    private static final class Interval {
+        final long number;
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+
+        Interval(long number) {
+            this.number = number;
+        }
+    }
+
+    /**
+     * @param intervalNanos how long each interval is
+     * @param intervals     how many intervals are kept
+     */
+    public LatencyHistogram(long intervalNanos, int intervals) {
+        if (intervalNanos <= 0) {
+            throw new IllegalArgumentException("Interval must be longer than 0");
+        }
+        if (intervals <= 0) {
+            throw new IllegalArgumentException("There must be at least one interval");
+        }
+
+        this.intervalNanos = intervalNanos;
+        this.intervals = new AtomicReferenceArray<Interval>(intervals);
+    }
+
+    public long getIntervalNanos() {
+        return this.intervalNanos;
+    }
+
+    public int getIntervals() {
+        return this.intervals.length();
+    }
+
+    /**
+     * Counts a duration.
+     *
+     * @param nanos the duration, which is counted as 0 if negative
+     * @param now   the current {@link System#nanoTime()}
+     */
+    public void record(long nanos, long now) {
+        long value = Math.max(0, Math.min(nanos, MAX_NANOS));
+        AtomicLongArray counts = this.interval(Math.floorDiv(now, this.intervalNanos)).counts;
+
+        counts.getAndIncrement(index(value));
+        counts.getAndAdd(SUM, value);
+    }
+
+    private Interval interval(long number) {
+        int slot = (int) Math.floorMod(number, (long) this.intervals.length());
+
+        while (true) {
+            Interval interval = this.intervals.get(slot);
+            if (interval != null && interval.number == number) {
+                return interval;
+            }
+
+            // The interval in the slot has passed, so whoever gets here first starts the new one
+            Interval next = new Interval(number);
+            if (this.intervals.compareAndSet(slot, interval, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Adds up the counts of the intervals in a window ending now. The window is
+     * rounded up to a whole number of intervals, including the one now is in,
+     * and is at most all of them.
+     *
+     * @param windowNanos how far back to look
+     * @param now         the current {@link System#nanoTime()}
+     * @return the counts in the window
+     */
+    public Snapshot snapshot(long windowNanos, long now) {
+        if (windowNanos <= 0) {
+            throw new IllegalArgumentException("Window must be longer than 0");
+        }
+
+        long current = Math.floorDiv(now, this.intervalNanos);
+        long covered = Math.min(this.intervals.length(), (windowNanos + this.intervalNanos - 1) / this.intervalNanos);
+        long[] counts = new long[BUCKETS + 1];
+
+        for (int slot = 0; slot < this.intervals.length(); slot++) {
+            Interval interval = this.intervals.get(slot);
+            if (interval == null || interval.number > current || interval.number <= current - covered) {
+                continue;
+            }
+
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += interval.counts.get(i);
+            }
+        }
+
+        return new Snapshot(counts);
+    }
+
+    /**
+     * @return a snapshot with nothing counted
+     */
+    static Snapshot empty() {
+        return new Snapshot(new long[BUCKETS + 1]);
+    }
+
+    /**
+     * The bucket a duration is counted in
+     */
+    static int index(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+
+        // The highest bits of the duration, from SUB_BUCKETS / 2 up to SUB_BUCKETS - 1
+        int shift = 64 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+        return (shift << (SUB_BITS - 1)) + (int) (nanos >>> shift);
+    }
+
+    /**
+     * The shortest duration counted in a bucket
+     */
+    static long lowest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = (index >>> (SUB_BITS - 1)) - 1;
+        return (long) (index - (shift << (SUB_BITS - 1))) << shift;
+    }
+
+    /**
+     * The counts of a histogram over a window of time. Durations are reported as
+     * the longest duration of the bucket they were counted in.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += counts[i];
+            }
+            this.count = count;
+        }
+
+        /**
+         * Adds up this snapshot and another, as if their durations had been
+         * counted by one histogram
+         *
+         * @param other the other snapshot
+         * @return a snapshot with the counts of both
+         */
+        public Snapshot add(Snapshot other) {
+            long[] counts = this.counts.clone();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+
+            return new Snapshot(counts);
+        }
+
+        /**
+         * @return the number of durations counted
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return the average duration, exactly, or 0 if none were counted
+         */
+        public double getMean() {
+            return this.count == 0 ? 0 : (double) this.counts[SUM] / this.count;
+        }
+
+        /**
+         * @return the longest duration, or 0 if none were counted
+         */
+        public long getMax() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (this.counts[i] != 0) {
+                    return highest(i);
+                }
+            }
+
+            return 0;
+        }
+
+        /**
+         * @param percentile from 0 to 100
+         * @return the duration that the given percentage of durations are at
+         *         most, or 0 if none were counted
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be from 0 to 100");
+            }
+            if (this.count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) {
+                    return highest(i);
+                }
+            }
+
+            return this.getMax();
+        }
+
+        private static long highest(int index) {
+            return index == BUCKETS - 1 ? MAX_NANOS : lowest(index + 1) - 1;
+        }
+    }
+}
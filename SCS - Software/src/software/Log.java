@@ -0,0 +1,396 @@
+package software;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Logs what the software does as JSON records, one per line, without making
+ * whoever logs wait for them to be written.
+ *
+ * Logging copies the record's fields into the next slot of a ring of records
+ * allocated up front, and a background thread formats and writes them, in the
+ * order they were logged. Nothing is formatted on the thread that logs, and
+ * numbers logged as a long or double are copied into the slot rather than
+ * boxed, so nothing is allocated either. Other values are kept by reference,
+ * so they should not change once logged, as enums, strings and exceptions do
+ * not. If the ring is full the record is dropped and counted, rather than
+ * waiting for room.
+ *
+ * Each category has its own level, and records below it are not logged at all.
+ * Debug records are off by default.
+ *
+ * The static methods log to a shared log that writes to {@link System#out}.
+ */
+public class Log {
+    /**
+     * The default number of records in the ring
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR,
+        /**
+         * Above every level, to turn a category off
+         */
+        OFF
+    }
+
+    /**
+     * The part of the software a record is about
+     */
+    public enum Category {
+        PHASE,
+        HARDWARE,
+        RECEIPT,
+        PAYMENT,
+        GUI
+    }
+
+    // What kind of value a record holds
+    private static final byte OBJECT = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+
+    /**
+     * A record in the ring, reused for every lap of it
+     */
+    private static final class Record {
+        long millis;
+        Level level;
+        Category category;
+        String event;
+        String key;
+        byte kind;
+        Object value;
+        long longValue;
+        double doubleValue;
+    }
+
+    private static final Log shared = new Log(DEFAULT_CAPACITY, line -> System.out.println(line));
+
+    private final Record[] records;
+    private final int mask;
+
+    // The sequence number of the record in each slot, once it is filled in
+    private final AtomicLongArray published;
+
+    // The last sequence number claimed, and the last one written
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong written = new AtomicLong(-1);
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicIntegerArray levels = new AtomicIntegerArray(Category.values().length);
+    private final Consumer<String> sink;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param capacity the number of records in the ring, a power of two
+     * @param sink     writes each formatted line, on the log's thread
+     */
+    public Log(int capacity, Consumer<String> sink) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        if (sink == null) {
+            throw new IllegalArgumentException("Sink cannot be null");
+        }
+
+        this.records = new Record[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.records[i] = new Record();
+        }
+        this.mask = capacity - 1;
+
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            this.published.set(i, -1);
+        }
+
+        for (Category category : Category.values()) {
+            this.levels.set(category.ordinal(), Level.INFO.ordinal());
+        }
+
+        this.sink = sink;
+        this.thread = new Thread(this::drain, "Log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return the log the static methods log to
+     */
+    public static Log getShared() {
+        return shared;
+    }
+
+    public static void debug(Category category, String event) {
+        shared.log(Level.DEBUG, category, event, null, null);
+    }
+
+    public static void debug(Category category, String event, String key, Object value) {
+        shared.log(Level.DEBUG, category, event, key, value);
+    }
+
+    public static void info(Category category, String event) {
+        shared.log(Level.INFO, category, event, null, null);
+    }
+
+    public static void info(Category category, String event, String key, Object value) {
+        shared.log(Level.INFO, category, event, key, value);
+    }
+
+    public static void warn(Category category, String event) {
+        shared.log(Level.WARN, category, event, null, null);
+    }
+
+    public static void warn(Category category, String event, String key, Object value) {
+        shared.log(Level.WARN, category, event, key, value);
+    }
+
+    public static void error(Category category, String event) {
+        shared.log(Level.ERROR, category, event, null, null);
+    }
+
+    public static void error(Category category, String event, String key, Object value) {
+        shared.log(Level.ERROR, category, event, key, value);
+    }
+
+    /**
+     * @param category the category
+     * @param level    the lowest level of record to log in it
+     */
+    public void setLevel(Category category, Level level) {
+        if (category == null || level == null) {
+            throw new IllegalArgumentException("Category and level cannot be null");
+        }
+
+        this.levels.set(category.ordinal(), level.ordinal());
+    }
+
+    public Level getLevel(Category category) {
+        return Level.values()[this.levels.get(category.ordinal())];
+    }
+
+    public boolean isEnabled(Level level, Category category) {
+        return level.ordinal() >= this.levels.get(category.ordinal());
+    }
+
+    /**
+     * @return the number of records dropped because the ring was full
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Logs a record, if its category logs its level.
+     *
+     * @param level    the level
+     * @param category the category
+     * @param event    what happened
+     * @param key      the name of a value to log with it, or null for none
+     * @param value    the value
+     */
+    public void log(Level level, Category category, String event, String key, Object value) {
+        long sequence = this.claim(level, category, event, key);
+        if (sequence >= 0) {
+            Record record = this.records[(int) sequence & this.mask];
+            record.kind = OBJECT;
+            record.value = value;
+            this.published.lazySet((int) sequence & this.mask, sequence);
+        }
+    }
+
+    /**
+     * Logs a record with a whole number, without boxing it.
+     *
+     * @see #log(Level, Category, String, String, Object)
+     */
+    public void log(Level level, Category category, String event, String key, long value) {
+        long sequence = this.claim(level, category, event, key);
+        if (sequence >= 0) {
+            Record record = this.records[(int) sequence & this.mask];
+            record.kind = LONG;
+            record.longValue = value;
+            this.published.lazySet((int) sequence & this.mask, sequence);
+        }
+    }
+
+    /**
+     * Logs a record with a number, without boxing it.
+     *
+     * @see #log(Level, Category, String, String, Object)
+     */
+    public void log(Level level, Category category, String event, String key, double value) {
+        long sequence = this.claim(level, category, event, key);
+        if (sequence >= 0) {
+            Record record = this.records[(int) sequence & this.mask];
+            record.kind = DOUBLE;
+            record.doubleValue = value;
+            this.published.lazySet((int) sequence & this.mask, sequence);
+        }
+    }
+
+    /**
+     * Claims the next slot of the ring and fills in what every record has. The
+     * caller fills in the value and then publishes the slot.
+     *
+     * @return the sequence number of the record, or -1 if it is not logged
+     */
+    private long claim(Level level, Category category, String event, String key) {
+        if (level == null || category == null || event == null) {
+            throw new IllegalArgumentException("Level, category and event cannot be null");
+        }
+        if (level.ordinal() < this.levels.get(category.ordinal())) {
+            return -1;
+        }
+
+        long sequence;
+        do {
+            sequence = this.claimed.get() + 1;
+            if (sequence - this.written.get() > this.records.length) {
+                this.dropped.incrementAndGet();
+                return -1;
+            }
+        } while (!this.claimed.compareAndSet(sequence - 1, sequence));
+
+        Record record = this.records[(int) sequence & this.mask];
+        record.millis = System.currentTimeMillis();
+        record.level = level;
+        record.category = category;
+        record.event = event;
+        record.key = key;
+        return sequence;
+    }
+
+    /**
+     * Waits until every record logged so far has been written.
+     */
+    public void flush() {
+        long last = this.claimed.get();
+        while (this.written.get() < last && this.running) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+    /**
+     * Writes every record logged so far, then stops the log's thread. Records
+     * logged afterwards are never written.
+     */
+    public void close() {
+        this.flush();
+        this.running = false;
+        LockSupport.unpark(this.thread);
+    }
+
+    private void drain() {
+        StringBuilder line = new StringBuilder();
+
+        while (this.running) {
+            long next = this.written.get() + 1;
+            int slot = (int) next & this.mask;
+
+            if (this.published.get(slot) != next) {
+                // Nothing is waiting to be written, so check again shortly rather than be woken
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+
+            Record record = this.records[slot];
+            try {
+                line.setLength(0);
+                format(line, record);
+                this.sink.accept(line.toString());
+            } catch (RuntimeException e) {
+                // One failed record must not stop the ones after it
+                e.printStackTrace();
+            } finally {
+                record.value = null;
+            }
+
+            // The slot is free for the next lap once it is written
+            this.written.set(next);
+        }
+    }
+
+    private static void format(StringBuilder line, Record record) {
+        line.append("{\"time\":").append(record.millis);
+        line.append(",\"level\":\"").append(record.level).append('"');
+        line.append(",\"category\":\"").append(record.category).append('"');
+        line.append(",\"event\":");
+        quote(line, record.event);
+
+        if (record.key != null) {
+            line.append(',');
+            quote(line, record.key);
+            line.append(':');
+
+            Object value = record.value;
+            if (record.kind == LONG) {
+                line.append(record.longValue);
+            } else if (record.kind == DOUBLE) {
+                number(line, record.doubleValue);
+            } else if ((value instanceof Double || value instanceof Float)
+                    && !Double.isFinite(((Number) value).doubleValue())) {
+                quote(line, String.valueOf(value));
+            } else if (value == null || value instanceof Number || value instanceof Boolean) {
+                line.append(value);
+            } else {
+                quote(line, String.valueOf(value));
+            }
+        }
+
+        line.append('}');
+    }
+
+    /**
+     * Appends a number, quoting NaN and the infinities, which JSON has no
+     * numbers for.
+     */
+    private static void number(StringBuilder line, double value) {
+        if (Double.isFinite(value)) {
+            line.append(value);
+        } else {
+            line.append('"').append(value).append('"');
+        }
+    }
+
+    private static void quote(StringBuilder line, String text) {
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '"':
+                line.append("\\\"");
+                break;
+            case '\\':
+                line.append("\\\\");
+                break;
+            case '\n':
+                line.append("\\n");
+                break;
+            case '\r':
+                line.append("\\r");
+                break;
+            case '\t':
+                line.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    line.append(String.format("\\u%04x", (int) c));
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,164 @@
+package software;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import software.SelfCheckoutSoftware.Phase;
+
+/**
+ * Times how long a station stays in each phase, keeping a
+ * {@link LatencyHistogram} for each transition from one phase to another. The
+ * time of a transition is the time spent in the phase it leaves, so the
+ * transitions out of {@link Phase#HAVING_WEIGHT_DISCREPANCY} time how long the
+ * attendant took to approve it.
+ *
+ * The transitions of a station are made one at a time, but the histograms can
+ * be read from any thread while they are.
+ */
+public class PhaseTimes {
+    /**
+     * How long each interval the histograms keep counts for is
+     */
+    public static final long INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * How many intervals the histograms keep, so the longest window they cover
+     * is ten minutes
+     */
+    public static final int INTERVALS = 10;
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long intervalNanos;
+    private final int intervals;
+
+    // A histogram for each phase left and phase entered, created on the first such transition
+    private final AtomicReferenceArray<LatencyHistogram> histograms = new AtomicReferenceArray<LatencyHistogram>(
+            PHASES.length * PHASES.length);
+
+    private Phase phase;
+    private long entered;
+
+    /**
+     * @param phase the phase the station is in
+     * @param now   the current {@link System#nanoTime()}
+     */
+    public PhaseTimes(Phase phase, long now) {
+        this(phase, now, INTERVAL_NANOS, INTERVALS);
+    }
+
+    /**
+     * @param phase         the phase the station is in
+     * @param now           the current {@link System#nanoTime()}
+     * @param intervalNanos how long each interval of the histograms is
+     * @param intervals     how many intervals the histograms keep
+     */
+    public PhaseTimes(Phase phase, long now, long intervalNanos, int intervals) {
+        if (phase == null) {
+            throw new IllegalArgumentException("Phase cannot be null");
+        }
+        if (intervalNanos <= 0) {
+            throw new IllegalArgumentException("Interval must be longer than 0");
+        }
+        if (intervals <= 0) {
+            throw new IllegalArgumentException("There must be at least one interval");
+        }
+
+        this.intervalNanos = intervalNanos;
+        this.intervals = intervals;
+        this.phase = phase;
+        this.entered = now;
+    }
+
+    public Phase getPhase() {
+        return this.phase;
+    }
+
+    /**
+     * Records the station entering a phase, timing the transition from the one
+     * it was in. Entering the phase it is already in is not a transition, and
+     * does not restart the time in it.
+     *
+     * @param phase the phase entered
+     * @param now   the current {@link System#nanoTime()}
+     */
+    public void enter(Phase phase, long now) {
+        if (phase == this.phase) {
+            return;
+        }
+
+        this.histogram(this.phase, phase).record(now - this.entered, now);
+        this.phase = phase;
+        this.entered = now;
+    }
+
+    private LatencyHistogram histogram(Phase from, Phase to) {
+        int index = from.ordinal() * PHASES.length + to.ordinal();
+        LatencyHistogram histogram = this.histograms.get(index);
+
+        if (histogram == null) {
+            this.histograms.compareAndSet(index, null, new LatencyHistogram(this.intervalNanos, this.intervals));
+            histogram = this.histograms.get(index);
+        }
+
+        return histogram;
+    }
+
+    /**
+     * @param from        the phase left
+     * @param to          the phase entered
+     * @param windowNanos how far back to look
+     * @param now         the current {@link System#nanoTime()}
+     * @return the times of the transitions from one phase to the other in the
+     *         window
+     */
+    public LatencyHistogram.Snapshot snapshot(Phase from, Phase to, long windowNanos, long now) {
+        LatencyHistogram histogram = this.histograms.get(from.ordinal() * PHASES.length + to.ordinal());
+        return histogram == null ? LatencyHistogram.empty() : histogram.snapshot(windowNanos, now);
+    }
+
+    /**
+     * @param from        the phase left
+     * @param windowNanos how far back to look
+     * @param now         the current {@link System#nanoTime()}
+     * @return the times spent in the phase before leaving it for any other in
+     *         the window
+     */
+    public LatencyHistogram.Snapshot snapshot(Phase from, long windowNanos, long now) {
+        LatencyHistogram.Snapshot snapshot = LatencyHistogram.empty();
+        for (Phase to : PHASES) {
+            snapshot = snapshot.add(this.snapshot(from, to, windowNanos, now));
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * @param windowNanos how far back to look
+     * @param now         the current {@link System#nanoTime()}
+     * @return the times of each transition the station has made, by the phase
+     *         left and then the phase entered
+     */
+    public Map<Phase, Map<Phase, LatencyHistogram.Snapshot>> snapshot(long windowNanos, long now) {
+        Map<Phase, Map<Phase, LatencyHistogram.Snapshot>> snapshots = new EnumMap<Phase, Map<Phase, LatencyHistogram.Snapshot>>(
+                Phase.class);
+
+        for (Phase from : PHASES) {
+            for (Phase to : PHASES) {
+                LatencyHistogram histogram = this.histograms.get(from.ordinal() * PHASES.length + to.ordinal());
+                if (histogram == null) {
+                    continue;
+                }
+
+                if (!snapshots.containsKey(from)) {
+                    snapshots.put(from, new EnumMap<Phase, LatencyHistogram.Snapshot>(Phase.class));
+                }
+                snapshots.get(from).put(to, histogram.snapshot(windowNanos, now));
+            }
+        }
+
+        return snapshots;
+    }
+}
@@ -3,15 +3,18 @@ package software;
 import checkout.Checkout;
 import checkout.Receipt;
 import checkout.Screen;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
 import user.Customer;
 
 public class SelfCheckoutController {
 	
+    private final SelfCheckoutStation scStation;
     private Checkout checkout; // Controller for processing checkout
     private Receipt receipt; // Controller for printing receipt
     private Screen screen; // Controller for displaying messages
     
     public SelfCheckoutController(SelfCheckoutSoftware scSoftware) {
+        this.scStation = scSoftware.getSelfCheckoutStation();
         this.checkout = new Checkout(scSoftware);
         this.receipt = new Receipt(scSoftware);
         this.screen = new Screen(scSoftware);
@@ -35,6 +38,29 @@ public class SelfCheckoutController {
     	return this.screen;
     }
     
+    /**
+     * Resets what each controller keeps about the customer to how a new
+     * controller starts, keeping the controllers attached and how they are set
+     * up, such as the receipt spool.
+     */
+    public void resetState() {
+        this.setAllCustomers(null);
+        this.checkout.clearPendingChanges();
+    }
+
+    /**
+     * Checks that the receipt controller is attached exactly once to the
+     * printer, so it is informed of every event from it once.
+     *
+     * @throws IllegalStateException if it is attached more or less than once
+     */
+    public void verifyAttached() {
+        int count = this.scStation.printer.countAttached(this.receipt);
+        if (count != 1) {
+            throw new IllegalStateException("Receipt is attached " + count + " times to ReceiptPrinter");
+        }
+    }
+    
     public void resetControllers() {
         this.receipt.detatchAll();
         this.receipt = null;
@@ -4,9 +4,33 @@ import interrupt.BanknoteHandler;
 import interrupt.CardHandler;
 import interrupt.CoinHandler;
 import interrupt.ProcessItemHandler;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.lsmr.selfcheckout.devices.AbstractDevice;
+import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
+import org.lsmr.selfcheckout.devices.observers.AbstractDeviceObserver;
 import user.Customer;
 
 public class SelfCheckoutHandler {
+    /**
+     * Groups of devices the handlers look after, combined into the devices
+     * enabled in each phase. See {@link #devices(int)}.
+     */
+    public static final int NO_DEVICES = 0;
+    public static final int ITEM_DEVICES = 1; // Scanners and both scales
+    public static final int BAGGING_AREA = 1 << 1;
+    public static final int CARD_READER = 1 << 2;
+    public static final int COIN_DEVICES = 1 << 3;
+    public static final int BANKNOTE_DEVICES = 1 << 4;
+    public static final int ALL_DEVICES = ITEM_DEVICES | BAGGING_AREA | CARD_READER | COIN_DEVICES | BANKNOTE_DEVICES;
+
+    // The devices the handlers look after; bit i of a device mask is devices[i]
+    private final AbstractDevice<?>[] devices;
+
+    // The device mask of each group, by the group's bit
+    private final long[] groups = new long[5];
 	
     private BanknoteHandler banknoteHandler;
     private CardHandler cardHandler;
@@ -18,6 +42,47 @@ public class SelfCheckoutHandler {
         this.cardHandler = new CardHandler(scSoftware);
         this.coinHandler = new CoinHandler(scSoftware);
         this.processItemHandler = new ProcessItemHandler(scSoftware);
+
+        SelfCheckoutStation scStation = scSoftware.getSelfCheckoutStation();
+        List<AbstractDevice<?>> devices = new ArrayList<AbstractDevice<?>>();
+        this.group(devices, 0, scStation.mainScanner, scStation.handheldScanner, scStation.scanningArea,
+                scStation.baggingArea);
+        this.group(devices, 1, scStation.baggingArea);
+        this.group(devices, 2, scStation.cardReader);
+
+        List<AbstractDevice<?>> coins = new ArrayList<AbstractDevice<?>>(List.of(scStation.coinSlot,
+                scStation.coinTray, scStation.coinStorage, scStation.coinValidator));
+        List<BigDecimal> coinDenominations = new ArrayList<BigDecimal>(scStation.coinDispensers.keySet());
+        Collections.sort(coinDenominations);
+        coinDenominations.forEach(denomination -> coins.add(scStation.coinDispensers.get(denomination)));
+        this.group(devices, 3, coins.toArray(new AbstractDevice<?>[0]));
+
+        List<AbstractDevice<?>> banknotes = new ArrayList<AbstractDevice<?>>(List.of(scStation.banknoteInput,
+                scStation.banknoteOutput, scStation.banknoteStorage, scStation.banknoteValidator));
+        List<Integer> banknoteDenominations = new ArrayList<Integer>(scStation.banknoteDispensers.keySet());
+        Collections.sort(banknoteDenominations);
+        banknoteDenominations.forEach(denomination -> banknotes.add(scStation.banknoteDispensers.get(denomination)));
+        this.group(devices, 4, banknotes.toArray(new AbstractDevice<?>[0]));
+
+        if (devices.size() > Long.SIZE) {
+            throw new IllegalArgumentException("Station has too many devices to track");
+        }
+        this.devices = devices.toArray(new AbstractDevice<?>[0]);
+    }
+
+    /**
+     * Numbers the devices of a group, reusing the number of a device already
+     * in another group.
+     */
+    private void group(List<AbstractDevice<?>> devices, int group, AbstractDevice<?>... members) {
+        for (AbstractDevice<?> device : members) {
+            int index = devices.indexOf(device);
+            if (index < 0) {
+                index = devices.size();
+                devices.add(device);
+            }
+            this.groups[group] |= 1L << index;
+        }
     }
     
     public BanknoteHandler getBanknoteHandler() {
@@ -43,18 +108,85 @@ public class SelfCheckoutHandler {
         this.processItemHandler.setCustomer(customer);
     }
     
+    /**
+     * @param groups the groups of devices, such as {@link #ITEM_DEVICES} |
+     *               {@link #CARD_READER}
+     * @return a mask of the devices in the groups, to pass to
+     *         {@link #setEnabled(long)}
+     */
+    public long devices(int groups) {
+        long mask = 0;
+        for (int group = 0; group < this.groups.length; group++) {
+            if ((groups & (1 << group)) != 0) {
+                mask |= this.groups[group];
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Enables the devices in the mask and disables the rest. Only the devices
+     * that are not already as they should be are toggled, since each toggle
+     * notifies every observer of the device.
+     *
+     * @param mask from {@link #devices(int)}
+     */
+    public void setEnabled(long mask) {
+        for (int i = 0; i < this.devices.length; i++) {
+            boolean enable = (mask & (1L << i)) != 0;
+            if (enable == this.devices[i].isDisabled()) {
+                if (enable) {
+                    this.devices[i].enable();
+                } else {
+                    this.devices[i].disable();
+                }
+            }
+        }
+    }
+
     public void enableAll() {
-        this.banknoteHandler.enableHardware();
-        this.cardHandler.enableHardware();
-        this.coinHandler.enableHardware();
-        this.processItemHandler.enableHardware();
+        this.setEnabled(this.devices(ALL_DEVICES));
     }
     
     public void disableAll() {
-        this.banknoteHandler.disableHardware();
-        this.cardHandler.disableHardware();
-        this.coinHandler.disableHardware();
-        this.processItemHandler.disableHardware();
+        this.setEnabled(0);
+    }
+    
+    /**
+     * Resets what each handler keeps about the customer to how a new handler
+     * starts, keeping the handlers attached and how they are set up, such as
+     * the stand-in processor and scan-ahead.
+     */
+    public void resetState() {
+        this.setAllCustomers(null);
+    }
+
+    /**
+     * Checks that each handler is attached exactly once to each device it
+     * handles, so it is informed of every event from the device once.
+     *
+     * @throws IllegalStateException if a handler is attached to a device more
+     *                               or less than once
+     */
+    public void verifyAttached() {
+        this.verifyAttached(this.processItemHandler, this.groups[0] | this.groups[1]);
+        this.verifyAttached(this.cardHandler, this.groups[2]);
+        this.verifyAttached(this.coinHandler, this.groups[3]);
+        this.verifyAttached(this.banknoteHandler, this.groups[4]);
+    }
+
+    private void verifyAttached(AbstractDeviceObserver handler, long mask) {
+        for (int i = 0; i < this.devices.length; i++) {
+            if ((mask & (1L << i)) == 0) {
+                continue;
+            }
+
+            int count = this.devices[i].countAttached(handler);
+            if (count != 1) {
+                throw new IllegalStateException(handler.getClass().getSimpleName() + " is attached " + count
+                        + " times to " + this.devices[i].getClass().getSimpleName());
+            }
+        }
     }
     
     public void resetHandlers() {
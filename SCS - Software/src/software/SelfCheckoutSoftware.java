@@ -7,10 +7,15 @@ import interrupt.BanknoteHandler;
 import interrupt.CardHandler;
 import interrupt.CoinHandler;
 import interrupt.ProcessItemHandler;
+import interrupt.WeightFilter;
+import java.util.EnumMap;
+import java.util.Map;
 import org.lsmr.selfcheckout.devices.SelfCheckoutStation;
 
 import software.SelfCheckoutSoftware.Phase;
+import software.observers.SelfCheckoutEvent;
 import software.observers.SelfCheckoutObserver;
+import software.observers.SupervisionEvent;
 import user.Attendant;
 import user.Customer;
 import user.User;
@@ -24,7 +29,7 @@ import user.User;
  *
  * @author Yunfan Yang
  */
-public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
+public class SelfCheckoutSoftware extends Software<SelfCheckoutObserver, SelfCheckoutEvent>
 {
     // See: https://github.com/ScorpiosCrux/SENG-300-Iteration3/issues/31
     public static enum Phase
@@ -45,20 +50,75 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
 
     ;
 
+    /**
+     * The phase machine's table of the devices enabled in each phase, as groups
+     * of {@link SelfCheckoutHandler}. Changing phase enables exactly these and
+     * disables the rest, toggling only the devices that differ. A station that
+     * is blocked, has a weight discrepancy or has an error has the devices of
+     * that phase until it is cleared.
+     */
+    private static final Map<Phase, Integer> PHASE_DEVICES = new EnumMap<Phase, Integer>(Phase.class);
+
+    /**
+     * The devices enabled while processing a payment, by payment method
+     */
+    private static final Map<PaymentMethod, Integer> PAYMENT_DEVICES = new EnumMap<PaymentMethod, Integer>(
+            PaymentMethod.class);
+
+    static
+    {
+        PHASE_DEVICES.put(Phase.IDLE, SelfCheckoutHandler.NO_DEVICES);
+        PHASE_DEVICES.put(Phase.SCANNING_ITEM, SelfCheckoutHandler.ITEM_DEVICES | SelfCheckoutHandler.CARD_READER);
+        PHASE_DEVICES.put(Phase.WEIGHING_PLU_ITEM, SelfCheckoutHandler.ITEM_DEVICES | SelfCheckoutHandler.CARD_READER);
+        PHASE_DEVICES.put(Phase.BAGGING_ITEM, SelfCheckoutHandler.BAGGING_AREA | SelfCheckoutHandler.CARD_READER);
+        PHASE_DEVICES.put(Phase.PLACING_OWN_BAG, SelfCheckoutHandler.BAGGING_AREA | SelfCheckoutHandler.CARD_READER);
+        PHASE_DEVICES.put(Phase.NON_BAGGABLE_ITEM, SelfCheckoutHandler.BAGGING_AREA | SelfCheckoutHandler.CARD_READER);
+        // Keep hardware enabled so they can go back to adding products
+        PHASE_DEVICES.put(Phase.CHOOSING_PAYMENT_METHOD, SelfCheckoutHandler.ALL_DEVICES);
+        PHASE_DEVICES.put(Phase.PROCESSING_PAYMENT, SelfCheckoutHandler.NO_DEVICES);
+        // The bagging area should be enabled basically all the time
+        PHASE_DEVICES.put(Phase.PAYMENT_COMPLETE, SelfCheckoutHandler.BAGGING_AREA);
+        PHASE_DEVICES.put(Phase.HAVING_WEIGHT_DISCREPANCY, SelfCheckoutHandler.BAGGING_AREA);
+        PHASE_DEVICES.put(Phase.BLOCKING, SelfCheckoutHandler.BAGGING_AREA);
+        PHASE_DEVICES.put(Phase.ERROR, SelfCheckoutHandler.BAGGING_AREA);
+
+        PAYMENT_DEVICES.put(PaymentMethod.CASH, SelfCheckoutHandler.COIN_DEVICES | SelfCheckoutHandler.BANKNOTE_DEVICES);
+        PAYMENT_DEVICES.put(PaymentMethod.BANK_CARD, SelfCheckoutHandler.CARD_READER);
+        PAYMENT_DEVICES.put(PaymentMethod.GIFT_CARD, SelfCheckoutHandler.CARD_READER);
+    }
+
+    /**
+     * The most receipts that may wait for a station's printer
+     */
+    public static final int RECEIPT_QUEUE_CAPACITY = 16;
+
     private final SelfCheckoutStation scStation;
     private SupervisionSoftware svs;
     private SelfCheckoutController scController;
     private SelfCheckoutHandler scHandler;
-    private SelfCheckoutState scState;
+    private volatile SelfCheckoutState scState;
     
     private Customer customer;
     private Attendant attendant;
     
-    private Phase phase;
+    // Read without the station's lock, as by the GUI
+    private volatile Phase phase;
+    private PaymentMethod paymentMethod;
+
+    private WeightFilter weightFilter;
+    private long weightSampleMillis;
+
+    // Kept across restarts, so the supervision station sees the times since the station was set up
+    private final PhaseTimes phaseTimes = new PhaseTimes(Phase.IDLE, System.nanoTime());
+
+    // The device masks of PHASE_DEVICES and PAYMENT_DEVICES for this station's handler
+    private final long[] phaseDevices = new long[Phase.values().length];
+    private final long[] paymentDevices = new long[PaymentMethod.values().length];
 
 
     public SelfCheckoutSoftware(SelfCheckoutStation scStation)
     {
+        super(SelfCheckoutEvent::new, SelfCheckoutEvent.Kind.values().length);
         this.scStation = scStation;
         this.phase = Phase.IDLE;
 
@@ -66,6 +126,21 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
         this.scHandler.disableAll(); // Default by disable all of them
     }
     
+    /**
+     * Runs the bagging area's weights through a filter before acting on them,
+     * from now on and after every restart.
+     *
+     * @param weightFilter the filter, or null to act on every weight announced
+     * @param sampleMillis how often to read the weight while the filter waits
+     * @see ProcessItemHandler#setWeightFilter(WeightFilter, long)
+     */
+    public void setWeightFilter(WeightFilter weightFilter, long sampleMillis)
+    {
+        this.scHandler.getProcessItemHandler().setWeightFilter(weightFilter, sampleMillis);
+        this.weightFilter = weightFilter;
+        this.weightSampleMillis = sampleMillis;
+    }
+
     public SelfCheckoutStation getSelfCheckoutStation()
     {
         return this.scStation;
@@ -156,24 +231,78 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
         return this.svs;
     }
 
+    /**
+     * Notifies every observer of an event whose observer method takes no
+     * argument, or takes this software.
+     * 
+     * @param kind the kind of event
+     */
+    public void notifyObservers(SelfCheckoutEvent.Kind kind)
+    {
+        this.notifyObservers(kind, null);
+    }
+
+    /**
+     * Notifies every observer of an event. Nothing is allocated to do so.
+     * 
+     * @param kind     the kind of event
+     * @param argument the argument for the observer method, of the type the
+     *                 kind of event takes
+     * @throws IllegalArgumentException if the argument is of the wrong type
+     */
+    public void notifyObservers(SelfCheckoutEvent.Kind kind, Object argument)
+    {
+        // Checked before an event is taken from the pool, so a bad argument leaves it untouched
+        SelfCheckoutEvent.checkArgument(kind, argument);
+        this.notifyObservers(this.obtainEvent().set(this, kind, argument));
+    }
+
     /**
      * This method is used for starting or restarting a system.
      * We do not want to mess with the SelfCheckoutStation because we do not create
      * new hardware
      * when something is turned on/off.
+     *
+     * Restarting a system that is running keeps its handlers and controllers,
+     * attached once each, and resets what they know of the customer. Starting
+     * one that was stopped creates new ones, as stopping detached the old ones.
      */
     public void startSystem()
     {
-    	this.scHandler = new SelfCheckoutHandler(this);
+        if (this.scState != null && !this.scState.getIsShutDown())
+        {
+            // Already running, so the handlers are reset in place rather than attached again
+            this.scHandler.resetState();
+            this.scController.resetState();
+        }
+        else
+        {
+            this.scHandler = new SelfCheckoutHandler(this);
+            this.scController = new SelfCheckoutController(this);
+            this.scHandler.getProcessItemHandler().setWeightFilter(this.weightFilter, this.weightSampleMillis);
 
-    	this.scController = new SelfCheckoutController(this);
+            // Completing a payment only queues the receipt, rather than waiting for the printer
+            this.scController.getReceipt().startPrintSpooler(RECEIPT_QUEUE_CAPACITY);
+        }
+        this.scHandler.verifyAttached();
+        this.scController.verifyAttached();
     	
     	this.scState = new SelfCheckoutState();
+        this.timePhase(); // A restart clears the blocked, discrepancy and error states
+
+        for (Phase phase : Phase.values())
+        {
+            this.phaseDevices[phase.ordinal()] = this.scHandler.devices(PHASE_DEVICES.get(phase));
+        }
+        for (PaymentMethod method : PaymentMethod.values())
+        {
+            this.paymentDevices[method.ordinal()] = this.scHandler.devices(PAYMENT_DEVICES.get(method));
+        }
     	
         this.scHandler.enableAll();
         this.scController.getScreen().enableHardware();
 
-        this.notifyObservers(observer -> observer.softwareStarted(this));
+        this.notifyObservers(SelfCheckoutEvent.Kind.SOFTWARE_STARTED);
         this.scState.setIsShutDown(false);
     }
 
@@ -188,18 +317,19 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
     {
         this.scHandler.disableAll();
         this.scController.getScreen().disableHardware();
+        this.scController.getReceipt().stopPrintSpooler();
 
         this.scHandler.resetHandlers();
 
         this.scController.resetControllers();
 
-        this.notifyObservers(observer -> observer.softwareStopped(this));
+        this.notifyObservers(SelfCheckoutEvent.Kind.SOFTWARE_STOPPED);
         
         this.setPhase(Phase.IDLE);
         this.scState.setIsShutDown(true);
     }
 
-    public void blockSystem()
+    public synchronized void blockSystem()
     {
         // If blocking:
         // 1. disbale all hardware devices
@@ -207,14 +337,14 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
         // 3. notify all observers that current phase is BLOCKING
         // 4. notify GUI that touch screen is blocked
 
-        this.scHandler.disableAll();
-        this.scHandler.getProcessItemHandler().enableBaggingArea(); // Bagging area should be enabled basically all the time
         this.scState.setIsBlocked(true);
-        this.notifyObservers(observer -> observer.phaseChanged(Phase.BLOCKING));
-        this.notifyObservers(observer -> observer.touchScreenBlocked());
+        this.timePhase();
+        this.updateDevices();
+        this.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED, Phase.BLOCKING);
+        this.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED);
     }
 
-    public void unblockSystem() {
+    public synchronized void unblockSystem() {
         // If unblocking:
         // 1. enable all hardware devices
         // 2. set isBlocked to false
@@ -223,12 +353,15 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
 
         this.scHandler.enableAll();
         this.scState.setIsBlocked(false);
-        this.notifyObservers(observer -> observer.phaseChanged(this.phase));
-        this.notifyObservers(observer -> observer.touchScreenUnblocked());
+        this.timePhase();
+        this.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED, this.phase);
+        this.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_UNBLOCKED);
     }
 
     // ========== PHASE MANAGEMENT ========== //
 
+    // Phases are changed holding this station's lock, as its weight sampler changes them from another thread
+
     /**
      * @return
      */
@@ -248,11 +381,60 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
         return this.phase;
     }
 
-    private void setPhase(Phase phase)
+    private synchronized void setPhase(Phase phase)
     {
         this.phase = phase;
-        this.notifyObservers(observer -> observer.phaseChanged(this.phase));
-        System.out.println("Set phase: " + this.phase);
+        this.setPhase(phase, this.devices());
+    }
+
+    /**
+     * Sets the phase with the given devices enabled, rather than those of the
+     * phase in {@link #PHASE_DEVICES}
+     */
+    private synchronized void setPhase(Phase phase, long devices)
+    {
+        this.phase = phase;
+        this.timePhase();
+        this.scHandler.setEnabled(devices);
+        this.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED, this.phase);
+        Log.debug(Log.Category.PHASE, "Set phase", "phase", this.phase);
+    }
+
+    /**
+     * The devices of the phase the station is in, from the table of
+     * {@link #PHASE_DEVICES}
+     */
+    private long devices()
+    {
+        Phase phase = this.getPhase();
+        long devices = this.phaseDevices[phase.ordinal()];
+        if (phase == Phase.PROCESSING_PAYMENT && this.paymentMethod != null)
+        {
+            devices |= this.paymentDevices[this.paymentMethod.ordinal()];
+        }
+
+        return devices;
+    }
+
+    /**
+     * Times the transition to the phase the station is now in
+     */
+    private synchronized void timePhase()
+    {
+        this.phaseTimes.enter(this.getPhase(), System.nanoTime());
+    }
+
+    PhaseTimes getPhaseTimes()
+    {
+        return this.phaseTimes;
+    }
+
+    /**
+     * Enables the devices of the phase the station is in and disables the rest
+     */
+    private synchronized void updateDevices()
+    {
+        this.scHandler.setEnabled(this.devices());
     }
 
     /**
@@ -276,25 +458,22 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
             throw new IllegalStateException("Cannot start a new customer when the system is not idle");
         }
 
-        this.scHandler.getCardHandler().enableHardware();
         this.setCustomer(customer);
         this.addItem(); // Directly jump to addItem phase
     }
 
     public void addItem()
     {
-        this.scHandler.disableAll();
-        this.scHandler.getCardHandler().enableHardware();
-        this.scHandler.getProcessItemHandler().enableHardware();
+        // The attendant approved leaving the item out of the bagging area
+        if (this.phase == Phase.NON_BAGGABLE_ITEM)
+        {
+            this.scHandler.getProcessItemHandler().skipBagging();
+        }
 
         this.setPhase(Phase.SCANNING_ITEM);
     }
 
     public void addPLUItem() {
-        this.scHandler.disableAll();
-        this.scHandler.getCardHandler().enableHardware();
-        this.scHandler.getProcessItemHandler().enableHardware();
-
         this.setPhase(Phase.WEIGHING_PLU_ITEM);
     }
 
@@ -314,10 +493,6 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
             throw new IllegalStateException("Cannot add item when the system is not scanning item");
         }
 
-        this.scHandler.disableAll();
-        this.scHandler.getCardHandler().enableHardware();
-        this.scHandler.getProcessItemHandler().enableBaggingArea();
-
         this.setPhase(Phase.BAGGING_ITEM); // Expecting GUI switchs to bagging item view
     }
 
@@ -335,10 +510,6 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
         }
 
         // Only enable bagging area
-        this.scHandler.disableAll();
-        this.scHandler.getCardHandler().enableHardware();
-        this.scHandler.getProcessItemHandler().enableBaggingArea();
-
         this.setPhase(Phase.PLACING_OWN_BAG);
     }
 
@@ -351,7 +522,7 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
 
         this.setPhase(Phase.NON_BAGGABLE_ITEM);
         SupervisionSoftware svs = this.getSupervisionSoftware();
-        svs.notifyObservers(observer -> observer.customerDoesNotWantToBagItem(this));
+        svs.notifyObservers(SupervisionEvent.Kind.CUSTOMER_DOES_NOT_WANT_TO_BAG_ITEM, this);
     }
 
     /**
@@ -364,9 +535,15 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
             throw new IllegalStateException("Cannot checkout when the system is not scanning item");
         }
 
-        // keep hardware enabled so they can go back to adding products
-        this.scHandler.enableAll();
-        this.scHandler.getCardHandler().enableHardware();
+        // In scan-ahead mode, items scanned must be bagged before paying
+        ProcessItemHandler processItemHandler = this.scHandler.getProcessItemHandler();
+        if (processItemHandler.getScanAhead() > 1 && processItemHandler.hasItemsToBag())
+        {
+            this.bagItem();
+            this.notifyObservers(SelfCheckoutEvent.Kind.PLACE_IN_BAGGING_AREA_BLOCKED);
+            return;
+        }
+
         this.setPhase(Phase.CHOOSING_PAYMENT_METHOD);
     }
 
@@ -382,11 +559,29 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
             throw new IllegalStateException("Cannot checkout when the system is not choosing payment method");
         }
 
+        // Devices are only configured if there is a customer at the station
+        if (this.customer == null)
+        {
+            throw new IllegalStateException("No customer at checkout station.");
+        }
+
+        // Only the devices for the method are enabled
+        this.paymentMethod = method;
         this.setPhase(Phase.PROCESSING_PAYMENT);
+    }
 
-        // Relative devices are enabled in checkout
-        this.scHandler.disableAll();
-        this.scController.getCheckout().enablePaymentHardware(method);
+    /**
+     * When part of the payment is made, e.g. a gift card did not cover the whole
+     * cart, and the customer needs to choose how to pay the remainder
+     */
+    public void paymentRemainderDue()
+    {
+        if (this.phase != Phase.PROCESSING_PAYMENT)
+        {
+            throw new IllegalStateException("Cannot have a remainder due without a processed payment");
+        }
+
+        this.setPhase(Phase.CHOOSING_PAYMENT_METHOD);
     }
 
     public void paymentCompleted()
@@ -395,8 +590,6 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
         {
             throw new IllegalStateException("Cannot have a completed payment without a processed payment");
         }
-        this.scHandler.disableAll();
-        this.scHandler.getProcessItemHandler().enableBaggingArea();
         this.scController.getReceipt().printReceipt();
         this.setPhase(Phase.PAYMENT_COMPLETE);
     }
@@ -409,7 +602,6 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
         }
 
         this.scHandler.getProcessItemHandler().resetScale();
-        this.scHandler.disableAll();
         this.idle();
     }
 
@@ -425,23 +617,20 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
             throw new IllegalStateException("Cannot cancel checkout when the system is not processing payment");
         }
 
-        // Relative devices are disabled in checkout
-        this.scHandler.disableAll();
-
-        this.setPhase(Phase.SCANNING_ITEM);
+        // Relative devices are disabled in checkout, and stay disabled until the customer adds an item
+        this.setPhase(Phase.SCANNING_ITEM, SelfCheckoutHandler.NO_DEVICES);
     }
 
-    public void weightDiscrepancy()
+    public synchronized void weightDiscrepancy()
     {
-        this.scHandler.disableAll();
-        this.scHandler.getProcessItemHandler().enableBaggingArea();
-
         this.scState.setIsWeightDiscrepancy(true);
-        this.notifyObservers(observer -> observer.phaseChanged(Phase.HAVING_WEIGHT_DISCREPANCY));
-        this.notifyObservers(observer -> observer.touchScreenBlocked());
+        this.timePhase();
+        this.updateDevices();
+        this.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED, Phase.HAVING_WEIGHT_DISCREPANCY);
+        this.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED);
     }
 
-    protected void approveWeightDiscrepancy()
+    protected synchronized void approveWeightDiscrepancy()
     {
         if (!this.scState.getIsWeightDiscrepancy())
         {
@@ -449,30 +638,32 @@ public class SelfCheckoutSoftware extends Software <SelfCheckoutObserver>
         }
 
         this.scHandler.getProcessItemHandler().overrideWeight();
-        this.scHandler.getProcessItemHandler().enableHardware();
+        this.scHandler.setEnabled(this.scHandler.devices(SelfCheckoutHandler.ITEM_DEVICES));
 
         this.scState.setIsWeightDiscrepancy(false);
-        this.notifyObservers(observer -> observer.phaseChanged(this.phase));
-        this.notifyObservers(observer -> observer.touchScreenUnblocked());
+        this.timePhase();
+        this.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED, this.phase);
+        this.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_UNBLOCKED);
     }
 
-    public void errorOccur()
+    public synchronized void errorOccur()
     {
-        this.scHandler.disableAll();
-        this.scHandler.getProcessItemHandler().enableBaggingArea();
         this.scState.setIsError(true);
+        this.timePhase();
+        this.updateDevices();
 
-        this.notifyObservers(observer -> observer.phaseChanged(Phase.ERROR));
-        this.notifyObservers(observer -> observer.touchScreenBlocked());
+        this.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED, Phase.ERROR);
+        this.notifyObservers(SelfCheckoutEvent.Kind.TOUCH_SCREEN_BLOCKED);
     }
 
-    protected void resolveError() {
+    protected synchronized void resolveError() {
         if (!this.scState.getIsError()) {
             throw new IllegalStateException("Cannot resolve error when the system is not in error");
         }
 
         this.scState.setIsError(false);
-        this.notifyObservers(observer -> observer.phaseChanged(this.phase));
+        this.timePhase();
+        this.notifyObservers(SelfCheckoutEvent.Kind.PHASE_CHANGED, this.phase);
     }
 
 }
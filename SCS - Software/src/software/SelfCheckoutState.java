@@ -2,9 +2,10 @@ package software;
 
 public class SelfCheckoutState {
 	
-    private boolean isBlocked;
-    private boolean isWeightDiscrepancy;
-    private boolean isError;
+    // Set holding the station's lock, but read without it
+    private volatile boolean isBlocked;
+    private volatile boolean isWeightDiscrepancy;
+    private volatile boolean isError;
     private boolean isShutdown;
     private boolean coinInTray = false;
     private boolean banknoteDangling = false;
@@ -3,48 +3,197 @@ package software;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.lsmr.selfcheckout.products.BarcodedProduct;
 import org.lsmr.selfcheckout.products.PLUCodedProduct;
 import org.lsmr.selfcheckout.products.Product;
 
+import software.observers.Event;
 import software.observers.Observer;
 import store.Inventory;
 
 /**
+ * 
+ * @param <T> the type of observer
+ * @param <E> the type of event the observers are notified with
  * 
  * @author Yunfan Yang
  */
-public abstract class Software<T extends Observer> {
-    private List<T> observers = new ArrayList<T>();
+public abstract class Software<T extends Observer, E extends Event<T, E>> {
+    /**
+     * The events a thread is notifying observers with. A notification can
+     * cause another on the same thread, so there is one event for each level of
+     * nesting.
+     */
+    private static class EventPool<E> {
+        private final List<E> events = new ArrayList<E>();
+        private int depth = 0;
+    }
+
+    private final List<T> observers = new ArrayList<T>();
+    private final List<Long> interests = new ArrayList<Long>();
+
+    // The observers interested in each kind of event, by the kind's ordinal,
+    // replaced whenever an observer is added or removed
+    private volatile Object[][] subscribers;
+
+    private final Supplier<E> factory;
+    private final EventBus<T, E> eventBus;
+    private final ThreadLocal<EventPool<E>> eventPools = ThreadLocal.withInitial(EventPool::new);
+
+    /**
+     * @param factory creates the events observers are notified with
+     * @param kinds   how many kinds of event there are
+     */
+    protected Software(Supplier<E> factory, int kinds) {
+        if (kinds > Long.SIZE) {
+            throw new IllegalArgumentException("Interests are a bitmask of at most " + Long.SIZE + " kinds of event");
+        }
+
+        this.factory = factory;
+        this.eventBus = new EventBus<T, E>(factory);
+        this.subscribers = new Object[kinds][0];
+    }
 
     public void addObserver(T observer) {
+        this.addObserver(observer, Event.ALL_KINDS);
+    }
+
+    /**
+     * Adds an observer that is only notified of the kinds of event it is
+     * interested in.
+     * 
+     * @param observer  the observer
+     * @param interests the kinds of event to notify it of, as a bitmask from
+     *                  {@link Event#mask(Enum...)}
+     */
+    public synchronized void addObserver(T observer, long interests) {
         this.observers.add(observer);
+        this.interests.add(interests);
+        this.updateSubscribers();
     }
 
-    public void removeObserver(T observer) {
-        this.observers.remove(observer);
+    /**
+     * Adds an observer that is notified on a thread of its own, through the
+     * event bus, so a slow observer such as the GUI does not hold up whoever
+     * raised the event.
+     * 
+     * @param observer the observer
+     * @param strategy how its thread waits for events
+     */
+    public void addObserver(T observer, EventBus.WaitStrategy strategy) {
+        this.addObserver(observer, Event.ALL_KINDS, strategy);
     }
 
-    public List<T> getObservers() {
-        return this.observers;
+    /**
+     * Adds an observer that is notified on a thread of its own, of only the
+     * kinds of event it is interested in.
+     * 
+     * @param observer  the observer
+     * @param interests the kinds of event to notify it of, as a bitmask from
+     *                  {@link Event#mask(Enum...)}
+     * @param strategy  how its thread waits for events
+     */
+    public void addObserver(T observer, long interests, EventBus.WaitStrategy strategy) {
+        this.eventBus.subscribe(observer, interests, strategy);
     }
 
     /**
-     * Usage:
+     * Adds an observer that displays state, such as the GUI, notified on a
+     * thread of its own. State events like phase changes are merged and
+     * delivered at most once a frame, while every other event is delivered at
+     * once.
      * 
-     * <pre>
-     * software.notifyObservers(observer -> observer.event(parameter));
-     * </pre>
+     * @param observer    the observer
+     * @param interests   the kinds of event to notify it of, as a bitmask from
+     *                    {@link Event#mask(Enum...)}
+     * @param strategy    how its thread waits for events
+     * @param frameMillis how long to merge state events for, such as
+     *                    {@link EventCoalescer#FRAME_MILLIS}
+     */
+    public void addObserver(T observer, long interests, EventBus.WaitStrategy strategy, long frameMillis) {
+        this.eventBus.subscribe(observer, interests, strategy, frameMillis);
+    }
+
+    public synchronized void removeObserver(T observer) {
+        int index = this.observers.indexOf(observer);
+        if (index >= 0) {
+            this.observers.remove(index);
+            this.interests.remove(index);
+            this.updateSubscribers();
+        }
+
+        this.eventBus.unsubscribe(observer);
+    }
+
+    /**
+     * @return the observers notified directly, in the order they were added
+     */
+    public synchronized List<T> getObservers() {
+        return Collections.unmodifiableList(new ArrayList<T>(this.observers));
+    }
+
+    /**
+     * Rebuilds the observers interested in each kind of event. Notifications
+     * already under way carry on with the old ones.
+     */
+    private void updateSubscribers() {
+        Object[][] updated = new Object[this.subscribers.length][];
+
+        for (int kind = 0; kind < updated.length; kind++) {
+            List<T> interested = new ArrayList<T>();
+            for (int i = 0; i < this.observers.size(); i++) {
+                if ((this.interests.get(i) & (1L << kind)) != 0) {
+                    interested.add(this.observers.get(i));
+                }
+            }
+            updated[kind] = interested.toArray();
+        }
+
+        this.subscribers = updated;
+    }
+
+    /**
+     * @return the bus that notifies the observers added with a wait strategy
+     */
+    public EventBus<T, E> getEventBus() {
+        return this.eventBus;
+    }
+
+    /**
+     * Takes an event from this thread's pool, to fill in and pass to
+     * {@link #notifyObservers(Event)}.
      * 
-     * @param function
+     * @return an event that is not in use
+     */
+    protected E obtainEvent() {
+        EventPool<E> pool = this.eventPools.get();
+        if (pool.depth == pool.events.size()) {
+            pool.events.add(this.factory.get());
+        }
+
+        return pool.events.get(pool.depth++);
+    }
+
+    /**
+     * Notifies every observer interested in an event from
+     * {@link #obtainEvent()}, and returns the event to the pool. Observers added
+     * with a wait strategy are notified later, on their own threads.
      * 
-     * @author Yunfan Yang
+     * @param event the event
      */
-    public void notifyObservers(Function<T, Void> function) {
-        for (T observer : observers) {
-            function.apply(observer);
+    @SuppressWarnings("unchecked")
+    protected void notifyObservers(E event) {
+        try {
+            Object[] interested = this.subscribers[event.getKind().ordinal()];
+            for (int i = 0; i < interested.length; i++) {
+                event.dispatchTo((T) interested[i]);
+            }
+
+            this.eventBus.publish(event);
+        } finally {
+            this.eventPools.get().depth--;
         }
     }
 
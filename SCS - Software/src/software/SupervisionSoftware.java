@@ -1,14 +1,20 @@
 package software;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.lsmr.selfcheckout.devices.SupervisionStation;
 
 import application.Main.Tangibles;
+import checkout.ConsumablesForecast;
+import checkout.Receipt;
 import store.Store;
 import store.credentials.CredentialsSystem;
 import user.Attendant;
+import software.SelfCheckoutSoftware.Phase;
+import software.observers.SupervisionEvent;
 import software.observers.SupervisionObserver;
 
 /**
@@ -28,13 +34,14 @@ import software.observers.SupervisionObserver;
  * @author Yunfan Yang
  * @author Tyler Chen
  */
-public class SupervisionSoftware extends Software<SupervisionObserver> {
+public class SupervisionSoftware extends Software<SupervisionObserver, SupervisionEvent> {
 	private SupervisionStation svs;
 	private Attendant attendant;
 	private boolean logged_in;
 	private List<SelfCheckoutSoftware> softwareList = new ArrayList<SelfCheckoutSoftware>();
 
 	public SupervisionSoftware(SupervisionStation svs) {
+		super(SupervisionEvent::new, SupervisionEvent.Kind.values().length);
 		this.svs = svs;
 
 		// TODO: Initialize handlers that supervision software needs.
@@ -42,6 +49,7 @@ public class SupervisionSoftware extends Software<SupervisionObserver> {
 
 	// For restarting a station, we don't want to restart the other stations too.
 	public SupervisionSoftware(SupervisionStation svs, List<SelfCheckoutSoftware> softwareList) {
+		super(SupervisionEvent::new, SupervisionEvent.Kind.values().length);
 		this.svs = svs;
 		this.softwareList.clear();
 
@@ -58,6 +66,22 @@ public class SupervisionSoftware extends Software<SupervisionObserver> {
 		return this.attendant;
 	}
 
+	/**
+	 * Notifies every observer of an event about a station. Nothing is allocated
+	 * to do so.
+	 * 
+	 * @param kind     the kind of event
+	 * @param software the station the event is about
+	 */
+	public void notifyObservers(SupervisionEvent.Kind kind, SelfCheckoutSoftware software) {
+		// Checked before an event is taken from the pool, so a bad kind leaves it untouched
+		if (kind == null) {
+			throw new IllegalArgumentException("Kind cannot be null");
+		}
+
+		this.notifyObservers(this.obtainEvent().set(kind, software));
+	}
+
 	public void add(SelfCheckoutSoftware software) {
 		this.softwareList.add(software);
 		software.setSupervisionSoftware(this);
@@ -81,6 +105,95 @@ public class SupervisionSoftware extends Software<SupervisionObserver> {
 		return this.softwareList;
 	}
 
+	/**
+	 * Forecasts when the receipt printer of every running station runs out of
+	 * paper and ink.
+	 * 
+	 * @return the forecast of each station, in the order they were added
+	 */
+	public Map<SelfCheckoutSoftware, ConsumablesForecast.Forecast> getPrinterForecasts() {
+		long now = System.currentTimeMillis();
+		Map<SelfCheckoutSoftware, ConsumablesForecast.Forecast> forecasts = new LinkedHashMap<SelfCheckoutSoftware, ConsumablesForecast.Forecast>();
+
+		for (SelfCheckoutSoftware software : this.softwareList) {
+			// A station that is shut down has no receipt controller
+			Receipt receipt = software.getSelfCheckoutController().getReceipt();
+			if (receipt != null) {
+				forecasts.put(software, receipt.forecastConsumables(now));
+			}
+		}
+
+		return forecasts;
+	}
+
+	/**
+	 * Finds the stations whose receipt printer should be refilled now, so that
+	 * it does not run out part way through a receipt.
+	 * 
+	 * @param horizonMillis how far ahead to look
+	 * @return the stations forecast to run out of paper or ink within the
+	 *         horizon, or without enough left for another typical receipt
+	 */
+	public List<SelfCheckoutSoftware> getPrintersNeedingRefill(long horizonMillis) {
+		List<SelfCheckoutSoftware> stations = new ArrayList<SelfCheckoutSoftware>();
+
+		for (Map.Entry<SelfCheckoutSoftware, ConsumablesForecast.Forecast> entry : this.getPrinterForecasts().entrySet()) {
+			if (entry.getValue().needsRefill(horizonMillis)) {
+				stations.add(entry.getKey());
+			}
+		}
+
+		return stations;
+	}
+
+	/**
+	 * Times how long a station spent in one phase before moving to another, such
+	 * as how long customers take to bag an item.
+	 * 
+	 * @param scSoftware  the station
+	 * @param from        the phase left
+	 * @param to          the phase entered
+	 * @param windowNanos how far back to look, up to {@link PhaseTimes#INTERVALS}
+	 *                    intervals of {@link PhaseTimes#INTERVAL_NANOS}
+	 * @return the times of the transitions in the window
+	 */
+	public LatencyHistogram.Snapshot getPhaseLatency(SelfCheckoutSoftware scSoftware, Phase from, Phase to,
+			long windowNanos) {
+		return scSoftware.getPhaseTimes().snapshot(from, to, windowNanos, System.nanoTime());
+	}
+
+	/**
+	 * Times how long a station spent in a phase, whichever it moved to next,
+	 * such as how long attendants take to approve a weight discrepancy.
+	 * 
+	 * @param scSoftware  the station
+	 * @param phase       the phase
+	 * @param windowNanos how far back to look
+	 * @return the times spent in the phase in the window
+	 */
+	public LatencyHistogram.Snapshot getPhaseLatency(SelfCheckoutSoftware scSoftware, Phase phase, long windowNanos) {
+		return scSoftware.getPhaseTimes().snapshot(phase, windowNanos, System.nanoTime());
+	}
+
+	/**
+	 * Times every transition of every station.
+	 * 
+	 * @param windowNanos how far back to look
+	 * @return the times of each station, in the order they were added, by the
+	 *         phase left and then the phase entered
+	 */
+	public Map<SelfCheckoutSoftware, Map<Phase, Map<Phase, LatencyHistogram.Snapshot>>> getPhaseLatencies(
+			long windowNanos) {
+		long now = System.nanoTime();
+		Map<SelfCheckoutSoftware, Map<Phase, Map<Phase, LatencyHistogram.Snapshot>>> latencies = new LinkedHashMap<SelfCheckoutSoftware, Map<Phase, Map<Phase, LatencyHistogram.Snapshot>>>();
+
+		for (SelfCheckoutSoftware software : this.softwareList) {
+			latencies.put(software, software.getPhaseTimes().snapshot(windowNanos, now));
+		}
+
+		return latencies;
+	}
+
 	/**
 	 * Given a username and password, checks if they exist in the database and then
 	 * sets the stations attendant to the matching attendant stored in Tangibles.
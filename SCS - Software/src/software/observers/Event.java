@@ -0,0 +1,84 @@
+package software.observers;
+
+/**
+ * A notification for observers of type T, such as a phase change. Events are
+ * mutable and reused: a software fills one in, delivers it, and fills it in
+ * again for the next notification, so notifying allocates nothing.
+ *
+ * @param <T> the type of observer notified
+ * @param <E> the type of the event itself
+ */
+public interface Event<T extends Observer, E extends Event<T, E>> {
+    /**
+     * An interest in every kind of event
+     */
+    public static final long ALL_KINDS = -1L;
+
+    /**
+     * Combines kinds of event into a bitmask, for registering an observer that
+     * is only notified of those kinds.
+     *
+     * @param kinds the kinds of event
+     * @return a bitmask with the bit for each kind's ordinal set
+     */
+    public static long mask(Enum<?>... kinds) {
+        long mask = 0;
+        for (Enum<?> kind : kinds) {
+            if (kind.ordinal() >= Long.SIZE) {
+                throw new IllegalArgumentException("A bitmask can only hold " + Long.SIZE + " kinds of event");
+            }
+            mask |= 1L << kind.ordinal();
+        }
+        return mask;
+    }
+
+    /**
+     * @return which kind of event this is
+     */
+    public Enum<?> getKind();
+
+    /**
+     * Events with the same state key each report the latest state of one
+     * thing, such as the phase or whether the touch screen is blocked, so an
+     * observer that only displays that state needs just the last of them. See
+     * {@link software.EventCoalescer}.
+     *
+     * @return the key, or null if every event of this kind must be delivered
+     */
+    public default Enum<?> getStateKey() {
+        return null;
+    }
+
+    /**
+     * @param event another event with a state key
+     * @return true if both events report the state of the same thing, so the
+     *         later one replaces the earlier
+     */
+    public default boolean hasSameStateKey(E event) {
+        return this.getStateKey() == event.getStateKey();
+    }
+
+    /**
+     * @param event an event with the same state key
+     * @return true if this event reports the same state as the other, so
+     *         delivering it after the other changes nothing
+     */
+    public default boolean hasSameState(E event) {
+        return false;
+    }
+
+    /**
+     * Calls the observer method for this event.
+     *
+     * @param observer the observer to notify
+     */
+    public void dispatchTo(T observer);
+
+    /**
+     * Makes this event the same as another, as when it is copied into a slot
+     * of an {@link software.EventBus}.
+     *
+     * @param event the event to copy
+     */
+    public void copyFrom(E event);
+}
@@ -0,0 +1,125 @@
+package software.observers;
+
+import java.math.BigDecimal;
+
+import software.SelfCheckoutSoftware;
+import software.SelfCheckoutSoftware.Phase;
+
+/**
+ * A {@link SelfCheckoutObserver} that does nothing, to extend for an observer
+ * that is only interested in a few kinds of event, registered with a mask of
+ * those kinds.
+ */
+public abstract class SelfCheckoutAdapter implements SelfCheckoutObserver {
+    @Override
+    public void invalidBanknoteDetected() {
+    }
+
+    @Override
+    public void banknoteAdded() {
+    }
+
+    @Override
+    public void banknoteStorageFull() {
+    }
+
+    @Override
+    public void banknoteDispenserEmpty() {
+    }
+
+    @Override
+    public void invalidCoinDetected() {
+    }
+
+    @Override
+    public void coinAdded() {
+    }
+
+    @Override
+    public void coinStorageFull() {
+    }
+
+    @Override
+    public void coinDispenserEmpty() {
+    }
+
+    @Override
+    public void invalidCardTypeDetected() {
+    }
+
+    @Override
+    public void cardTransactionSucceeded() {
+    }
+
+    @Override
+    public void invalidGiftCardDetected() {
+    }
+
+    @Override
+    public void invalidMembershipCardDetected() {
+    }
+
+    @Override
+    public void membershipCardDetected(String memberID) {
+    }
+
+    @Override
+    public void paymentHoldingAuthorizationFailed() {
+    }
+
+    @Override
+    public void paymentPostingTransactionFailed() {
+    }
+
+    @Override
+    public void paymentCompleted() {
+    }
+
+    @Override
+    public void giftCardRedeemed(BigDecimal amountDue) {
+    }
+
+    @Override
+    public void placeInBaggingAreaBlocked() {
+    }
+
+    @Override
+    public void placeInBaggingAreaUnblocked() {
+    }
+
+    @Override
+    public void weightDiscrepancyInBaggingAreaDetected() {
+    }
+
+    @Override
+    public void weightDiscrepancyInBaggingAreaResolved() {
+    }
+
+    @Override
+    public void productNotFound() {
+    }
+
+    @Override
+    public void softwareStarted(SelfCheckoutSoftware scSoftware) {
+    }
+
+    @Override
+    public void softwareStopped(SelfCheckoutSoftware scSoftware) {
+    }
+
+    @Override
+    public void touchScreenBlocked() {
+    }
+
+    @Override
+    public void touchScreenUnblocked() {
+    }
+
+    @Override
+    public void phaseChanged(Phase phase) {
+    }
+
+    @Override
+    public void productNotScannable() {
+    }
+}
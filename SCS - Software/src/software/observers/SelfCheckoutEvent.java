@@ -0,0 +1,239 @@
+package software.observers;
+
+import java.math.BigDecimal;
+
+import software.SelfCheckoutSoftware;
+import software.SelfCheckoutSoftware.Phase;
+
+/**
+ * A notification for {@link SelfCheckoutObserver}s: which observer method to
+ * call and its argument, if it takes one.
+ */
+public final class SelfCheckoutEvent implements Event<SelfCheckoutObserver, SelfCheckoutEvent> {
+    /**
+     * One kind of event for each {@link SelfCheckoutObserver} method.
+     */
+    public enum Kind {
+        INVALID_BANKNOTE_DETECTED(null),
+        BANKNOTE_ADDED(null),
+        BANKNOTE_STORAGE_FULL(null),
+        BANKNOTE_DISPENSER_EMPTY(null),
+        INVALID_COIN_DETECTED(null),
+        COIN_ADDED(null),
+        COIN_STORAGE_FULL(null),
+        COIN_DISPENSER_EMPTY(null),
+        INVALID_CARD_TYPE_DETECTED(null),
+        CARD_TRANSACTION_SUCCEEDED(null),
+        INVALID_GIFT_CARD_DETECTED(null),
+        INVALID_MEMBERSHIP_CARD_DETECTED(null),
+        MEMBERSHIP_CARD_DETECTED(String.class),
+        PAYMENT_HOLDING_AUTHORIZATION_FAILED(null),
+        PAYMENT_POSTING_TRANSACTION_FAILED(null),
+        PAYMENT_COMPLETED(null),
+        GIFT_CARD_REDEEMED(BigDecimal.class),
+        PLACE_IN_BAGGING_AREA_BLOCKED(null),
+        PLACE_IN_BAGGING_AREA_UNBLOCKED(null),
+        WEIGHT_DISCREPANCY_IN_BAGGING_AREA_DETECTED(null),
+        WEIGHT_DISCREPANCY_IN_BAGGING_AREA_RESOLVED(null),
+        PRODUCT_NOT_FOUND(null),
+        PRODUCT_NOT_SCANNABLE(null),
+        SOFTWARE_STARTED(null),
+        SOFTWARE_STOPPED(null),
+        TOUCH_SCREEN_BLOCKED(null),
+        TOUCH_SCREEN_UNBLOCKED(null),
+        PHASE_CHANGED(Phase.class);
+
+        /**
+         * The type of argument the observer method takes, or null if it takes
+         * none. Methods that take the software are passed the software that
+         * raised the event.
+         */
+        private final Class<?> argument;
+
+        Kind(Class<?> argument) {
+            this.argument = argument;
+        }
+
+        public Class<?> getArgumentType() {
+            return this.argument;
+        }
+    }
+
+    private SelfCheckoutSoftware software;
+    private Kind kind;
+    private Object argument;
+
+    /**
+     * Fills in the event.
+     *
+     * @param software the software raising the event
+     * @param kind     the kind of event
+     * @param argument the argument for the observer method, or null if it takes
+     *                 none
+     * @return this event
+     * @throws IllegalArgumentException if the argument is not of the type the
+     *                                  kind of event takes
+     */
+    public SelfCheckoutEvent set(SelfCheckoutSoftware software, Kind kind, Object argument) {
+        checkArgument(kind, argument);
+
+        this.software = software;
+        this.kind = kind;
+        this.argument = argument;
+        return this;
+    }
+
+    /**
+     * @param kind     the kind of event
+     * @param argument the argument for the observer method, or null
+     * @throws IllegalArgumentException if the argument is not of the type the
+     *                                  kind of event takes
+     */
+    public static void checkArgument(Kind kind, Object argument) {
+        if (kind == null) {
+            throw new IllegalArgumentException("Kind cannot be null");
+        }
+        if (argument != null && (kind.argument == null || !kind.argument.isInstance(argument))) {
+            throw new IllegalArgumentException(kind + " does not take a " + argument.getClass().getSimpleName());
+        }
+    }
+
+    public SelfCheckoutSoftware getSoftware() {
+        return this.software;
+    }
+
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    public Object getArgument() {
+        return this.argument;
+    }
+
+    /**
+     * Phase changes, and each pair of blocked and unblocked events, report a
+     * state of the station.
+     */
+    @Override
+    public Kind getStateKey() {
+        switch (this.kind) {
+        case PHASE_CHANGED:
+            return Kind.PHASE_CHANGED;
+        case TOUCH_SCREEN_BLOCKED:
+        case TOUCH_SCREEN_UNBLOCKED:
+            return Kind.TOUCH_SCREEN_BLOCKED;
+        case PLACE_IN_BAGGING_AREA_BLOCKED:
+        case PLACE_IN_BAGGING_AREA_UNBLOCKED:
+            return Kind.PLACE_IN_BAGGING_AREA_BLOCKED;
+        default:
+            return null;
+        }
+    }
+
+    @Override
+    public boolean hasSameStateKey(SelfCheckoutEvent event) {
+        return this.software == event.software && this.getStateKey() == event.getStateKey();
+    }
+
+    @Override
+    public boolean hasSameState(SelfCheckoutEvent event) {
+        return this.software == event.software && this.kind == event.kind && this.argument == event.argument;
+    }
+
+    @Override
+    public void dispatchTo(SelfCheckoutObserver observer) {
+        switch (this.kind) {
+        case INVALID_BANKNOTE_DETECTED:
+            observer.invalidBanknoteDetected();
+            break;
+        case BANKNOTE_ADDED:
+            observer.banknoteAdded();
+            break;
+        case BANKNOTE_STORAGE_FULL:
+            observer.banknoteStorageFull();
+            break;
+        case BANKNOTE_DISPENSER_EMPTY:
+            observer.banknoteDispenserEmpty();
+            break;
+        case INVALID_COIN_DETECTED:
+            observer.invalidCoinDetected();
+            break;
+        case COIN_ADDED:
+            observer.coinAdded();
+            break;
+        case COIN_STORAGE_FULL:
+            observer.coinStorageFull();
+            break;
+        case COIN_DISPENSER_EMPTY:
+            observer.coinDispenserEmpty();
+            break;
+        case INVALID_CARD_TYPE_DETECTED:
+            observer.invalidCardTypeDetected();
+            break;
+        case CARD_TRANSACTION_SUCCEEDED:
+            observer.cardTransactionSucceeded();
+            break;
+        case INVALID_GIFT_CARD_DETECTED:
+            observer.invalidGiftCardDetected();
+            break;
+        case INVALID_MEMBERSHIP_CARD_DETECTED:
+            observer.invalidMembershipCardDetected();
+            break;
+        case MEMBERSHIP_CARD_DETECTED:
+            observer.membershipCardDetected((String) this.argument);
+            break;
+        case PAYMENT_HOLDING_AUTHORIZATION_FAILED:
+            observer.paymentHoldingAuthorizationFailed();
+            break;
+        case PAYMENT_POSTING_TRANSACTION_FAILED:
+            observer.paymentPostingTransactionFailed();
+            break;
+        case PAYMENT_COMPLETED:
+            observer.paymentCompleted();
+            break;
+        case GIFT_CARD_REDEEMED:
+            observer.giftCardRedeemed((BigDecimal) this.argument);
+            break;
+        case PLACE_IN_BAGGING_AREA_BLOCKED:
+            observer.placeInBaggingAreaBlocked();
+            break;
+        case PLACE_IN_BAGGING_AREA_UNBLOCKED:
+            observer.placeInBaggingAreaUnblocked();
+            break;
+        case WEIGHT_DISCREPANCY_IN_BAGGING_AREA_DETECTED:
+            observer.weightDiscrepancyInBaggingAreaDetected();
+            break;
+        case WEIGHT_DISCREPANCY_IN_BAGGING_AREA_RESOLVED:
+            observer.weightDiscrepancyInBaggingAreaResolved();
+            break;
+        case PRODUCT_NOT_FOUND:
+            observer.productNotFound();
+            break;
+        case PRODUCT_NOT_SCANNABLE:
+            observer.productNotScannable();
+            break;
+        case SOFTWARE_STARTED:
+            observer.softwareStarted(this.software);
+            break;
+        case SOFTWARE_STOPPED:
+            observer.softwareStopped(this.software);
+            break;
+        case TOUCH_SCREEN_BLOCKED:
+            observer.touchScreenBlocked();
+            break;
+        case TOUCH_SCREEN_UNBLOCKED:
+            observer.touchScreenUnblocked();
+            break;
+        case PHASE_CHANGED:
+            observer.phaseChanged((Phase) this.argument);
+            break;
+        }
+    }
+
+    @Override
+    public void copyFrom(SelfCheckoutEvent event) {
+        this.software = event.software;
+        this.kind = event.kind;
+        this.argument = event.argument;
+    }
+}
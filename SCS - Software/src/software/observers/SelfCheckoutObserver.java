@@ -1,13 +1,15 @@
 package software.observers;
 
+import java.math.BigDecimal;
+
 import software.SelfCheckoutSoftware;
 import software.SelfCheckoutSoftware.Phase;
 
 /**
  * The Observer class for SelfCheckoutSoftware.
  * 
- * PLEASE NOTICE: When you define the return type, instead of {@code Void},
- * please use its wrapper class {@code Void} object, the one with capital V.
+ * Observers are notified through {@link SelfCheckoutEvent}s, one kind for each
+ * method here.
  * 
  * Please notice the naming pattern. It should be noun + verb past tense.
  * 
@@ -15,65 +17,67 @@ import software.SelfCheckoutSoftware.Phase;
  */
 public interface SelfCheckoutObserver extends Observer {
     // Banknote Handler
-    public Void invalidBanknoteDetected();//
+    public void invalidBanknoteDetected();//
 
-    public Void banknoteAdded();//
+    public void banknoteAdded();//
 
-    public Void banknoteStorageFull();//-super
+    public void banknoteStorageFull();//-super
 
-    public Void banknoteDispenserEmpty();//-super
+    public void banknoteDispenserEmpty();//-super
 
     // Coin Handler
-    public Void invalidCoinDetected();//
+    public void invalidCoinDetected();//
 
-    public Void coinAdded();//
+    public void coinAdded();//
 
-    public Void coinStorageFull();//-super
+    public void coinStorageFull();//-super
 
-    public Void coinDispenserEmpty();//-super
+    public void coinDispenserEmpty();//-super
 
     // Card Handler
-    public Void invalidCardTypeDetected();//
+    public void invalidCardTypeDetected();//
+
+    public void cardTransactionSucceeded();//
 
-    public Void cardTransactionSucceeded();//
+    public void invalidGiftCardDetected();//
 
-    public Void invalidGiftCardDetected();//
+    public void invalidMembershipCardDetected();//
 
-    public Void invalidMembershipCardDetected();//
+    public void membershipCardDetected(String memberID);
 
-    public Void membershipCardDetected(String memberID);
+    public void paymentHoldingAuthorizationFailed();//
 
-    public Void paymentHoldingAuthorizationFailed();//
+    public void paymentPostingTransactionFailed();//
 
-    public Void paymentPostingTransactionFailed();//
+    public void paymentCompleted();//
 
-    public Void paymentCompleted();//
+    public void giftCardRedeemed(BigDecimal amountDue);
 
     // Process Item Handler
-    public Void placeInBaggingAreaBlocked();//
+    public void placeInBaggingAreaBlocked();//
 
-    public Void placeInBaggingAreaUnblocked();
+    public void placeInBaggingAreaUnblocked();
 
-    public Void weightDiscrepancyInBaggingAreaDetected();//
+    public void weightDiscrepancyInBaggingAreaDetected();//
 
-    public Void weightDiscrepancyInBaggingAreaResolved();
+    public void weightDiscrepancyInBaggingAreaResolved();
 
-    public Void productNotFound();//
+    public void productNotFound();//
 
     // Self-Checkout Software
 
-    public Void softwareStarted(SelfCheckoutSoftware scSoftware);
+    public void softwareStarted(SelfCheckoutSoftware scSoftware);
 
-    public Void softwareStopped(SelfCheckoutSoftware scSoftware);
+    public void softwareStopped(SelfCheckoutSoftware scSoftware);
 
-    public Void touchScreenBlocked();//
+    public void touchScreenBlocked();//
 
-    public Void touchScreenUnblocked();
+    public void touchScreenUnblocked();
 
     // Phase
-    public Void phaseChanged(Phase phase);
+    public void phaseChanged(Phase phase);
 
-	public Void productNotScannable();
+	public void productNotScannable();
 
     
 }
@@ -0,0 +1,140 @@
+package software.observers;
+
+import software.SelfCheckoutSoftware;
+
+/**
+ * A notification for {@link SupervisionObserver}s: which observer method to
+ * call, about which station.
+ */
+public final class SupervisionEvent implements Event<SupervisionObserver, SupervisionEvent> {
+    /**
+     * One kind of event for each {@link SupervisionObserver} method.
+     */
+    public enum Kind {
+        BANKNOTE_STORAGE_FULL, BANKNOTE_DISPENSER_EMPTY, COIN_STORAGE_FULL, COIN_DISPENSER_EMPTY,
+
+        DISPENSE_CHANGE_FAILED,
+
+        RECEIPT_PRINTER_OUT_OF_PAPER, RECEIPT_PRINTER_LOW_ON_PAPER, RECEIPT_PRINTER_PAPER_OVERLOADED,
+        RECEIPT_PRINTER_OUT_OF_INK, RECEIPT_PRINTER_LOW_ON_INK, RECEIPT_PRINTER_INK_OVERLOADED,
+
+        WEIGHT_DISCREPANCY_DETECTED, TOUCH_SCREEN_BLOCKED, TOUCH_SCREEN_UNBLOCKED, SCALE_OVERLOADED_DETECTED,
+        SCALE_OVERLOADED_RESOLVED, CUSTOMER_DOES_NOT_WANT_TO_BAG_ITEM
+    }
+
+    private Kind kind;
+    private SelfCheckoutSoftware software;
+
+    /**
+     * Fills in the event.
+     *
+     * @param kind     the kind of event
+     * @param software the station the event is about
+     * @return this event
+     */
+    public SupervisionEvent set(Kind kind, SelfCheckoutSoftware software) {
+        if (kind == null) {
+            throw new IllegalArgumentException("Kind cannot be null");
+        }
+
+        this.kind = kind;
+        this.software = software;
+        return this;
+    }
+
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    public SelfCheckoutSoftware getSoftware() {
+        return this.software;
+    }
+
+    /**
+     * Each station's pair of touch screen blocked and unblocked events reports
+     * a state of that station.
+     */
+    @Override
+    public Kind getStateKey() {
+        switch (this.kind) {
+        case TOUCH_SCREEN_BLOCKED:
+        case TOUCH_SCREEN_UNBLOCKED:
+            return Kind.TOUCH_SCREEN_BLOCKED;
+        default:
+            return null;
+        }
+    }
+
+    @Override
+    public boolean hasSameStateKey(SupervisionEvent event) {
+        return this.software == event.software && this.getStateKey() == event.getStateKey();
+    }
+
+    @Override
+    public boolean hasSameState(SupervisionEvent event) {
+        return this.software == event.software && this.kind == event.kind;
+    }
+
+    @Override
+    public void dispatchTo(SupervisionObserver observer) {
+        switch (this.kind) {
+        case BANKNOTE_STORAGE_FULL:
+            observer.banknoteStorageFull(this.software);
+            break;
+        case BANKNOTE_DISPENSER_EMPTY:
+            observer.banknoteDispenserEmpty(this.software);
+            break;
+        case COIN_STORAGE_FULL:
+            observer.coinStorageFull(this.software);
+            break;
+        case COIN_DISPENSER_EMPTY:
+            observer.coinDispenserEmpty(this.software);
+            break;
+        case DISPENSE_CHANGE_FAILED:
+            observer.dispenseChangeFailed(this.software);
+            break;
+        case RECEIPT_PRINTER_OUT_OF_PAPER:
+            observer.receiptPrinterOutOfPaper(this.software);
+            break;
+        case RECEIPT_PRINTER_LOW_ON_PAPER:
+            observer.receiptPrinterLowOnPaper(this.software);
+            break;
+        case RECEIPT_PRINTER_PAPER_OVERLOADED:
+            observer.receiptPrinterPaperOverloaded(this.software);
+            break;
+        case RECEIPT_PRINTER_OUT_OF_INK:
+            observer.receiptPrinterOutOfInk(this.software);
+            break;
+        case RECEIPT_PRINTER_LOW_ON_INK:
+            observer.receiptPrinterLowOnInk(this.software);
+            break;
+        case RECEIPT_PRINTER_INK_OVERLOADED:
+            observer.receiptPrinterInkOverloaded(this.software);
+            break;
+        case WEIGHT_DISCREPANCY_DETECTED:
+            observer.weightDiscrepancyDetected(this.software);
+            break;
+        case TOUCH_SCREEN_BLOCKED:
+            observer.touchScreenBlocked(this.software);
+            break;
+        case TOUCH_SCREEN_UNBLOCKED:
+            observer.touchScreenUnblocked(this.software);
+            break;
+        case SCALE_OVERLOADED_DETECTED:
+            observer.scaleOverloadedDetected(this.software);
+            break;
+        case SCALE_OVERLOADED_RESOLVED:
+            observer.scaleOverloadedResolved(this.software);
+            break;
+        case CUSTOMER_DOES_NOT_WANT_TO_BAG_ITEM:
+            observer.customerDoesNotWantToBagItem(this.software);
+            break;
+        }
+    }
+
+    @Override
+    public void copyFrom(SupervisionEvent event) {
+        this.kind = event.kind;
+        this.software = event.software;
+    }
+}
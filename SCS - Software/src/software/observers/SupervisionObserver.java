@@ -4,41 +4,41 @@ import software.SelfCheckoutSoftware;
 
 public interface SupervisionObserver extends Observer {
     // Banknore Handler
-    public Void banknoteStorageFull(SelfCheckoutSoftware scSoftware);
+    public void banknoteStorageFull(SelfCheckoutSoftware scSoftware);
 
-    public Void banknoteDispenserEmpty(SelfCheckoutSoftware scSoftware);
+    public void banknoteDispenserEmpty(SelfCheckoutSoftware scSoftware);
 
     // Coin Handler
-    public Void coinStorageFull(SelfCheckoutSoftware scSoftware);
+    public void coinStorageFull(SelfCheckoutSoftware scSoftware);
 
-    public Void coinDispenserEmpty(SelfCheckoutSoftware scSoftware);
+    public void coinDispenserEmpty(SelfCheckoutSoftware scSoftware);
 
     // Checkout Handler
-    public Void dispenseChangeFailed(SelfCheckoutSoftware scSoftware);//
+    public void dispenseChangeFailed(SelfCheckoutSoftware scSoftware);//
 
     // Receipt Handler
-    public Void receiptPrinterOutOfPaper(SelfCheckoutSoftware scSoftware);//
+    public void receiptPrinterOutOfPaper(SelfCheckoutSoftware scSoftware);//
     
-    public Void receiptPrinterLowOnPaper(SelfCheckoutSoftware scSoftware);//
+    public void receiptPrinterLowOnPaper(SelfCheckoutSoftware scSoftware);//
     
-    public Void receiptPrinterPaperOverloaded(SelfCheckoutSoftware scSoftware);
+    public void receiptPrinterPaperOverloaded(SelfCheckoutSoftware scSoftware);
 
-    public Void receiptPrinterOutOfInk(SelfCheckoutSoftware scSoftware);//
+    public void receiptPrinterOutOfInk(SelfCheckoutSoftware scSoftware);//
     
-    public Void receiptPrinterLowOnInk(SelfCheckoutSoftware scSoftware);//
+    public void receiptPrinterLowOnInk(SelfCheckoutSoftware scSoftware);//
     
-    public Void receiptPrinterInkOverloaded(SelfCheckoutSoftware scSoftware);
+    public void receiptPrinterInkOverloaded(SelfCheckoutSoftware scSoftware);
 
     //Process Item Handler
-    public Void weightDiscrepancyDetected(SelfCheckoutSoftware scSoftware);//
+    public void weightDiscrepancyDetected(SelfCheckoutSoftware scSoftware);//
 
-    public Void touchScreenBlocked(SelfCheckoutSoftware scSoftware);
+    public void touchScreenBlocked(SelfCheckoutSoftware scSoftware);
 
-    public Void touchScreenUnblocked(SelfCheckoutSoftware scSoftware);
+    public void touchScreenUnblocked(SelfCheckoutSoftware scSoftware);
 
-    public Void scaleOverloadedDetected(SelfCheckoutSoftware scSoftware);
+    public void scaleOverloadedDetected(SelfCheckoutSoftware scSoftware);
 
-    public Void scaleOverloadedResolved(SelfCheckoutSoftware scSoftware);
+    public void scaleOverloadedResolved(SelfCheckoutSoftware scSoftware);
 
-    public Void customerDoesNotWantToBagItem(SelfCheckoutSoftware scSoftware);//
+    public void customerDoesNotWantToBagItem(SelfCheckoutSoftware scSoftware);//
 }
@@ -0,0 +1,74 @@
+package store;
+
+/**
+ * A Bloom filter over encoded member numbers.
+ *
+ * The filter answers "definitely not a member" or "possibly a member" from a
+ * small bit array, so most invalid cards are rejected without probing the
+ * member set. It never rejects a real member.
+ */
+public class BloomFilter {
+	private final long[] bits;
+	private final int bitCount;
+	private final int hashes;
+
+	/**
+	 * @param expectedSize      the number of keys the filter is sized for
+	 * @param falsePositiveRate the chance that a key which was never added is
+	 *                          reported as possibly present, once the filter
+	 *                          holds the expected number of keys
+	 */
+	public BloomFilter(int expectedSize, double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+		}
+
+		int n = Math.max(expectedSize, 1);
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		m = Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+
+		this.bitCount = (int) m;
+		this.bits = new long[(this.bitCount + 63) >>> 6];
+		this.hashes = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+	}
+
+	public void add(long key) {
+		long hash = BloomFilter.mix(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int t = 0; t < this.hashes; t++) {
+			int bit = ((h1 + t * h2) & 0x7fffffff) % this.bitCount;
+			this.bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * @return false if the key was definitely never added; true if it might have
+	 *         been
+	 */
+	public boolean mightContain(long key) {
+		long hash = BloomFilter.mix(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int t = 0; t < this.hashes; t++) {
+			int bit = ((h1 + t * h2) & 0x7fffffff) % this.bitCount;
+			if ((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * A different mixer from the member set's, so keys that collide in the
+	 * filter do not also collide in the set.
+	 */
+	private static long mix(long key) {
+		key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+		key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+		return key ^ (key >>> 31);
+	}
+}
@@ -1,58 +1,165 @@
 package store;
 
-import java.util.Set;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.Calendar;
-import java.util.HashSet;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.lsmr.selfcheckout.Card.CardData;
-import org.lsmr.selfcheckout.external.CardIssuer;
 /**
- * This class represents the GiftCard database.
- * 
+ * This class represents the GiftCard ledger.
+ *
  * This class is static since gift card database is universal.
  * Refer to: ProductDatabases.java in hardware package.
- * 
- * We have a CardIssuer for gift cards as well, since for a Card, it's type can
- * be "giftcard".
- * Gift cards can be used similarly to other payment cards, 
- * payment cards, to be swiped, inserted or tapped.
- * The only difference would be that the cards cannot be used to pay. Don't
- * think we need to post transactions for these cards, or at least conceptually
- * they're not PAYMENT transactions; could be points transaction.
+ *
+ * Gift cards are swiped, inserted or tapped like payment cards, with the type
+ * "gift", but they are not issued by a bank. The store keeps the balance of
+ * every card itself, in cents, and a card can be redeemed for less than the
+ * full amount due: the available balance is taken and the remainder is paid
+ * another way.
+ *
+ * Balances are updated atomically per card, so lanes can redeem different
+ * cards concurrently without a shared lock.
  */
 public class GiftCard
 {
-    private static final Set<String> GIFTCARDS = new HashSet<String>();
-	private static CardIssuer GIFTCARD_ISSUER = new CardIssuer("GiftCard");
+    private static final Map<String, AtomicLong> BALANCES = new ConcurrentHashMap<String, AtomicLong>();
 
     private GiftCard()
     {
 
     }
 
-    public static CardIssuer getCardIssuer()
+    public static boolean isGiftCard(String cardNumber)
     {
-        return GiftCard.GIFTCARD_ISSUER;
+        return GiftCard.BALANCES.containsKey(cardNumber);
     }
 
-    public static boolean isGiftCard(String cardNumber)
+    /**
+     * Activates a gift card with the given value.
+     *
+     * @param cardID    the card number
+     * @param cardValue the value loaded on the card, in whole cents
+     */
+    public static void createGiftCard(String cardID, BigDecimal cardValue)
     {
-        return GiftCard.GIFTCARDS.contains(cardNumber);
+        long cents = GiftCard.toCents(cardValue, RoundingMode.UNNECESSARY);
+
+        if (cents <= 0)
+        {
+            throw new IllegalArgumentException("Gift card value must be positive.");
+        }
+
+        if (GiftCard.BALANCES.putIfAbsent(cardID, new AtomicLong(cents)) != null)
+        {
+            throw new IllegalArgumentException("Gift card already exists.");
+        }
     }
-    
-    public static void createGiftCard(String cardID, BigDecimal cardValue)
+
+    /**
+     * Activates every gift card listed in a file. Each line holds a card number
+     * and its value separated by a comma, e.g. {@code 600012345,25.00}. Blank
+     * lines and lines starting with '#' are skipped.
+     *
+     * @param file the activation file
+     * @return the number of cards activated
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if a line is malformed or a card already
+     *                                  exists; cards on earlier lines stay active
+     */
+    public static int activateGiftCards(Path file) throws IOException
     {
-        GiftCard.GIFTCARDS.add(cardID);
+        int activated = 0;
+        int lineNumber = 0;
 
-        Calendar expiry = Calendar.getInstance();
-        expiry.add(Calendar.YEAR, 10);
-        GiftCard.GIFTCARD_ISSUER.addCardData(cardID, cardID, expiry, "000", cardValue);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                line = line.strip();
+
+                if (line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+
+                int comma = line.indexOf(',');
+                if (comma < 0)
+                {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": expected cardNumber,value");
+                }
+
+                try
+                {
+                    GiftCard.createGiftCard(line.substring(0, comma).strip(), new BigDecimal(line.substring(comma + 1).strip()));
+                } catch (ArithmeticException | IllegalArgumentException e)
+                {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+                }
+
+                activated++;
+            }
+        }
+
+        return activated;
+    }
+
+    /**
+     * @param cardNumber
+     * @return the remaining balance on the card, or null if it is not a gift card
+     */
+    public static BigDecimal getBalance(String cardNumber)
+    {
+        AtomicLong balance = GiftCard.BALANCES.get(cardNumber);
+        return balance == null ? null : BigDecimal.valueOf(balance.get(), 2);
+    }
+
+    /**
+     * Redeems up to the amount due from the card. Amounts smaller than a cent
+     * are rounded up, since the card can only be charged in whole cents.
+     *
+     * @param cardNumber the gift card
+     * @param amountDue  the amount still to be paid
+     * @return the amount taken from the card, which is less than the amount due
+     *         when the balance runs out, or zero if it is not a gift card
+     */
+    public static BigDecimal redeem(String cardNumber, BigDecimal amountDue)
+    {
+        AtomicLong balance = GiftCard.BALANCES.get(cardNumber);
+
+        if (balance == null || amountDue.signum() <= 0)
+        {
+            return BigDecimal.ZERO;
+        }
+
+        long due = GiftCard.toCents(amountDue, RoundingMode.CEILING);
+
+        while (true)
+        {
+            long available = balance.get();
+            long redeemed = Math.min(available, due);
+
+            if (balance.compareAndSet(available, available - redeemed))
+            {
+                return BigDecimal.valueOf(redeemed, 2);
+            }
+        }
     }
 
     public static void clear()
     {
-        GiftCard.GIFTCARDS.clear();
-        GiftCard.GIFTCARD_ISSUER = new CardIssuer("GiftCard");
+        GiftCard.BALANCES.clear();
+    }
+
+    private static long toCents(BigDecimal amount, RoundingMode rounding)
+    {
+        return amount.setScale(2, rounding).unscaledValue().longValueExact();
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,20 @@
 package store;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.lsmr.selfcheckout.Barcode;
+import org.lsmr.selfcheckout.Numeral;
 import org.lsmr.selfcheckout.PriceLookupCode;
 import org.lsmr.selfcheckout.external.ProductDatabases;
 import org.lsmr.selfcheckout.products.BarcodedProduct;
@@ -22,6 +31,9 @@ import org.lsmr.selfcheckout.products.Product;
  * That is, intead of directly access ProductDatabases, use methods in this
  * class.
  * 
+ * Each barcoded product also has a WeightProfile of what it has been seen to
+ * weigh when bagged, which can be saved and loaded between restarts.
+ * 
  * @author joshuaplosz
  * @author Michelle Cheung
  * @author Yunfan Yang
@@ -30,6 +42,7 @@ public class Inventory {
 	private static final Map<PriceLookupCode, PLUCodedProduct> PLU_PRODUCT_DATABASE = ProductDatabases.PLU_PRODUCT_DATABASE;
 	private static final Map<Barcode, BarcodedProduct> BARCODED_PRODUCT_DATABASE = ProductDatabases.BARCODED_PRODUCT_DATABASE;
 	private static final Map<Product, Integer> INVENTORY = ProductDatabases.INVENTORY;
+	private static final Map<Barcode, WeightProfile> WEIGHT_PROFILES = new ConcurrentHashMap<Barcode, WeightProfile>();
 
 	private Inventory() {
 	}
@@ -43,6 +56,7 @@ public class Inventory {
 		Barcode barcode = p.getBarcode();
 		BARCODED_PRODUCT_DATABASE.put(barcode, p);
 		INVENTORY.put(p, 0);
+		WEIGHT_PROFILES.computeIfAbsent(barcode, key -> new WeightProfile(p.getExpectedWeight()));
 	}
 
 	/**
@@ -107,6 +121,109 @@ public class Inventory {
 		return BARCODED_PRODUCT_DATABASE.get(barcode);
 	}
 
+	/**
+	 * Retrieve what the product with the barcode has been seen to weigh
+	 * 
+	 * @param barcode
+	 * @return the weight profile if the barcode exists, null otherwise
+	 */
+	public static WeightProfile getWeightProfile(Barcode barcode) {
+		return WEIGHT_PROFILES.get(barcode);
+	}
+
+	/**
+	 * Saves the weight profile of every barcoded product, one per line as
+	 * barcode, count, mean and sum of squares. The file is replaced in one step,
+	 * so a crash while saving leaves the previous profiles. Saves are done one at
+	 * a time, as they share a temporary file.
+	 * 
+	 * @param file the profile file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static synchronized void saveWeightProfiles(Path file) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			for (Map.Entry<Barcode, WeightProfile> entry : WEIGHT_PROFILES.entrySet()) {
+				WeightProfile profile = entry.getValue();
+				synchronized (profile) {
+					writer.write(entry.getKey() + "," + profile.getCount() + "," + profile.getMean() + ","
+							+ profile.getM2());
+				}
+				writer.newLine();
+			}
+		}
+
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Restores weight profiles saved by {@link #saveWeightProfiles(Path)}.
+	 * Products must already be in the inventory; lines for barcodes that are not
+	 * are skipped, as are blank lines and lines starting with '#'.
+	 * 
+	 * @param file the profile file
+	 * @return the number of profiles restored
+	 * @throws IOException              if the file cannot be read
+	 * @throws IllegalArgumentException if a line is not a valid profile
+	 */
+	public static int loadWeightProfiles(Path file) throws IOException {
+		int loaded = 0;
+		int lineNumber = 0;
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.strip();
+
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+
+				String[] fields = line.split(",");
+				WeightProfile profile;
+				try {
+					if (fields.length != 4) {
+						throw new IllegalArgumentException("expected 4 fields");
+					}
+
+					profile = WEIGHT_PROFILES.get(Inventory.parseBarcode(fields[0].strip()));
+					if (profile != null) {
+						profile.restore(Long.parseLong(fields[1].strip()), Double.parseDouble(fields[2].strip()),
+								Double.parseDouble(fields[3].strip()));
+					}
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+				}
+
+				if (profile != null) {
+					loaded++;
+				}
+			}
+		}
+
+		return loaded;
+	}
+
+	private static Barcode parseBarcode(String digits) {
+		if (digits.isEmpty()) {
+			throw new IllegalArgumentException("missing barcode");
+		}
+
+		Numeral[] numerals = new Numeral[digits.length()];
+
+		for (int i = 0; i < digits.length(); i++) {
+			int digit = Character.digit(digits.charAt(i), 10);
+			if (digit < 0) {
+				throw new IllegalArgumentException("invalid barcode " + digits);
+			}
+			numerals[i] = Numeral.valueOf((byte) digit);
+		}
+
+		return new Barcode(numerals);
+	}
+
 	public static PLUCodedProduct getProduct(PriceLookupCode plu) {
 		return PLU_PRODUCT_DATABASE.get(plu);
 	}
@@ -130,5 +247,6 @@ public class Inventory {
 		PLU_PRODUCT_DATABASE.clear();
 		BARCODED_PRODUCT_DATABASE.clear();
 		INVENTORY.clear();
+		WEIGHT_PROFILES.clear();
 	}
 }
@@ -0,0 +1,179 @@
+package store;
+
+/**
+ * A set of member numbers stored as primitive longs in a single open
+ * addressing table, so millions of members cost 8 to 16 bytes each instead of
+ * a String and a hash set node per member.
+ *
+ * Member numbers are strings of up to 18 digits. Leading zeros are
+ * significant, so a number is encoded with a leading 1 before it is parsed,
+ * e.g. "0042" is stored as 10042. The encoding is never 0, which marks an
+ * empty slot in the table.
+ *
+ * This class is not thread-safe. Memberships are expected to be loaded before
+ * lanes start looking them up.
+ */
+public class MemberNumberSet {
+	private static final int MAXIMUM_DIGITS = 18;
+	private static final int MINIMUM_CAPACITY = 16;
+
+	private long[] table;
+	private int size = 0;
+
+	public MemberNumberSet() {
+		this(MINIMUM_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize the number of members the set should hold without
+	 *                     growing
+	 */
+	public MemberNumberSet(int expectedSize) {
+		this.table = new long[MemberNumberSet.tableSize(expectedSize)];
+	}
+
+	/**
+	 * Encodes a member number as a long.
+	 *
+	 * @param memberID the member number
+	 * @return the encoded member number, or 0 if it is not a string of at most 18
+	 *         digits
+	 */
+	public static long encode(String memberID) {
+		if (memberID == null) {
+			return 0;
+		}
+
+		int length = memberID.length();
+		if (length == 0 || length > MAXIMUM_DIGITS) {
+			return 0;
+		}
+
+		long key = 1;
+		for (int t = 0; t < length; t++) {
+			char c = memberID.charAt(t);
+			if (c < '0' || c > '9') {
+				return 0;
+			}
+			key = key * 10 + (c - '0');
+		}
+
+		return key;
+	}
+
+	/**
+	 * @param key an encoded member number
+	 * @return true if the member number was added, false if it was already in
+	 *         the set
+	 */
+	public boolean add(long key) {
+		if (key == 0) {
+			throw new IllegalArgumentException("Not an encoded member number");
+		}
+
+		// Keep the table at most half full so probe sequences stay short
+		if ((this.size + 1) * 2 > this.table.length) {
+			this.resize(this.table.length * 2);
+		}
+
+		if (MemberNumberSet.insert(this.table, key)) {
+			this.size++;
+			return true;
+		}
+
+		return false;
+	}
+
+	public boolean contains(long key) {
+		if (key == 0) {
+			return false;
+		}
+
+		long[] table = this.table;
+		int mask = table.length - 1;
+
+		for (int slot = MemberNumberSet.hash(key) & mask;; slot = (slot + 1) & mask) {
+			long current = table[slot];
+			if (current == key) {
+				return true;
+			}
+			if (current == 0) {
+				return false;
+			}
+		}
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return a copy of every encoded member number in the set, in no particular
+	 *         order
+	 */
+	public long[] toArray() {
+		long[] keys = new long[this.size];
+		int count = 0;
+
+		for (long key : this.table) {
+			if (key != 0) {
+				keys[count++] = key;
+			}
+		}
+
+		return keys;
+	}
+
+	public void clear() {
+		this.table = new long[MINIMUM_CAPACITY];
+		this.size = 0;
+	}
+
+	private void resize(int capacity) {
+		long[] table = new long[capacity];
+
+		for (long key : this.table) {
+			if (key != 0) {
+				MemberNumberSet.insert(table, key);
+			}
+		}
+
+		this.table = table;
+	}
+
+	private static boolean insert(long[] table, long key) {
+		int mask = table.length - 1;
+
+		for (int slot = MemberNumberSet.hash(key) & mask;; slot = (slot + 1) & mask) {
+			long current = table[slot];
+			if (current == key) {
+				return false;
+			}
+			if (current == 0) {
+				table[slot] = key;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Mixes the bits of the key so that sequential member numbers spread over
+	 * the whole table.
+	 */
+	static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	private static int tableSize(int expectedSize) {
+		int size = MINIMUM_CAPACITY;
+		while (size < expectedSize * 2) {
+			size <<= 1;
+		}
+		return size;
+	}
+}
@@ -1,12 +1,10 @@
 package store;
 
-import java.math.BigDecimal;
-import java.util.Calendar;
-import java.util.HashSet;
-import java.util.Set;
-
-import org.lsmr.selfcheckout.Card.CardData;
-import org.lsmr.selfcheckout.external.CardIssuer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * This class represents the Membership database.
@@ -14,21 +12,24 @@ import org.lsmr.selfcheckout.external.CardIssuer;
  * This class is static since membership database is universal.
  * Refer to: ProductDatabases.java in hardware package.
  * 
- * We have a CardIssuer for membership as well, since for a Card, it's type can
- * be "membership", as said in Card documentation.
- * This would imply that: Membership cards can be used as the same way as other
- * payment cards, to be swiped, inserted or tapped.
- * The only difference would be that the cards cannot be used to pay. Don't
- * think we need to post transactions for these cards, or at least conceptually
- * they're not PAYMENT transactions; could be points transaction.
+ * For a Card, it's type can be "membership", as said in Card documentation.
+ * Membership cards are swiped, inserted or tapped like payment cards, but
+ * they cannot be used to pay, so the lane only needs to know whether a member
+ * number exists. Member numbers are kept in a compact primitive set behind a
+ * Bloom filter: most invalid cards are rejected by the filter alone, and a
+ * lookup never allocates.
  * 
  * @author Abdelhak Khalfallah
  * @author Sharjeel Junaid
  * @author Yunfan Yang
  */
 public class Membership {
-	private static final Set<String> MEMBERS = new HashSet<String>();
-	private static CardIssuer MEMBERSHIP_ISSUER = new CardIssuer("Membership");
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private static MemberNumberSet MEMBERS = new MemberNumberSet(INITIAL_CAPACITY);
+	private static BloomFilter FILTER = new BloomFilter(INITIAL_CAPACITY, FALSE_POSITIVE_RATE);
+	private static int FILTER_CAPACITY = INITIAL_CAPACITY;
 
 	/**
 	 * Instances of this class are not needed, so the constructor is private.
@@ -37,25 +38,111 @@ public class Membership {
 	}
 
 	public static boolean isMember(String memberID) {
-		if (Membership.MEMBERS.contains(memberID))
-			return true;
-		return false;
+		long key = MemberNumberSet.encode(memberID);
+
+		if (key == 0 || !Membership.FILTER.mightContain(key)) {
+			return false;
+		}
+
+		return Membership.MEMBERS.contains(key);
 	}
 
+	/**
+	 * @param memberID a member number of at most 18 digits
+	 * @param holder   the name of the member. Member details are kept by the
+	 *                 loyalty program, the lane only keeps the number.
+	 */
 	public static void createMembership(String memberID, String holder) {
-		if (Membership.MEMBERS.contains(memberID)) {
+		long key = MemberNumberSet.encode(memberID);
+
+		if (key == 0) {
+			throw new IllegalArgumentException("Member ID must be a number of at most 18 digits.");
+		}
+
+		if (holder == null || holder.isEmpty()) {
+			throw new IllegalArgumentException("Member must have a holder.");
+		}
+
+		if (!Membership.MEMBERS.add(key)) {
 			throw new IllegalArgumentException("Member already exists.");
 		}
 
-		Membership.MEMBERS.add(memberID);
+		Membership.addToFilter(key);
+	}
+
+	/**
+	 * Loads every member number listed in a file, one per line. Anything after a
+	 * comma on a line, such as the holder's name, is ignored. Blank lines and
+	 * lines starting with '#' are skipped, and members that already exist are
+	 * kept.
+	 * 
+	 * @param file the member file
+	 * @return the number of new members loaded
+	 * @throws IOException              if the file cannot be read
+	 * @throws IllegalArgumentException if a line does not start with a valid
+	 *                                  member number
+	 */
+	public static int loadMembers(Path file) throws IOException {
+		int loaded = 0;
+		int lineNumber = 0;
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.strip();
+
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+
+				int comma = line.indexOf(',');
+				String memberID = comma < 0 ? line : line.substring(0, comma).strip();
+				long key = MemberNumberSet.encode(memberID);
+
+				if (key == 0) {
+					throw new IllegalArgumentException("Line " + lineNumber + ": invalid member ID " + memberID);
+				}
+
+				if (Membership.MEMBERS.add(key)) {
+					Membership.addToFilter(key);
+					loaded++;
+				}
+			}
+		}
+
+		return loaded;
+	}
 
-		Calendar expiry = Calendar.getInstance();
-		expiry.add(Calendar.YEAR, 10);
-		Membership.MEMBERSHIP_ISSUER.addCardData(memberID, holder, expiry, "000", BigDecimal.ONE);
+	public static int size() {
+		return Membership.MEMBERS.size();
 	}
 
 	public static void clear() {
-		Membership.MEMBERS.clear();
-		Membership.MEMBERSHIP_ISSUER = new CardIssuer("Membership");
+		Membership.MEMBERS = new MemberNumberSet(INITIAL_CAPACITY);
+		Membership.FILTER = new BloomFilter(INITIAL_CAPACITY, FALSE_POSITIVE_RATE);
+		Membership.FILTER_CAPACITY = INITIAL_CAPACITY;
+	}
+
+	/**
+	 * Adds a member to the filter. A filter holding more members than it was
+	 * sized for lets through more false positives, so once that happens it is
+	 * rebuilt at twice the size from the member set.
+	 */
+	private static void addToFilter(long key) {
+		if (Membership.MEMBERS.size() > Membership.FILTER_CAPACITY) {
+			int capacity = Membership.FILTER_CAPACITY * 2;
+			BloomFilter filter = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+
+			for (long member : Membership.MEMBERS.toArray()) {
+				filter.add(member);
+			}
+
+			Membership.FILTER = filter;
+			Membership.FILTER_CAPACITY = capacity;
+			return;
+		}
+
+		Membership.FILTER.add(key);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,180 @@
+package store;
+
+/**
+ * What a product has been seen to weigh when bagged, kept with its catalog
+ * entry in {@link Inventory}.
+ *
+ * Every bagging accepted within tolerance adds an observation to a running
+ * mean and variance (Welford's algorithm), so the profile never stores the
+ * weights themselves. Once there are enough observations, the weight a lane
+ * expects is the observed mean and the tolerance is a few standard deviations
+ * either side, so a product whose weight varies from package to package gets a
+ * wider margin than one that does not. The tolerance is never tighter than the
+ * default, which covers the error of the scale itself.
+ *
+ * Whatever is observed, the weights a lane accepts stay within a tenth of the
+ * catalog weight either side of it, so a run of bad observations cannot drag
+ * the expected weight away from what the product really weighs.
+ *
+ * Lanes read the expected weight and tolerance as one immutable
+ * {@link Limits}, so checking a weight never takes a lock.
+ */
+public class WeightProfile {
+	/**
+	 * The tolerance before enough weights are observed, in grams
+	 */
+	public static final double DEFAULT_TOLERANCE = 1.0;
+
+	/**
+	 * Observations needed before the observed distribution is used
+	 */
+	public static final int MINIMUM_OBSERVATIONS = 5;
+
+	/**
+	 * Standard deviations either side of the mean that are accepted
+	 */
+	public static final double DEVIATIONS = 3;
+
+	/**
+	 * How far from the catalog weight an accepted weight may be, as a fraction
+	 * of the catalog weight
+	 */
+	public static final double MAXIMUM_RELATIVE_TOLERANCE = 0.1;
+
+	/**
+	 * The weight a lane expects and how far off it may be.
+	 */
+	public static final class Limits {
+		private final double expectedWeight;
+		private final double tolerance;
+
+		private Limits(double expectedWeight, double tolerance) {
+			this.expectedWeight = expectedWeight;
+			this.tolerance = tolerance;
+		}
+
+		public double getExpectedWeight() {
+			return this.expectedWeight;
+		}
+
+		public double getTolerance() {
+			return this.tolerance;
+		}
+
+		/**
+		 * @param weightInGrams the weight added to the bagging area
+		 * @return true if it is within tolerance of the expected weight
+		 */
+		public boolean accepts(double weightInGrams) {
+			return Math.abs(weightInGrams - this.expectedWeight) <= this.tolerance;
+		}
+	}
+
+	private final double catalogWeight;
+
+	private long count = 0;
+	private double mean = 0;
+	private double m2 = 0;
+
+	private volatile Limits limits;
+
+	/**
+	 * @param catalogWeight the weight listed for the product, expected until
+	 *                      enough weights are observed
+	 */
+	public WeightProfile(double catalogWeight) {
+		this.catalogWeight = catalogWeight;
+		this.limits = new Limits(catalogWeight, DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * @return the current expected weight and tolerance
+	 */
+	public Limits getLimits() {
+		return this.limits;
+	}
+
+	/**
+	 * Records the weight of one bagging of the product.
+	 *
+	 * @param weightInGrams the weight added to the bagging area
+	 * @throws IllegalArgumentException if the weight is not a finite, positive
+	 *                                  number
+	 */
+	public synchronized void observe(double weightInGrams) {
+		if (!(weightInGrams > 0) || Double.isInfinite(weightInGrams)) {
+			throw new IllegalArgumentException("Weight must be a finite, positive number");
+		}
+
+		this.count++;
+		double delta = weightInGrams - this.mean;
+		this.mean += delta / this.count;
+		this.m2 += delta * (weightInGrams - this.mean);
+
+		this.update();
+	}
+
+	/**
+	 * Replaces the observations, as when loading a saved profile.
+	 *
+	 * @param count the number of observations
+	 * @param mean  their mean
+	 * @param m2    the sum of squared differences from the mean
+	 */
+	public synchronized void restore(long count, double mean, double m2) {
+		if (count < 0 || !(m2 >= 0)) {
+			throw new IllegalArgumentException("Count and sum of squares cannot be negative");
+		}
+		if (count > 0 && (!(mean > 0) || Double.isInfinite(mean) || Double.isInfinite(m2))) {
+			throw new IllegalArgumentException("Mean must be a finite, positive number");
+		}
+
+		this.count = count;
+		this.mean = count == 0 ? 0 : mean;
+		this.m2 = count == 0 ? 0 : m2;
+
+		this.update();
+	}
+
+	public synchronized long getCount() {
+		return this.count;
+	}
+
+	public synchronized double getMean() {
+		return this.mean;
+	}
+
+	/**
+	 * @return the sum of squared differences from the mean, as saved and
+	 *         restored
+	 */
+	public synchronized double getM2() {
+		return this.m2;
+	}
+
+	/**
+	 * @return the sample variance of the observed weights, or 0 if there are
+	 *         fewer than two
+	 */
+	public synchronized double getVariance() {
+		return this.count > 1 ? this.m2 / (this.count - 1) : 0;
+	}
+
+	public double getCatalogWeight() {
+		return this.catalogWeight;
+	}
+
+	private void update() {
+		if (this.count < MINIMUM_OBSERVATIONS) {
+			this.limits = new Limits(this.catalogWeight, DEFAULT_TOLERANCE);
+			return;
+		}
+
+		// The mean may only drift as far as keeps the tolerance inside the widest margin
+		double widest = Math.max(DEFAULT_TOLERANCE, MAXIMUM_RELATIVE_TOLERANCE * Math.abs(this.catalogWeight));
+		double tolerance = Math.min(widest, Math.max(DEFAULT_TOLERANCE, DEVIATIONS * Math.sqrt(this.getVariance())));
+		double drift = widest - tolerance;
+		double expected = Math.min(this.catalogWeight + drift, Math.max(this.catalogWeight - drift, this.mean));
+		this.limits = new Limits(expected, tolerance);
+	}
+}
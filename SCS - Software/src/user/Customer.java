@@ -14,6 +14,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 public class Customer extends User {
 	// used to organize list of products
@@ -39,10 +40,12 @@ public class Customer extends User {
 	private List<CartEntry> cart = new ArrayList<CartEntry>();
 
 	private BigDecimal cashBalance = BigDecimal.ZERO;
+	private BigDecimal giftCardBalance = BigDecimal.ZERO;
 	private boolean ownBagsUsed = false;
 	private int numOfPlasticBags = 0;
 	private String memberID;
 	private PriceLookupCode plu;
+	private String transactionID = UUID.randomUUID().toString();
 
 	public void addCashBalance(BigDecimal value) {
 		this.cashBalance = this.cashBalance.add(value);
@@ -52,6 +55,30 @@ public class Customer extends User {
 		return new BigDecimal(this.cashBalance.toString());
 	}
 
+	/**
+	 * Records an amount redeemed from a gift card towards this customer's cart.
+	 * 
+	 * @param value the amount redeemed
+	 */
+	public void addGiftCardBalance(BigDecimal value) {
+		this.giftCardBalance = this.giftCardBalance.add(value);
+	}
+
+	public BigDecimal getGiftCardBalance() {
+		return this.giftCardBalance;
+	}
+
+	/**
+	 * The amount still to be paid by cash or bank card, after gift card
+	 * redemptions.
+	 * 
+	 * @return the cart subtotal less the gift card balance, never negative
+	 */
+	public BigDecimal getAmountDue() {
+		BigDecimal due = this.getCartSubtotal().subtract(this.giftCardBalance);
+		return due.signum() < 0 ? BigDecimal.ZERO : due;
+	}
+
 	/**
 	 * Add barcoded product to cart
 	 * 
@@ -179,9 +206,26 @@ public class Customer extends User {
 	}
 
 	public boolean hasSufficientCashBalance() {
-		return this.getCashBalance().compareTo(this.getCartSubtotal()) >= 0;
+		return this.getCashBalance().compareTo(this.getAmountDue()) >= 0;
 	}
 	
+	/**
+	 * The ID that tags this customer's card payment. Repeating a payment with the
+	 * same ID never charges the customer twice.
+	 * 
+	 * @return the current payment transaction ID
+	 */
+	public String getTransactionID() {
+		return this.transactionID;
+	}
+
+	/**
+	 * Starts a new payment transaction, after the previous one has failed.
+	 */
+	public void newTransactionID() {
+		this.transactionID = UUID.randomUUID().toString();
+	}
+
 	public void enterPLUCode(PriceLookupCode plu) {
 		this.plu = plu;
 	}